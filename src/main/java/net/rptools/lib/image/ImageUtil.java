@@ -296,10 +296,23 @@ public static Image bytesToImage(byte[] imageBytes, String imageName) throws IOE
     if (imageBytes == null) {
       throw new IOException("Could not load image - no data provided");
     }
+    return streamToImage(new ByteArrayInputStream(imageBytes), imageName);
+  }
+
+  /**
+   * Reads an {@link Image} from a stream, without reading the whole stream into memory first.
+   *
+   * @param imageStream stream to read, which is not closed
+   * @param imageName name of image
+   * @return the image
+   * @throws IOException if image could not be loaded
+   */
+  public static Image streamToImage(InputStream imageStream, String imageName)
+      throws IOException {
     boolean interrupted = false;
     Throwable exception = null;
     Image image;
-    image = ImageIO.read(new ByteArrayInputStream(imageBytes));
+    image = ImageIO.read(imageStream);
     MediaTracker tracker = new MediaTracker(observer);
     tracker.addImage(image, 0);
     do {
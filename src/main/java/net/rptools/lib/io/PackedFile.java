@@ -20,7 +20,9 @@
 import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -35,22 +37,32 @@
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipOutputStream;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 import net.rptools.lib.CodeTimer;
 import net.rptools.lib.FileUtil;
+import net.rptools.lib.MD5Key;
 import net.rptools.lib.ModelVersionManager;
 import net.rptools.maptool.model.Asset;
 import net.rptools.maptool.model.AssetManager;
@@ -105,6 +117,59 @@
  */
 public class PackedFile implements AutoCloseable {
 
+  /** Decides how each entry of a packed file is compressed when it is saved. */
+  @FunctionalInterface
+  public interface CompressionPolicy {
+    /**
+     * Returns the compression level of an entry.
+     *
+     * @param path the path of the entry.
+     * @return a {@link Deflater} level, or {@link Deflater#NO_COMPRESSION} to store the entry
+     *     uncompressed.
+     */
+    int getLevel(String path);
+  }
+
+  /**
+   * Extensions of the formats that are already compressed, and only cost time to deflate again.
+   */
+  private static final Set<String> COMPRESSED_EXTENSIONS =
+      Set.of(
+          "png",
+          "jpg",
+          "jpeg",
+          "gif",
+          "webp",
+          "webm",
+          "ogg",
+          "oga",
+          "ogv",
+          "mp3",
+          "mp4",
+          "m4a",
+          "m4v",
+          "aac",
+          "flac",
+          "opus",
+          "zip",
+          "gz",
+          "jar",
+          "mtlib",
+          "rptok",
+          "rpmap",
+          "cmpgn");
+
+  /**
+   * Stores the entries with an already compressed format, by their extension, and deflates the
+   * rest, which is mostly xml and other text, with the fastest level.
+   */
+  public static final CompressionPolicy DEFAULT_COMPRESSION_POLICY =
+      path -> isCompressedFormat(path) ? Deflater.NO_COMPRESSION : Deflater.BEST_SPEED;
+
+  /** Deflates every entry with the best compression, at the cost of the time taken to save. */
+  public static final CompressionPolicy BEST_COMPRESSION_POLICY =
+      path -> Deflater.BEST_COMPRESSION;
+
   private static final String PROPERTY_FILE = "properties.xml";
   private static final String CONTENT_FILE = "content.xml";
 
@@ -127,6 +192,8 @@ public class PackedFile implements AutoCloseable {
 
   private ModelVersionManager versionManager;
 
+  private CompressionPolicy compressionPolicy = DEFAULT_COMPRESSION_POLICY;
+
   /**
    * By default all temporary files are handled in /tmp. Use this method to globally set the
    * location of the temporary directory
@@ -141,6 +208,30 @@ public static File getTmpDir() {
     return PackedFile.tmpDir;
   }
 
+  /**
+   * Sets how the entries are compressed when the file is saved. Entries that are not changed by
+   * {@link #update()} keep the compression they have.
+   *
+   * @param compressionPolicy the compression policy.
+   */
+  public void setCompressionPolicy(CompressionPolicy compressionPolicy) {
+    this.compressionPolicy = compressionPolicy;
+  }
+
+  /**
+   * Returns if the path is of a format that is already compressed, going by its extension.
+   *
+   * @param path the path.
+   * @return {@code true} if the format is compressed.
+   */
+  public static boolean isCompressedFormat(String path) {
+    int dot = path.lastIndexOf('.');
+    if (dot < 0 || dot < path.lastIndexOf('/')) {
+      return false;
+    }
+    return COMPRESSED_EXTENSIONS.contains(path.substring(dot + 1).toLowerCase());
+  }
+
   public void setModelVersionManager(ModelVersionManager versionManager) {
     this.versionManager = versionManager;
   }
@@ -292,11 +383,9 @@ public void save() throws IOException {
     saveTimer = new CodeTimer("PackedFile.save");
     saveTimer.setEnabled(log.isDebugEnabled());
 
-    // Create the new file
+    // Create the new file, compressing the entries in parallel
     File newFile = new File(tmpDir, new GUID() + ".pak");
-    ZipOutputStream zout =
-        new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(newFile)));
-    zout.setLevel(Deflater.BEST_COMPRESSION); // fast compression
+    ParallelZipWriter zout = new ParallelZipWriter(newFile, tmpDir);
     try {
       saveTimer.start(CONTENT_FILE);
       if (hasFile(CONTENT_FILE)) {
@@ -308,9 +397,10 @@ public void save() throws IOException {
       if (getPropertyMap().isEmpty()) {
         removeFile(PROPERTY_FILE);
       } else {
-        zout.putNextEntry(new ZipEntry(PROPERTY_FILE));
-        xstream.toXML(getPropertyMap(), zout);
-        zout.closeEntry();
+        ByteArrayOutputStream properties = new ByteArrayOutputStream();
+        xstream.toXML(getPropertyMap(), properties);
+        byte[] data = properties.toByteArray();
+        saveEntry(zout, PROPERTY_FILE, null, () -> new ByteArrayInputStream(data));
       }
       saveTimer.stop(PROPERTY_FILE);
 
@@ -325,7 +415,7 @@ public void save() throws IOException {
       // Copy the rest of the zip entries over
       saveTimer.start("copyFiles");
       if (file.exists()) {
-        Enumeration<? extends ZipEntry> entries = zFile.entries();
+        Enumeration<? extends ZipEntry> entries = getZipFile().entries();
         while (entries.hasMoreElements()) {
           ZipEntry entry = entries.nextElement();
           if (!entry.isDirectory()
@@ -333,36 +423,23 @@ public void save() throws IOException {
               && !removedFileSet.contains(entry.getName())
               && !CONTENT_FILE.equals(entry.getName())
               && !PROPERTY_FILE.equals(entry.getName())) {
-            // if (entry.getName().endsWith(".png") ||
-            // entry.getName().endsWith(".gif") ||
-            // entry.getName().endsWith(".jpeg"))
-            // zout.setLevel(Deflater.NO_COMPRESSION); // none needed for images as they are already
-            // compressed
-            // else
-            // zout.setLevel(Deflater.BEST_COMPRESSION); // fast compression
-            zout.putNextEntry(entry);
-            try (InputStream is = getFileAsInputStream(entry.getName())) {
-              // When copying, always use an InputStream
-              IOUtils.copy(is, zout);
-            }
-            zout.closeEntry();
+            saveEntry(zout, entry.getName(), entry, () -> getFileAsInputStream(entry.getName()));
           } else if (entry.isDirectory()) {
-            zout.putNextEntry(entry);
-            zout.closeEntry();
+            zout.addDirectory(entry.getName(), entry.getTime());
           }
         }
       }
+      saveTimer.stop("copyFiles");
+
+      // Wait for the entries to be compressed, and write them out
+      saveTimer.start("close");
+      zout.finish();
       try {
         if (zFile != null) zFile.close();
       } catch (IOException e) {
         // ignore close exception
       }
       zFile = null;
-      saveTimer.stop("copyFiles");
-
-      saveTimer.start("close");
-      IOUtils.closeQuietly(zout);
-      zout = null;
       saveTimer.stop("close");
 
       // Backup the original
@@ -399,7 +476,7 @@ public void save() throws IOException {
         // ignore close exception
       }
       if (newFile.exists()) newFile.delete();
-      IOUtils.closeQuietly(zout);
+      zout.close();
       saveTimer.stop("cleanup");
 
       if (log.isDebugEnabled()) log.debug(saveTimer);
@@ -407,13 +484,176 @@ public void save() throws IOException {
     }
   }
 
-  private void saveEntry(ZipOutputStream zout, String path) throws IOException {
-    zout.putNextEntry(new ZipEntry(path));
-    try (InputStream is = getFileAsInputStream(path)) {
-      // When copying, always use an InputStream
-      IOUtils.copy(is, zout);
+  /**
+   * Saves the changes, compressing only the files that changed rather than everything as {@link
+   * #save()} does. The whole file is still written again: the entries that were not changed, and
+   * the added files whose content is the same as the entry they replace, are copied over still
+   * compressed. The file is written next to the existing one and then renamed over it, so the
+   * existing file is left untouched if the save fails. The changed files are all written with one
+   * compression method, which only stores them if the {@link CompressionPolicy} stores all of them.
+   *
+   * <p>If the file does not exist yet, or the zip file system is not available, this is the same
+   * as {@link #save()}.
+   *
+   * @throws IOException If an I/O error occurs
+   */
+  public void update() throws IOException {
+    if (!dirty) {
+      return;
+    }
+    if (!file.exists()) {
+      save();
+      return;
+    }
+
+    CodeTimer saveTimer = new CodeTimer("PackedFile.update");
+    saveTimer.setEnabled(log.isDebugEnabled());
+    try {
+      // Read what is needed from the existing file before it is closed to be rewritten.
+      saveTimer.start("read entries");
+      Map<String, Object> properties = getPropertyMap();
+      ZipFile zipFile = getZipFile();
+      saveTimer.stop("read entries");
+
+      // Find the added files that changed.
+      saveTimer.start("compare");
+      List<String> changedPaths = new ArrayList<>();
+      boolean deflate = false;
+      for (String path : addedFileSet) {
+        if (!isSameContent(zipFile, zipFile.getEntry(path), getExplodedFile(path))) {
+          changedPaths.add(path);
+          deflate |= compressionPolicy.getLevel(path) != Deflater.NO_COMPRESSION;
+        }
+      }
+      zFile.close();
+      zFile = null;
+      saveTimer.stop("compare");
+
+      // The zip file system uses one compression method for all the entries it writes, and every
+      // session rewrites the whole file when it is closed, so the changes are written in a single
+      // session that only deflates if any of the changed files are to be deflated.
+      try (FileSystem zipFs = newZipFileSystem(deflate ? ZipEntry.DEFLATED : ZipEntry.STORED)) {
+        // Remove the children before their directories.
+        saveTimer.start("removeFiles");
+        List<String> removed = new ArrayList<>(removedFileSet);
+        removed.sort(Comparator.comparingInt(String::length).reversed());
+        for (String path : removed) {
+          try {
+            Files.deleteIfExists(zipFs.getPath(path));
+          } catch (DirectoryNotEmptyException dnee) {
+            // The directory still holds files that were added back.
+          }
+        }
+        saveTimer.stop("removeFiles");
+
+        saveTimer.start("addFiles");
+        copyExplodedFiles(zipFs, changedPaths);
+        saveTimer.stop("addFiles");
+
+        saveTimer.start(PROPERTY_FILE);
+        Path propertyPath = zipFs.getPath(PROPERTY_FILE);
+        if (properties == null || properties.isEmpty()) {
+          Files.deleteIfExists(propertyPath);
+        } else {
+          try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(propertyPath))) {
+            xstream.toXML(properties, os);
+          }
+        }
+        saveTimer.stop(PROPERTY_FILE);
+
+        // The entries are written when the file system is closed.
+        saveTimer.start("close");
+      } catch (ProviderNotFoundException pnfe) {
+        log.warn("Zip file system not available, saving the whole file", pnfe);
+        getZipFile(); // save() copies the unchanged entries from it
+        save();
+        return;
+      }
+      saveTimer.stop("close");
+      dirty = false;
+    } finally {
+      if (log.isDebugEnabled()) log.debug(saveTimer);
+    }
+  }
+
+  /**
+   * Returns if a file has the same content as a zip entry, going by their size and MD5 hash. A
+   * CRC match is too weak to skip writing a changed file.
+   *
+   * @param zipFile the zip file the entry is in.
+   * @param entry the zip entry, may be {@code null}.
+   * @param file the file.
+   * @return {@code true} if the content is the same.
+   * @throws IOException If an I/O error occurs
+   */
+  private static boolean isSameContent(ZipFile zipFile, ZipEntry entry, File file)
+      throws IOException {
+    if (entry == null || entry.isDirectory() || entry.getSize() != file.length()) {
+      return false;
+    }
+    MD5Key fileKey;
+    try (InputStream is = new BufferedInputStream(new FileInputStream(file))) {
+      fileKey = new MD5Key(is);
+    }
+    try (InputStream is = zipFile.getInputStream(entry)) {
+      return fileKey.equals(new MD5Key(is));
     }
-    zout.closeEntry();
+  }
+
+  /**
+   * Opens the file as a zip file system, to update its entries.
+   *
+   * @param method the compression method of the entries written, {@link ZipEntry#STORED} or
+   *     {@link ZipEntry#DEFLATED}.
+   * @return the zip file system.
+   * @throws IOException If an I/O error occurs
+   */
+  private FileSystem newZipFileSystem(int method) throws IOException {
+    return FileSystems.newFileSystem(
+        file.toPath(),
+        Map.of(
+            "useTempFile",
+            Boolean.TRUE,
+            "compressionMethod",
+            method == ZipEntry.STORED ? "STORED" : "DEFLATED"));
+  }
+
+  /**
+   * Copies the exploded files of paths into a zip file system.
+   *
+   * @param zipFs the zip file system.
+   * @param paths the paths to copy.
+   * @throws IOException If an I/O error occurs
+   */
+  private void copyExplodedFiles(FileSystem zipFs, List<String> paths) throws IOException {
+    for (String path : paths) {
+      Path target = zipFs.getPath(path);
+      if (target.getParent() != null) {
+        Files.createDirectories(target.getParent());
+      }
+      Files.copy(getExplodedFile(path).toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private void saveEntry(ParallelZipWriter zout, String path) {
+    saveEntry(zout, path, null, () -> getFileAsInputStream(path));
+  }
+
+  /**
+   * Adds an entry to the zip file, compressed as the {@link CompressionPolicy} says.
+   *
+   * @param zout the zip file being written.
+   * @param path the path of the entry.
+   * @param existing the entry in the existing file the data is copied from, or {@code null}.
+   * @param source opens the data of the entry, possibly on another thread.
+   */
+  private void saveEntry(
+      ParallelZipWriter zout,
+      String path,
+      ZipEntry existing,
+      ParallelZipWriter.EntrySource source) {
+    long time = existing != null ? existing.getTime() : System.currentTimeMillis();
+    zout.addEntry(path, time, compressionPolicy.getLevel(path), source);
   }
 
   /**
@@ -426,6 +666,13 @@ public void setContent(Object content) throws IOException {
     putFile(CONTENT_FILE, content);
   }
 
+  /**
+   * Removes the 'content.xml' file from the archive, for files that keep their content elsewhere.
+   */
+  public void removeContent() {
+    removeFile(CONTENT_FILE);
+  }
+
   /**
    * Does the work of preparing for output to a temporary file, returning the {@link File} object
    * associated with the temporary location. The caller is then expected to open and write their
@@ -534,7 +781,14 @@ public boolean hasFile(String path) throws IOException {
 
   private ZipFile zFile = null;
 
-  private ZipFile getZipFile() throws IOException {
+  /**
+   * Returns the zip file being read, opening it if needed. The entries of a {@link ZipFile} can be
+   * read by several threads at once, so this is synchronized to only ever open it once.
+   *
+   * @return the zip file.
+   * @throws IOException if the file could not be opened.
+   */
+  private synchronized ZipFile getZipFile() throws IOException {
     if (zFile == null) zFile = new ZipFile(file);
     return zFile;
   }
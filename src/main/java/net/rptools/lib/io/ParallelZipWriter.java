@@ -0,0 +1,278 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.lib.io;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.FileBasedScatterGatherBackingStore;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Writes a zip file, compressing its entries on several threads at once.
+ *
+ * <p>Each entry to deflate is compressed as soon as it is added, into a temporary file of the thread
+ * that compresses it. Entries to store are not compressed, so they are copied straight into the zip
+ * file when the writer is finished, while the other entries are still being compressed. The
+ * compressed entries are then copied in, grouped by compression level, followed by the central
+ * directory. Entries are not written in the order they were added.
+ */
+public class ParallelZipWriter implements Closeable {
+
+  /**
+   * Opens the data of an entry, on the thread that compresses it or, for an entry to store, on the
+   * thread that finishes the writer.
+   */
+  @FunctionalInterface
+  public interface EntrySource {
+    InputStream open() throws IOException;
+  }
+
+  /** The threads the entries of all the writers are compressed on, one per core. */
+  private static final ExecutorService compressionThreadPool =
+      Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactoryBuilder().setNameFormat("zip-compressor-%d").setDaemon(true).build());
+
+  private final File file;
+  private final File tmpDir;
+  private final WriterExecutor executor = new WriterExecutor();
+
+  /** The entries to compress, by compression level. */
+  private final Map<Integer, ParallelScatterZipCreator> creators = new LinkedHashMap<>();
+
+  /** An entry to store, which is written as it is without being compressed. */
+  private record StoredEntry(ZipArchiveEntry entry, EntrySource source) {}
+
+  private final List<StoredEntry> storedEntries = new ArrayList<>();
+
+  private final List<ZipArchiveEntry> directories = new ArrayList<>();
+
+  /**
+   * Creates a writer that compresses the entries on the threads shared by all the writers.
+   *
+   * @param file the zip file to write.
+   * @param tmpParent the directory to create the directory the entries are compressed into in.
+   * @throws IOException if the directory could not be created.
+   */
+  public ParallelZipWriter(File file, File tmpParent) throws IOException {
+    this.file = file;
+    tmpParent.mkdirs();
+    this.tmpDir = Files.createTempDirectory(tmpParent.toPath(), "zip").toFile();
+  }
+
+  /**
+   * Adds an entry. An entry to deflate starts being compressed straight away, an entry to store is
+   * written when the writer is finished.
+   *
+   * @param path the path of the entry.
+   * @param time the modification time of the entry.
+   * @param level the compression level, {@link Deflater#NO_COMPRESSION} to store the entry.
+   * @param source opens the data of the entry.
+   */
+  public void addEntry(String path, long time, int level, EntrySource source) {
+    ZipArchiveEntry entry = new ZipArchiveEntry(path);
+    entry.setTime(time);
+    if (level == Deflater.NO_COMPRESSION) {
+      entry.setMethod(ZipEntry.STORED);
+      storedEntries.add(new StoredEntry(entry, source));
+      return;
+    }
+    entry.setMethod(ZipEntry.DEFLATED);
+    getCreator(level)
+        .addArchiveEntry(
+            entry,
+            () -> {
+              try {
+                return source.open();
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+  }
+
+  /**
+   * Adds a directory entry.
+   *
+   * @param path the path of the directory, ending with a '/'.
+   * @param time the modification time of the directory.
+   */
+  public void addDirectory(String path, long time) {
+    ZipArchiveEntry entry = new ZipArchiveEntry(path);
+    entry.setTime(time);
+    directories.add(entry);
+  }
+
+  /**
+   * Returns the entries to compress at a compression level, which share the threads of all the writers.
+   *
+   * @param level the compression level.
+   * @return the entries to compress.
+   */
+  private ParallelScatterZipCreator getCreator(int level) {
+    return creators.computeIfAbsent(
+        level,
+        l ->
+            new ParallelScatterZipCreator(
+                executor,
+                () ->
+                    new FileBasedScatterGatherBackingStore(
+                        File.createTempFile("parallelscatter", null, tmpDir)),
+                l));
+  }
+
+  /**
+   * Waits for all the entries to be compressed and writes the zip file.
+   *
+   * @throws IOException if an entry could not be read, or the zip file could not be written.
+   */
+  public void finish() throws IOException {
+    try (ZipArchiveOutputStream zout = new ZipArchiveOutputStream(file)) {
+      for (ZipArchiveEntry directory : directories) {
+        zout.putArchiveEntry(directory);
+        zout.closeArchiveEntry();
+      }
+      // The zip file can be seeked, so the size and CRC of stored entries are filled in after
+      // their data has been written.
+      for (StoredEntry stored : storedEntries) {
+        zout.putArchiveEntry(stored.entry());
+        try (InputStream is = stored.source().open()) {
+          IOUtils.copy(is, zout);
+        }
+        zout.closeArchiveEntry();
+      }
+      for (ParallelScatterZipCreator creator : creators.values()) {
+        creator.writeTo(zout);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing " + file);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof UncheckedIOException uioe) {
+        throw uioe.getCause();
+      } else if (cause instanceof IOException ioe) {
+        throw ioe;
+      }
+      throw new IOException("Could not write " + file, cause);
+    } finally {
+      close();
+    }
+  }
+
+  /** Stops compressing the entries, if the writer was not finished, and removes its files. */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+    FileUtils.deleteQuietly(tmpDir);
+  }
+
+  /**
+   * The entries of one writer on the shared threads. {@link ParallelScatterZipCreator} shuts down
+   * the executor it is given once its entries are written, so each writer has one of its own whose
+   * shut down only stops the tasks of that writer.
+   */
+  private static final class WriterExecutor extends AbstractExecutorService {
+    /** The tasks that have been submitted and have not finished. Guarded by {@code this}. */
+    private final Set<Runnable> tasks = new HashSet<>();
+
+    /** Guarded by {@code this}. */
+    private boolean shutdown;
+
+    @Override
+    public synchronized void execute(Runnable command) {
+      if (shutdown) {
+        throw new RejectedExecutionException("The zip file writer has been closed");
+      }
+      tasks.add(command);
+      compressionThreadPool.execute(
+          () -> {
+            try {
+              command.run();
+            } finally {
+              synchronized (this) {
+                tasks.remove(command);
+                notifyAll();
+              }
+            }
+          });
+    }
+
+    @Override
+    public synchronized void shutdown() {
+      shutdown = true;
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+      shutdown = true;
+      // The tasks are the futures of the compressions, which stop when cancelled.
+      for (Runnable task : tasks) {
+        if (task instanceof Future<?> future) {
+          future.cancel(true);
+        }
+      }
+      return List.of();
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+      return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+      return shutdown && tasks.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (!isTerminated()) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          return false;
+        }
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+      }
+      return true;
+    }
+  }
+}
@@ -2622,7 +2622,12 @@ protected PersistedCampaign doInBackground() throws Exception {
           MapTool.getBackupManager().backup(campaignFile);
         }
         // Load
-        return PersistenceUtil.loadCampaign(campaignFile);
+        PersistedCampaign campaign = PersistenceUtil.loadCampaign(campaignFile);
+        // Recover the changes made after the autosave from its journal
+        if (campaign != null && campaignFile.equals(AutoSaveManager.AUTOSAVE_FILE)) {
+          MapTool.getAutoSaveManager().getJournal().replay(campaign.campaign);
+        }
+        return campaign;
       } finally {
         AppState.releaseBackgroundTaskLock();
       }
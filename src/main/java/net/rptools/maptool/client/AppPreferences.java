@@ -47,6 +47,18 @@ public class AppPreferences {
   private static final String KEY_SAVE_REMINDER = "autoSaveReminder";
   private static final boolean DEFAULT_SAVE_REMINDER = true;
 
+  private static final String KEY_INCREMENTAL_CAMPAIGN_SAVE = "incrementalCampaignSave";
+  private static final boolean DEFAULT_INCREMENTAL_CAMPAIGN_SAVE = true;
+
+  private static final String KEY_STREAMED_CAMPAIGN_CONTENT = "streamedCampaignContent";
+  private static final boolean DEFAULT_STREAMED_CAMPAIGN_CONTENT = false;
+
+  private static final String KEY_DEFERRED_CAMPAIGN_ASSET_LOADING = "deferredCampaignAssetLoading";
+  private static final boolean DEFAULT_DEFERRED_CAMPAIGN_ASSET_LOADING = true;
+
+  private static final String KEY_ASSET_CACHE_SIZE_LIMIT = "assetCacheSizeLimit";
+  private static final int DEFAULT_ASSET_CACHE_SIZE_LIMIT = 0;
+
   private static final String KEY_TOKEN_NUMBER_DISPLAY = "tokenNumberDisplayg";
   private static final String DEFAULT_TOKEN_NUMBER_DISPLAY = Token.NUM_ON_NAME;
 
@@ -220,6 +232,63 @@ public static boolean getSaveReminder() {
     return prefs.getBoolean(KEY_SAVE_REMINDER, DEFAULT_SAVE_REMINDER);
   }
 
+  public static void setIncrementalCampaignSave(boolean incremental) {
+    prefs.putBoolean(KEY_INCREMENTAL_CAMPAIGN_SAVE, incremental);
+  }
+
+  /**
+   * Returns if saving a campaign over its existing file only rewrites the parts of the file that
+   * changed, instead of writing the whole file again.
+   *
+   * @return {@code true} if campaigns are saved incrementally.
+   */
+  public static boolean getIncrementalCampaignSave() {
+    return prefs.getBoolean(KEY_INCREMENTAL_CAMPAIGN_SAVE, DEFAULT_INCREMENTAL_CAMPAIGN_SAVE);
+  }
+
+  public static void setStreamedCampaignContent(boolean streamed) {
+    prefs.putBoolean(KEY_STREAMED_CAMPAIGN_CONTENT, streamed);
+  }
+
+  /**
+   * Returns if campaigns are saved as a stream of protobuf records instead of as XML. Campaigns
+   * saved this way can not be opened by versions of MapTool that do not support the format.
+   *
+   * @return {@code true} if campaigns are saved as protobuf records.
+   */
+  public static boolean getStreamedCampaignContent() {
+    return prefs.getBoolean(KEY_STREAMED_CAMPAIGN_CONTENT, DEFAULT_STREAMED_CAMPAIGN_CONTENT);
+  }
+
+  public static void setDeferredCampaignAssetLoading(boolean deferred) {
+    prefs.putBoolean(KEY_DEFERRED_CAMPAIGN_ASSET_LOADING, deferred);
+  }
+
+  /**
+   * Returns if only the assets of the current map are read when a campaign is loaded, with the
+   * assets of the other maps read in the background or when they are first needed.
+   *
+   * @return {@code true} if the assets of the other maps are read after the campaign is loaded.
+   */
+  public static boolean getDeferredCampaignAssetLoading() {
+    return prefs.getBoolean(
+        KEY_DEFERRED_CAMPAIGN_ASSET_LOADING, DEFAULT_DEFERRED_CAMPAIGN_ASSET_LOADING);
+  }
+
+  public static void setAssetCacheSizeLimit(int megabytes) {
+    prefs.putInt(KEY_ASSET_CACHE_SIZE_LIMIT, megabytes);
+  }
+
+  /**
+   * Returns the size the asset cache is kept under, by removing the assets that were used least
+   * recently.
+   *
+   * @return the size in megabytes, or 0 if the size of the cache is not limited.
+   */
+  public static int getAssetCacheSizeLimit() {
+    return prefs.getInt(KEY_ASSET_CACHE_SIZE_LIMIT, DEFAULT_ASSET_CACHE_SIZE_LIMIT);
+  }
+
   // public static void setEnabledMapExportImport(boolean reminder) {
   // prefs.putBoolean(KEY_ENABLE_MAP_EXPORT_IMPORT, reminder);
   // AppActions.updateActions();
@@ -15,9 +15,14 @@
 package net.rptools.maptool.client;
 
 import java.io.File;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import javax.swing.*;
 import net.rptools.maptool.language.I18N;
 import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.server.CampaignJournal;
+import net.rptools.maptool.server.MapToolServer;
 import net.rptools.maptool.util.PersistenceUtil;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -33,11 +38,35 @@ public class AutoSaveManager {
   private Timer autoSaveTimer;
   private long lastAutoSave = -1;
 
+  /** The journal of the changes made since the last autosave. */
+  private final CampaignJournal journal = new CampaignJournal(AUTOSAVE_FILE);
+
+  /**
+   * A copy of a zone made for an autosave.
+   *
+   * @param copy the copy of the zone.
+   * @param version the version of the zone when it was copied.
+   */
+  private record ZoneCopy(Zone copy, long version) {}
+
+  /** The copies of the zones made for the last autosave, by the zone they were copied from. */
+  private Map<Zone, ZoneCopy> zoneCopies = new IdentityHashMap<>();
+
   public static final File AUTOSAVE_FILE =
       new File(
           AppUtil.getAppHome("autosave"), // $NON-NLS-1$
           "AutoSave" + AppConstants.CAMPAIGN_FILE_EXTENSION);
 
+  /**
+   * Returns the journal of the changes made to the campaign since the last autosave, which are
+   * replayed when the autosave is recovered.
+   *
+   * @return the journal.
+   */
+  public CampaignJournal getJournal() {
+    return journal;
+  }
+
   /**
    * Queries the auto-save increment from {@link AppPreferences} and starts a new timer.
    *
@@ -99,16 +128,57 @@ private boolean executeAndContinue() {
     //
     // NOTE: This is a cheesy way to clone the campaign, but it makes it so that I
     // don't have to keep all the various models' clone methods updated on each change.
-    final Campaign campaign = new Campaign(MapTool.getCampaign());
+    //
+    // Only the zones that changed since the last autosave are copied again, the copies of the
+    // others are only ever read, so they are shared with the last autosave.
+    //
+    // The campaign of the server is copied, as it is the one the journal records the changes to,
+    // and it is copied while the server can't change it, so that the changes recorded after are
+    // exactly the ones the copy is missing.
+    MapToolServer server = MapTool.getServer();
+    Map<Zone, ZoneCopy> copies = new IdentityHashMap<>();
+    final Campaign campaign =
+        journal.startCheckpoint(
+            () -> !server.getMethodHandler().hasUnrecordedLocalChanges(),
+            () -> new Campaign(server.getCampaign(), z -> copyZone(z, copies)));
+    if (campaign == null) {
+      log.info("Delaying autosave until the server has recorded the changes sent to it");
+      return true;
+    }
+    int copied = (int) copies.values().stream().filter(c -> !zoneCopies.containsValue(c)).count();
+    zoneCopies = copies;
     log.info(
         "Time to copy Campaign object (ms): "
-            + (System.currentTimeMillis() - startCopy)); // $NON-NLS-1$
+            + (System.currentTimeMillis() - startCopy)
+            + ", zones copied: "
+            + copied
+            + "/"
+            + copies.size()); // $NON-NLS-1$
 
     new SaveWorker(campaign).execute();
 
     return false;
   }
 
+  /**
+   * Returns the copy of a zone for an autosave, reusing the copy made for the last autosave if the
+   * zone has not changed since.
+   *
+   * @param zone the zone to copy.
+   * @param copies the copies made for this autosave, which the copy is added to.
+   * @return the copy of the zone.
+   */
+  private Zone copyZone(Zone zone, Map<Zone, ZoneCopy> copies) {
+    ZoneCopy copy = zoneCopies.get(zone);
+    if (copy == null || copy.version() != zone.getVersion()) {
+      // Read the version first, so that a change made while copying is copied next time.
+      long version = zone.getVersion();
+      copy = new ZoneCopy(new Zone(zone, true), version);
+    }
+    copies.put(zone, copy);
+    return copy.copy();
+  }
+
   private class SaveWorker extends SwingWorker<String, String> {
 
     private Campaign campaign;
@@ -142,6 +212,7 @@ protected void done() {
 
       try {
         MapTool.getFrame().setStatusMessage(get());
+        journal.completeCheckpoint();
       } catch (Throwable t) {
         log.debug("Throwable during autosave: " + t.getCause());
         if (t.getCause() instanceof AppState.FailedToAcquireLockException)
@@ -158,6 +229,7 @@ public void purge() {
     if (AUTOSAVE_FILE.exists()) {
       AUTOSAVE_FILE.delete();
     }
+    journal.reset();
   }
 
   /** Removes the campaignFile if it's from Autosave, forcing to save as new */
@@ -18,7 +18,10 @@
 import java.awt.Point;
 import java.awt.geom.Area;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 import javax.swing.SwingUtilities;
@@ -138,6 +141,7 @@ public void handleMessage(String id, byte[] message) {
         case REMOVE_DATA_NAMESPACE_MSG -> handle(msg.getRemoveDataNamespaceMsg());
         case REMOVE_DATA_MSG -> handle(msg.getRemoveDataMsg());
         case UPDATE_TOKEN_PROPERTY_MSG -> handle(msg.getUpdateTokenPropertyMsg());
+        case UPDATE_TOKENS_MSG -> handle(msg.getUpdateTokensMsg());
         case UPDATE_DRAWING_MSG -> handle(msg.getUpdateDrawingMsg());
         case UNDO_DRAW_MSG -> handle(msg.getUndoDrawMsg());
         case SET_ZONE_VISIBILITY_MSG -> handle(msg.getSetZoneVisibilityMsg());
@@ -380,16 +384,48 @@ private void handle(UpdateDrawingMsg msg) {
   }
 
   private void handle(UpdateTokenPropertyMsg msg) {
+    EventQueue.invokeLater(() -> updateTokenProperty(msg));
+  }
+
+  private void updateTokenProperty(UpdateTokenPropertyMsg msg) {
+    var zoneGUID = GUID.valueOf(msg.getZoneGuid());
+    var zone = MapTool.getCampaign().getZone(zoneGUID);
+    var tokenGUID = GUID.valueOf(msg.getTokenGuid());
+    var token = zone.getToken(tokenGUID);
+    if (token != null) {
+      Token.Update update = Token.Update.valueOf(msg.getProperty().name());
+      token.updateProperty(zone, update, msg.getValuesList());
+    }
+  }
+
+  private void handle(UpdateTokensMsg msg) {
     EventQueue.invokeLater(
         () -> {
-          var zoneGUID = GUID.valueOf(msg.getZoneGuid());
-          var zone = MapTool.getCampaign().getZone(zoneGUID);
-          var tokenGUID = GUID.valueOf(msg.getTokenGuid());
-          var token = zone.getToken(tokenGUID);
-          if (token != null) {
-            Token.Update update = Token.Update.valueOf(msg.getProperty().name());
-            token.updateProperty(zone, update, msg.getValuesList());
+          // Apply all the updates before telling the listeners about the changed tokens.
+          Set<Zone> zones = Collections.newSetFromMap(new IdentityHashMap<>());
+          try {
+            for (TokenUpdateMsg update : msg.getUpdatesList()) {
+              String zoneGuid =
+                  update.hasPutTokenMsg()
+                      ? update.getPutTokenMsg().getZoneGuid()
+                      : update.getUpdateTokenPropertyMsg().getZoneGuid();
+              var zone = MapTool.getCampaign().getZone(GUID.valueOf(zoneGuid));
+              if (zone == null) {
+                continue;
+              }
+              if (zones.add(zone)) {
+                zone.beginTokenEventBatch();
+              }
+              if (update.hasPutTokenMsg()) {
+                zone.putToken(Token.fromDto(update.getPutTokenMsg().getToken()));
+              } else {
+                updateTokenProperty(update.getUpdateTokenPropertyMsg());
+              }
+            }
+          } finally {
+            zones.forEach(Zone::endTokenEventBatch);
           }
+          MapTool.getFrame().refresh();
         });
   }
 
@@ -0,0 +1,277 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import net.rptools.parser.function.Function;
+import net.rptools.parser.function.ParameterException;
+
+/**
+ * Opt-in profiler for MTScript, recording the number of calls and the time spent in each macro
+ * and function.
+ *
+ * <p>Macros are recorded as {@code name@location} and functions by the name they were called with,
+ * which covers the built-in functions as well as user-defined and JavaScript functions. For each
+ * of them the inclusive time, the time from entering until leaving it, and the exclusive time, the
+ * inclusive time less the time spent in the macros and functions it called, are recorded. The
+ * inclusive time of recursive calls is only counted for the outermost call.
+ *
+ * <p>Profiling has no cost while it is not enabled: nothing is recorded and the functions are not
+ * wrapped.
+ */
+public class MacroProfiler {
+
+  /** The kind of the things that are profiled. */
+  public enum Category {
+    /** Macros, named {@code name@location}. */
+    MACRO,
+    /** Built-in, user-defined and JavaScript functions. */
+    FUNCTION
+  }
+
+  /**
+   * The recorded timings of a macro or function.
+   *
+   * @param name the name of the macro or function.
+   * @param calls the number of calls.
+   * @param inclusiveNanos the total time spent in the macro or function, including the macros and
+   *     functions it called, in nanoseconds.
+   * @param exclusiveNanos the total time spent in the macro or function itself, in nanoseconds.
+   */
+  public record Timing(String name, long calls, long inclusiveNanos, long exclusiveNanos) {}
+
+  /** A call that is being profiled. */
+  public static final class Frame {
+    private final Category category;
+    private final String name;
+    private final long start;
+    private final boolean outermost;
+    private long childNanos;
+
+    private Frame(Category category, String name, boolean outermost) {
+      this.category = category;
+      this.name = name;
+      this.outermost = outermost;
+      this.start = System.nanoTime();
+    }
+  }
+
+  /** The accumulated timings of a macro or function. */
+  private static final class Stats {
+    private long calls;
+    private long inclusiveNanos;
+    private long exclusiveNanos;
+  }
+
+  /** The singleton instance. */
+  private static final MacroProfiler instance = new MacroProfiler();
+
+  /** The calls being profiled on each thread, innermost first. */
+  private final ThreadLocal<Deque<Frame>> frames = ThreadLocal.withInitial(ArrayDeque::new);
+
+  /** The accumulated timings, by category and name. */
+  private final Map<Category, Map<String, Stats>> stats = new EnumMap<>(Category.class);
+
+  /** Is profiling enabled. */
+  private volatile boolean enabled;
+
+  /**
+   * Returns the profiler.
+   *
+   * @return the profiler.
+   */
+  public static MacroProfiler getInstance() {
+    return instance;
+  }
+
+  private MacroProfiler() {
+    for (Category category : Category.values()) {
+      stats.put(category, new HashMap<>());
+    }
+  }
+
+  /**
+   * Returns if profiling is enabled.
+   *
+   * @return {@code true} if calls are being recorded.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Starts recording calls.
+   *
+   * @param reset if {@code true} the timings recorded so far are discarded, otherwise they are kept
+   *     and added to.
+   */
+  public synchronized void start(boolean reset) {
+    if (reset) {
+      reset();
+    }
+    enabled = true;
+  }
+
+  /** Stops recording calls. The calls that are still running are recorded when they end. */
+  public void stop() {
+    enabled = false;
+  }
+
+  /** Discards the timings recorded so far. */
+  public synchronized void reset() {
+    stats.values().forEach(Map::clear);
+  }
+
+  /**
+   * Records the start of a call.
+   *
+   * @param category the category of the macro or function called.
+   * @param name the name of the macro or function called.
+   * @return the frame to pass to {@link #exit(Frame)} at the end of the call, or {@code null} if
+   *     profiling is not enabled.
+   */
+  public Frame enter(Category category, String name) {
+    if (!enabled) {
+      return null;
+    }
+    Deque<Frame> stack = frames.get();
+    boolean outermost = true;
+    for (Frame frame : stack) {
+      if (frame.category == category && frame.name.equals(name)) {
+        outermost = false;
+        break;
+      }
+    }
+    Frame frame = new Frame(category, name, outermost);
+    stack.push(frame);
+    return frame;
+  }
+
+  /**
+   * Records the end of a call.
+   *
+   * @param frame the frame returned by {@link #enter(Category, String)}, may be {@code null}.
+   */
+  public void exit(Frame frame) {
+    if (frame == null) {
+      return;
+    }
+    long elapsed = System.nanoTime() - frame.start;
+    Deque<Frame> stack = frames.get();
+    // Drop any frames that were not exited, so that the stack can not get out of step.
+    while (!stack.isEmpty() && stack.pop() != frame) {
+      // Keep popping.
+    }
+    Frame parent = stack.peek();
+    if (parent != null) {
+      parent.childNanos += elapsed;
+    }
+    synchronized (this) {
+      Stats s = stats.get(frame.category).computeIfAbsent(frame.name, k -> new Stats());
+      s.calls++;
+      if (frame.outermost) {
+        s.inclusiveNanos += elapsed;
+      }
+      s.exclusiveNanos += Math.max(0, elapsed - frame.childNanos);
+    }
+  }
+
+  /**
+   * Returns the timings recorded for a category, with the most expensive, by exclusive time, first.
+   *
+   * @param category the category to return the timings of.
+   * @return the timings.
+   */
+  public synchronized List<Timing> getTimings(Category category) {
+    List<Timing> timings = new ArrayList<>();
+    stats
+        .get(category)
+        .forEach(
+            (name, s) ->
+                timings.add(new Timing(name, s.calls, s.inclusiveNanos, s.exclusiveNanos)));
+    timings.sort(Comparator.comparingLong(Timing::exclusiveNanos).reversed());
+    return timings;
+  }
+
+  /**
+   * Returns a function that records its calls, if profiling is enabled.
+   *
+   * @param function the function to profile.
+   * @return the function that records its calls, or {@code function} if profiling is not enabled.
+   */
+  public Function profile(Function function) {
+    if (!enabled || function == null || function instanceof ProfiledFunction) {
+      return function;
+    }
+    return new ProfiledFunction(function);
+  }
+
+  /** A function that records the calls to the function it wraps. */
+  private static final class ProfiledFunction implements Function {
+    private final Function function;
+
+    private ProfiledFunction(Function function) {
+      this.function = function;
+    }
+
+    @Override
+    public Object evaluate(
+        Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
+        throws ParserException {
+      Frame frame = instance.enter(Category.FUNCTION, functionName);
+      try {
+        return function.evaluate(parser, resolver, functionName, parameters);
+      } finally {
+        instance.exit(frame);
+      }
+    }
+
+    @Override
+    public void checkParameters(String functionName, List<Object> parameters)
+        throws ParameterException {
+      function.checkParameters(functionName, parameters);
+    }
+
+    @Override
+    public String[] getAliases() {
+      return function.getAliases();
+    }
+
+    @Override
+    public int getMinimumParameterCount() {
+      return function.getMinimumParameterCount();
+    }
+
+    @Override
+    public int getMaximumParameterCount() {
+      return function.getMaximumParameterCount();
+    }
+
+    @Override
+    public boolean isDeterministic() {
+      return function.isDeterministic();
+    }
+  }
+}
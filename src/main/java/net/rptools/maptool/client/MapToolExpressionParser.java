@@ -109,7 +109,9 @@ public class MapToolExpressionParser extends ExpressionParser {
               new PlayerFunctions(),
               new LibraryFunctions(),
               new DataFunctions(),
-              new ServerFunctions())
+              new ServerFunctions(),
+              new ProfilerFunctions(),
+              new TokenBatchFunctions())
           .collect(Collectors.toList());
 
   public MapToolExpressionParser() {
@@ -149,13 +151,24 @@ public Expression parseExpression(String expression) throws ParserException {
 
     /**
      * Functions are only passed to the parser once, on initial create User defined functions are
-     * injected here if defined in UserDefinedMacroFunctions
+     * injected here if defined in UserDefinedMacroFunctions. While the {@link MacroProfiler} is
+     * enabled the function is wrapped so that its calls are recorded.
      *
      * @param functionName the name of the function
      * @return Either user defined function or function known to parser
      */
     @Override
     public Function getFunction(String functionName) {
+      return MacroProfiler.getInstance().profile(findFunction(functionName));
+    }
+
+    /**
+     * Finds the function, checking the JavaScript and user defined functions first.
+     *
+     * @param functionName the name of the function
+     * @return Either user defined function or function known to parser
+     */
+    private Function findFunction(String functionName) {
       // check javascript UDFs first.
       if (functionName.startsWith("js.") || functionName.startsWith("ujs.")) {
         if (JSMacro.isFunctionDefined(functionName)) {
@@ -28,12 +28,12 @@
 import net.rptools.maptool.client.ui.htmlframe.HTMLFrameFactory;
 import net.rptools.maptool.client.ui.htmlframe.HTMLFrameFactory.FrameType;
 import net.rptools.maptool.client.ui.macrobuttons.buttons.MacroButtonPrefs;
-import net.rptools.maptool.client.ui.zone.ZoneRenderer;
 import net.rptools.maptool.language.I18N;
 import net.rptools.maptool.model.MacroButtonProperties;
 import net.rptools.maptool.model.Token;
 import net.rptools.maptool.model.Zone;
 import net.rptools.maptool.model.library.LibraryManager;
+import net.rptools.maptool.model.library.token.LibraryTokenIndex;
 import net.rptools.parser.ParserException;
 import net.rptools.parser.function.Function;
 import org.apache.commons.lang.StringUtils;
@@ -245,7 +245,14 @@ public String parseLine(
       return "";
     }
     Stack<Token> contextTokenStack = new Stack<Token>();
+    boolean newContext = context != null || contextStackEmpty();
     context = enterContext(context);
+    MacroProfiler.Frame profilerFrame =
+        newContext
+            ? MacroProfiler.getInstance()
+                .enter(
+                    MacroProfiler.Category.MACRO, context.getName() + "@" + context.getSource())
+            : null;
     MapToolVariableResolver resolver = null;
     boolean resolverInitialized = false;
     String opts = null;
@@ -988,10 +995,15 @@ public String parseLine(
       throw doError(
           "lineParser.errorBodyRoll", opts == null ? "" : opts, roll == null ? line : roll);
     } finally {
+      MacroProfiler.getInstance().exit(profilerFrame);
       exitContext();
       if (resolverInitialized) {
         // This is the top level call, time to clean up
         resolver.flush();
+        // Send any token updates the macro batched but did not send.
+        if (MapTool.serverCommand() != null) {
+          MapTool.serverCommand().endAllTokenUpdateBatches();
+        }
       }
       if (MapTool.getFrame() != null) {
         // Repaint in case macros changed anything.
@@ -1165,26 +1177,14 @@ public String runMacro(
       }
       macroContext = new MapToolMacroContext(macroName, "token", trusted);
     } else if (macroLocation.equalsIgnoreCase("CAMPAIGN")) {
-      MacroButtonProperties mbp = null;
-      for (MacroButtonProperties m : MapTool.getCampaign().getMacroButtonPropertiesArray()) {
-        if (m.getLabel().equals(macroName)) {
-          mbp = m;
-          break;
-        }
-      }
+      MacroButtonProperties mbp = MapTool.getCampaign().getMacroButtonProperties(macroName);
       if (mbp == null) {
         throw new ParserException(I18N.getText("lineParser.unknownCampaignMacro", macroName));
       }
       macroBody = mbp.getCommand();
       macroContext = new MapToolMacroContext(macroName, "campaign", !mbp.getAllowPlayerEdits());
     } else if (macroLocation.equalsIgnoreCase("Gm")) {
-      MacroButtonProperties mbp = null;
-      for (MacroButtonProperties m : MapTool.getCampaign().getGmMacroButtonPropertiesArray()) {
-        if (m.getLabel().equals(macroName)) {
-          mbp = m;
-          break;
-        }
-      }
+      MacroButtonProperties mbp = MapTool.getCampaign().getGmMacroButtonProperties(macroName);
       if (mbp == null) {
         throw new ParserException(I18N.getText("lineParser.unknownCampaignMacro", macroName));
       }
@@ -1193,13 +1193,7 @@ public String runMacro(
       macroContext = new MapToolMacroContext(macroName, "Gm", true);
     } else if (macroLocation.equalsIgnoreCase("GLOBAL")) {
       macroContext = new MapToolMacroContext(macroName, "global", MapTool.getPlayer().isGM());
-      MacroButtonProperties mbp = null;
-      for (MacroButtonProperties m : MacroButtonPrefs.getButtonProperties()) {
-        if (m.getLabel().equals(macroName)) {
-          mbp = m;
-          break;
-        }
-      }
+      MacroButtonProperties mbp = MacroButtonPrefs.getButtonProperties(macroName);
       if (mbp == null) {
         throw new ParserException(I18N.getText("lineParser.unknownGlobalMacro", macroName));
       }
@@ -1345,7 +1339,7 @@ String runMacroBlock(
   }
 
   /**
-   * Searches all maps for a token and returns the the requested lib: macro.
+   * Finds a lib: token in the library token index and returns the the requested lib: macro.
    *
    * @param location the location of the library macro.
    * @return The token which holds the library.
@@ -1353,40 +1347,12 @@ String runMacroBlock(
    *     the caller doesn't have access to the token.
    */
   public Token getTokenMacroLib(String location) throws ParserException {
-    if (location == null) {
-      return null;
-    }
-    if (!location.matches("(?i)^lib:.*")) {
-      throw new ParserException(I18N.getText("lineParser.notALibToken"));
-    }
-    final String libTokenName = location;
-    Token libToken = null;
-    if (libTokenName.length() > 0) {
-      List<ZoneRenderer> zrenderers = MapTool.getFrame().getZoneRenderers();
-      for (ZoneRenderer zr : zrenderers) {
-        List<Token> tokenList =
-            zr.getZone().getTokensFiltered(t -> t.getName().equalsIgnoreCase(libTokenName));
-
-        for (Token token : tokenList) {
-          // If we are not the GM and the token is not visible to players then we don't
-          // let them get functions from it.
-          if (!MapTool.getPlayer().isGM() && !token.isVisible()) {
-            throw new ParserException(I18N.getText("lineParser.libUnableToExec", libTokenName));
-          }
-          if (libToken != null) {
-            throw new ParserException(I18N.getText("lineParser.duplicateLibTokens", libTokenName));
-          }
-
-          libToken = token;
-        }
-      }
-      return libToken;
-    }
-    return null;
+    LibraryTokenIndex.Location libLocation = getTokenMacroLibLocation(location);
+    return libLocation == null ? null : libLocation.token();
   }
 
   /**
-   * Searches all maps for a token and returns the zone that the lib: macro is in.
+   * Finds a lib: token in the library token index and returns the zone the lib: macro is in.
    *
    * @param location the location of the library macro.
    * @return The zone which holds the library.
@@ -1394,37 +1360,42 @@ public Token getTokenMacroLib(String location) throws ParserException {
    *     the caller doesn't have access to the token.
    */
   public Zone getTokenMacroLibZone(String location) throws ParserException {
+    LibraryTokenIndex.Location libLocation = getTokenMacroLibLocation(location);
+    return libLocation == null ? null : libLocation.zone();
+  }
+
+  /**
+   * Looks up a lib: token and the zone it is in from the library token index.
+   *
+   * @param location the location of the library macro.
+   * @return The location of the library, or null if there is none.
+   * @throws ParserException if the token name is illegal, the token appears multiple times, or if
+   *     the caller doesn't have access to the token.
+   */
+  private LibraryTokenIndex.Location getTokenMacroLibLocation(String location)
+      throws ParserException {
     if (location == null) {
       return null;
     }
-    if (!location.matches("(?i)^lib:.*")) {
+    if (!location.regionMatches(true, 0, "lib:", 0, 4)) {
       throw new ParserException(I18N.getText("lineParser.notALibToken"));
     }
     final String libTokenName = location;
-    Zone libTokenZone = null;
-    if (libTokenName.length() > 0) {
-      List<ZoneRenderer> zrenderers = MapTool.getFrame().getZoneRenderers();
-      for (ZoneRenderer zr : zrenderers) {
-        List<Token> tokenList =
-            zr.getZone().getTokensFiltered(t -> t.getName().equalsIgnoreCase(libTokenName));
-
-        for (Token token : tokenList) {
-          // If we are not the GM and the token is not visible to players then we don't
-          // let them get functions from it.
-          if (!MapTool.getPlayer().isGM() && !token.isVisible()) {
-            throw new ParserException(I18N.getText("lineParser.libUnableToExec", libTokenName));
-          }
-
-          if (libTokenZone != null) {
-            throw new ParserException(I18N.getText("lineParser.duplicateLibTokens", libTokenName));
-          }
-
-          libTokenZone = zr.getZone();
-        }
+    LibraryTokenIndex.Location libLocation = null;
+    for (LibraryTokenIndex.Location loc :
+        new LibraryManager().getLibraryTokenIndex().getLocations(libTokenName)) {
+      // If we are not the GM and the token is not visible to players then we don't
+      // let them get functions from it.
+      if (!MapTool.getPlayer().isGM() && !loc.token().isVisible()) {
+        throw new ParserException(I18N.getText("lineParser.libUnableToExec", libTokenName));
       }
-      return libTokenZone;
+      if (libLocation != null) {
+        throw new ParserException(I18N.getText("lineParser.duplicateLibTokens", libTokenName));
+      }
+
+      libLocation = loc;
     }
-    return null;
+    return libLocation;
   }
 
   /**
@@ -232,18 +232,11 @@ public Object getVariable(String name, VariableModifiers mods) throws ParserExce
       } else {
         // If the token has no property of that name check to see if there s a defaulted
         // value for the property for the token type.
-        List<TokenProperty> propertyList =
-            MapTool.getCampaign()
-                .getCampaignProperties()
-                .getTokenPropertyList(tokenInContext.getPropertyType());
-        if (propertyList != null) {
-          for (TokenProperty property : propertyList) {
-            if (name.equalsIgnoreCase(property.getName())) {
-              result = property.getDefaultValue();
-              evaluate = true;
-              break;
-            }
-          }
+        TokenProperty property =
+            MapTool.getCampaign().getTokenProperty(tokenInContext.getPropertyType(), name);
+        if (property != null) {
+          result = property.getDefaultValue();
+          evaluate = true;
         }
       }
     } else {
@@ -306,7 +299,10 @@ public Object getVariable(String name, VariableModifiers mods) throws ParserExce
         }
       }
 
-      if (evaluate) {
+      if (evaluate && !Token.containsInlineRollMarkup(result.toString())) {
+        // Without any rolls the parser would only trim the value, so don't invoke it.
+        value = result.toString().trim();
+      } else if (evaluate) {
         // Try parse the value if we can not parse it then just return it as a string.
         try {
           value = MapTool.getParser().parseLine(tokenInContext, result.toString());
@@ -410,13 +406,7 @@ public void setVariable(String varname, VariableModifiers modifiers, Object valu
    * @return <code>true</code> if the property is valid for the token.
    */
   private boolean validTokenProperty(String prop, Token token) {
-    for (TokenProperty tp : MapTool.getCampaign().getTokenPropertyList(token.getPropertyType())) {
-      if (tp.getName().equalsIgnoreCase(prop)) {
-        return true;
-      }
-    }
-
-    return false;
+    return MapTool.getCampaign().getTokenProperty(token.getPropertyType(), prop) != null;
   }
 
   /**
@@ -18,10 +18,16 @@
 import com.google.protobuf.StringValue;
 import java.awt.geom.Area;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import net.rptools.lib.MD5Key;
 import net.rptools.maptool.client.functions.ExecFunction;
@@ -35,6 +41,7 @@
 import net.rptools.maptool.model.gamedata.proto.GameDataDto;
 import net.rptools.maptool.model.gamedata.proto.GameDataValueDto;
 import net.rptools.maptool.model.library.addon.TransferableAddOnLibrary;
+import net.rptools.maptool.server.MapToolServer;
 import net.rptools.maptool.server.Mapper;
 import net.rptools.maptool.server.ServerCommand;
 import net.rptools.maptool.server.ServerMessageHandler;
@@ -52,7 +59,36 @@ public class ServerCommandClientImpl implements ServerCommand {
   private final TimedEventQueue movementUpdateQueue = new TimedEventQueue(100);
   private final LinkedBlockingQueue<MD5Key> assetRetrieveQueue = new LinkedBlockingQueue<MD5Key>();
 
+  /** The token updates being batched on each thread, see {@link #beginTokenUpdateBatch()}. */
+  private final ThreadLocal<TokenUpdateBatch> tokenUpdateBatch = new ThreadLocal<>();
+
+  /** Sends the messages to the server. */
+  private final Consumer<Message> messageSender;
+
   public ServerCommandClientImpl() {
+    this(
+        msg -> {
+          if (MapTool.getConnection() != null) {
+            // A personal server shares the campaign, which already has the change, so it is not
+            // checkpointed until the server has recorded the change.
+            MapToolServer server = MapTool.getServer();
+            if (server != null
+                && server.getConfig().isPersonalServer()
+                && ServerMessageHandler.isJournaled(msg)) {
+              server.getMethodHandler().localChangeSent();
+            }
+            MapTool.getConnection().sendMessage(msg);
+          }
+        });
+  }
+
+  /**
+   * Creates a client that sends its messages with the given sender instead of the connection.
+   *
+   * @param messageSender sends the messages to the server.
+   */
+  ServerCommandClientImpl(Consumer<Message> messageSender) {
+    this.messageSender = messageSender;
     movementUpdateQueue.start();
     // new AssetRetrievalThread().start();
   }
@@ -167,12 +203,49 @@ public void editToken(GUID zoneGUID, Token token) {
   }
 
   public void putToken(GUID zoneGUID, Token token) {
+    TokenUpdateBatch batch = tokenUpdateBatch.get();
+    Zone zone = MapTool.getCampaign().getZone(zoneGUID);
+    if (batch != null) {
+      batch.addZone(zone);
+    }
     // Hack to generate zone event. All functions that update tokens call this method
     // after changing the token. But they don't tell the zone about it so classes
     // waiting for the zone change event don't get it.
-    MapTool.getCampaign().getZone(zoneGUID).putToken(token);
+    zone.putToken(token);
     var msg = PutTokenMsg.newBuilder().setZoneGuid(zoneGUID.toString()).setToken(token.toDto());
-    makeServerCall(Message.newBuilder().setPutTokenMsg(msg).build());
+    if (batch != null) {
+      batch.add(TokenUpdateMsg.newBuilder().setPutTokenMsg(msg).build());
+    } else {
+      makeServerCall(Message.newBuilder().setPutTokenMsg(msg).build());
+    }
+  }
+
+  @Override
+  public void beginTokenUpdateBatch() {
+    TokenUpdateBatch batch = tokenUpdateBatch.get();
+    if (batch == null) {
+      batch = new TokenUpdateBatch();
+      tokenUpdateBatch.set(batch);
+    }
+    batch.depth++;
+  }
+
+  @Override
+  public void endTokenUpdateBatch() {
+    TokenUpdateBatch batch = tokenUpdateBatch.get();
+    if (batch != null && --batch.depth == 0) {
+      tokenUpdateBatch.remove();
+      batch.send();
+    }
+  }
+
+  @Override
+  public void endAllTokenUpdateBatches() {
+    TokenUpdateBatch batch = tokenUpdateBatch.get();
+    if (batch != null) {
+      tokenUpdateBatch.remove();
+      batch.send();
+    }
   }
 
   @Override
@@ -212,7 +285,12 @@ public void updateTokenProperty(
             .setZoneGuid(zoneGUID.toString())
             .setProperty(TokenUpdateDto.valueOf(update.name()))
             .addAllValues(parameters);
-    makeServerCall(Message.newBuilder().setUpdateTokenPropertyMsg(msg).build());
+    TokenUpdateBatch batch = tokenUpdateBatch.get();
+    if (batch != null) {
+      batch.add(TokenUpdateMsg.newBuilder().setUpdateTokenPropertyMsg(msg).build());
+    } else {
+      makeServerCall(Message.newBuilder().setUpdateTokenPropertyMsg(msg).build());
+    }
   }
 
   /**
@@ -229,6 +307,10 @@ public void updateTokenProperty(
     GUID zoneGUID = zone.getId();
 
     var parameterList = Arrays.stream(parameters).toList();
+    TokenUpdateBatch batch = tokenUpdateBatch.get();
+    if (batch != null) {
+      batch.addZone(zone);
+    }
     token.updateProperty(zone, update, parameterList); // update locally right away
     updateTokenProperty(zoneGUID, tokenGUID, update, parameterList);
   }
@@ -513,9 +595,104 @@ public void clearExposedArea(GUID zoneGUID, boolean globalOnly) {
     makeServerCall(Message.newBuilder().setClearExposedAreaMsg(msg).build());
   }
 
-  private static void makeServerCall(Message msg) {
-    if (MapTool.getConnection() != null) {
-      MapTool.getConnection().sendMessage(msg);
+  /**
+   * Sends a message to the server. The token updates the calling thread has batched so far are sent
+   * first, so that the server gets the changes in the order they were made, such as a token being
+   * updated before it is removed.
+   *
+   * @param msg the message.
+   */
+  private void makeServerCall(Message msg) {
+    TokenUpdateBatch batch = tokenUpdateBatch.get();
+    if (batch != null) {
+      batch.flush();
+    }
+    messageSender.accept(msg);
+  }
+
+  /** The token updates batched on a thread. */
+  private class TokenUpdateBatch {
+    /** The number of nested batches. */
+    private int depth;
+
+    /** The updates, in the order they were made. Updates made obsolete by a put are null. */
+    private final List<TokenUpdateMsg> updates = new ArrayList<>();
+
+    /** The positions of the updates of each token in {@link #updates}, by token id. */
+    private final Map<String, List<Integer>> updatesByToken = new HashMap<>();
+
+    /** The zones the token events are batched for. */
+    private final Set<Zone> zones = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Batches the token events of a zone, if they are not batched yet.
+     *
+     * @param zone the zone.
+     */
+    private void addZone(Zone zone) {
+      if (zones.add(zone)) {
+        zone.beginTokenEventBatch();
+      }
+    }
+
+    /**
+     * Adds an update to the batch. A put sends the whole token, so the updates of the token before
+     * it are dropped.
+     *
+     * @param update the update.
+     */
+    private void add(TokenUpdateMsg update) {
+      String tokenGuid =
+          update.hasPutTokenMsg()
+              ? update.getPutTokenMsg().getToken().getId()
+              : update.getUpdateTokenPropertyMsg().getTokenGuid();
+      List<Integer> positions = updatesByToken.computeIfAbsent(tokenGuid, k -> new ArrayList<>());
+      if (update.hasPutTokenMsg()) {
+        for (int position : positions) {
+          updates.set(position, null);
+        }
+        positions.clear();
+      }
+      positions.add(updates.size());
+      updates.add(update);
+    }
+
+    /** Fires the batched token events and sends the updates to the server. */
+    private void send() {
+      for (Zone zone : zones) {
+        zone.endTokenEventBatch();
+      }
+      flush();
+    }
+
+    /**
+     * Sends the updates batched so far to the server, leaving the batch open for further updates.
+     */
+    private void flush() {
+      var msg = UpdateTokensMsg.newBuilder();
+      for (TokenUpdateMsg update : updates) {
+        if (update != null) {
+          msg.addUpdates(update);
+        }
+      }
+      updates.clear();
+      updatesByToken.clear();
+
+      if (msg.getUpdatesCount() == 1) {
+        // No need to wrap a single update.
+        TokenUpdateMsg update = msg.getUpdates(0);
+        if (update.hasPutTokenMsg()) {
+          messageSender.accept(
+              Message.newBuilder().setPutTokenMsg(update.getPutTokenMsg()).build());
+        } else {
+          messageSender.accept(
+              Message.newBuilder()
+                  .setUpdateTokenPropertyMsg(update.getUpdateTokenPropertyMsg())
+                  .build());
+        }
+      } else if (msg.getUpdatesCount() > 1) {
+        messageSender.accept(Message.newBuilder().setUpdateTokensMsg(msg).build());
+      }
     }
   }
 
@@ -784,7 +961,7 @@ public void updateTokenProperty(
    * some time interval. If a new event arrives before the time interval elapses, it is replaced. In
    * this way, only the most current version of the event is released.
    */
-  private static class TimedEventQueue extends Thread {
+  private class TimedEventQueue extends Thread {
 
     Message msg;
     long delay;
@@ -15,6 +15,8 @@
 package net.rptools.maptool.client.functions;
 
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import java.awt.*;
 import java.util.*;
 import java.util.List;
@@ -34,6 +36,17 @@
 
 public class ExecFunction extends AbstractFunction {
 
+  /**
+   * The target of the macros to run on the client hosting the server, so that heavy macros do not
+   * have to run on the client of the player who started them. Macros give it as the JSON object
+   * {@code {"server": true}} in a JSON array of targets. Player names are trimmed, so none can
+   * start with the control character this target starts with.
+   */
+  public static final String SERVER_TARGET = "\0server";
+
+  /** The key of the JSON object used as the target of the macros to run on the server. */
+  private static final String SERVER_TARGET_KEY = "server";
+
   /** Singleton instance of the ExecFunction class. */
   private static final ExecFunction instance = new ExecFunction();
 
@@ -92,11 +105,46 @@ public Object childEvaluate(
       return ""; // dont send to empty lists
     }
 
-    Collection<String> targets = jsonArrayFunctions.jsonArrayToListOfStrings(jsonTargets);
+    Collection<String> targets = getTargets(functionName, jsonTargets);
     sendExecFunction(execName, execArgs, defer, targets);
     return "";
   }
 
+  /**
+   * Gets the targets of an execFunction or execLink from a JSON array of targets. Targets are
+   * player names or keywords, or the JSON object {@code {"server": true}} for the server.
+   *
+   * @param functionName the name of the function.
+   * @param jsonTargets the JSON array of targets.
+   * @return the list of targets.
+   * @throws ParserException if a target is not valid, or the server can not be reached.
+   */
+  public static List<String> getTargets(String functionName, JsonArray jsonTargets)
+      throws ParserException {
+    List<String> targets = new ArrayList<>(jsonTargets.size());
+    for (JsonElement target : jsonTargets) {
+      if (!target.isJsonObject()) {
+        targets.add(target.getAsString());
+        continue;
+      }
+      JsonObject object = target.getAsJsonObject();
+      if (object.size() != 1
+          || !object.has(SERVER_TARGET_KEY)
+          || !object.get(SERVER_TARGET_KEY).isJsonPrimitive()
+          || !object.get(SERVER_TARGET_KEY).getAsBoolean()) {
+        throw new ParserException(
+            I18N.getText("macro.function.execFunction.incorrectTarget", functionName, target));
+      }
+      if (MapTool.getServer() == null
+          && (MapTool.getConnection() == null || !MapTool.getConnection().isAlive())) {
+        throw new ParserException(
+            I18N.getText("macro.function.execFunction.serverUnreachable", functionName));
+      }
+      targets.add(SERVER_TARGET);
+    }
+    return targets;
+  }
+
   /**
    * Send the execFunction to targets, either immediately or with a delay
    *
@@ -173,6 +221,8 @@ public static boolean isMessageForMe(String target, String source) {
         return false;
       case "all":
         return true;
+      case SERVER_TARGET:
+        return MapTool.getServer() != null;
       default:
         return targetSelf;
     }
@@ -189,6 +239,7 @@ public static boolean isMessageGlobal(String target, String source) {
     if (target.equals(source)) return false;
     if (target.equalsIgnoreCase("none")) return false;
     if (target.equalsIgnoreCase("self")) return false;
+    if (target.equals(SERVER_TARGET)) return MapTool.getServer() == null;
     return true;
   }
 
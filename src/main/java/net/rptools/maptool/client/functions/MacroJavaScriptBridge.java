@@ -133,8 +133,8 @@ public Object childEvaluate(
 
     callingArgsStack.push(scriptArgs);
     try {
-      return JavaScriptToMTScriptType(
-          JSScriptEngine.getJSScriptEngine().evalScript(contextName, script));
+      return JSScriptEngine.getJSScriptEngine()
+          .evalScript(contextName, script, this::JavaScriptToMTScriptType);
     } catch (PolyglotException e) {
       Throwable je = e.asHostException();
       ParserException pe = (ParserException) je;
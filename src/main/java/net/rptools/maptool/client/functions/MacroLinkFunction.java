@@ -139,10 +139,7 @@ public Object childEvaluate(
         return ""; // dont send to empty lists
       }
 
-      List<String> targets = new ArrayList<>();
-      for (JsonElement ele : jsonTargets) {
-        targets.add(ele.getAsString());
-      }
+      List<String> targets = ExecFunction.getTargets(functionName, jsonTargets);
       sendExecLink(link, defer, targets);
       return "";
     } else {
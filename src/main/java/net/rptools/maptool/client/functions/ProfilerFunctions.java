@@ -0,0 +1,236 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+import net.rptools.maptool.client.MacroProfiler;
+import net.rptools.maptool.client.MacroProfiler.Category;
+import net.rptools.maptool.client.MacroProfiler.Timing;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.language.I18N;
+import net.rptools.maptool.util.FunctionUtil;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import net.rptools.parser.function.AbstractFunction;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/** Class that implements the MTScript profiler macro functions. */
+public class ProfilerFunctions extends AbstractFunction {
+  private static final Logger log = LogManager.getLogger(ProfilerFunctions.class);
+
+  /** The number of rows of each table in a dump, if not specified. */
+  private static final int DEFAULT_DUMP_ROWS = 20;
+
+  /** Creates a new {@code ProfilerFunctions} object. */
+  public ProfilerFunctions() {
+    super(
+        0,
+        2,
+        "profiler.start",
+        "profiler.stop",
+        "profiler.reset",
+        "profiler.isRunning",
+        "profiler.getResults",
+        "profiler.dump");
+  }
+
+  @Override
+  public Object childEvaluate(
+      Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
+      throws ParserException {
+    FunctionUtil.blockUntrustedMacro(functionName);
+    MacroProfiler profiler = MacroProfiler.getInstance();
+
+    String fName = functionName.toLowerCase();
+    switch (fName) {
+      case "profiler.start" -> {
+        FunctionUtil.checkNumberParam(functionName, parameters, 0, 1);
+        // The timings are discarded unless asked to keep them.
+        profiler.start(
+            parameters.isEmpty() || FunctionUtil.paramAsBoolean(functionName, parameters, 0, true));
+        return "";
+      }
+      case "profiler.stop" -> {
+        FunctionUtil.checkNumberParam(functionName, parameters, 0, 0);
+        profiler.stop();
+        return "";
+      }
+      case "profiler.reset" -> {
+        FunctionUtil.checkNumberParam(functionName, parameters, 0, 0);
+        profiler.reset();
+        return "";
+      }
+      case "profiler.isrunning" -> {
+        FunctionUtil.checkNumberParam(functionName, parameters, 0, 0);
+        return FunctionUtil.getDecimalForBoolean(profiler.isEnabled());
+      }
+      case "profiler.getresults" -> {
+        FunctionUtil.checkNumberParam(functionName, parameters, 0, 0);
+        JsonObject results = new JsonObject();
+        results.add("macros", timingsAsJson(profiler.getTimings(Category.MACRO)));
+        results.add("functions", timingsAsJson(profiler.getTimings(Category.FUNCTION)));
+        return results;
+      }
+      case "profiler.dump" -> {
+        FunctionUtil.checkNumberParam(functionName, parameters, 0, 2);
+        String destination =
+            parameters.isEmpty()
+                ? "log"
+                : FunctionUtil.paramAsString(functionName, parameters, 0, false).toLowerCase();
+        int rows =
+            parameters.size() > 1
+                ? FunctionUtil.paramAsInteger(functionName, parameters, 1, false)
+                : DEFAULT_DUMP_ROWS;
+        switch (destination) {
+          case "log" -> log.info(dumpAsText(profiler, rows));
+          case "chat" -> MapTool.addLocalMessage(dumpAsHtml(profiler, rows));
+          default -> throw new ParserException(
+              I18N.getText(
+                  "macro.function.profiler.invalidDestination", functionName, destination));
+        }
+        return "";
+      }
+      default -> throw new ParserException(
+          I18N.getText("macro.function.general.unknownFunction", functionName));
+    }
+  }
+
+  /**
+   * Converts nanoseconds to milliseconds for display.
+   *
+   * @param nanos the time in nanoseconds.
+   * @return the time in milliseconds, to three decimal places.
+   */
+  private static BigDecimal toMillis(long nanos) {
+    return BigDecimal.valueOf(nanos, 6).setScale(3, RoundingMode.HALF_UP);
+  }
+
+  /**
+   * Returns the timings as a json array of objects with the name, calls, inclusive and exclusive
+   * times in milliseconds.
+   *
+   * @param timings the timings.
+   * @return the json array.
+   */
+  private static JsonArray timingsAsJson(List<Timing> timings) {
+    JsonArray array = new JsonArray();
+    for (Timing timing : timings) {
+      JsonObject obj = new JsonObject();
+      obj.addProperty("name", timing.name());
+      obj.addProperty("calls", timing.calls());
+      obj.addProperty("inclusive", toMillis(timing.inclusiveNanos()));
+      obj.addProperty("exclusive", toMillis(timing.exclusiveNanos()));
+      array.add(obj);
+    }
+    return array;
+  }
+
+  /**
+   * Returns the most expensive macros and functions as a plain text table, for the log.
+   *
+   * @param profiler the profiler to dump.
+   * @param rows the maximum number of rows of each table.
+   * @return the text.
+   */
+  private static String dumpAsText(MacroProfiler profiler, int rows) {
+    StringBuilder sb = new StringBuilder(I18N.getText("macro.function.profiler.title"));
+    for (Category category : Category.values()) {
+      sb.append(System.lineSeparator()).append(categoryTitle(category));
+      sb.append(System.lineSeparator())
+          .append(
+              String.format(
+                  "%10s %14s %14s  %s",
+                  I18N.getText("macro.function.profiler.calls"),
+                  I18N.getText("macro.function.profiler.inclusive"),
+                  I18N.getText("macro.function.profiler.exclusive"),
+                  I18N.getText("macro.function.profiler.name")));
+      for (Timing timing : limit(profiler.getTimings(category), rows)) {
+        sb.append(System.lineSeparator())
+            .append(
+                String.format(
+                    "%10d %14s %14s  %s",
+                    timing.calls(),
+                    toMillis(timing.inclusiveNanos()).toPlainString(),
+                    toMillis(timing.exclusiveNanos()).toPlainString(),
+                    timing.name()));
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the most expensive macros and functions as html tables, for the chat panel.
+   *
+   * @param profiler the profiler to dump.
+   * @param rows the maximum number of rows of each table.
+   * @return the html.
+   */
+  private static String dumpAsHtml(MacroProfiler profiler, int rows) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<b>").append(I18N.getText("macro.function.profiler.title")).append("</b>");
+    for (Category category : Category.values()) {
+      sb.append("<br><b>").append(categoryTitle(category)).append("</b>");
+      sb.append("<table border='1' cellpadding='2'><tr>");
+      sb.append("<th>").append(I18N.getText("macro.function.profiler.name")).append("</th>");
+      sb.append("<th>").append(I18N.getText("macro.function.profiler.calls")).append("</th>");
+      sb.append("<th>").append(I18N.getText("macro.function.profiler.inclusive")).append("</th>");
+      sb.append("<th>").append(I18N.getText("macro.function.profiler.exclusive")).append("</th>");
+      sb.append("</tr>");
+      for (Timing timing : limit(profiler.getTimings(category), rows)) {
+        sb.append("<tr><td>").append(StringEscapeUtils.escapeHtml(timing.name())).append("</td>");
+        sb.append("<td align='right'>").append(timing.calls()).append("</td>");
+        sb.append("<td align='right'>")
+            .append(toMillis(timing.inclusiveNanos()).toPlainString())
+            .append("</td>");
+        sb.append("<td align='right'>")
+            .append(toMillis(timing.exclusiveNanos()).toPlainString())
+            .append("</td></tr>");
+      }
+      sb.append("</table>");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns the title of the table for a category.
+   *
+   * @param category the category.
+   * @return the title.
+   */
+  private static String categoryTitle(Category category) {
+    return switch (category) {
+      case MACRO -> I18N.getText("macro.function.profiler.macros");
+      case FUNCTION -> I18N.getText("macro.function.profiler.functions");
+    };
+  }
+
+  /**
+   * Returns at most the first rows of the timings.
+   *
+   * @param timings the timings, most expensive first.
+   * @param rows the maximum number of rows, all of them if less than one.
+   * @return the timings to show.
+   */
+  private static List<Timing> limit(List<Timing> timings, int rows) {
+    return rows > 0 && timings.size() > rows ? timings.subList(0, rows) : timings;
+  }
+}
@@ -14,8 +14,11 @@
  */
 package net.rptools.maptool.client.functions;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -91,6 +94,30 @@ public boolean visit(int pos, int start, int end) {
   private static Pattern PATTERN_FOR_SEMICOLON_SEPARATOR =
       Pattern.compile("\\s*(.*?)\\s*\\;|\\s*(.*?)\\s*$", Pattern.DOTALL);
 
+  /** The patterns for the other delimiters, by delimiter. */
+  private static final Cache<String, Pattern> PATTERN_CACHE =
+      CacheBuilder.newBuilder().maximumSize(100).build();
+
+  /**
+   * The key of a parsed list.
+   *
+   * @param listStr the list string.
+   * @param delim the delimiter.
+   */
+  private record ParsedListKey(String listStr, String delim) {}
+
+  /**
+   * The bounds of the items of recently parsed lists, as start and end offset pairs. Macros tend to
+   * take the same list apart item by item, so this saves splitting the list again for each item.
+   * The cache is weighed by the length of the list strings.
+   */
+  private static final Cache<ParsedListKey, int[]> PARSED_LIST_CACHE =
+      CacheBuilder.newBuilder()
+          .maximumWeight(4 * 1024 * 1024)
+          .weigher((ParsedListKey k, int[] v) -> k.listStr().length() + v.length)
+          .softValues()
+          .build();
+
   /**
    * Parses a list.
    *
@@ -103,21 +130,56 @@ public static int parse(String listStr, String delim, ListVisitor visitor) {
 
     if (StringUtils.isBlank(listStr)) return 0; // null strings have zero entries
 
-    Pattern pattern;
+    ParsedListKey key = new ParsedListKey(listStr, delim);
+    int[] bounds = PARSED_LIST_CACHE.getIfPresent(key);
+    if (bounds == null) {
+      bounds = split(listStr, delim);
+      PARSED_LIST_CACHE.put(key, bounds);
+    }
+
+    int index = 0;
+    while (index * 2 < bounds.length) {
+      int from = bounds[index * 2], to = bounds[index * 2 + 1];
+      if (!visitor.visit(index++, from, to)) break;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the pattern that splits a list on a delimiter.
+   *
+   * @param delim the delimiter.
+   * @return the pattern.
+   */
+  private static Pattern getPattern(String delim) {
     if (delim.isEmpty()) {
-      pattern = PATTERN_FOR_EMPTY_SEPARATOR;
+      return PATTERN_FOR_EMPTY_SEPARATOR;
     } else if (",".equals(delim)) {
-      pattern = PATTERN_FOR_COMMA_SEPARATOR;
+      return PATTERN_FOR_COMMA_SEPARATOR;
     } else if (";".equals(delim)) {
-      pattern = PATTERN_FOR_SEMICOLON_SEPARATOR;
-    } else {
+      return PATTERN_FOR_SEMICOLON_SEPARATOR;
+    }
+    Pattern pattern = PATTERN_CACHE.getIfPresent(delim);
+    if (pattern == null) {
       // This pattern needs to be compiled with the DOTALL flag or line terminators might
       // cause premature termination of the matcher.find() operations...
       String escDelim = fullyQuoteString(delim);
       pattern = Pattern.compile("\\s*(.*?)\\s*" + escDelim + "|\\s*(.*?)\\s*$", Pattern.DOTALL);
+      PATTERN_CACHE.put(delim, pattern);
     }
+    return pattern;
+  }
 
-    Matcher matcher = pattern.matcher(listStr);
+  /**
+   * Splits a list into its items.
+   *
+   * @param listStr the list string.
+   * @param delim the delimiter.
+   * @return the start and end offsets of each of the items.
+   */
+  private static int[] split(String listStr, String delim) {
+    Matcher matcher = getPattern(delim).matcher(listStr);
+    int[] bounds = new int[16];
     boolean lastItem = false;
     int index = 0;
     while (matcher.find()) {
@@ -132,10 +194,15 @@ public static int parse(String listStr, String delim, ListVisitor visitor) {
           // This flag will prevent that.
           lastItem = true;
         }
-        if (!visitor.visit(index++, from, to)) break;
+        if (index * 2 == bounds.length) {
+          bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[index * 2] = from;
+        bounds[index * 2 + 1] = to;
+        index++;
       }
     }
-    return index;
+    return Arrays.copyOf(bounds, index * 2);
   }
 
   /**
@@ -14,8 +14,11 @@
  */
 package net.rptools.maptool.client.functions;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -69,6 +72,40 @@ public static StrPropFunctions getInstance() {
     return instance;
   }
 
+  /** The entry patterns, by delimiter. */
+  private static final Cache<String, Pattern> ENTRY_PATTERN_CACHE =
+      CacheBuilder.newBuilder().maximumSize(100).build();
+
+  /**
+   * The key of a parsed property string.
+   *
+   * @param props the property string.
+   * @param delim the delimiter.
+   */
+  private record ParsedPropsKey(String props, String delim) {}
+
+  /**
+   * A parsed property string.
+   *
+   * @param map the settings, by normalized key.
+   * @param keys the un-normalized keys, in their original order.
+   * @param keysNormalized the normalized keys, in their original order.
+   */
+  private record ParsedProps(
+      Map<String, String> map, List<String> keys, List<String> keysNormalized) {}
+
+  /**
+   * The recently parsed property strings. Macros read and update the same property strings over
+   * and over, so this saves parsing them again each time. The cache is weighed by the length of the
+   * property strings.
+   */
+  private static final Cache<ParsedPropsKey, ParsedProps> PARSED_PROPS_CACHE =
+      CacheBuilder.newBuilder()
+          .maximumWeight(4 * 1024 * 1024)
+          .weigher((ParsedPropsKey k, ParsedProps v) -> k.props().length())
+          .softValues()
+          .build();
+
   /**
    * Parses a property string.
    *
@@ -84,22 +121,58 @@ public static void parse(
       List<String> oldKeys,
       List<String> oldKeysNormalized,
       String delim) {
-    String delimPatt;
-    if (delim.equals("")) {
-      delimPatt = ";";
-    } else {
-      delimPatt = fullyQuoteString(delim); // XXX Why are we not using \\Q...\\E instead?
+    ParsedPropsKey key = new ParsedPropsKey(props, delim);
+    ParsedProps parsed = PARSED_PROPS_CACHE.getIfPresent(key);
+    if (parsed == null) {
+      parsed = parse(props, delim);
+      PARSED_PROPS_CACHE.put(key, parsed);
     }
-    // Changed to allow spaces within keys, although spaces on either end of keys or
-    // values will be trimmed. http://forums.rptools.net/viewtopic.php?f=3&t=23841
-    // Added "." to allowed key names since variable names can contain dots.
-    final String entryPatt = "\\s*([\\w .]+\\s*=.*?)" + delimPatt + "|([\\w .]+\\s*=.*)";
-    final Pattern entryParser = Pattern.compile(entryPatt);
+    map.putAll(parsed.map());
+    oldKeys.addAll(parsed.keys());
+    oldKeysNormalized.addAll(parsed.keysNormalized());
+  }
+
+  /**
+   * Returns the pattern that matches the entries of a property string.
+   *
+   * @param delim the setting delimiter.
+   * @return the pattern.
+   */
+  private static Pattern getEntryPattern(String delim) {
+    Pattern entryParser = ENTRY_PATTERN_CACHE.getIfPresent(delim);
+    if (entryParser == null) {
+      String delimPatt;
+      if (delim.equals("")) {
+        delimPatt = ";";
+      } else {
+        delimPatt = fullyQuoteString(delim); // XXX Why are we not using \\Q...\\E instead?
+      }
+      // Changed to allow spaces within keys, although spaces on either end of keys or
+      // values will be trimmed. http://forums.rptools.net/viewtopic.php?f=3&t=23841
+      // Added "." to allowed key names since variable names can contain dots.
+      final String entryPatt = "\\s*([\\w .]+\\s*=.*?)" + delimPatt + "|([\\w .]+\\s*=.*)";
+      entryParser = Pattern.compile(entryPatt);
+      ENTRY_PATTERN_CACHE.put(delim, entryParser);
+    }
+    return entryParser;
+  }
+
+  /**
+   * Parses a property string without the cache.
+   *
+   * @param props has the form "key1=val1 ; key2=val2 ; ..."
+   * @param delim is the setting delimiter to use
+   * @return the parsed property string.
+   */
+  private static ParsedProps parse(String props, String delim) {
+    Map<String, String> map = new HashMap<>();
+    List<String> oldKeys = new ArrayList<>();
+    List<String> oldKeysNormalized = new ArrayList<>();
 
     // Extract the keys and values already in the props string.
     // Save the old keys so we can rebuild the props string in the same order.
     boolean lastEntry = false;
-    Matcher entryMatcher = entryParser.matcher(props);
+    Matcher entryMatcher = getEntryPattern(delim).matcher(props);
     while (entryMatcher.find()) {
       if (!lastEntry) {
         // String entry = entryMatcher.group();
@@ -123,6 +196,98 @@ public static void parse(
         }
       }
     }
+    return new ParsedProps(
+        Collections.unmodifiableMap(map), List.copyOf(oldKeys), List.copyOf(oldKeysNormalized));
+  }
+
+  /**
+   * Adds a property string built by {@link #setStrProp} or {@link #deleteStrProp} to the parse
+   * cache, so that the next change to it does not have to parse it again. The string is only added
+   * if parsing it would give back exactly the keys and values it was built from; the delimiter and
+   * the keys and values must then not contain anything that would be read differently.
+   *
+   * @param props the property string that was built.
+   * @param delim the setting delimiter.
+   * @param keys the keys, in the order they were written to the string.
+   * @param map the values, by normalized key.
+   */
+  private static void cacheBuiltProps(
+      String props, String delim, List<String> keys, Map<String, String> map) {
+    if (delim.isEmpty() || !delim.chars().allMatch(StrPropFunctions::isSafeDelimChar)) {
+      return;
+    }
+    Map<String, String> builtMap = new HashMap<>();
+    List<String> keysNormalized = new ArrayList<>(keys.size());
+    for (String k : keys) {
+      String normalized = k.toUpperCase();
+      String v = map.get(normalized);
+      if (!isSafeKey(k) || !isSafeValue(v, delim)) {
+        return;
+      }
+      builtMap.put(normalized, v);
+      keysNormalized.add(normalized);
+    }
+    PARSED_PROPS_CACHE.put(
+        new ParsedPropsKey(props, delim),
+        new ParsedProps(
+            Collections.unmodifiableMap(builtMap),
+            List.copyOf(keys),
+            List.copyOf(keysNormalized)));
+  }
+
+  /**
+   * Returns if a character of a delimiter can not be mistaken for part of a key or value.
+   *
+   * @param c the character.
+   * @return {@code true} if the character is safe.
+   */
+  private static boolean isSafeDelimChar(int c) {
+    return !Character.isLetterOrDigit(c)
+        && !Character.isWhitespace(c)
+        && c != '_'
+        && c != '.'
+        && c != '=';
+  }
+
+  /**
+   * Returns if a key would be parsed back as itself.
+   *
+   * @param key the key.
+   * @return {@code true} if the key is safe.
+   */
+  private static boolean isSafeKey(String key) {
+    if (key.isEmpty() || key.charAt(0) == ' ' || key.charAt(key.length() - 1) == ' ') {
+      return false;
+    }
+    for (int i = 0; i < key.length(); i++) {
+      char c = key.charAt(i);
+      boolean wordChar =
+          (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+      if (!wordChar && c != ' ' && c != '.') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns if a value would be parsed back as itself.
+   *
+   * @param value the value.
+   * @param delim the setting delimiter.
+   * @return {@code true} if the value is safe.
+   */
+  private static boolean isSafeValue(String value, String delim) {
+    if (value == null || !value.equals(value.trim()) || value.contains(delim)) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -275,15 +440,17 @@ public Object setStrProp(
       oldKeys.add(userKey);
     }
     int size = oldKeys.size();
-    delim = " " + delim + " ";
+    String separator = " " + delim + " ";
     for (String k : oldKeys) {
       String v = map.get(k.toUpperCase());
       sb.append(k);
       sb.append("=");
       sb.append(v);
-      if (--size != 0) sb.append(delim);
+      if (--size != 0) sb.append(separator);
     }
     retval = sb.toString();
+    // Only the one value changed, so the new string does not need to be parsed again.
+    cacheBuiltProps((String) retval, delim, oldKeys, map);
     return retval;
   }
 
@@ -326,17 +493,21 @@ public Object deleteStrProp(
     userKey = parameters.get(1).toString(); // the key being passed in
     // reconstruct the property string, without the specified key
     StringBuilder sb = new StringBuilder();
+    List<String> keptKeys = new ArrayList<>(oldKeys.size());
     int size = oldKeys.size();
-    delim = " " + delim + " ";
+    String separator = " " + delim + " ";
     for (String k : oldKeys) {
       if (k.compareToIgnoreCase(userKey) == 0) continue;
       String v = map.get(k.toUpperCase());
       sb.append(k);
       sb.append("=");
       sb.append(v);
-      if (--size != 0) sb.append(delim);
+      if (--size != 0) sb.append(separator);
+      keptKeys.add(k);
     }
     retval = sb.toString();
+    // Only the one key was removed, so the new string does not need to be parsed again.
+    cacheBuiltProps((String) retval, delim, keptKeys, map);
     return retval;
   }
 
@@ -0,0 +1,53 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.functions;
+
+import java.util.List;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.language.I18N;
+import net.rptools.parser.Parser;
+import net.rptools.parser.ParserException;
+import net.rptools.parser.VariableResolver;
+import net.rptools.parser.function.AbstractFunction;
+
+/**
+ * Class that implements the macro functions to batch token updates.
+ *
+ * <p>The token updates made between {@code beginTokenBatch()} and {@code endTokenBatch()} are
+ * applied locally straight away, but are sent to the server together in a single message when the
+ * batch ends. Batches that are not ended are sent when the macro finishes.
+ */
+public class TokenBatchFunctions extends AbstractFunction {
+
+  /** Creates a new {@code TokenBatchFunctions} object. */
+  public TokenBatchFunctions() {
+    super(0, 0, "beginTokenBatch", "endTokenBatch");
+  }
+
+  @Override
+  public Object childEvaluate(
+      Parser parser, VariableResolver resolver, String functionName, List<Object> parameters)
+      throws ParserException {
+    if (functionName.equalsIgnoreCase("beginTokenBatch")) {
+      MapTool.serverCommand().beginTokenUpdateBatch();
+    } else if (functionName.equalsIgnoreCase("endTokenBatch")) {
+      MapTool.serverCommand().endTokenUpdateBatch();
+    } else {
+      throw new ParserException(
+          I18N.getText("macro.function.general.unknownFunction", functionName));
+    }
+    return "";
+  }
+}
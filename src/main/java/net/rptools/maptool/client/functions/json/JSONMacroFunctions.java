@@ -148,7 +148,7 @@ public Object childEvaluate(
         } else {
           String str = potJson.toString().trim();
           if (str.startsWith("{") || str.startsWith("[")) {
-            JsonElement json = typeConversion.asJsonElement(str);
+            JsonElement json = typeConversion.asReadOnlyJsonElement(str);
             if (json.isJsonArray()) {
               return JSONObjectType.ARRAY.name();
             } else if (json.isJsonObject()) {
@@ -160,7 +160,7 @@ public Object childEvaluate(
       case "json.length":
         {
           FunctionUtil.checkNumberParam(functionName, args, 1, 1);
-          JsonElement json = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement json = paramAsReadOnlyJson(functionName, args, 0);
           if (json.isJsonObject()) {
             return jsonObjectFunctions.length(json.getAsJsonObject());
           } else {
@@ -170,7 +170,7 @@ public Object childEvaluate(
       case "json.fields":
         {
           FunctionUtil.checkNumberParam(functionName, args, 1, 2);
-          JsonElement json = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement json = paramAsReadOnlyJson(functionName, args, 0);
           String delim = args.size() > 1 ? args.get(1).toString() : DEFAULT_STRING_LIST_DELIM;
 
           if (json.isJsonObject()) {
@@ -253,31 +253,37 @@ public Object childEvaluate(
       case "json.get":
         {
           FunctionUtil.checkNumberParam(functionName, args, 2, UNLIMITED_PARAMETERS);
-          JsonElement jsonElement;
-          try {
-            jsonElement = FunctionUtil.paramAsJson(functionName, args, 0);
-          } catch (
-              ParserException
-                  pe) { // If we cant convert it to a JsonArray/JsonObject then treat like array
-            // with single value
+          JsonElement jsonElement = typeConversion.asReadOnlyJsonElement(args.get(0));
+          if (!jsonElement.isJsonObject() && !jsonElement.isJsonArray()) {
+            // If we cant convert it to a JsonArray/JsonObject then treat like array with single
+            // value
             jsonElement = new JsonArray();
             jsonElement.getAsJsonArray().add(typeConversion.asJsonElement(args.get(0)));
           }
+          Object value;
           if (jsonElement.isJsonArray()) {
             if (args.size() == 2) {
-              return jsonArrayFunctions.get(
-                  jsonElement.getAsJsonArray(),
-                  FunctionUtil.paramAsInteger(functionName, args, 1, true));
+              value =
+                  jsonArrayFunctions.get(
+                      jsonElement.getAsJsonArray(),
+                      FunctionUtil.paramAsInteger(functionName, args, 1, true));
             } else {
-              return jsonArrayFunctions.get(
-                  jsonElement.getAsJsonArray(),
-                  FunctionUtil.paramAsInteger(functionName, args, 1, true),
-                  FunctionUtil.paramAsInteger(functionName, args, 2, true));
+              value =
+                  jsonArrayFunctions.get(
+                      jsonElement.getAsJsonArray(),
+                      FunctionUtil.paramAsInteger(functionName, args, 1, true),
+                      FunctionUtil.paramAsInteger(functionName, args, 2, true));
             }
           } else {
-            return jsonObjectFunctions.get(
-                jsonElement.getAsJsonObject(), args.subList(1, args.size()));
+            value =
+                jsonObjectFunctions.get(
+                    jsonElement.getAsJsonObject(), args.subList(1, args.size()));
           }
+          // Json parsed from a string is shared, so only copies of it may be returned.
+          if (value instanceof JsonElement json && !(args.get(0) instanceof JsonElement)) {
+            return json.deepCopy();
+          }
+          return value;
         }
       case "json.append":
         {
@@ -317,7 +323,7 @@ public Object childEvaluate(
       case "json.contains":
         {
           FunctionUtil.checkNumberParam(functionName, args, 2, 2);
-          JsonElement jsonElement = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement jsonElement = paramAsReadOnlyJson(functionName, args, 0);
           boolean contains;
           if (jsonElement.isJsonArray()) {
             contains = jsonArrayFunctions.contains(jsonElement.getAsJsonArray(), args.get(1));
@@ -375,7 +381,7 @@ public Object childEvaluate(
       case "json.isEmpty":
         {
           FunctionUtil.checkNumberParam(functionName, args, 1, 1);
-          JsonElement jsonElement = FunctionUtil.paramConvertedToJson(functionName, args, 0);
+          JsonElement jsonElement = paramAsReadOnlyJson(functionName, args, 0);
 
           boolean empty;
           if (jsonElement.isJsonArray()) {
@@ -841,6 +847,24 @@ private Object handleJsonPathFunctions(String functionName, List<Object> paramet
     }
   }
 
+  /**
+   * Returns the json object or array value of a parameter for a function that only reads it, so
+   * the returned json must not be modified. Parameters that are not json objects or arrays are
+   * converted as {@link FunctionUtil#paramConvertedToJson} does.
+   *
+   * @param functionName the name of the function.
+   * @param args the parameters of the function.
+   * @param index the index of the parameter.
+   * @return the parameter as json that must not be modified.
+   */
+  private JsonElement paramAsReadOnlyJson(String functionName, List<Object> args, int index) {
+    JsonElement json = typeConversion.asReadOnlyJsonElement(args.get(index));
+    if (json.isJsonObject() || json.isJsonArray()) {
+      return json;
+    }
+    return FunctionUtil.paramConvertedToJson(functionName, args, index);
+  }
+
   /**
    * Returns a shallow copy of the passed in {@link JsonElement}. If the value is immutable then
    * this method may just return the value itself without making a copy.
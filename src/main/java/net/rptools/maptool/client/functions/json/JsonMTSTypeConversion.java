@@ -14,6 +14,8 @@
  */
 package net.rptools.maptool.client.functions.json;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
@@ -29,6 +31,26 @@ class JsonMTSTypeConversion {
   /** An empty <code>String</code> as a {@link JsonPrimitive}. */
   public static final JsonPrimitive EMPTY_STRING_ELEMENT = new JsonPrimitive("");
 
+  /** The maximum estimated size in bytes of the json held by the read only json cache. */
+  private static final long MAX_CACHED_JSON_BYTES = 64L * 1024 * 1024;
+
+  /** The estimated size in bytes of a json element, not counting the text it holds. */
+  private static final int JSON_ELEMENT_BYTES = 48;
+
+  /**
+   * Cache of the json objects and arrays parsed from strings for the json functions that only read
+   * them, so that json held in token properties as strings is only parsed once. The cached json is
+   * shared, so it must never be modified or handed back to MTScript.
+   */
+  private static final Cache<String, JsonElement> READ_ONLY_JSON_CACHE =
+      CacheBuilder.newBuilder()
+          .softValues()
+          .maximumWeight(MAX_CACHED_JSON_BYTES)
+          .weigher(
+              (String k, JsonElement v) ->
+                  (int) Math.min(2L * k.length() + estimateSize(v), Integer.MAX_VALUE))
+          .build();
+
   /**
    * Creates a new <code>JsonMTSTypeConversion</code> object.
    *
@@ -118,6 +140,50 @@ JsonElement asJsonElement(Object o) {
     }
   }
 
+  /**
+   * Returns a {@link JsonElement} version of the passed in object that must not be modified. Json
+   * objects and arrays parsed from strings are cached and shared by everyone that reads the same
+   * string, so any part of the returned json that is handed back to MTScript must be copied first.
+   *
+   * @param o the object tp convert to a {@link JsonElement}.
+   * @return a {@link JsonElement} version of the object that must not be modified.
+   */
+  JsonElement asReadOnlyJsonElement(Object o) {
+    if (o instanceof String s && (s.startsWith("[") || s.startsWith("{"))) {
+      JsonElement json = READ_ONLY_JSON_CACHE.getIfPresent(s);
+      if (json == null) {
+        json = asJsonElement(s);
+        if (json.isJsonObject() || json.isJsonArray()) {
+          READ_ONLY_JSON_CACHE.put(s, json);
+        }
+      }
+      return json;
+    }
+    return asJsonElement(o);
+  }
+
+  /**
+   * Returns an estimate of the memory used by a {@link JsonElement} and everything in it.
+   *
+   * @param json the {@link JsonElement} to estimate the size of.
+   * @return the estimated size in bytes.
+   */
+  static long estimateSize(JsonElement json) {
+    long size = JSON_ELEMENT_BYTES;
+    if (json.isJsonObject()) {
+      for (var entry : json.getAsJsonObject().entrySet()) {
+        size += JSON_ELEMENT_BYTES + 2L * entry.getKey().length() + estimateSize(entry.getValue());
+      }
+    } else if (json.isJsonArray()) {
+      for (JsonElement element : json.getAsJsonArray()) {
+        size += estimateSize(element);
+      }
+    } else if (json.isJsonPrimitive() && json.getAsJsonPrimitive().isString()) {
+      size += 2L * json.getAsString().length();
+    }
+    return size;
+  }
+
   /**
    * Returns a {@link JsonElement} version of the passed in object. If the object is already a
    * {@link JsonElement} then it will return a cloned copy. As {@link JsonPrimitive}s are immutable
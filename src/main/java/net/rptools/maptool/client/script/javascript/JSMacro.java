@@ -40,6 +40,16 @@ public static void clear() {
     macros.clear();
   }
 
+  /**
+   * Returns if a macro was registered from a context, and so still runs in it.
+   *
+   * @param context the context.
+   * @return true if a registered macro runs in the context.
+   */
+  public static boolean isContextInUse(JSContext context) {
+    return macros.values().stream().anyMatch(macro -> macro.context == context);
+  }
+
   private JSMacro() {
     super(0, UNLIMITED_PARAMETERS);
   }
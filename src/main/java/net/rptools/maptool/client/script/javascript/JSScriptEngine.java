@@ -14,9 +14,13 @@
  */
 package net.rptools.maptool.client.script.javascript;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.oracle.truffle.js.scriptengine.*;
+import java.awt.EventQueue;
 import java.util.*;
 import java.util.List;
+import java.util.function.Function;
 import javax.script.*;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.functions.MacroJavaScriptBridge;
@@ -31,6 +35,97 @@
 
 public class JSScriptEngine {
 
+  /** The maximum number of idle contexts kept for anonymous scripts. */
+  private static final int MAX_POOLED_CONTEXTS = 4;
+
+  /** The maximum number of parsed sources kept. */
+  private static final int MAX_CACHED_SOURCES = 500;
+
+  /**
+   * Script run on a new context for anonymous scripts before the API objects are added, which
+   * records the properties of the built-in objects reachable from the globals. It returns a
+   * function to call once the API objects are added, which records the globals and returns the
+   * function that cleans up the context after a script. The clean up deletes the globals the script
+   * added, and returns whether the other globals and the built-ins are unchanged.
+   */
+  private static final String CLEAN_UP_SCRIPT =
+      "(function() {"
+          + " const isObject = (v) => (typeof v === 'object' && v !== null)"
+          + "  || typeof v === 'function';"
+          + " const describe = (o) => {"
+          + "  const props = new Map();"
+          + "  for (const key of Reflect.ownKeys(o)) {"
+          + "   props.set(key, Reflect.getOwnPropertyDescriptor(o, key));"
+          + "  }"
+          + "  return { object: o, proto: Reflect.getPrototypeOf(o),"
+          + "   extensible: Reflect.isExtensible(o), props: props };"
+          + " };"
+          + " const same = (d, e) => e !== undefined && Object.is(d.value, e.value)"
+          + "  && d.get === e.get && d.set === e.set && d.writable === e.writable"
+          + "  && d.enumerable === e.enumerable && d.configurable === e.configurable;"
+          + " const unchanged = (s) => {"
+          + "  if (Reflect.getPrototypeOf(s.object) !== s.proto"
+          + "   || Reflect.isExtensible(s.object) !== s.extensible) { return false; }"
+          + "  const keys = Reflect.ownKeys(s.object);"
+          + "  if (keys.length !== s.props.size) { return false; }"
+          + "  for (const key of keys) {"
+          + "   if (!same(Reflect.getOwnPropertyDescriptor(s.object, key), s.props.get(key))) {"
+          + "    return false;"
+          + "   }"
+          + "  }"
+          + "  return true;"
+          + " };"
+          + " const builtins = new Set();"
+          + " for (const key of Reflect.ownKeys(globalThis)) {"
+          + "  const value = Reflect.getOwnPropertyDescriptor(globalThis, key).value;"
+          + "  if (isObject(value) && value !== globalThis) {"
+          + "   builtins.add(value);"
+          + "   const proto = Reflect.getOwnPropertyDescriptor(value, 'prototype');"
+          + "   if (proto !== undefined && isObject(proto.value)) { builtins.add(proto.value); }"
+          + "  }"
+          + " }"
+          + " const snapshots = Array.from(builtins, describe);"
+          + " return function() {"
+          + "  const globals = describe(globalThis);"
+          + "  return function() {"
+          + "   for (const key of Reflect.ownKeys(globalThis)) {"
+          + "    if (!globals.props.has(key)) { delete globalThis[key]; }"
+          + "   }"
+          + "   return unchanged(globals) && snapshots.every(unchanged);"
+          + "  };"
+          + " };"
+          + "})()";
+
+  /**
+   * A context for anonymous scripts.
+   *
+   * @param context the context.
+   * @param cleanUp the function that deletes the globals added by a script, and returns whether
+   *     the context is otherwise unchanged, or {@code null} if the context is not reused.
+   * @param generation the generation of the contexts the context was created in.
+   */
+  private record PooledContext(Context context, Value cleanUp, long generation) {}
+
+  /** The engine shared by all the contexts, so that they share the parsed and compiled code. */
+  private static final Engine engine = Engine.create();
+
+  /** The parsed sources, by script. */
+  private static final Cache<String, Source> sourceCache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SOURCES).build();
+
+  /**
+   * The idle contexts for anonymous scripts run from trusted macros on the event dispatch thread.
+   * Contexts are only reused there, as a context must not be entered by two threads at once and
+   * contexts held for other threads would never be closed.
+   */
+  private static final Deque<PooledContext> contextPool = new ArrayDeque<>();
+
+  /** Incremented when the contexts are reset, so that the pooled contexts are discarded. */
+  private static volatile long contextGeneration;
+
+  /** The classes of the API objects added to each context, found on first use. */
+  private static Set<Class<?>> apiClasses;
+
   private static Context.Builder cbuilder;
   private static final JSScriptEngine jsScriptEngine = new JSScriptEngine();
   private static final Logger log = LogManager.getLogger(JSScriptEngine.class);
@@ -65,6 +160,7 @@ private JSScriptEngine() {
     HostAccess access = habuilder.build();
 
     cbuilder = Context.newBuilder("js");
+    cbuilder.engine(engine);
     cbuilder.allowHostAccess(access);
     cbuilder.option("js.ecmascript-version", "2021");
   }
@@ -101,16 +197,54 @@ public static void removeContext(String name, boolean trusted) throws ParserExce
   public static void resetContexts() {
     JSMacro.clear();
     contexts.clear();
+    contextGeneration++;
+  }
+
+  /**
+   * Returns the classes of the API objects, scanning for them on the first call.
+   *
+   * @return the classes annotated with {@link MapToolJSAPIDefinition}.
+   */
+  private static synchronized Set<Class<?>> getApiClasses() {
+    if (apiClasses == null) {
+      Reflections reflections = new Reflections("net.rptools.maptool.client.script.javascript.api");
+      apiClasses = reflections.getTypesAnnotatedWith(MapToolJSAPIDefinition.class);
+    }
+    return apiClasses;
+  }
+
+  /**
+   * Returns the parsed source of a script. The sources are cached by content, so a script that is
+   * run again does not have to be parsed again, and can use the code the shared engine has already
+   * compiled for it.
+   *
+   * @param script the script.
+   * @return the source.
+   */
+  private static Source getSource(String script) {
+    Source source = sourceCache.getIfPresent(script);
+    if (source == null) {
+      source = Source.create("js", script);
+      sourceCache.put(script, source);
+    }
+    return source;
   }
 
   public Context makeContext() {
     Context context = cbuilder.build();
-    Value bindings = context.getBindings("js");
+    registerAPIObjects(context);
+    return context;
+  }
 
-    Reflections reflections = new Reflections("net.rptools.maptool.client.script.javascript.api");
-    Set<Class<?>> annotated = reflections.getTypesAnnotatedWith(MapToolJSAPIDefinition.class);
+  /**
+   * Adds the API objects to the bindings of a context.
+   *
+   * @param context the context.
+   */
+  private void registerAPIObjects(Context context) {
+    Value bindings = context.getBindings("js");
 
-    for (Class<?> apiClass : annotated) {
+    for (Class<?> apiClass : getApiClasses()) {
       try {
         if (MapToolJSAPIInterface.class.isAssignableFrom(apiClass)) {
           registerAPIObject(bindings, (MapToolJSAPIInterface) apiClass.newInstance());
@@ -121,17 +255,27 @@ public Context makeContext() {
         log.error("Could not add API object " + apiClass.getName(), e);
       }
     }
-    return context;
   }
 
   public static JSScriptEngine getJSScriptEngine() {
     return jsScriptEngine;
   }
 
-  public Value evalScript(String contextName, String script)
+  /**
+   * Runs a script in a named context, or in a context of its own if there is no name.
+   *
+   * @param contextName the name of the context, or null to run the script anonymously.
+   * @param script the script.
+   * @param convertResult converts the result of the script, while its context is still open.
+   * @param <T> the type the result is converted to.
+   * @return the converted result.
+   * @throws ScriptException if the script could not be run.
+   * @throws ParserException if the macro is not allowed to use the context.
+   */
+  public <T> T evalScript(String contextName, String script, Function<Value, T> convertResult)
       throws ScriptException, ParserException {
     if (contextName == null) {
-      return evalAnonymous(script);
+      return evalAnonymous(script, convertResult);
     }
     JSContext jc = contexts.get(contextName);
     if (jc == null) {
@@ -146,7 +290,7 @@ public Value evalScript(String contextName, String script)
     }
     contextStack.push(jc);
     try {
-      return jc.context.eval("js", script);
+      return convertResult.apply(jc.context.eval(getSource(script)));
     } finally {
       contextStack.pop();
     }
@@ -165,20 +309,98 @@ public Object applyFunction(JSAPIRegisteredMacro macro, Object[] args) {
     }
   }
 
-  public Value evalAnonymous(String script) throws ScriptException {
+  /**
+   * Runs a script in a context of its own, taken from the pool of contexts for anonymous scripts.
+   *
+   * @param script the script.
+   * @param convertResult converts the result of the script, before the context is returned to the
+   *     pool or closed.
+   * @param <T> the type the result is converted to.
+   * @return the converted result.
+   * @throws ScriptException if the script could not be run.
+   */
+  public <T> T evalAnonymous(String script, Function<Value, T> convertResult)
+      throws ScriptException {
 
     StringBuilder wrapped = new StringBuilder();
     wrapped
         .append("(function() { var args = MTScript.getMTScriptCallingArgs(); ")
         .append(script)
         .append("})();");
-    Context c = makeContext();
-    JSContext jc = new JSContext(MapTool.getParser().isMacroTrusted(), c, "<anonymous>");
+    boolean trusted = MapTool.getParser().isMacroTrusted();
+    PooledContext pc = borrowContext(trusted);
+    JSContext jc = new JSContext(trusted, pc.context(), "<anonymous>");
     contextStack.push(jc);
     try {
-      return makeContext().eval("js", wrapped.toString());
+      return convertResult.apply(pc.context().eval(getSource(wrapped.toString())));
     } finally {
       contextStack.pop();
+      returnContext(pc, jc);
+    }
+  }
+
+  /**
+   * Returns whether contexts for anonymous scripts are reused. Only contexts for trusted macros on
+   * the event dispatch thread are. A script from an untrusted macro could change the built-in
+   * objects in ways the clean up can not detect, so each one gets a new context.
+   *
+   * @param trusted is the script run from a trusted macro.
+   * @return true if the context is taken from and returned to the pool.
+   */
+  private static boolean isPooled(boolean trusted) {
+    return trusted && EventQueue.isDispatchThread();
+  }
+
+  /**
+   * Returns a context for an anonymous script, reusing an idle one if the context can be reused.
+   *
+   * @param trusted is the script run from a trusted macro.
+   * @return the context.
+   */
+  private PooledContext borrowContext(boolean trusted) {
+    if (!isPooled(trusted)) {
+      return new PooledContext(makeContext(), null, contextGeneration);
+    }
+    PooledContext pc;
+    while ((pc = contextPool.poll()) != null) {
+      if (pc.generation() == contextGeneration) {
+        return pc;
+      }
+      pc.context().close();
+    }
+    Context context = cbuilder.build();
+    Value recordGlobals = context.eval(getSource(CLEAN_UP_SCRIPT));
+    registerAPIObjects(context);
+    return new PooledContext(context, recordGlobals.execute(), contextGeneration);
+  }
+
+  /**
+   * Returns a context to the pool after an anonymous script, removing the globals the script
+   * added. Contexts that are not reused, that do not fit in the pool, or that the script changed in
+   * a way that can not be cleaned up, such as by replacing or patching a built-in, are closed. A
+   * context that a macro was registered from is left open for the macro, and is not reused.
+   *
+   * @param pc the context.
+   * @param jc the context the script ran in.
+   */
+  private void returnContext(PooledContext pc, JSContext jc) {
+    if (JSMacro.isContextInUse(jc)) {
+      return;
+    }
+    boolean clean = false;
+    if (pc.cleanUp() != null
+        && pc.generation() == contextGeneration
+        && contextPool.size() < MAX_POOLED_CONTEXTS) {
+      try {
+        clean = pc.cleanUp().execute().asBoolean();
+      } catch (PolyglotException e) {
+        log.debug("Unable to clean up JavaScript context", e);
+      }
+    }
+    if (clean) {
+      contextPool.push(pc);
+    } else {
+      pc.context().close();
     }
   }
 }
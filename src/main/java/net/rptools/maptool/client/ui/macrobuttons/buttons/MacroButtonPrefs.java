@@ -23,6 +23,7 @@
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.ui.MacroButtonHotKeyManager;
 import net.rptools.maptool.model.MacroButtonProperties;
+import net.rptools.maptool.model.MacroLabelIndex;
 
 /**
  * Class that is responsible for storing global macro buttons' data in the registry (on Windows that
@@ -50,6 +51,12 @@ public class MacroButtonPrefs {
 
   private static final String FORMAT_STRING = "%010d";
 
+  /** The Global macros read from the preferences for label lookups, or null if not read yet. */
+  private static List<MacroButtonProperties> indexedButtonProperties;
+
+  /** Index of the labels of {@link #indexedButtonProperties}. */
+  private static final MacroLabelIndex macroLabelIndex = new MacroLabelIndex();
+
   public MacroButtonPrefs() {}
 
   /**
@@ -129,6 +136,7 @@ public static void savePreferences(MacroButtonProperties properties, boolean res
       prefs.putBoolean(PREF_ALLOW_PLAYER_EDITS, properties.getAllowPlayerEdits());
       prefs.put(PREF_TOOLTIP, properties.getToolTip());
       prefs.flush();
+      invalidateLabelIndex();
       if (resetFrame) {
         MapTool.getFrame().getGlobalPanel().reset();
       }
@@ -277,6 +285,26 @@ public static List<MacroButtonProperties> getButtonProperties() {
     return buttonProperties;
   }
 
+  /**
+   * Returns the first Global macro with the label. The Global macros are only read from the
+   * preferences again after they have been changed.
+   *
+   * @param label the label of the macro.
+   * @return the macro, or null if there is no Global macro with the label.
+   */
+  public static synchronized MacroButtonProperties getButtonProperties(String label) {
+    if (indexedButtonProperties == null) {
+      indexedButtonProperties = getButtonProperties();
+    }
+    return macroLabelIndex.get(label, indexedButtonProperties);
+  }
+
+  /** Marks the Global macros read for label lookups as out of date. */
+  private static synchronized void invalidateLabelIndex() {
+    indexedButtonProperties = null;
+    macroLabelIndex.invalidate();
+  }
+
   public static int getNextIndex() {
     return ++maxIndex;
   }
@@ -291,6 +319,7 @@ public static void delete(MacroButtonProperties properties) {
     } catch (BackingStoreException e) {
       MapTool.showError("Problem when removing a Global macro?!", e);
     }
+    invalidateLabelIndex();
     MapTool.getFrame().getGlobalPanel().reset();
   }
 
@@ -301,5 +330,6 @@ public static void deletePanel() {
     } catch (BackingStoreException e) {
       MapTool.showError("Problem when removing a Global macro?!", e);
     }
+    invalidateLabelIndex();
   }
 }
@@ -0,0 +1,178 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import javax.annotation.Nullable;
+import javax.swing.SwingUtilities;
+import net.rptools.lib.swing.ImageLabel;
+import net.rptools.maptool.util.GraphicsUtil;
+
+/**
+ * Cache of rendered boxed strings, as drawn by {@link GraphicsUtil#drawBoxedString}, shared by all
+ * token name plates and {@link net.rptools.maptool.model.Label}s.
+ *
+ * <p>The images are keyed by their content: the text, the font, the label style and the text
+ * rendering hints. They never have to be invalidated, a change of any of these simply uses another
+ * entry, and the least recently used entries are dropped once the cache is full. Labels are drawn at
+ * a fixed screen size so the zoom level is not part of the key.
+ */
+public final class LabelImageCache {
+  /** The maximum number of images held by the cache. */
+  private static final int MAX_CACHED_IMAGES = 2000;
+
+  /**
+   * The key of a cached image.
+   *
+   * @param text the first, or only, line of text.
+   * @param secondText the second line of text, or null.
+   * @param font the font.
+   * @param background the label box style.
+   * @param foreground the text color.
+   * @param antialiasing the value of the text anti-aliasing hint.
+   */
+  private record Key(
+      String text,
+      @Nullable String secondText,
+      Font font,
+      ImageLabel background,
+      Color foreground,
+      Object antialiasing) {}
+
+  private static final Cache<Key, BufferedImage> cache =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_IMAGES).build();
+
+  private LabelImageCache() {}
+
+  /**
+   * Returns the image of a single boxed string. The image is the size of the box drawn by {@link
+   * GraphicsUtil#drawBoxedString}.
+   *
+   * @param g the graphics the image will be drawn on, for the font and rendering hints.
+   * @param text the text.
+   * @param background the label box style.
+   * @param foreground the text color.
+   * @return the image of the boxed string.
+   */
+  public static BufferedImage getBoxedString(
+      Graphics2D g, String text, ImageLabel background, Color foreground) {
+    return getImage(g, text, null, background, foreground);
+  }
+
+  /**
+   * Returns the image of a token name plate: the name with, if there is one, the label in a second
+   * box below it.
+   *
+   * @param g the graphics the image will be drawn on, for the font and rendering hints.
+   * @param name the name of the token.
+   * @param label the label of the token, or null.
+   * @param background the label box style.
+   * @param foreground the text color.
+   * @return the image of the name plate.
+   */
+  public static BufferedImage getNamePlate(
+      Graphics2D g,
+      String name,
+      @Nullable String label,
+      ImageLabel background,
+      Color foreground) {
+    if (label != null && label.trim().isEmpty()) {
+      label = null;
+    }
+    return getImage(g, name, label, background, foreground);
+  }
+
+  /** Removes all images from the cache. */
+  public static void flush() {
+    cache.invalidateAll();
+  }
+
+  private static BufferedImage getImage(
+      Graphics2D g,
+      String text,
+      @Nullable String secondText,
+      ImageLabel background,
+      Color foreground) {
+    if (text == null) {
+      text = "";
+    }
+    Key key =
+        new Key(
+            text,
+            secondText,
+            g.getFont(),
+            background,
+            foreground,
+            g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING));
+    BufferedImage image = cache.getIfPresent(key);
+    if (image == null) {
+      image = render(g, key);
+      cache.put(key, image);
+    }
+    return image;
+  }
+
+  private static BufferedImage render(Graphics2D g, Key key) {
+    FontMetrics fm = g.getFontMetrics();
+    int width = SwingUtilities.computeStringWidth(fm, key.text()) + GraphicsUtil.BOX_PADDINGX * 2;
+    int boxHeight = fm.getHeight() + GraphicsUtil.BOX_PADDINGY * 2;
+    int height = boxHeight;
+
+    if (key.secondText() != null) {
+      // Double the image height for two boxed strings.
+      height = boxHeight * 2;
+      int secondWidth =
+          SwingUtilities.computeStringWidth(fm, key.secondText()) + GraphicsUtil.BOX_PADDINGX * 2;
+      width = Math.max(width, secondWidth);
+    }
+
+    BufferedImage image = new BufferedImage(width, height, Transparency.TRANSLUCENT);
+    Graphics2D imageG = image.createGraphics();
+    try {
+      imageG.setFont(key.font()); // Match font used in the main graphics context.
+      imageG.setRenderingHints(g.getRenderingHints()); // Match rendering style.
+
+      if (key.secondText() != null) {
+        GraphicsUtil.drawBoxedString(
+            imageG,
+            key.secondText(),
+            width / 2,
+            height - (boxHeight / 2),
+            SwingUtilities.CENTER,
+            key.background(),
+            key.foreground());
+      }
+      GraphicsUtil.drawBoxedString(
+          imageG,
+          key.text(),
+          width / 2,
+          boxHeight / 2,
+          SwingUtilities.CENTER,
+          key.background(),
+          key.foreground());
+    } finally {
+      imageG.dispose();
+    }
+    return image;
+  }
+}
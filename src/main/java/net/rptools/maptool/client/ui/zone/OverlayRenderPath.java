@@ -0,0 +1,195 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Shape;
+import java.awt.Transparency;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.annotation.Nullable;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The way the light and aura overlays are rendered.
+ *
+ * <p>The {@link #SOFTWARE} path draws the overlays into {@link BufferedImage}s with the custom
+ * {@link BlendingComposite} and {@link SolidColorComposite}, which run per pixel in Java code. The
+ * {@link #ACCELERATED} path draws the overlays that have an exact {@link AlphaComposite} equivalent
+ * into a {@link VolatileOverlayBuffer}, which Java2D can run on the graphics card. The other
+ * overlays are always drawn by the software path.
+ *
+ * <p>The path is selected once, the first time it is needed, by timing both paths on a test
+ * overlay and picking the faster one.
+ */
+public enum OverlayRenderPath {
+  SOFTWARE,
+  ACCELERATED;
+
+  private static final Logger log = LogManager.getLogger(OverlayRenderPath.class);
+
+  /** Size of the test overlay used to time the paths. */
+  private static final int TEST_SIZE = 512;
+
+  /** Number of lights drawn on the test overlay. */
+  private static final int TEST_LIGHTS = 40;
+
+  /** Number of times each path is timed, after a warm up. */
+  private static final int TEST_ITERATIONS = 5;
+
+  /** The selected path, or null if not selected yet. */
+  private static volatile OverlayRenderPath selected;
+
+  /**
+   * Returns the render path to use, timing the paths on the first call.
+   *
+   * @param gc the graphics configuration the overlays will be drawn for, may be null.
+   * @return the render path.
+   */
+  public static OverlayRenderPath get(@Nullable GraphicsConfiguration gc) {
+    if (selected == null) {
+      synchronized (OverlayRenderPath.class) {
+        if (selected == null) {
+          selected = select(gc);
+        }
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Returns the {@link AlphaComposite} the accelerated path uses in place of a composite from the
+   * software path, or null if the composite has no exact accelerated equivalent.
+   *
+   * <p>{@link SolidColorComposite} is replaced by {@link AlphaComposite#Src} with the solid color
+   * as paint. The blends of {@link BlendingComposite} have no equivalent, as no {@link
+   * AlphaComposite} rule brightens or darkens the colors of overlapping lights.
+   *
+   * @param composite the software composite.
+   * @return the accelerated composite, or null.
+   */
+  @Nullable
+  public static AlphaComposite getAcceleratedComposite(Composite composite) {
+    if (composite instanceof SolidColorComposite) {
+      return AlphaComposite.Src;
+    }
+    return null;
+  }
+
+  /**
+   * Times both paths and returns the faster one. The software path is returned if the accelerated
+   * path is not available or fails.
+   *
+   * @param gc the graphics configuration to test, may be null.
+   * @return the faster render path.
+   */
+  private static OverlayRenderPath select(@Nullable GraphicsConfiguration gc) {
+    if (gc == null || GraphicsEnvironment.isHeadless()) {
+      log.info("Overlay render path: " + SOFTWARE + " (no graphics configuration)");
+      return SOFTWARE;
+    }
+    try {
+      List<Shape> lights = new ArrayList<>(TEST_LIGHTS);
+      Random random = new Random(TEST_LIGHTS);
+      for (int i = 0; i < TEST_LIGHTS; i++) {
+        double size = TEST_SIZE / 8.0 + random.nextDouble() * TEST_SIZE / 2.0;
+        lights.add(
+            new Ellipse2D.Double(
+                random.nextDouble() * TEST_SIZE - size / 2,
+                random.nextDouble() * TEST_SIZE - size / 2,
+                size,
+                size));
+      }
+      Color paint = new Color(0, 0, 0, 255);
+      SolidColorComposite composite = new SolidColorComposite(paint.getRGB());
+      BufferedImage target = gc.createCompatibleImage(TEST_SIZE, TEST_SIZE, Transparency.OPAQUE);
+      VolatileOverlayBuffer buffer = new VolatileOverlayBuffer();
+
+      Runnable software =
+          () -> {
+            BufferedImage overlay =
+                new BufferedImage(TEST_SIZE, TEST_SIZE, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = overlay.createGraphics();
+            g.setComposite(composite);
+            g.setPaint(paint);
+            lights.forEach(g::fill);
+            g.dispose();
+            Graphics2D tg = target.createGraphics();
+            tg.drawImage(overlay, 0, 0, null);
+            tg.dispose();
+          };
+      Runnable accelerated =
+          () -> {
+            Graphics2D tg = target.createGraphics();
+            buffer.render(
+                tg,
+                gc,
+                TEST_SIZE,
+                TEST_SIZE,
+                1.0f,
+                g -> {
+                  g.setComposite(getAcceleratedComposite(composite));
+                  g.setPaint(paint);
+                  lights.forEach(g::fill);
+                });
+            tg.dispose();
+          };
+
+      long softwareTime = time(software);
+      long acceleratedTime = time(accelerated);
+      buffer.flush();
+
+      OverlayRenderPath path = acceleratedTime < softwareTime ? ACCELERATED : SOFTWARE;
+      log.info(
+          "Overlay render path: "
+              + path
+              + " (software "
+              + softwareTime / 1000
+              + "us, accelerated "
+              + acceleratedTime / 1000
+              + "us)");
+      return path;
+    } catch (Exception e) {
+      log.warn("Unable to test the accelerated overlay render path", e);
+      return SOFTWARE;
+    }
+  }
+
+  /**
+   * Returns the best time, in nanoseconds, of running a task after one warm up run.
+   *
+   * @param task the task to time.
+   * @return the best time.
+   */
+  private static long time(Runnable task) {
+    task.run();
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < TEST_ITERATIONS; i++) {
+      long start = System.nanoTime();
+      task.run();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+}
@@ -30,6 +30,11 @@ public SolidColorComposite(int argb) {
     this.colour = argb;
   }
 
+  /** @return the colour rendered by this composite, as ARGB. */
+  public int getColour() {
+    return colour;
+  }
+
   @Override
   public CompositeContext createContext(
       ColorModel srcColorModel, ColorModel dstColorModel, RenderingHints hints) {
@@ -0,0 +1,244 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import javax.annotation.Nullable;
+import net.rptools.lib.MD5Key;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Cache of token images that have been downsampled to the size they are drawn at on screen.
+ *
+ * <p>Drawing a large portrait into a small footprint makes Java2D resample the full image on every
+ * frame, and the result is both slow and aliased. This cache keeps high quality renderings that are
+ * already close to the on screen size, so the per frame cost is a small residual scale. The
+ * renderings are created on a background thread; until one is ready {@link #getScaledImage} returns
+ * {@code null} and the caller should draw the source image as before.
+ *
+ * <p>Zoom levels are grouped into buckets so that small zoom changes reuse the same rendering.
+ * Renderings are always made at the top of the bucket, so the residual scale applied when drawing is
+ * a downscale of less than one bucket step.
+ */
+public class TokenImageCache {
+  private static final Logger log = LogManager.getLogger(TokenImageCache.class);
+
+  /** The number of zoom buckets for each doubling of the zoom level. */
+  private static final int ZOOM_BUCKETS_PER_DOUBLING = 4;
+
+  /** The maximum number of pixels held by the cache, 128 MB of ARGB data. */
+  private static final long MAX_CACHED_PIXELS = 32L * 1024 * 1024;
+
+  /** The background thread that creates the renderings. */
+  private static final ExecutorService scalingThreadPool =
+      Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("token-image-scaler-%d")
+              .setDaemon(true)
+              .build());
+
+  /**
+   * The key of a cached rendering.
+   *
+   * @param assetId the id of the asset the token image comes from.
+   * @param width the width of the rendering, i.e. the footprint width at the zoom bucket.
+   * @param height the height of the rendering, i.e. the footprint height at the zoom bucket.
+   * @param zoomBucket the zoom bucket the rendering was made for.
+   * @param flippedX if the image is flipped horizontally.
+   * @param flippedY if the image is flipped vertically.
+   * @param flippedIso if the image is flipped to isometric.
+   * @param opacity the opacity baked into the rendering, in percent.
+   */
+  private record Key(
+      MD5Key assetId,
+      int width,
+      int height,
+      int zoomBucket,
+      boolean flippedX,
+      boolean flippedY,
+      boolean flippedIso,
+      int opacity) {}
+
+  /** The scaled renderings, weighed by their pixel count. */
+  private final Cache<Key, BufferedImage> cache =
+      CacheBuilder.newBuilder()
+          .maximumWeight(MAX_CACHED_PIXELS)
+          .weigher((Key k, BufferedImage v) -> v.getWidth() * v.getHeight())
+          .build();
+
+  /** The keys of renderings that have been queued but are not finished yet. */
+  private final Set<Key> pending = ConcurrentHashMap.newKeySet();
+
+  /** Called when a rendering has been completed, normally to repaint. */
+  private final Runnable onImageScaled;
+
+  /**
+   * Creates a new {@code TokenImageCache}.
+   *
+   * @param onImageScaled called from the background thread each time a rendering is finished.
+   */
+  public TokenImageCache(Runnable onImageScaled) {
+    this.onImageScaled = onImageScaled;
+  }
+
+  /**
+   * Returns the zoom bucket for a zoom level. The bucket is rounded up so that its scale is never
+   * smaller than the zoom level.
+   *
+   * @param scale the zoom level.
+   * @return the zoom bucket.
+   */
+  public static int getZoomBucket(double scale) {
+    return (int) Math.ceil(Math.log(scale) / Math.log(2) * ZOOM_BUCKETS_PER_DOUBLING - 1e-9);
+  }
+
+  /**
+   * Returns the zoom level at the top of a zoom bucket.
+   *
+   * @param zoomBucket the zoom bucket.
+   * @return the zoom level the renderings of the bucket are made for.
+   */
+  public static double getBucketScale(int zoomBucket) {
+    return Math.pow(2, (double) zoomBucket / ZOOM_BUCKETS_PER_DOUBLING);
+  }
+
+  /**
+   * Returns the pre-scaled rendering of a token image, or {@code null} if there is none yet. If
+   * there is none and the image would be downsampled when drawn, a rendering is queued on the
+   * background thread.
+   *
+   * @param assetId the id of the asset of the token image.
+   * @param source the (already flipped) token image.
+   * @param imageScaleX the horizontal scale that will be applied to {@code source} when drawn.
+   * @param imageScaleY the vertical scale that will be applied to {@code source} when drawn.
+   * @param zoom the current zoom level of the renderer.
+   * @param flippedX if the image is flipped horizontally.
+   * @param flippedY if the image is flipped vertically.
+   * @param flippedIso if the image is flipped to isometric.
+   * @param opacity the opacity the image will be drawn with.
+   * @return the rendering, or {@code null} if the caller should draw {@code source}.
+   */
+  @Nullable
+  public BufferedImage getScaledImage(
+      MD5Key assetId,
+      BufferedImage source,
+      double imageScaleX,
+      double imageScaleY,
+      double zoom,
+      boolean flippedX,
+      boolean flippedY,
+      boolean flippedIso,
+      float opacity) {
+    if (assetId == null || zoom <= 0) {
+      return null;
+    }
+    int zoomBucket = getZoomBucket(zoom);
+    double bucketFactor = getBucketScale(zoomBucket) / zoom;
+    int width = (int) Math.ceil(source.getWidth() * imageScaleX * bucketFactor);
+    int height = (int) Math.ceil(source.getHeight() * imageScaleY * bucketFactor);
+
+    // Only downsampling benefits from pre-scaling
+    if (width < 1 || height < 1 || width > source.getWidth() || height > source.getHeight()) {
+      return null;
+    }
+    if (width == source.getWidth() && height == source.getHeight()) {
+      return null;
+    }
+
+    Key key =
+        new Key(
+            assetId,
+            width,
+            height,
+            zoomBucket,
+            flippedX,
+            flippedY,
+            flippedIso,
+            Math.round(opacity * 100));
+    BufferedImage scaled = cache.getIfPresent(key);
+    if (scaled == null && pending.add(key)) {
+      try {
+        scalingThreadPool.execute(
+            () -> {
+              try {
+                cache.put(key, scale(source, key.width(), key.height(), key.opacity() / 100f));
+              } catch (Exception e) {
+                log.warn("Unable to scale token image " + assetId, e);
+              } finally {
+                pending.remove(key);
+              }
+              onImageScaled.run();
+            });
+      } catch (RejectedExecutionException e) {
+        pending.remove(key);
+      }
+    }
+    return scaled;
+  }
+
+  /** Removes all renderings from the cache. */
+  public void flush() {
+    cache.invalidateAll();
+  }
+
+  /**
+   * Downsamples an image by repeatedly halving it with bilinear interpolation, which gives results
+   * close to an area average without its cost. The opacity is applied in the final step.
+   *
+   * @param source the image to downsample.
+   * @param width the target width, not larger than the source width.
+   * @param height the target height, not larger than the source height.
+   * @param opacity the opacity to apply.
+   * @return the downsampled image.
+   */
+  private static BufferedImage scale(BufferedImage source, int width, int height, float opacity) {
+    BufferedImage current = source;
+    int w = source.getWidth();
+    int h = source.getHeight();
+    do {
+      w = Math.max(w / 2, width);
+      h = Math.max(h / 2, height);
+      boolean last = w == width && h == height;
+
+      BufferedImage next = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+      Graphics2D g = next.createGraphics();
+      try {
+        g.setRenderingHint(
+            RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        if (last && opacity < 1.0f) {
+          g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+        }
+        g.drawImage(current, 0, 0, w, h, null);
+      } finally {
+        g.dispose();
+      }
+      current = next;
+    } while (w != width || h != height);
+    return current;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.VolatileImage;
+import java.util.function.Consumer;
+
+/**
+ * A reusable offscreen overlay kept in a {@link VolatileImage}, so that drawing into it and
+ * compositing it onto the zone can be done by the graphics card.
+ *
+ * <p>The contents of a {@code VolatileImage} can be lost at any time, so the overlay is drawn again
+ * from scratch each time it is rendered and the drawing is repeated if the contents were lost while
+ * drawing.
+ */
+class VolatileOverlayBuffer {
+  /** The number of times rendering is attempted before giving up on a frame. */
+  private static final int MAX_ATTEMPTS = 3;
+
+  private VolatileImage image;
+
+  /**
+   * Clears the overlay, draws into it and then draws the overlay onto the target.
+   *
+   * @param target the graphics to draw the overlay onto, at 0, 0.
+   * @param gc the graphics configuration to create the overlay for.
+   * @param width the width of the overlay.
+   * @param height the height of the overlay.
+   * @param opacity the opacity the overlay is drawn onto the target with.
+   * @param painter draws the contents of the overlay. It is given a graphics with the {@link
+   *     AlphaComposite#SrcOver} composite.
+   * @return false if the contents kept getting lost and the overlay was not drawn.
+   */
+  public boolean render(
+      Graphics2D target,
+      GraphicsConfiguration gc,
+      int width,
+      int height,
+      float opacity,
+      Consumer<Graphics2D> painter) {
+    for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+      if (image == null
+          || image.getWidth() != width
+          || image.getHeight() != height
+          || image.validate(gc) == VolatileImage.IMAGE_INCOMPATIBLE) {
+        flush();
+        image = gc.createCompatibleVolatileImage(width, height, Transparency.TRANSLUCENT);
+      }
+
+      Graphics2D g = image.createGraphics();
+      try {
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, width, height);
+        g.setComposite(AlphaComposite.SrcOver);
+        painter.accept(g);
+      } finally {
+        g.dispose();
+      }
+      if (image.contentsLost()) {
+        continue;
+      }
+
+      Composite previousComposite = target.getComposite();
+      target.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+      target.drawImage(image, 0, 0, null);
+      target.setComposite(previousComposite);
+      return true;
+    }
+    return false;
+  }
+
+  /** Releases the resources of the overlay. */
+  public void flush() {
+    if (image != null) {
+      image.flush();
+      image = null;
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client.ui.zone;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.awt.geom.Area;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import net.rptools.maptool.model.LightSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Prepares the expensive, zone space parts of a frame of a {@link ZoneRenderer} off the EDT.
+ *
+ * <p>The visible area and the lights of a view are calculated by the {@link ZoneView} on a
+ * background thread, from a {@link ZoneView.Snapshot} of the zone taken on the EDT, and published
+ * as an immutable {@link PreparedFrame}. The renderer draws with the latest frame prepared for its
+ * view; when the frame is out of date because the zone changed, the renderer keeps drawing the
+ * previous frame while a new one is prepared, and is repainted once the new one is ready.
+ *
+ * <p>The latest frames of the last few views are kept, so that switching between views does not
+ * wait for a frame. The frame of a view that has none yet is prepared in the background too, while
+ * the renderer draws the frame of the previous view if it has the same role, as it shows no more
+ * than the player may see. Otherwise, such as when a GM views the map as a player, or if preparing
+ * in the background failed, the frame is prepared on the calling thread.
+ */
+public class ZoneRenderPreparer {
+  private static final Logger log = LogManager.getLogger(ZoneRenderPreparer.class);
+
+  /** The thread frames are prepared on, shared by all renderers. */
+  private static final ExecutorService preparationThreadPool =
+      Executors.newSingleThreadExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("zone-render-preparer-%d")
+              .setDaemon(true)
+              .build());
+
+  /**
+   * The prepared, zone space, data of a frame. The areas and lists must not be modified.
+   *
+   * @param generation the generation of the zone state the frame was prepared from.
+   * @param cacheVersion the version of the {@link ZoneView} caches the frame was prepared from.
+   * @param view the player view the frame was prepared for.
+   * @param visibleArea the visible area of the view.
+   * @param drawableLights the normal lights of the view.
+   * @param drawableAuras the auras.
+   */
+  public record PreparedFrame(
+      long generation,
+      long cacheVersion,
+      PlayerView view,
+      Area visibleArea,
+      List<DrawableLight> drawableLights,
+      List<DrawableLight> drawableAuras) {}
+
+  /** The number of views the latest frames are kept for. */
+  private static final int MAX_VIEWS = 8;
+
+  private final ZoneView zoneView;
+
+  /** Called when a new frame has been prepared in the background, normally to repaint. */
+  private final Runnable onFramePrepared;
+
+  /** Incremented each time the zone state the frames are prepared from changes. */
+  private long generation;
+
+  /** The most recently prepared frame of each view, the least recently used first. */
+  private final Map<PlayerView, PreparedFrame> latestFrames =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<PlayerView, PreparedFrame> eldest) {
+          return size() > MAX_VIEWS;
+        }
+      };
+
+  /** The frame that was drawn last. */
+  private PreparedFrame drawnFrame;
+
+  /** Whether preparing a frame in the background failed, so the next one is prepared on the EDT. */
+  private boolean backgroundFailed;
+
+  /** The view a background preparation is queued or running for, or null. */
+  private PlayerView pendingView;
+
+  /** The generation the queued or running background preparation is for. */
+  private long pendingGeneration = -1;
+
+  /**
+   * Creates a new {@code ZoneRenderPreparer}.
+   *
+   * @param zoneView the zone view to calculate the vision and lights with.
+   * @param onFramePrepared called from the background thread when a frame has been prepared.
+   */
+  public ZoneRenderPreparer(ZoneView zoneView, Runnable onFramePrepared) {
+    this.zoneView = zoneView;
+    this.onFramePrepared = onFramePrepared;
+  }
+
+  /**
+   * Marks the prepared frames as out of date. Must be called whenever the vision or lights may have
+   * changed.
+   */
+  public synchronized void invalidate() {
+    generation++;
+  }
+
+  /**
+   * Returns the frame to draw for the view. If the latest frame of the view is out of date, or
+   * there is none, a new one is prepared in the background and the latest frame, or the frame of
+   * the previous view of the same role, is returned. Otherwise the frame is prepared on the calling
+   * thread. Must be called on the EDT.
+   *
+   * @param view the player view to draw.
+   * @return the frame to draw.
+   */
+  public PreparedFrame getFrame(PlayerView view) {
+    long currentGeneration;
+    PreparedFrame frame;
+    synchronized (this) {
+      currentGeneration = generation;
+      frame = latestFrames.get(view);
+      if (frame == null
+          && drawnFrame != null
+          && drawnFrame.view().getRole() == view.getRole()
+          && !backgroundFailed) {
+        frame = drawnFrame;
+      }
+    }
+    if (frame != null) {
+      // The lights of a frame are read from the caches, which the ZoneView may have flushed without
+      // the frame being invalidated
+      if (!frame.view().equals(view)
+          || frame.generation() != currentGeneration
+          || frame.cacheVersion() != zoneView.getCacheVersion()) {
+        prepareInBackground(view, currentGeneration);
+      }
+    } else {
+      frame = prepare(view, currentGeneration, zoneView.snapshot(view, false));
+      synchronized (this) {
+        backgroundFailed = false;
+        latestFrames.put(view, frame);
+      }
+    }
+    synchronized (this) {
+      drawnFrame = frame;
+    }
+    return frame;
+  }
+
+  /**
+   * Queues the preparation of a frame, unless one is already queued for the view and generation.
+   *
+   * @param view the view to prepare the frame for.
+   * @param frameGeneration the generation of the zone state.
+   */
+  private void prepareInBackground(PlayerView view, long frameGeneration) {
+    synchronized (this) {
+      if (pendingGeneration == frameGeneration && view.equals(pendingView)) {
+        return;
+      }
+      pendingView = view;
+      pendingGeneration = frameGeneration;
+    }
+    ZoneView.Snapshot snapshot = zoneView.snapshot(view, true);
+    preparationThreadPool.execute(
+        () -> {
+          try {
+            publish(prepare(view, frameGeneration, snapshot));
+          } catch (RuntimeException e) {
+            // Prepare the next frame on the EDT instead.
+            log.warn("Unable to prepare frame in the background", e);
+            synchronized (this) {
+              latestFrames.remove(view);
+              backgroundFailed = true;
+            }
+          } finally {
+            synchronized (this) {
+              if (pendingGeneration == frameGeneration && view.equals(pendingView)) {
+                pendingView = null;
+                pendingGeneration = -1;
+              }
+            }
+          }
+          onFramePrepared.run();
+        });
+  }
+
+  /**
+   * Makes a frame prepared in the background the latest frame of its view, unless a frame from a
+   * later generation was already published.
+   *
+   * @param frame the frame to publish.
+   */
+  private synchronized void publish(PreparedFrame frame) {
+    PreparedFrame latestFrame = latestFrames.get(frame.view());
+    if (latestFrame == null || latestFrame.generation() <= frame.generation()) {
+      latestFrames.put(frame.view(), frame);
+    }
+  }
+
+  /**
+   * Calculates the frame of a view.
+   *
+   * @param view the player view.
+   * @param frameGeneration the generation of the zone state.
+   * @param snapshot the snapshot of the zone to calculate the frame from.
+   * @return the prepared frame.
+   */
+  private PreparedFrame prepare(
+      PlayerView view, long frameGeneration, ZoneView.Snapshot snapshot) {
+    Area visibleArea = new Area(zoneView.getVisibleArea(view, snapshot));
+
+    List<DrawableLight> drawableLights = new ArrayList<>(zoneView.getDrawableLights(view));
+    drawableLights.removeIf(light -> light.getType() != LightSource.Type.NORMAL);
+
+    List<DrawableLight> drawableAuras =
+        new ArrayList<>(zoneView.getLights(LightSource.Type.AURA, snapshot));
+
+    return new PreparedFrame(
+        frameGeneration,
+        snapshot.version(),
+        view,
+        visibleArea,
+        List.copyOf(drawableLights),
+        List.copyOf(drawableAuras));
+  }
+}
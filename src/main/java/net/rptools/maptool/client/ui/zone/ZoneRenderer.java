@@ -100,6 +100,9 @@ public class ZoneRenderer extends JComponent
 
   /** The ZoneView constructed from the zone. */
   private final ZoneView zoneView;
+  private final ZoneRenderPreparer renderPreparer;
+  /** The frame prepared by the {@link #renderPreparer} that is currently being drawn. */
+  private ZoneRenderPreparer.PreparedFrame preparedFrame;
 
   private Scale zoneScale;
   private final DrawableRenderer backgroundDrawableRenderer = new PartitionedDrawableRenderer();
@@ -127,6 +130,7 @@ public class ZoneRenderer extends JComponent
   private final Map<GUID, BufferedImage> labelRenderingCache = new HashMap<GUID, BufferedImage>();
   private final Map<Token, BufferedImage> flipImageMap = new HashMap<Token, BufferedImage>();
   private final Map<Token, BufferedImage> flipIsoImageMap = new HashMap<Token, BufferedImage>();
+  private final TokenImageCache tokenImageCache;
   private Token tokenUnderMouse;
 
   private ScreenPoint pointUnderMouse;
@@ -139,6 +143,11 @@ public class ZoneRenderer extends JComponent
    * needs to be flushed in the case of switching views
    */
   private boolean flushFog = true;
+  /**
+   * Set when the whole fog buffer has to be rendered again, rather than only the parts where the
+   * exposed or visible areas changed. E.g. when the scale, view or fog settings change.
+   */
+  private boolean fullFogRepaint = true;
 
   /** In screen space */
   private Area exposedFogArea;
@@ -186,10 +195,12 @@ public ZoneRenderer(Zone zone) {
     // The interval, in milliseconds, during which calls to repaint() will be debounced.
     int repaintDebounceInterval = 1000 / AppPreferences.getFrameRateCap();
     repaintDebouncer = new DebounceExecutor(repaintDebounceInterval, this::repaint);
+    tokenImageCache = new TokenImageCache(repaintDebouncer::dispatch);
 
     setFocusable(true);
     setZoneScale(new Scale());
     zoneView = new ZoneView(zone);
+    renderPreparer = new ZoneRenderPreparer(zoneView, repaintDebouncer::dispatch);
 
     // add(MapTool.getFrame().getFxPanel(), PositionalLayout.Position.NW);
 
@@ -310,6 +321,7 @@ public void setZoneScale(Scale scale) {
           if (Scale.PROPERTY_SCALE.equals(evt.getPropertyName())) {
             tokenLocationCache.clear();
             flushFog = true;
+            fullFogRepaint = true;
           }
           if (Scale.PROPERTY_OFFSET.equals(evt.getPropertyName())) {
             // flushFog = true;
@@ -679,6 +691,7 @@ public void flush(Token token) {
     drawableAuras = null;
 
     zoneView.flush(token);
+    renderPreparer.invalidate();
   }
 
   /** @return the ZoneView */
@@ -700,9 +713,12 @@ public void flush() {
     flushDrawableRenderer();
     flipImageMap.clear();
     flipIsoImageMap.clear();
+    tokenImageCache.flush();
+    lightOverlayBuffer.flush();
     fogBuffer = null;
     drawableLights = null;
     drawableAuras = null;
+    renderPreparer.invalidate();
 
     isLoaded = false;
   }
@@ -712,13 +728,16 @@ public void flushLight() {
     drawableLights = null;
     drawableAuras = null;
     zoneView.flush();
+    renderPreparer.invalidate();
     repaintDebouncer.dispatch();
   }
 
-  /** Set flushFog to true, visibleScreenArea to null, and repaints */
+  /** Set flushFog and fullFogRepaint to true, visibleScreenArea to null, and repaints */
   public void flushFog() {
     flushFog = true;
+    fullFogRepaint = true;
     visibleScreenArea = null;
+    renderPreparer.invalidate();
     repaintDebouncer.dispatch();
   }
 
@@ -1060,6 +1079,7 @@ public Rectangle zoneExtents(PlayerView view) {
    */
   public void invalidateCurrentViewCache() {
     flushFog = true;
+    fullFogRepaint = true;
     drawableLights = null;
     drawableAuras = null;
     visibleScreenArea = null;
@@ -1068,6 +1088,10 @@ public void invalidateCurrentViewCache() {
     if (zoneView != null) {
       zoneView.flush();
     }
+    // Called from setZoneScale() in the constructor, before the preparer exists
+    if (renderPreparer != null) {
+      renderPreparer.invalidate();
+    }
   }
 
   /**
@@ -1137,10 +1161,20 @@ public void renderZone(Graphics2D g2d, PlayerView view) {
      */
     // @formatter:on
 
+    // The vision and lights are prepared off the EDT, use the latest prepared frame
+    timer.start("ZoneRenderer-getPreparedFrame");
+    ZoneRenderPreparer.PreparedFrame frame = renderPreparer.getFrame(view);
+    timer.stop("ZoneRenderer-getPreparedFrame");
+    if (frame != preparedFrame) {
+      preparedFrame = frame;
+      visibleScreenArea = null;
+      drawableLights = null;
+      drawableAuras = null;
+      flushFog = true;
+    }
+
     if (visibleScreenArea == null) {
-      timer.start("ZoneRenderer-getVisibleArea");
-      Area a = zoneView.getVisibleArea(view);
-      timer.stop("ZoneRenderer-getVisibleArea");
+      Area a = preparedFrame.visibleArea();
 
       timer.start("createTransformedArea");
       if (a != null && !a.isEmpty()) {
@@ -1428,8 +1462,8 @@ private enum LightOverlayClipStyle {
   private List<DrawableLight> drawableLights = null;
 
   /**
-   * Render the lights. Get the lights from drawableLightCache, combine them, put them in
-   * drawableLights, and draw them.
+   * Render the lights. Get the lights from the prepared frame, put them in drawableLights, and draw
+   * them.
    *
    * @param g the graphic 2D object
    * @param view the player view
@@ -1438,8 +1472,7 @@ private void renderLights(Graphics2D g, PlayerView view) {
     // Collect and organize lights
     timer.start("lights-1");
     if (drawableLights == null) {
-      drawableLights = new ArrayList<>(zoneView.getDrawableLights(view));
-      drawableLights.removeIf(light -> light.getType() != LightSource.Type.NORMAL);
+      drawableLights = preparedFrame.drawableLights();
     }
     final var darknessLights =
         drawableLights.stream().filter(light -> light.getLumens() < 0).toList();
@@ -1473,8 +1506,7 @@ private void renderLights(Graphics2D g, PlayerView view) {
   private List<DrawableLight> drawableAuras;
 
   /**
-   * Get the list of auras from lightSourceMap, combine them, store them in drawableAuras, and draw
-   * them.
+   * Get the list of auras from the prepared frame, store them in drawableAuras, and draw them.
    *
    * @param g the Graphics2D object.
    * @param view the player view.
@@ -1483,7 +1515,7 @@ private void renderAuras(Graphics2D g, PlayerView view) {
     // Setup
     timer.start("auras-1");
     if (drawableAuras == null) {
-      drawableAuras = new ArrayList<>(zoneView.getLights(LightSource.Type.AURA));
+      drawableAuras = preparedFrame.drawableAuras();
     }
     timer.stop("auras-1");
 
@@ -1498,9 +1530,16 @@ private void renderAuras(Graphics2D g, PlayerView view) {
     timer.stop("auras-2");
   }
 
+  /** Reusable overlay for the accelerated light and aura rendering path. */
+  private final VolatileOverlayBuffer lightOverlayBuffer = new VolatileOverlayBuffer();
+
   /**
    * Combines a set of lights into an image that is then rendered into the zone.
    *
+   * <p>If the {@link OverlayRenderPath#ACCELERATED} path was selected and the composite has an
+   * accelerated equivalent, the lights are combined in a {@link VolatileOverlayBuffer}; otherwise
+   * they are combined in a {@link BufferedImage} with the composite itself.
+   *
    * @param g The graphics object used to render the zone.
    * @param composite The composite used to blend lights together.
    * @param clipStyle How to clip the overlay relative to the visible area. Set to null for no extra
@@ -1516,32 +1555,78 @@ private void renderLightOverlay(
       List<DrawableLight> lights,
       Paint defaultPaint,
       float overlayOpacity) {
-    // Set up a buffer image for lights to be drawn onto before the map
-    timer.start("light-overlay-1");
-    BufferedImage lightOverlay =
-        new BufferedImage(
-            g.getClip().getBounds().width,
-            g.getClip().getBounds().height,
-            BufferedImage.TYPE_INT_ARGB);
-    Graphics2D newG = lightOverlay.createGraphics();
+    if (lights.isEmpty()) {
+      // Nothing to draw, the overlay would be fully transparent
+      return;
+    }
 
+    timer.start("light-overlay-1");
+    int width = g.getClip().getBounds().width;
+    int height = g.getClip().getBounds().height;
+    Area clip = null;
     if (clipStyle != null && visibleScreenArea != null) {
-      Area clip = new Area(g.getClip());
+      clip = new Area(g.getClip());
       switch (clipStyle) {
         case CLIP_TO_VISIBLE_AREA -> clip.intersect(visibleScreenArea);
         case CLIP_TO_NOT_VISIBLE_AREA -> clip.subtract(visibleScreenArea);
       }
-      newG.setClip(clip);
     }
 
-    timer.stop("light-overlay-1");
-
-    timer.start("light-overlay-2");
     AffineTransform af = new AffineTransform();
     af.translate(getViewOffsetX(), getViewOffsetY());
     af.scale(getScale(), getScale());
-    newG.setTransform(af);
+    timer.stop("light-overlay-1");
+
+    GraphicsConfiguration gc = getGraphicsConfiguration();
+    AlphaComposite acceleratedComposite = OverlayRenderPath.getAcceleratedComposite(composite);
+    if (gc != null
+        && acceleratedComposite != null
+        && OverlayRenderPath.get(gc) == OverlayRenderPath.ACCELERATED) {
+      // A solid color composite ignores the paint of the lights
+      Paint solidPaint =
+          composite instanceof SolidColorComposite solid
+              ? new Color(solid.getColour(), true)
+              : null;
+      final Area overlayClip = clip;
+
+      timer.start("light-overlay-accelerated");
+      boolean rendered =
+          lightOverlayBuffer.render(
+              g,
+              gc,
+              width,
+              height,
+              overlayOpacity,
+              newG -> {
+                if (overlayClip != null) {
+                  newG.setClip(overlayClip);
+                }
+                newG.setTransform(af);
+                newG.setComposite(acceleratedComposite);
+                for (var light : lights) {
+                  if (solidPaint != null) {
+                    newG.setPaint(solidPaint);
+                  } else {
+                    newG.setPaint(
+                        light.getPaint() != null ? light.getPaint().getPaint() : defaultPaint);
+                  }
+                  newG.fill(light.getArea());
+                }
+              });
+      timer.stop("light-overlay-accelerated");
+      if (rendered) {
+        return;
+      }
+    }
 
+    // Set up a buffer image for lights to be drawn onto before the map
+    timer.start("light-overlay-2");
+    BufferedImage lightOverlay = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D newG = lightOverlay.createGraphics();
+    if (clip != null) {
+      newG.setClip(clip);
+    }
+    newG.setTransform(af);
     newG.setComposite(composite);
     timer.stop("light-overlay-2");
 
@@ -1677,15 +1762,16 @@ private void renderLabels(Graphics2D g, PlayerView view) {
       ScreenPoint sp = ScreenPoint.fromZonePointRnd(this, zp.x, zp.y);
       Rectangle bounds = null;
       if (label.isShowBackground()) {
-        bounds =
-            GraphicsUtil.drawBoxedString(
-                g,
-                label.getLabel(),
-                (int) sp.x,
-                (int) sp.y,
-                SwingUtilities.CENTER,
-                GraphicsUtil.GREY_LABEL,
-                label.getForegroundColor());
+        // Same placement as GraphicsUtil.drawBoxedString(), from the shared cached image
+        BufferedImage labelImage =
+            LabelImageCache.getBoxedString(
+                g, label.getLabel(), GraphicsUtil.GREY_LABEL, label.getForegroundColor());
+        int strWidth = labelImage.getWidth() - GraphicsUtil.BOX_PADDINGX * 2;
+        int strHeight = labelImage.getHeight() - GraphicsUtil.BOX_PADDINGY * 2;
+        int x = (int) sp.x - strWidth / 2 - GraphicsUtil.BOX_PADDINGX;
+        int y = (int) sp.y - strHeight / 2 - GraphicsUtil.BOX_PADDINGY;
+        g.drawImage(labelImage, x, y, null);
+        bounds = new Rectangle(x, y, labelImage.getWidth(), labelImage.getHeight());
       } else {
         FontMetrics fm = g.getFontMetrics();
         int strWidth = SwingUtilities.computeStringWidth(fm, label.getLabel());
@@ -1708,106 +1794,73 @@ private void renderLabels(Graphics2D g, PlayerView view) {
   Integer fogX = null;
   Integer fogY = null;
 
+  /** Spare buffer the fog is copied into when panning, swapped with {@link #fogBuffer}. */
+  private BufferedImage fogShiftBuffer;
+
+  /** The exposed area, in zone space, that was last rendered into the {@link #fogBuffer}. */
+  private Area lastFogExposedArea;
+
+  /** The visible area, in zone space, that was last rendered into the {@link #fogBuffer}. */
+  private Area lastFogVisibleArea;
+
+  /**
+   * Renders the fog of war. The fog is kept in {@link #fogBuffer} and only the parts of it that
+   * changed are rendered again: when panning the existing buffer is shifted and only the uncovered
+   * strips are rendered, and when the exposed or visible areas change only the bounds of the
+   * difference with the previously rendered areas is rendered. The whole buffer is rendered when
+   * {@link #fullFogRepaint} is set or the size of the component changed.
+   *
+   * @param g the graphics to draw the fog on.
+   * @param view the player view to render the fog for.
+   * @return the exposed area of the view, or null if the fog did not need to be rendered.
+   */
   private Area renderFog(Graphics2D g, PlayerView view) {
     Dimension size = getSize();
-    Area fogClip = new Area(new Rectangle(0, 0, size.width, size.height));
+    // The parts of the buffer to render again, the whole buffer on a full repaint
+    Area fogClip = new Area();
     Area combined = null;
 
-    // Optimization for panning
-    if (!flushFog
-        && fogX != null
-        && fogY != null
-        && (fogX != getViewOffsetX() || fogY != getViewOffsetY())) {
-      // This optimization does not seem to keep the alpha channel correctly, and sometimes leaves
-      // lines on some graphics boards, we'll leave it out for now
-      // if (Math.abs(fogX - getViewOffsetX()) < size.width && Math.abs(fogY - getViewOffsetY()) <
-      // size.height) {
-      // int deltaX = getViewOffsetX() - fogX;
-      // int deltaY = getViewOffsetY() - fogY;
-      //
-      // Graphics2D buffG = fogBuffer.createGraphics();
-      //
-      // buffG.setComposite(AlphaComposite.Src);
-      // buffG.copyArea(0, 0, size.width, size.height, deltaX, deltaY);
-      // buffG.dispose();
-      //
-      // fogClip = new Area();
-      // if (deltaX < 0) {
-      // fogClip.add(new Area(new Rectangle(size.width+deltaX, 0, -deltaX, size.height)));
-      // } else if (deltaX > 0){
-      // fogClip.add(new Area(new Rectangle(0, 0, deltaX, size.height)));
-      // }
-      //
-      // if (deltaY < 0) {
-      // fogClip.add(new Area(new Rectangle(0, size.height + deltaY, size.width, -deltaY)));
-      // } else if (deltaY > 0) {
-      // fogClip.add(new Area(new Rectangle(0, 0, size.width, deltaY)));
-      // }
-      // }
-      flushFog = true;
-    }
     boolean cacheNotValid =
         (fogBuffer == null
             || fogBuffer.getWidth() != size.width
             || fogBuffer.getHeight() != size.height);
+
+    // Optimization for panning, shift what we already have and render the uncovered strips
+    if (fogX != null
+        && fogY != null
+        && (fogX != getViewOffsetX() || fogY != getViewOffsetY())) {
+      int deltaX = getViewOffsetX() - fogX;
+      int deltaY = getViewOffsetY() - fogY;
+      if (!cacheNotValid
+          && !fullFogRepaint
+          && Math.abs(deltaX) < size.width
+          && Math.abs(deltaY) < size.height) {
+        timer.start("renderFog-shift");
+        shiftFogBuffer(deltaX, deltaY);
+        timer.stop("renderFog-shift");
+
+        if (deltaX < 0) {
+          fogClip.add(new Area(new Rectangle(size.width + deltaX, 0, -deltaX, size.height)));
+        } else if (deltaX > 0) {
+          fogClip.add(new Area(new Rectangle(0, 0, deltaX, size.height)));
+        }
+        if (deltaY < 0) {
+          fogClip.add(new Area(new Rectangle(0, size.height + deltaY, size.width, -deltaY)));
+        } else if (deltaY > 0) {
+          fogClip.add(new Area(new Rectangle(0, 0, size.width, deltaY)));
+        }
+      } else {
+        fullFogRepaint = true;
+      }
+      flushFog = true;
+    }
     timer.start("renderFog");
     if (flushFog || cacheNotValid) {
       fogX = getViewOffsetX();
       fogY = getViewOffsetY();
-
-      boolean newImage = false;
-      if (cacheNotValid) {
-        newImage = true;
-        timer.start("renderFog-allocateBufferedImage");
-        fogBuffer =
-            new BufferedImage(
-                size.width,
-                size.height,
-                view.isGMView() ? Transparency.TRANSLUCENT : Transparency.BITMASK);
-        timer.stop("renderFog-allocateBufferedImage");
-      }
-      Graphics2D buffG = fogBuffer.createGraphics();
-      buffG.setClip(fogClip);
-      SwingUtil.useAntiAliasing(buffG);
-
-      // XXX Is this even needed? Immediately below is another call to fillRect() with the same
-      // dimensions!
-      if (!newImage) {
-        timer.start("renderFog-clearOldImage");
-        // Composite oldComposite = buffG.getComposite();
-        buffG.setComposite(AlphaComposite.Clear);
-        // buffG.fillRect(0, 0, size.width, size.height); // Jamz: Removed as it's called again
-        // below
-        // buffG.setComposite(oldComposite);
-        timer.stop("renderFog-clearOldImage");
-      }
-      timer.start("renderFog-fill");
-      // Fill
       double scale = getScale();
-      buffG.setPaint(zone.getFogPaint().getPaint(fogX, fogY, scale));
-      buffG.setComposite(
-          AlphaComposite.getInstance(AlphaComposite.SRC, view.isGMView() ? .6f : 1f)); // JFJ this
-      // fixes the
-      // GM
-      // exposed
-      // area
-      // view.
-      buffG.fillRect(0, 0, size.width, size.height);
-      timer.stop("renderFog-fill");
-
-      // Cut out the exposed area
-      AffineTransform af = new AffineTransform();
-      af.translate(fogX, fogY);
-      af.scale(scale, scale);
 
-      buffG.setTransform(af);
-      // buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC, view.isGMView() ? .6f :
-      // 1f));
-      buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.CLEAR));
-
-      timer.start("renderFog-visibleArea");
-      Area visibleArea = zoneView.getVisibleArea(view);
-      timer.stop("renderFog-visibleArea");
+      Area visibleArea = preparedFrame.visibleArea();
 
       String msg = null;
       if (timer.isEnabled()) {
@@ -1818,79 +1871,174 @@ private Area renderFog(Graphics2D g, PlayerView view) {
       combined = zone.getExposedArea(view);
       timer.stop(msg);
 
-      timer.start("renderFogArea");
-      Area exposedArea = null;
-      Area tempArea = new Area();
-      boolean combinedView =
-          !zoneView.isUsingVision()
-              || MapTool.isPersonalServer()
-              || !MapTool.getServerPolicy().isUseIndividualFOW()
-              || view.isGMView();
-
-      if (view.getTokens() != null) {
-        // if there are tokens selected combine the areas, then, if individual FOW is enabled
-        // we pass the combined exposed area to build the soft FOW and visible area.
-        for (Token tok : view.getTokens()) {
-          ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
-          exposedArea = meta.getExposedAreaHistory();
-          tempArea.add(new Area(exposedArea));
-        }
-        if (combinedView) {
-          // combined = zone.getExposedArea(view);
-          buffG.fill(combined);
-          renderFogArea(buffG, view, combined, visibleArea);
-          renderFogOutline(buffG, view, combined);
-        } else {
-          // 'combined' already includes the area encompassed by 'tempArea', so just
-          // use 'combined' instead in this block of code?
-          tempArea.add(combined);
-          buffG.fill(tempArea);
-          renderFogArea(buffG, view, tempArea, visibleArea);
-          renderFogOutline(buffG, view, tempArea);
-        }
+      timer.start("renderFog-exposedArea");
+      Area fogArea = getFogExposedArea(view, combined);
+      timer.stop("renderFog-exposedArea");
+
+      // Cut out the exposed area
+      AffineTransform af = new AffineTransform();
+      af.translate(fogX, fogY);
+      af.scale(scale, scale);
+
+      boolean fullRepaint = cacheNotValid || fullFogRepaint || lastFogExposedArea == null;
+      if (fullRepaint) {
+        fogClip = new Area(new Rectangle(0, 0, size.width, size.height));
       } else {
-        // No tokens selected, so if we are using Individual FOW, we build up all the owned tokens
-        // exposed area's to build the soft FOW.
-        if (combinedView) {
-          if (combined.isEmpty()) {
-            combined = zone.getExposedArea();
-          }
-          buffG.fill(combined);
-          renderFogArea(buffG, view, combined, visibleArea);
-          renderFogOutline(buffG, view, combined);
-        } else {
-          Area myCombined = new Area();
-          List<Token> myToks = zone.getTokens();
-          for (Token tok : myToks) {
-            if (!AppUtil.playerOwns(
-                tok)) { // Only here if !isGMview() so should the tokens already be in
-              // PlayerView.getTokens()?
-              continue;
-            }
-            ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
-            exposedArea = meta.getExposedAreaHistory();
-            myCombined.add(new Area(exposedArea));
-          }
-          buffG.fill(myCombined);
-          renderFogArea(buffG, view, myCombined, visibleArea);
-          renderFogOutline(buffG, view, myCombined);
+        timer.start("renderFog-damage");
+        Rectangle damage = getFogDamage(fogArea, visibleArea, af);
+        if (!damage.isEmpty()) {
+          fogClip.add(new Area(damage));
         }
+        timer.stop("renderFog-damage");
       }
-      // renderFogArea(buffG, view, combined, visibleArea);
-      timer.stop("renderFogArea");
 
-      // timer.start("renderFogOutline");
-      // renderFogOutline(buffG, view, combined);
-      // timer.stop("renderFogOutline");
+      if (cacheNotValid) {
+        timer.start("renderFog-allocateBufferedImage");
+        fogBuffer =
+            new BufferedImage(
+                size.width,
+                size.height,
+                view.isGMView() ? Transparency.TRANSLUCENT : Transparency.BITMASK);
+        fogShiftBuffer = null;
+        timer.stop("renderFog-allocateBufferedImage");
+      }
+
+      if (!fogClip.isEmpty()) {
+        Graphics2D buffG = fogBuffer.createGraphics();
+        buffG.setClip(fogClip);
+        SwingUtil.useAntiAliasing(buffG);
+
+        timer.start("renderFog-fill");
+        // Fill
+        buffG.setPaint(zone.getFogPaint().getPaint(fogX, fogY, scale));
+        // JFJ this fixes the GM exposed area view.
+        buffG.setComposite(
+            AlphaComposite.getInstance(AlphaComposite.SRC, view.isGMView() ? .6f : 1f));
+        buffG.fillRect(0, 0, size.width, size.height);
+        timer.stop("renderFog-fill");
+
+        buffG.setTransform(af);
+        buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.CLEAR));
+
+        timer.start("renderFogArea");
+        buffG.fill(fogArea);
+        renderFogArea(buffG, view, fogArea, visibleArea);
+        renderFogOutline(buffG, view, fogArea);
+        timer.stop("renderFogArea");
 
-      buffG.dispose();
+        buffG.dispose();
+      }
+      lastFogExposedArea = fogArea;
+      lastFogVisibleArea = visibleArea;
       flushFog = false;
+      fullFogRepaint = false;
     }
     timer.stop("renderFog");
     g.drawImage(fogBuffer, 0, 0, this);
     return combined;
   }
 
+  /**
+   * Returns the area, in zone space, that is cut out of the fog for the view.
+   *
+   * @param view the player view.
+   * @param combined the exposed area of the view as returned by {@link Zone#getExposedArea}.
+   * @return the area to cut out of the fog.
+   */
+  private Area getFogExposedArea(PlayerView view, Area combined) {
+    boolean combinedView =
+        !zoneView.isUsingVision()
+            || MapTool.isPersonalServer()
+            || !MapTool.getServerPolicy().isUseIndividualFOW()
+            || view.isGMView();
+
+    if (view.getTokens() != null) {
+      // if there are tokens selected combine the areas, then, if individual FOW is enabled
+      // we pass the combined exposed area to build the soft FOW and visible area.
+      if (combinedView) {
+        return combined;
+      }
+      Area tempArea = new Area();
+      for (Token tok : view.getTokens()) {
+        ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
+        tempArea.add(new Area(meta.getExposedAreaHistory()));
+      }
+      // 'combined' already includes the area encompassed by 'tempArea', so just
+      // use 'combined' instead in this block of code?
+      tempArea.add(combined);
+      return tempArea;
+    }
+
+    // No tokens selected, so if we are using Individual FOW, we build up all the owned tokens
+    // exposed area's to build the soft FOW.
+    if (combinedView) {
+      return combined.isEmpty() ? zone.getExposedArea() : combined;
+    }
+    Area myCombined = new Area();
+    for (Token tok : zone.getTokens()) {
+      // Only here if !isGMview() so should the tokens already be in PlayerView.getTokens()?
+      if (!AppUtil.playerOwns(tok)) {
+        continue;
+      }
+      ExposedAreaMetaData meta = zone.getExposedAreaMetaData(tok.getExposedAreaGUID());
+      myCombined.add(new Area(meta.getExposedAreaHistory()));
+    }
+    return myCombined;
+  }
+
+  /**
+   * Returns the screen space bounds of the parts of the fog that changed since the fog buffer was
+   * last rendered, i.e. the difference between the old and new exposed and visible areas. The
+   * bounds are grown a little to cover anti-aliasing and the vision outline.
+   *
+   * @param fogArea the exposed area, in zone space, that is about to be rendered.
+   * @param visibleArea the visible area, in zone space, that is about to be rendered.
+   * @param af the transform from zone to screen space.
+   * @return the bounds of the changes, empty if nothing changed.
+   */
+  private Rectangle getFogDamage(Area fogArea, Area visibleArea, AffineTransform af) {
+    Area damage = new Area(fogArea);
+    damage.exclusiveOr(lastFogExposedArea);
+
+    Area visibleDamage = visibleArea == null ? new Area() : new Area(visibleArea);
+    if (lastFogVisibleArea != null) {
+      visibleDamage.exclusiveOr(lastFogVisibleArea);
+    }
+    damage.add(visibleDamage);
+    if (damage.isEmpty()) {
+      return new Rectangle();
+    }
+    Rectangle bounds = af.createTransformedShape(damage.getBounds2D()).getBounds();
+    bounds.grow(2, 2);
+    return bounds;
+  }
+
+  /**
+   * Moves the contents of the {@link #fogBuffer} by the given amount. The uncovered strips are
+   * left with stale content and must be rendered again.
+   *
+   * @param deltaX the horizontal distance to move the fog by.
+   * @param deltaY the vertical distance to move the fog by.
+   */
+  private void shiftFogBuffer(int deltaX, int deltaY) {
+    if (fogShiftBuffer == null
+        || fogShiftBuffer.getWidth() != fogBuffer.getWidth()
+        || fogShiftBuffer.getHeight() != fogBuffer.getHeight()
+        || fogShiftBuffer.getType() != fogBuffer.getType()) {
+      fogShiftBuffer =
+          new BufferedImage(fogBuffer.getWidth(), fogBuffer.getHeight(), fogBuffer.getType());
+    }
+    // Copying into another image with SRC keeps the alpha channel, which copyArea() did not
+    Graphics2D shiftG = fogShiftBuffer.createGraphics();
+    shiftG.setComposite(AlphaComposite.Src);
+    shiftG.drawImage(fogBuffer, deltaX, deltaY, null);
+    shiftG.dispose();
+
+    BufferedImage previous = fogBuffer;
+    fogBuffer = fogShiftBuffer;
+    fogShiftBuffer = previous;
+  }
+
   private void renderFogArea(
       final Graphics2D buffG, final PlayerView view, Area softFog, Area visibleArea) {
     if (zoneView.isUsingVision()) {
@@ -1904,7 +2052,7 @@ private void renderFogArea(
         buffG.setComposite(AlphaComposite.getInstance(AlphaComposite.CLEAR));
 
         Shape oldClip = buffG.getClip();
-        buffG.setClip(softFog);
+        buffG.clip(softFog);
         buffG.fill(visibleArea);
         buffG.setClip(oldClip);
       } else {
@@ -1913,7 +2061,7 @@ private void renderFogArea(
       }
     } else {
       buffG.fill(softFog);
-      buffG.setClip(softFog);
+      buffG.clip(softFog);
     }
   }
 
@@ -2318,7 +2466,8 @@ protected void showBlockedMoves(Graphics2D g, PlayerView view, Set<SelectionSet>
                     (int) tokBounds.getWidth(),
                     (int) tokBounds.getHeight());
               }
-              showLabels = showLabels || zoneView.getVisibleArea(view).intersects(tokenRectangle);
+              showLabels =
+                  showLabels || preparedFrame.visibleArea().intersects(tokenRectangle);
             }
           } else {
             boolean hasFog = zone.hasFog();
@@ -2970,7 +3119,8 @@ protected void renderTokens(
 
       timer.start("tokenlist-1b");
       // get token image, using image table if present
-      BufferedImage image = getTokenImage(token);
+      MD5Key imageAssetId = getTokenImageAssetId(token);
+      BufferedImage image = ImageManager.getImage(imageAssetId, this);
       timer.stop("tokenlist-1b");
 
       timer.start("tokenlist-1c");
@@ -3205,18 +3355,21 @@ protected void renderTokens(
         // facing defaults to down, or -90 degrees
       }
       // Snap
+      double imageScaleX;
+      double imageScaleY;
       if (token.isSnapToScale()) {
-        at.scale(
-            ((double) imgSize.width) / workImage.getWidth(),
-            ((double) imgSize.height) / workImage.getHeight());
-        at.scale(getScale(), getScale());
+        imageScaleX = ((double) imgSize.width) / workImage.getWidth() * getScale();
+        imageScaleY = ((double) imgSize.height) / workImage.getHeight() * getScale();
       } else {
         if (token.getShape() == TokenShape.FIGURE) {
-          at.scale(scaledWidth / workImage.getWidth(), scaledWidth / workImage.getWidth());
+          imageScaleX = scaledWidth / workImage.getWidth();
+          imageScaleY = imageScaleX;
         } else {
-          at.scale(scaledWidth / workImage.getWidth(), scaledHeight / workImage.getHeight());
+          imageScaleX = scaledWidth / workImage.getWidth();
+          imageScaleY = scaledHeight / workImage.getHeight();
         }
       }
+      at.scale(imageScaleX, imageScaleY);
       timer.stop("tokenlist-6");
 
       // Render Halo
@@ -3230,6 +3383,24 @@ protected void renderTokens(
       float opacity = token.getTokenOpacity();
       if (isTokenMoving(token)) opacity = opacity / 2.0f;
 
+      // Use the pre-scaled rendering if it is ready, the placeholder images are never cached
+      timer.start("tokenlist-6a");
+      BufferedImage scaledImage = null;
+      if (image != ImageManager.TRANSFERING_IMAGE && image != ImageManager.BROKEN_IMAGE) {
+        scaledImage =
+            tokenImageCache.getScaledImage(
+                imageAssetId,
+                workImage,
+                imageScaleX,
+                imageScaleY,
+                scale,
+                token.isFlippedX(),
+                token.isFlippedY(),
+                token.isFlippedIso(),
+                opacity);
+      }
+      timer.stop("tokenlist-6a");
+
       // Finally render the token image
       timer.start("tokenlist-7");
       if (!isGMView && zoneView.isUsingVision() && (token.getShape() == Token.TokenShape.FIGURE)) {
@@ -3238,24 +3409,14 @@ protected void renderTokens(
           // the cell intersects visible area so
           if (zone.getGrid().checkCenterRegion(cb.getBounds(), visibleScreenArea)) {
             // if we can see the centre, draw the whole token
-            Composite oldComposite = tokenG.getComposite();
-            if (opacity < 1.0f) {
-              tokenG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-            }
-            tokenG.drawImage(workImage, at, this);
-            tokenG.setComposite(oldComposite);
+            drawTokenImage(tokenG, workImage, scaledImage, at, opacity);
             // g.draw(cb); // debugging
           } else {
             // else draw the clipped token
             Area cellArea = new Area(visibleScreenArea);
             cellArea.intersect(cb);
             tokenG.setClip(cellArea);
-            Composite oldComposite = tokenG.getComposite();
-            if (opacity < 1.0f) {
-              tokenG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-            }
-            tokenG.drawImage(workImage, at, this);
-            tokenG.setComposite(oldComposite);
+            drawTokenImage(tokenG, workImage, scaledImage, at, opacity);
           }
         }
       } else if (!isGMView && zoneView.isUsingVision() && token.isAlwaysVisible()) {
@@ -3265,12 +3426,7 @@ protected void renderTokens(
           // if we can see a portion of the stamp/token, draw the whole thing, defaults to 2/9ths
           if (zone.getGrid()
               .checkRegion(cb.getBounds(), visibleScreenArea, token.getAlwaysVisibleTolerance())) {
-            Composite oldComposite = tokenG.getComposite();
-            if (opacity < 1.0f) {
-              tokenG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-            }
-            tokenG.drawImage(workImage, at, this);
-            tokenG.setComposite(oldComposite);
+            drawTokenImage(tokenG, workImage, scaledImage, at, opacity);
           } else {
             // else draw the clipped stamp/token
             // This will only show the part of the token that does not have VBL on it
@@ -3278,22 +3434,12 @@ protected void renderTokens(
             Area cellArea = new Area(visibleScreenArea);
             cellArea.intersect(cb);
             tokenG.setClip(cellArea);
-            Composite oldComposite = tokenG.getComposite();
-            if (opacity < 1.0f) {
-              tokenG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-            }
-            tokenG.drawImage(workImage, at, this);
-            tokenG.setComposite(oldComposite);
+            drawTokenImage(tokenG, workImage, scaledImage, at, opacity);
           }
         }
       } else {
         // fallthrough normal token rendered against visible area
-        Composite oldComposite = tokenG.getComposite();
-        if (opacity < 1.0f) {
-          tokenG.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
-        }
-        tokenG.drawImage(workImage, at, this);
-        tokenG.setComposite(oldComposite);
+        drawTokenImage(tokenG, workImage, scaledImage, at, opacity);
       }
       timer.stop("tokenlist-7");
 
@@ -3565,59 +3711,9 @@ protected void renderTokens(
         if (isGMView && token.getGMName() != null && !StringUtil.isEmpty(token.getGMName())) {
           name += " (" + token.getGMName() + ")";
         }
-        if (!view.equals(lastView) || !labelRenderingCache.containsKey(tokId)) {
-          // if ((lastView != null && !lastView.equals(view)) ||
-          // !labelRenderingCache.containsKey(tokId)) {
-          boolean hasLabel = false;
-
-          // Calculate image dimensions
-          FontMetrics fm = g.getFontMetrics();
-          Font f = g.getFont();
-          int strWidth = SwingUtilities.computeStringWidth(fm, name);
-
-          int width = strWidth + GraphicsUtil.BOX_PADDINGX * 2;
-          int height = fm.getHeight() + GraphicsUtil.BOX_PADDINGY * 2;
-          int labelHeight = height;
-
-          // If token has a label (in addition to name).
-          if (token.getLabel() != null && token.getLabel().trim().length() > 0) {
-            hasLabel = true;
-            height = height * 2; // Double the image height for two boxed strings.
-            int labelWidth =
-                SwingUtilities.computeStringWidth(fm, token.getLabel())
-                    + GraphicsUtil.BOX_PADDINGX * 2;
-            width = Math.max(width, labelWidth);
-          }
-
-          // Set up the image
-          BufferedImage labelRender = new BufferedImage(width, height, Transparency.TRANSLUCENT);
-          Graphics2D gLabelRender = labelRender.createGraphics();
-          gLabelRender.setFont(f); // Match font used in the main graphics context.
-          gLabelRender.setRenderingHints(g.getRenderingHints()); // Match rendering style.
-
-          // Draw name and label to image
-          if (hasLabel) {
-            GraphicsUtil.drawBoxedString(
-                gLabelRender,
-                token.getLabel(),
-                width / 2,
-                height - (labelHeight / 2),
-                SwingUtilities.CENTER,
-                background,
-                foreground);
-          }
-          GraphicsUtil.drawBoxedString(
-              gLabelRender,
-              name,
-              width / 2,
-              labelHeight / 2,
-              SwingUtilities.CENTER,
-              background,
-              foreground);
-
-          // Add image to cache
-          labelRenderingCache.put(tokId, labelRender);
-        }
+        // The image is shared by all name plates with the same content
+        labelRenderingCache.put(
+            tokId, LabelImageCache.getNamePlate(g, name, token.getLabel(), background, foreground));
         // Create LabelRenderer using cached label.
         Rectangle r = bounds.getBounds();
         delayRendering(
@@ -3672,6 +3768,39 @@ protected void renderTokens(
     visibleTokenSet = Collections.unmodifiableSet(tempVisTokens);
   }
 
+  /**
+   * Draws a token image. If a pre-scaled rendering from the {@link TokenImageCache} is available it
+   * is drawn instead, with the transform adjusted for its size; the rendering already has the
+   * opacity applied.
+   *
+   * @param g the graphics to draw on.
+   * @param image the token image.
+   * @param scaledImage the pre-scaled rendering of the image, or null.
+   * @param at the transform from image to screen space.
+   * @param opacity the opacity of the token.
+   */
+  private void drawTokenImage(
+      Graphics2D g,
+      BufferedImage image,
+      @Nullable BufferedImage scaledImage,
+      AffineTransform at,
+      float opacity) {
+    if (scaledImage != null) {
+      AffineTransform scaledAt = new AffineTransform(at);
+      scaledAt.scale(
+          (double) image.getWidth() / scaledImage.getWidth(),
+          (double) image.getHeight() / scaledImage.getHeight());
+      g.drawImage(scaledImage, scaledAt, this);
+      return;
+    }
+    Composite oldComposite = g.getComposite();
+    if (opacity < 1.0f) {
+      g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, opacity));
+    }
+    g.drawImage(image, at, this);
+    g.setComposite(oldComposite);
+  }
+
   /**
    * Returns whether the token should be clipped, depending on its bounds, the view, and the visible
    * screen area.
@@ -4695,8 +4824,18 @@ public void addTokens(
    * @return BufferedImage
    */
   private BufferedImage getTokenImage(Token token) {
-    BufferedImage image = null;
-    // Get the basic image
+    // Adds this as observer so we can repaint once the image is ready. Fixes #1700.
+    return ImageManager.getImage(getTokenImageAssetId(token), this);
+  }
+
+  /**
+   * Returns the asset id of the image to draw for the token, using the image table if the token
+   * has one and has a facing.
+   *
+   * @param token the token to get the image asset id for.
+   * @return the asset id of the image.
+   */
+  private MD5Key getTokenImageAssetId(Token token) {
     if (token.getHasImageTable() && token.hasFacing() && token.getImageTableName() != null) {
       LookupTable lookupTable =
           MapTool.getCampaign().getLookupTableMap().get(token.getImageTableName());
@@ -4704,19 +4843,14 @@ private BufferedImage getTokenImage(Token token) {
         try {
           LookupEntry result = lookupTable.getLookup(token.getFacing().toString());
           if (result != null) {
-            image = ImageManager.getImage(result.getImageId(), this);
+            return result.getImageId();
           }
         } catch (ParserException p) {
           // do nothing
         }
       }
     }
-
-    if (image == null) {
-      // Adds this as observer so we can repaint once the image is ready. Fixes #1700.
-      image = ImageManager.getImage(token.getImageAssetId(), this);
-    }
-    return image;
+    return token.getImageAssetId();
   }
 
   /*
@@ -14,6 +14,7 @@
  */
 package net.rptools.maptool.client.ui.zone;
 
+import com.google.common.base.Suppliers;
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Area;
@@ -22,14 +23,26 @@
 import java.util.*;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import net.rptools.maptool.client.AppUtil;
 import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.model.player.LocalPlayer;
 import net.rptools.maptool.client.ui.zone.vbl.AreaTree;
 import net.rptools.maptool.model.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-/** Responsible for calculating lights and vision. */
+/**
+ * Responsible for calculating lights and vision.
+ *
+ * <p>The vision is calculated from a {@link Snapshot} of the zone, which is taken on the EDT, so
+ * that it can be calculated off the EDT by the {@link ZoneRenderPreparer} while the zone, the
+ * campaign and the player change.
+ * The caches are guarded by the ZoneView itself, which is only held while they are read or
+ * updated and not during the calculation. A result is only cached if the caches were not flushed
+ * since the snapshot it was calculated from was taken.
+ */
 public class ZoneView implements ModelChangeListener {
   private static final Logger log = LogManager.getLogger(ZoneView.class);
 
@@ -56,6 +69,9 @@ public class ZoneView implements ModelChangeListener {
   private final Map<Zone.TopologyType, AreaTree> topologyTrees =
       new EnumMap<>(Zone.TopologyType.class);
 
+  /** Incremented each time the caches are flushed or the light sources change. */
+  private long cacheVersion;
+
   /** Lumen for personal vision (darkvision). */
   private static final int LUMEN_VISION = 100;
 
@@ -70,6 +86,201 @@ public ZoneView(Zone zone) {
     zone.addModelChangeListener(this);
   }
 
+  /**
+   * The state the vision is calculated from, taken on the EDT. A snapshot taken for another thread
+   * holds copies of the tokens, so that the vision can be calculated from it while the zone
+   * changes. Otherwise it holds the tokens of the zone, and is only used on the EDT.
+   *
+   * @param version the version of the caches when the snapshot was taken.
+   * @param lightSourceTokens the tokens with light sources, by type of light.
+   * @param sightTokens the tokens with sight.
+   * @param viewTokens the copies of the tokens of the player view, by id, if the tokens are copied.
+   * @param topologyTrees the trees of the topology that blocks vision, built when first needed.
+   * @param visionType the vision type of the zone.
+   * @param lightSources the light sources of the campaign, by id.
+   * @param sightTypes the sight types of the campaign, by name.
+   * @param defaultSightType the sight type of the tokens with a sight type the campaign lacks.
+   * @param player the player the vision is calculated for.
+   */
+  record Snapshot(
+      long version,
+      Map<LightSource.Type, List<Token>> lightSourceTokens,
+      List<Token> sightTokens,
+      Map<GUID, Token> viewTokens,
+      Map<Zone.TopologyType, Supplier<AreaTree>> topologyTrees,
+      Zone.VisionType visionType,
+      Map<GUID, LightSource> lightSources,
+      Map<String, SightType> sightTypes,
+      SightType defaultSightType,
+      PlayerState player) {
+    private List<Token> getLightSourceTokens(LightSource.Type type) {
+      return lightSourceTokens.getOrDefault(type, List.of());
+    }
+
+    private AreaTree getTopologyTree(Zone.TopologyType topologyType) {
+      return topologyTrees.get(topologyType).get();
+    }
+
+    private Token getViewToken(Token token) {
+      return viewTokens.getOrDefault(token.getId(), token);
+    }
+
+    private LightSource getLightSource(GUID lightSourceId) {
+      return lightSources.get(lightSourceId);
+    }
+
+    /** The same as {@link Campaign#getSightType(String)}. */
+    private SightType getSightType(String type) {
+      return type != null && sightTypes.containsKey(type)
+          ? sightTypes.get(type)
+          : defaultSightType;
+    }
+  }
+
+  /**
+   * The state of the player that decides which tokens and lights they see.
+   *
+   * @param name the name of the player.
+   * @param gm whether the player is a GM.
+   * @param effectiveGM whether the player is a GM, and not viewing the map as a player.
+   * @param strictTokenManagement whether only the owners of a token can use it.
+   * @param checkOwnership whether a player only sees through the tokens they own.
+   * @param nonGMs the names of the players that are not GMs.
+   */
+  record PlayerState(
+      String name,
+      boolean gm,
+      boolean effectiveGM,
+      boolean strictTokenManagement,
+      boolean checkOwnership,
+      List<String> nonGMs) {
+    /** The same as {@link AppUtil#playerOwns(Token)}. */
+    private boolean owns(Token token) {
+      return gm || !strictTokenManagement || token.isOwner(name);
+    }
+
+    /** The same as {@link AppUtil#ownedByOnePlayer(Token)}. */
+    private boolean ownedByOnePlayer(Token token) {
+      if (token.isOwnedByAll()) {
+        return true;
+      }
+      for (String owner : token.getOwners()) {
+        if (nonGMs.contains(owner)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Takes a snapshot of the state the vision is calculated from, holding the tokens of the zone.
+   * Must be called on the EDT, and only used there.
+   *
+   * @return the snapshot.
+   */
+  private Snapshot snapshot() {
+    return snapshot(null, false);
+  }
+
+  /**
+   * Takes a snapshot of the state the vision is calculated from. Must be called on the EDT.
+   *
+   * @param view the player view the vision is calculated for, if the tokens are copied.
+   * @param copyTokens whether to copy the tokens, so that the snapshot can be used on another
+   *     thread.
+   * @return the snapshot.
+   */
+  Snapshot snapshot(PlayerView view, boolean copyTokens) {
+    long version;
+    Map<LightSource.Type, List<Token>> lightSourceTokens = new EnumMap<>(LightSource.Type.class);
+    Map<GUID, Token> copies = new HashMap<>();
+    UnaryOperator<Token> snapshotToken =
+        copyTokens
+            ? token -> copies.computeIfAbsent(token.getId(), id -> new Token(token, true))
+            : UnaryOperator.identity();
+    synchronized (this) {
+      version = cacheVersion;
+      for (Entry<LightSource.Type, Set<GUID>> entry : lightSourceMap.entrySet()) {
+        List<Token> tokens = new ArrayList<>(entry.getValue().size());
+        for (GUID lightSourceTokenId : entry.getValue()) {
+          Token lightSourceToken = zone.getToken(lightSourceTokenId);
+          // Verify if the token still exists
+          if (lightSourceToken != null) {
+            tokens.add(snapshotToken.apply(lightSourceToken));
+          }
+        }
+        lightSourceTokens.put(entry.getKey(), tokens);
+      }
+    }
+    List<Token> sightTokens = new ArrayList<>();
+    for (Token token : zone.getTokensFiltered(t -> t.isToken() && t.getHasSight())) {
+      sightTokens.add(snapshotToken.apply(token));
+    }
+    Map<GUID, Token> viewTokens = new HashMap<>();
+    if (copyTokens && view != null && view.isUsingTokenView()) {
+      for (Token token : view.getTokens()) {
+        viewTokens.put(token.getId(), snapshotToken.apply(token));
+      }
+    }
+
+    Map<Zone.TopologyType, Supplier<AreaTree>> trees = new EnumMap<>(Zone.TopologyType.class);
+    for (var topologyType :
+        List.of(
+            Zone.TopologyType.WALL_VBL, Zone.TopologyType.HILL_VBL, Zone.TopologyType.PIT_VBL)) {
+      trees.put(topologyType, snapshotTopologyTree(topologyType, version));
+    }
+
+    Campaign campaign = MapTool.getCampaign();
+    Map<GUID, LightSource> lightSources = new HashMap<>();
+    for (Map<GUID, LightSource> map : campaign.getLightSourcesMap().values()) {
+      map.forEach(lightSources::putIfAbsent);
+    }
+    LocalPlayer player = MapTool.getPlayer();
+    PlayerState playerState =
+        new PlayerState(
+            player.getName(),
+            player.isGM(),
+            player.isEffectiveGM(),
+            MapTool.getServerPolicy().useStrictTokenManagement(),
+            MapTool.getServerPolicy().isUseIndividualViews() || MapTool.isPersonalServer(),
+            List.copyOf(MapTool.getNonGMs()));
+    return new Snapshot(
+        version,
+        lightSourceTokens,
+        sightTokens,
+        viewTokens,
+        trees,
+        zone.getVisionType(),
+        lightSources,
+        new HashMap<>(campaign.getSightTypeMap()),
+        campaign.getSightType(null),
+        playerState);
+  }
+
+  /**
+   * Returns the version of the caches, which changes each time they are flushed. A result
+   * calculated from a {@link Snapshot} of another version may not have been cached.
+   *
+   * @return the version.
+   */
+  synchronized long getCacheVersion() {
+    return cacheVersion;
+  }
+
+  /**
+   * Caches a result, unless the caches were flushed since the snapshot it was calculated from was
+   * taken.
+   *
+   * @param snapshot the snapshot the result was calculated from.
+   * @param store stores the result in the caches.
+   */
+  private synchronized void cache(Snapshot snapshot, Runnable store) {
+    if (snapshot.version() == cacheVersion) {
+      store.run();
+    }
+  }
+
   /**
    * Calculate the visible area of the view, cache it in visibleAreaMap, and return it
    *
@@ -77,10 +288,42 @@ public ZoneView(Zone zone) {
    * @return the visible area
    */
   public Area getVisibleArea(PlayerView view) {
-    calculateVisibleArea(view);
-    ZoneView.VisibleAreaMeta visible = visibleAreaMap.get(view);
+    Area visibleArea = getCachedVisibleArea(view);
+    return visibleArea != null ? visibleArea : getVisibleArea(view, snapshot());
+  }
+
+  /**
+   * Calculate the visible area of the view from a snapshot, cache it in visibleAreaMap, and return
+   * it.
+   *
+   * @param view the PlayerView
+   * @param snapshot the snapshot of the zone.
+   * @return the visible area
+   */
+  Area getVisibleArea(PlayerView view, Snapshot snapshot) {
+    Area visibleArea = getCachedVisibleArea(view);
+    if (visibleArea == null) {
+      visibleArea = calculateVisibleArea(view, snapshot);
+      VisibleAreaMeta meta = new VisibleAreaMeta();
+      meta.visibleArea = visibleArea;
+      cache(snapshot, () -> visibleAreaMap.put(view, meta));
+    }
+    return visibleArea;
+  }
 
-    return visible != null ? visible.visibleArea : new Area();
+  /**
+   * Returns the visible area of the view from visibleAreaMap. An empty area is not returned, so
+   * that it is calculated again.
+   *
+   * @param view the PlayerView
+   * @return the visible area, or null if it has to be calculated.
+   */
+  private synchronized Area getCachedVisibleArea(PlayerView view) {
+    VisibleAreaMeta meta = visibleAreaMap.get(view);
+    if (meta != null && meta.visibleArea.getBounds().getCenterX() != 0.0d) {
+      return meta.visibleArea;
+    }
+    return null;
   }
 
   /**
@@ -101,85 +344,132 @@ public boolean isUsingVision() {
    * @param topologyType The type of topology tree to get.
    * @return the area of the topology.
    */
-  public synchronized Area getTopology(Zone.TopologyType topologyType) {
-    var topology = topologyAreas.get(topologyType);
-
-    if (topology == null) {
-      log.debug("ZoneView topology area for {} is null, generating...", topologyType.name());
-
-      topology = new Area(zone.getTopology(topologyType));
-      List<Token> topologyTokens =
-          MapTool.getFrame().getCurrentZoneRenderer().getZone().getTokensWithTopology(topologyType);
-      for (Token topologyToken : topologyTokens) {
-        topology.add(topologyToken.getTransformedTopology(topologyType));
+  public Area getTopology(Zone.TopologyType topologyType) {
+    long version;
+    synchronized (this) {
+      var topology = topologyAreas.get(topologyType);
+      if (topology != null) {
+        return topology;
       }
+      version = cacheVersion;
+    }
+    log.debug("ZoneView topology area for {} is null, generating...", topologyType.name());
 
-      topologyAreas.put(topologyType, topology);
+    var topology =
+        combineTopology(new Area(zone.getTopology(topologyType)), tokenTopology(topologyType));
+    synchronized (this) {
+      if (version == cacheVersion) {
+        topologyAreas.put(topologyType, topology);
+      }
     }
+    return topology;
+  }
 
+  /**
+   * Returns the topology of the requested type of each token with topology.
+   *
+   * @param topologyType the type of topology.
+   * @return the topology of the tokens, transformed to the zone.
+   */
+  private List<Area> tokenTopology(Zone.TopologyType topologyType) {
+    List<Area> topology = new ArrayList<>();
+    for (Token topologyToken : zone.getTokensWithTopology(topologyType)) {
+      topology.add(topologyToken.getTransformedTopology(topologyType));
+    }
     return topology;
   }
 
   /**
-   * Get the topology tree of the requested type.
+   * Combines the topology of the zone with the topology of its tokens.
    *
-   * <p>The topology tree is cached and should only regenerate when the tree is not present, which
-   * should happen on flush calls.
+   * @param zoneTopology the topology of the zone, which is added to.
+   * @param tokenTopology the topology of the tokens.
+   * @return the combined topology.
+   */
+  private static Area combineTopology(Area zoneTopology, List<Area> tokenTopology) {
+    for (Area area : tokenTopology) {
+      zoneTopology.add(area);
+    }
+    return zoneTopology;
+  }
+
+  /**
+   * Get the topology tree of the requested type for a snapshot.
    *
-   * <p>This method is equivalent to building an AreaTree from the results of getTopology(), but the
-   * results are cached.
+   * <p>The topology tree is cached and should only regenerate when the tree is not present, which
+   * should happen on flush calls. When it is not, the topology is copied, and combined and built
+   * into a tree on the thread that first needs it, as that is the expensive part.
    *
    * @param topologyType The type of topology tree to get.
-   * @return the AreaTree (topology tree).
+   * @param version the version of the caches the snapshot is taken at.
+   * @return supplies the AreaTree (topology tree).
    */
-  private synchronized AreaTree getTopologyTree(Zone.TopologyType topologyType) {
-    var topologyTree = topologyTrees.get(topologyType);
-
-    if (topologyTree == null) {
-      log.debug("ZoneView topology tree for {} is null, generating...", topologyType.name());
-
-      var topology = getTopology(topologyType);
-
-      topologyTree = new AreaTree(topology);
-      topologyTrees.put(topologyType, topologyTree);
+  private Supplier<AreaTree> snapshotTopologyTree(Zone.TopologyType topologyType, long version) {
+    Area cachedTopology;
+    synchronized (this) {
+      var topologyTree = topologyTrees.get(topologyType);
+      if (topologyTree != null) {
+        return () -> topologyTree;
+      }
+      cachedTopology = topologyAreas.get(topologyType);
     }
-
-    return topologyTree;
+    Area zoneTopology = cachedTopology != null ? null : new Area(zone.getTopology(topologyType));
+    List<Area> tokenTopology = cachedTopology != null ? null : tokenTopology(topologyType);
+    return Suppliers.memoize(
+        () -> {
+          log.debug("ZoneView topology tree for {} is null, generating...", topologyType.name());
+          Area topology =
+              cachedTopology != null ? cachedTopology : combineTopology(zoneTopology, tokenTopology);
+          var topologyTree = new AreaTree(topology);
+          synchronized (this) {
+            if (version == cacheVersion) {
+              topologyAreas.putIfAbsent(topologyType, topology);
+              topologyTrees.put(topologyType, topologyTree);
+            }
+          }
+          return topologyTree;
+        });
   }
 
   /**
    * Return the lightSourceArea of a lightSourceToken for a given sight type. Fill the
-   * lightSourceCache entry if null.
+   * lightSourceCache and drawableLightCache entries if null.
    *
    * @param sightName the name of the sight type for which to get the light source area
    * @param lightSourceToken the token holding the light sources.
+   * @param snapshot the snapshot of the zone.
    * @return the lightSourceArea.
    */
-  private Map<Integer, Area> getLightSourceArea(String sightName, Token lightSourceToken) {
+  private Map<Integer, Area> getLightSourceArea(
+      String sightName, Token lightSourceToken, Snapshot snapshot) {
     GUID tokenId = lightSourceToken.getId();
-    Map<String, Map<Integer, Area>> areaBySightMap = lightSourceCache.get(tokenId);
-    if (areaBySightMap != null) {
-      Map<Integer, Area> lightSourceArea = areaBySightMap.get(sightName);
-      if (lightSourceArea != null) {
-        return lightSourceArea;
+    synchronized (this) {
+      Map<String, Map<Integer, Area>> areaBySightMap = lightSourceCache.get(tokenId);
+      if (areaBySightMap != null) {
+        Map<Integer, Area> lightSourceArea = areaBySightMap.get(sightName);
+        if (lightSourceArea != null) {
+          return lightSourceArea;
+        }
       }
-    } else {
-      areaBySightMap = new HashMap<>();
-      lightSourceCache.put(lightSourceToken.getId(), areaBySightMap);
     }
 
     Map<Integer, Area> lightSourceAreaMap = new HashMap<>();
+    Set<DrawableLight> drawableLights = new HashSet<>();
 
     for (AttachedLightSource attachedLightSource : lightSourceToken.getLightSources()) {
-      LightSource lightSource =
-          MapTool.getCampaign().getLightSource(attachedLightSource.getLightSourceId());
+      LightSource lightSource = snapshot.getLightSource(attachedLightSource.getLightSourceId());
       if (lightSource == null) {
         continue;
       }
-      SightType sight = MapTool.getCampaign().getSightType(sightName);
+      SightType sight = snapshot.getSightType(sightName);
       Area visibleArea =
           calculateLightSourceArea(
-              lightSource, lightSourceToken, sight, attachedLightSource.getDirection());
+              lightSource,
+              lightSourceToken,
+              sight,
+              attachedLightSource.getDirection(),
+              snapshot,
+              drawableLights);
 
       if (visibleArea != null && lightSource.getType() == LightSource.Type.NORMAL) {
         var lumens = lightSource.getLumens();
@@ -191,50 +481,33 @@ private Map<Integer, Area> getLightSourceArea(String sightName, Token lightSourc
       }
     }
 
-    // Cache
-    areaBySightMap.put(sightName, lightSourceAreaMap);
+    // Cache, unless another thread calculated it first
+    cache(
+        snapshot,
+        () -> {
+          if (lightSourceCache
+                  .computeIfAbsent(tokenId, k -> new HashMap<>())
+                  .putIfAbsent(sightName, lightSourceAreaMap)
+              == null) {
+            drawableLightCache
+                .computeIfAbsent(tokenId, k -> new HashMap<>())
+                .computeIfAbsent(sightName, k -> new HashSet<>())
+                .addAll(drawableLights);
+          }
+        });
     return lightSourceAreaMap;
   }
 
   /**
-   * Calculate the area visible by a sight type for a given light, and put the lights in
-   * drawableLightCache.
+   * Calculate the area visible by a sight type for a given lightSource, and add the lights to
+   * drawableLights.
    *
-   * @param lightSource the personal light source.
-   * @param lightSourceToken the token holding the light source.
-   * @param sight the sight type.
-   * @param direction the direction of the light source.
-   * @return the area visible.
-   */
-  private Area calculatePersonalLightSourceArea(
-      LightSource lightSource, Token lightSourceToken, SightType sight, Direction direction) {
-    return calculateLightSourceArea(lightSource, lightSourceToken, sight, direction, true);
-  }
-
-  /**
-   * Calculate the area visible by a sight type for a given light, and put the lights in
-   * drawableLightCache.
-   *
-   * @param lightSource the light source. Not a personal light.
+   * @param lightSource the light source.
    * @param lightSourceToken the token holding the light source.
    * @param sight the sight type.
    * @param direction the direction of the light source.
-   * @return the area visible.
-   */
-  private Area calculateLightSourceArea(
-      LightSource lightSource, Token lightSourceToken, SightType sight, Direction direction) {
-    return calculateLightSourceArea(lightSource, lightSourceToken, sight, direction, false);
-  }
-
-  /**
-   * Calculate the area visible by a sight type for a given lightSource, and put the lights in
-   * drawableLightCache.
-   *
-   * @param lightSource the light source. Not a personal light.
-   * @param lightSourceToken the token holding the light source.
-   * @param sight the sight type.
-   * @param direction the direction of the light source.
-   * @param isPersonalLight is the light a personal light?
+   * @param snapshot the snapshot of the zone.
+   * @param drawableLights the set to add the drawable lights to.
    * @return the area visible.
    */
   private Area calculateLightSourceArea(
@@ -242,7 +515,8 @@ private Area calculateLightSourceArea(
       Token lightSourceToken,
       SightType sight,
       Direction direction,
-      boolean isPersonalLight) {
+      Snapshot snapshot,
+      Set<DrawableLight> drawableLights) {
     if (sight == null) {
       return null;
     }
@@ -260,20 +534,20 @@ private Area calculateLightSourceArea(
             p.x,
             p.y,
             lightSourceArea,
-            getTopologyTree(Zone.TopologyType.WALL_VBL),
-            getTopologyTree(Zone.TopologyType.HILL_VBL),
-            getTopologyTree(Zone.TopologyType.PIT_VBL));
+            snapshot.getTopologyTree(Zone.TopologyType.WALL_VBL),
+            snapshot.getTopologyTree(Zone.TopologyType.HILL_VBL),
+            snapshot.getTopologyTree(Zone.TopologyType.PIT_VBL));
 
     if (visibleArea != null && lightSource.getType() == LightSource.Type.NORMAL) {
-      addLightSourceToCache(
-          visibleArea, p, lightSource, lightSourceToken, sight, direction, isPersonalLight);
+      addDrawableLights(
+          visibleArea, p, lightSource, lightSourceToken, sight, direction, drawableLights);
     }
     return visibleArea;
   }
 
   /**
-   * Adds the light source as seen by a given sight to the corresponding cache. Lights (but not
-   * darkness) with a color CSS value are stored in the drawableLightCache.
+   * Adds the lights of the light source as seen by a given sight to a set. Lights (but not
+   * darkness) with a color CSS value are added.
    *
    * @param visibleArea the area visible from the light source token
    * @param p the vision center of the light source token
@@ -281,17 +555,16 @@ private Area calculateLightSourceArea(
    * @param lightSourceToken the light source token
    * @param sight the sight
    * @param direction the direction of the light source
+   * @param drawableLights the set to add the drawable lights to
    */
-  private void addLightSourceToCache(
+  private void addDrawableLights(
       Area visibleArea,
       Point p,
       LightSource lightSource,
       Token lightSourceToken,
       SightType sight,
       Direction direction,
-      boolean isPersonalLight) {
-    // Keep track of colored light
-    Set<DrawableLight> lightSet = new HashSet<DrawableLight>();
+      Set<DrawableLight> drawableLights) {
     for (Light light : lightSource.getLightList()) {
       Area lightArea = lightSource.getArea(lightSourceToken, zone, direction, light);
       if (sight.getMultiplier() != 1) {
@@ -304,30 +577,11 @@ private void addLightSourceToCache(
       // If a light has no paint, it's a "bright light" that just reveal FoW but doesn't need to be
       // rendered.
       if (light.getPaint() != null || lightSource.getLumens() < 0) {
-        lightSet.add(
+        drawableLights.add(
             new DrawableLight(
                 lightSource.getType(), light.getPaint(), lightArea, lightSource.getLumens()));
       }
     }
-    // FIXME There was a bug report of a ConcurrentModificationException regarding
-    // drawableLightCache.
-    // I don't see how, but perhaps this code -- and the ones in flush() and flush(Token) -- should
-    // be
-    // wrapped in a synchronization block? This method is probably called only on the same thread as
-    // getDrawableLights() but the two flush() methods may be called from different threads. How to
-    // verify this with Eclipse? Maybe the flush() methods should defer modifications to the
-    // EventDispatchingThread?
-    if (isPersonalLight) {
-      personalDrawableLightCache.put(lightSourceToken.getId(), lightSet);
-    } else {
-      Map<String, Set<DrawableLight>> lightMap =
-          drawableLightCache.computeIfAbsent(lightSourceToken.getId(), k -> new HashMap<>());
-      if (lightMap.get(sight.getName()) != null) {
-        lightMap.get(sight.getName()).addAll(lightSet);
-      } else {
-        lightMap.put(sight.getName(), lightSet);
-      }
-    }
   }
 
   /**
@@ -343,12 +597,35 @@ public Area getVisibleArea(Token token) {
     }
 
     // Cache ?
-    Area tokenVisibleArea = tokenVisionCache.get(token.getId());
-    // System.out.println("tokenVisionCache size? " + tokenVisionCache.size());
+    synchronized (this) {
+      Area tokenVisibleArea = tokenVisionCache.get(token.getId());
+      if (tokenVisibleArea != null) return tokenVisibleArea;
+    }
+    return getVisibleArea(token, snapshot());
+  }
 
-    if (tokenVisibleArea != null) return tokenVisibleArea;
+  /**
+   * Return the token visible area from tokenVisionCache. If null, create it from a snapshot.
+   *
+   * @param token the token to get the visible area of.
+   * @param snapshot the snapshot of the zone.
+   * @return the visible area of a token, including the effect of other lights.
+   */
+  private Area getVisibleArea(Token token, Snapshot snapshot) {
+    // Sanity
+    if (!token.getHasSight()) {
+      return null;
+    }
 
-    SightType sight = MapTool.getCampaign().getSightType(token.getSightType());
+    GUID tokenId = token.getId();
+    Area tokenVisibleArea;
+    synchronized (this) {
+      tokenVisibleArea = tokenVisionCache.get(tokenId);
+      if (tokenVisibleArea != null) return tokenVisibleArea;
+      tokenVisibleArea = tokenVisibleAreaCache.get(tokenId);
+    }
+
+    SightType sight = snapshot.getSightType(token.getSightType());
     // More sanity checks; maybe sight type removed from campaign after token set?
     if (sight == null) {
       // TODO Should we turn off the token's HasSight flag? Would speed things up for later...
@@ -356,20 +633,20 @@ public Area getVisibleArea(Token token) {
     }
 
     // Combine the player visible area with the available light sources
-    tokenVisibleArea = tokenVisibleAreaCache.get(token.getId());
     if (tokenVisibleArea == null) {
       Point p = FogUtil.calculateVisionCenter(token, zone);
       Area visibleArea = sight.getVisionShape(token, zone);
-      tokenVisibleArea =
+      Area area =
           FogUtil.calculateVisibility(
               p.x,
               p.y,
               visibleArea,
-              getTopologyTree(Zone.TopologyType.WALL_VBL),
-              getTopologyTree(Zone.TopologyType.HILL_VBL),
-              getTopologyTree(Zone.TopologyType.PIT_VBL));
+              snapshot.getTopologyTree(Zone.TopologyType.WALL_VBL),
+              snapshot.getTopologyTree(Zone.TopologyType.HILL_VBL),
+              snapshot.getTopologyTree(Zone.TopologyType.PIT_VBL));
 
-      tokenVisibleAreaCache.put(token.getId(), tokenVisibleArea);
+      cache(snapshot, () -> tokenVisibleAreaCache.put(tokenId, area));
+      tokenVisibleArea = area;
     }
 
     // Stopwatch stopwatch = Stopwatch.createStarted();
@@ -377,18 +654,9 @@ public Area getVisibleArea(Token token) {
     // Combine in the visible light areas
     if (tokenVisibleArea != null) {
       Rectangle2D origBounds = tokenVisibleArea.getBounds();
-      List<Token> lightSourceTokens = new ArrayList<Token>();
-
       // Add the tokens from the lightSourceMap with normal (not aura) lights
-      if (lightSourceMap.get(LightSource.Type.NORMAL) != null) {
-        for (GUID lightSourceTokenId : lightSourceMap.get(LightSource.Type.NORMAL)) {
-          Token lightSourceToken = zone.getToken(lightSourceTokenId);
-          // Verify if the token still exists
-          if (lightSourceToken != null) {
-            lightSourceTokens.add(lightSourceToken);
-          }
-        }
-      }
+      List<Token> lightSourceTokens =
+          new ArrayList<Token>(snapshot.getLightSourceTokens(LightSource.Type.NORMAL));
 
       if (token.hasLightSources() && !lightSourceTokens.contains(token)) {
         // This accounts for temporary tokens (such as during an Expose Last Path)
@@ -422,20 +690,27 @@ public Area getVisibleArea(Token token) {
                 return -comparison;
               });
 
-      getLightAreasByLumens(allLightAreaMap, token.getSightType(), lightSourceTokens);
+      getLightAreasByLumens(allLightAreaMap, token.getSightType(), lightSourceTokens, snapshot);
 
       // Check for daylight and add it to the overall light map.
-      if (zone.getVisionType() != Zone.VisionType.NIGHT) {
+      if (snapshot.visionType() != Zone.VisionType.NIGHT) {
         // Treat the entire visible area like a light source of minimal lumens.
         addLightAreaByLumens(allLightAreaMap, 1, tokenVisibleArea);
       }
 
       // Check for personal vision and add to overall light map
       if (sight.hasPersonalLightSource()) {
+        Set<DrawableLight> personalLights = new HashSet<>();
         Area lightArea =
-            calculatePersonalLightSourceArea(
-                sight.getPersonalLightSource(), token, sight, Direction.CENTER);
+            calculateLightSourceArea(
+                sight.getPersonalLightSource(),
+                token,
+                sight,
+                Direction.CENTER,
+                snapshot,
+                personalLights);
         if (lightArea != null) {
+          cache(snapshot, () -> personalDrawableLightCache.put(tokenId, personalLights));
           var lumens = sight.getPersonalLightSource().getLumens();
           lumens = (lumens == 0) ? LUMEN_VISION : lumens;
           // maybe some kind of imposed blindness?  Anyway, make sure to handle personal darkness..
@@ -466,11 +741,12 @@ public Area getVisibleArea(Token token) {
       tokenVisibleArea = allLightArea;
     }
 
-    tokenVisionCache.put(token.getId(), tokenVisibleArea);
+    final Area tokenVision = tokenVisibleArea;
+    cache(snapshot, () -> tokenVisionCache.put(tokenId, tokenVision));
 
     // log.info("getVisibleArea: \t\t" + stopwatch);
 
-    return tokenVisibleArea;
+    return tokenVision;
   }
 
   private static void addLightAreaByLumens(
@@ -480,9 +756,12 @@ private static void addLightAreaByLumens(
   }
 
   private void getLightAreasByLumens(
-      Map<Integer, Path2D> allLightPathMap, String sightName, List<Token> lightSourceTokens) {
+      Map<Integer, Path2D> allLightPathMap,
+      String sightName,
+      List<Token> lightSourceTokens,
+      Snapshot snapshot) {
     for (Token lightSourceToken : lightSourceTokens) {
-      Map<Integer, Area> lightArea = getLightSourceArea(sightName, lightSourceToken);
+      Map<Integer, Area> lightArea = getLightSourceArea(sightName, lightSourceToken, snapshot);
 
       for (Entry<Integer, Area> light : lightArea.entrySet()) {
         // Add the token's light area to the global area in `allLightPathMap`.
@@ -498,54 +777,59 @@ private void getLightAreasByLumens(
    * @return the list of drawable lights of the given type.
    */
   public List<DrawableLight> getLights(LightSource.Type type) {
+    return getLights(type, snapshot());
+  }
+
+  /**
+   * Get the lists of drawable light from a snapshot.
+   *
+   * @param type the type of lights to get.
+   * @param snapshot the snapshot of the zone.
+   * @return the list of drawable lights of the given type.
+   */
+  List<DrawableLight> getLights(LightSource.Type type, Snapshot snapshot) {
     List<DrawableLight> lightList = new LinkedList<DrawableLight>();
-    if (lightSourceMap.get(type) != null) {
-      for (GUID lightSourceToken : lightSourceMap.get(type)) {
-        Token token = zone.getToken(lightSourceToken);
-        if (token == null) {
+    for (Token token : snapshot.getLightSourceTokens(type)) {
+      Point p = FogUtil.calculateVisionCenter(token, zone);
+
+      for (AttachedLightSource als : token.getLightSources()) {
+        LightSource lightSource = snapshot.getLightSource(als.getLightSourceId());
+        if (lightSource == null) {
           continue;
         }
-        Point p = FogUtil.calculateVisionCenter(token, zone);
-
-        for (AttachedLightSource als : token.getLightSources()) {
-          LightSource lightSource = MapTool.getCampaign().getLightSource(als.getLightSourceId());
-          if (lightSource == null) {
+        if (lightSource.getType() == type) {
+          // This needs to be cached somehow
+          Area lightSourceArea = lightSource.getArea(token, zone, Direction.CENTER);
+          Area visibleArea =
+              FogUtil.calculateVisibility(
+                  p.x,
+                  p.y,
+                  lightSourceArea,
+                  snapshot.getTopologyTree(Zone.TopologyType.WALL_VBL),
+                  snapshot.getTopologyTree(Zone.TopologyType.HILL_VBL),
+                  snapshot.getTopologyTree(Zone.TopologyType.PIT_VBL));
+          if (visibleArea == null) {
             continue;
           }
-          if (lightSource.getType() == type) {
-            // This needs to be cached somehow
-            Area lightSourceArea = lightSource.getArea(token, zone, Direction.CENTER);
-            Area visibleArea =
-                FogUtil.calculateVisibility(
-                    p.x,
-                    p.y,
-                    lightSourceArea,
-                    getTopologyTree(Zone.TopologyType.WALL_VBL),
-                    getTopologyTree(Zone.TopologyType.HILL_VBL),
-                    getTopologyTree(Zone.TopologyType.PIT_VBL));
-            if (visibleArea == null) {
+          for (Light light : lightSource.getLightList()) {
+            boolean isOwner = token.getOwners().contains(snapshot.player().name());
+            if ((light.isGM() && !snapshot.player().effectiveGM())) {
+              continue;
+            }
+            if ((!token.isVisible()) && !snapshot.player().effectiveGM()) {
+              continue;
+            }
+            if (token.isVisibleOnlyToOwner() && !snapshot.player().owns(token)) {
               continue;
             }
-            for (Light light : lightSource.getLightList()) {
-              boolean isOwner = token.getOwners().contains(MapTool.getPlayer().getName());
-              if ((light.isGM() && !MapTool.getPlayer().isEffectiveGM())) {
-                continue;
-              }
-              if ((!token.isVisible()) && !MapTool.getPlayer().isEffectiveGM()) {
-                continue;
-              }
-              if (token.isVisibleOnlyToOwner() && !AppUtil.playerOwns(token)) {
-                continue;
-              }
-              if (light.isOwnerOnly()
-                  && lightSource.getType() == LightSource.Type.AURA
-                  && !isOwner
-                  && !MapTool.getPlayer().isEffectiveGM()) {
-                continue;
-              }
-              lightList.add(
-                  new DrawableLight(type, light.getPaint(), visibleArea, lightSource.getLumens()));
+            if (light.isOwnerOnly()
+                && lightSource.getType() == LightSource.Type.AURA
+                && !isOwner
+                && !snapshot.player().effectiveGM()) {
+              continue;
             }
+            lightList.add(
+                new DrawableLight(type, light.getPaint(), visibleArea, lightSource.getLumens()));
           }
         }
       }
@@ -580,7 +864,7 @@ private void findLightSources() {
    * @param view the player view for which to get the personal lights.
    * @return the set of drawable lights.
    */
-  public Set<DrawableLight> getDrawableLights(PlayerView view) {
+  public synchronized Set<DrawableLight> getDrawableLights(PlayerView view) {
     Set<DrawableLight> lightSet = new HashSet<DrawableLight>();
 
     for (Map<String, Set<DrawableLight>> map : drawableLightCache.values()) {
@@ -604,7 +888,8 @@ public Set<DrawableLight> getDrawableLights(PlayerView view) {
    * Clear the tokenVisibleAreaCache, tokenVisionCache, lightSourceCache, visibleAreaMap,
    * drawableLightCache, and personal drawable light caches.
    */
-  public void flush() {
+  public synchronized void flush() {
+    cacheVersion++;
     tokenVisibleAreaCache.clear();
     tokenVisionCache.clear();
     lightSourceCache.clear();
@@ -620,7 +905,8 @@ public void flush() {
    *
    * @param token the token to flush.
    */
-  public void flush(Token token) {
+  public synchronized void flush(Token token) {
+    cacheVersion++;
     boolean hadLightSource = lightSourceCache.get(token.getId()) != null;
 
     tokenVisionCache.remove(token.getId());
@@ -639,33 +925,25 @@ public void flush(Token token) {
   }
 
   /**
-   * Construct the visibleAreaMap entry for a player view.
+   * Calculate the visible area of a player view.
    *
    * @param view the player view.
+   * @param snapshot the snapshot of the zone.
+   * @return the visible area.
    */
-  private void calculateVisibleArea(PlayerView view) {
-    if (visibleAreaMap.get(view) != null
-        && visibleAreaMap.get(view).visibleArea.getBounds().getCenterX() != 0.0d) {
-      return;
-    }
-    // Cache it
-    VisibleAreaMeta meta = new VisibleAreaMeta();
-    meta.visibleArea = new Area();
-
-    visibleAreaMap.put(view, meta);
+  private Area calculateVisibleArea(PlayerView view, Snapshot snapshot) {
+    Area visibleArea = new Area();
 
     // Calculate it
     final boolean isGMview = view.isGMView();
-    final boolean checkOwnership =
-        MapTool.getServerPolicy().isUseIndividualViews() || MapTool.isPersonalServer();
+    final boolean checkOwnership = snapshot.player().checkOwnership();
     List<Token> tokenList =
         view.isUsingTokenView()
-            ? view.getTokens()
-            : zone.getTokensFiltered(
-                t -> t.isToken() && t.getHasSight() && (isGMview || t.isVisible()));
+            ? view.getTokens().stream().map(snapshot::getViewToken).toList()
+            : snapshot.sightTokens().stream().filter(t -> isGMview || t.isVisible()).toList();
 
     for (Token token : tokenList) {
-      boolean weOwnIt = AppUtil.playerOwns(token);
+      boolean weOwnIt = snapshot.player().owns(token);
       // Permission
       if (checkOwnership) {
         if (!weOwnIt) {
@@ -673,7 +951,9 @@ private void calculateVisibleArea(PlayerView view) {
         }
       } else {
         // If we're viewing the map as a player and the token is not a PC, then skip it.
-        if (!isGMview && token.getType() != Token.Type.PC && !AppUtil.ownedByOnePlayer(token)) {
+        if (!isGMview
+            && token.getType() != Token.Type.PC
+            && !snapshot.player().ownedByOnePlayer(token)) {
           continue;
         }
       }
@@ -681,14 +961,15 @@ private void calculateVisibleArea(PlayerView view) {
       if (token.isVisibleOnlyToOwner() && !weOwnIt) {
         continue;
       }
-      Area tokenVision = getVisibleArea(token);
+      Area tokenVision = getVisibleArea(token, snapshot);
       if (tokenVision != null) {
-        meta.visibleArea.add(tokenVision);
+        visibleArea.add(tokenVision);
       }
     }
 
     // System.out.println("calculateVisibleArea: " + (System.currentTimeMillis() - startTime) +
     // "ms");
+    return visibleArea;
   }
 
   /**
@@ -696,7 +977,7 @@ private void calculateVisibleArea(PlayerView view) {
    *
    * @param event the event.
    */
-  public void modelChanged(ModelChangeEvent event) {
+  public synchronized void modelChanged(ModelChangeEvent event) {
     Object evt = event.getEvent();
     if (event.getModel() instanceof Zone) {
       boolean tokenChangedTopology = false;
@@ -712,6 +993,8 @@ public void modelChanged(ModelChangeEvent event) {
       }
 
       if (evt == Zone.Event.TOKEN_ADDED || evt == Zone.Event.TOKEN_CHANGED) {
+        // The light sources change, results calculated from an earlier snapshot are not cached
+        cacheVersion++;
         tokenChangedTopology = processTokenAddChangeEvent(event.getTokensAsList());
       }
 
@@ -735,6 +1018,7 @@ public void modelChanged(ModelChangeEvent event) {
       // since if a token that has topology is added/removed/edited (rotated/moved/etc)
       // it should also trip a Topology change
       if (evt == Zone.Event.TOPOLOGY_CHANGED || tokenChangedTopology) {
+        cacheVersion++;
         tokenVisionCache.clear();
         lightSourceCache.clear();
         drawableLightCache.clear();
@@ -209,7 +209,7 @@ public static Type fromMediaType(MediaType mediaType, String filename) {
 
   /** The data that makes up the {@code Asset}. */
   @XStreamConverter(AssetImageConverter.class)
-  private final transient byte[] data;
+  private final transient AssetData data;
 
   /**
    * Create an {@code Asset} for an image.
@@ -448,17 +448,18 @@ public static Asset createAsset(String name, byte[] data, Type type) {
    */
   private Asset(MD5Key key, String name, byte[] data, Type type, String extension, boolean broken) {
     assert data != null;
-    this.data = Arrays.copyOf(data, data.length);
+    byte[] bytes = Arrays.copyOf(data, data.length);
+    this.data = new AssetData(bytes);
     this.name = name;
     this.type = type;
     this.broken = broken;
 
-    md5Key = Objects.requireNonNullElseGet(key, () -> new MD5Key(this.data));
+    md5Key = Objects.requireNonNullElseGet(key, () -> new MD5Key(bytes));
 
     if (type == Type.DATA) {
       this.extension = DATA_EXTENSION;
     } else if (extension == null || extension.isEmpty()) {
-      this.extension = determineImageExtension();
+      this.extension = determineImageExtension(bytes);
     } else {
       this.extension = extension;
     }
@@ -493,14 +494,14 @@ private Asset(String name, BufferedImage image, boolean broken) {
     }
 
     if (imageData != null) {
-      this.data = imageData;
-      extension = determineImageExtension();
+      extension = determineImageExtension(imageData);
     } else {
-      this.data = new byte[0];
+      imageData = new byte[0];
       extension = DATA_EXTENSION;
     }
+    this.data = new AssetData(imageData);
 
-    this.md5Key = new MD5Key(this.data);
+    this.md5Key = new MD5Key(imageData);
 
     if (extension.equals(DATA_EXTENSION)) {
       type = Type.DATA;
@@ -509,7 +510,7 @@ private Asset(String name, BufferedImage image, boolean broken) {
     }
 
     if (type.isStringType()) {
-      dataAsString = new String(data);
+      dataAsString = new String(imageData);
     } else {
       dataAsString = null;
     }
@@ -529,10 +530,11 @@ private Asset(String name, BufferedImage image, boolean broken) {
    */
   private Asset(MD5Key key, String name, byte[] data, String extension, Type type, boolean broken) {
     this.name = name;
-    this.data = Arrays.copyOf(data, data.length);
+    byte[] bytes = Arrays.copyOf(data, data.length);
+    this.data = new AssetData(bytes);
     this.extension = extension;
     this.type = type;
-    this.md5Key = key != null ? key : new MD5Key(this.data);
+    this.md5Key = key != null ? key : new MD5Key(bytes);
     this.broken = broken;
 
     if (type.isStringType()) {
@@ -554,7 +556,7 @@ private Asset(MD5Key key, String name, String extension, Type type, boolean brok
     this.name = name;
     this.extension = extension;
     this.type = type;
-    data = new byte[0];
+    data = new AssetData(new byte[0]);
     dataAsString = null;
     json = null;
     this.broken = broken;
@@ -575,8 +577,18 @@ public MD5Key getMD5Key() {
    * @return the data for this {@code Asset}.
    */
   public byte[] getData() {
-    return data; // This should be a defensive copy but that really blows out memory on load/save
-    // campaign
+    return data.getBytes(); // This should be a defensive copy but that really blows out memory on
+    // load/save campaign
+  }
+
+  /**
+   * Returns the data for this {@code Asset} without reading it into memory, for code that only
+   * needs its length or to read through it once.
+   *
+   * @return the data for this {@code Asset}.
+   */
+  public AssetData getAssetData() {
+    return data;
   }
 
   /**
@@ -594,9 +606,10 @@ public Asset setData(byte[] data, boolean recalcMd5) {
   /**
    * Attempts to determine the extension for the data passed in.
    *
+   * @param data the data of the {@code Asset}.
    * @return the extension type for the image.
    */
-  private String determineImageExtension() {
+  private static String determineImageExtension(byte[] data) {
     String ext = "";
     try {
       if (data != null && data.length >= 4) {
@@ -689,7 +702,7 @@ public boolean isStringAsset() {
 
   @Override
   public String toString() {
-    return md5Key + "/" + name + "(" + (data != null ? data.length : "-") + ")";
+    return md5Key + "/" + name + "(" + (data != null ? data.length() : "-") + ")";
   }
 
   @Override
@@ -713,7 +726,7 @@ public boolean equals(Object obj) {
    */
   Object readResolve() {
     byte[] dataVal;
-    dataVal = Objects.requireNonNullElseGet(this.data, () -> new byte[0]);
+    dataVal = this.data != null ? this.data.getBytes() : new byte[0];
     try {
       var asset = Asset.createAssetDetectType(this.name, dataVal);
       if (asset.isBroken()) {
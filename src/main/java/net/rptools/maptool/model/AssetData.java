@@ -0,0 +1,208 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import net.rptools.lib.MD5Key;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The data of an {@link Asset}.
+ *
+ * <p>The data is held in memory until it has been written to the {@link AssetPackCache} and is
+ * released, after which it is only softly referenced and is read back from the cache if it has
+ * been collected. Code that reads through the data once, such as to decode an image or to copy it
+ * to a file, should use {@link #openStream()} so that data that has been collected is streamed from
+ * the cache instead of being read into memory again.
+ */
+public final class AssetData {
+  private static final Logger log = LogManager.getLogger(AssetData.class);
+
+  private final int length;
+
+  /** The data, until it is released. */
+  private volatile byte[] bytes;
+
+  /** The data, once it has been released and until it is collected. */
+  private volatile SoftReference<byte[]> softBytes;
+
+  /** The cache the data is read back from once it has been released. */
+  private volatile AssetPackCache cache;
+
+  /** The id of the asset in the cache. */
+  private volatile MD5Key id;
+
+  /**
+   * Creates data that is held in memory.
+   *
+   * @param bytes the data, which is not copied.
+   */
+  AssetData(byte[] bytes) {
+    this.bytes = bytes;
+    this.length = bytes.length;
+  }
+
+  /**
+   * Returns the length of the data, without reading it.
+   *
+   * @return the length in bytes.
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * Returns the data, reading it back from the cache if it has been collected. The array is not
+   * copied and must not be changed.
+   *
+   * @return the data.
+   * @throws UncheckedIOException if the data has been collected and could not be read back from
+   *     the cache.
+   */
+  public byte[] getBytes() {
+    byte[] data = getBytesInMemory();
+    if (data != null) {
+      return data;
+    }
+    try {
+      return readBack();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Opens a stream of the data, which streams it from the cache if it has been collected.
+   *
+   * @return the stream.
+   * @throws IOException if the data could not be read from the cache.
+   */
+  public InputStream openStream() throws IOException {
+    byte[] data = getBytesInMemory();
+    if (data == null) {
+      InputStream in = cache.openStream(id);
+      if (in != null) {
+        return in;
+      }
+      data = readBack();
+    }
+    return new ByteArrayInputStream(data);
+  }
+
+  /**
+   * Reads part of the data, which is read from the cache if the data has been collected.
+   *
+   * @param position the position in the data to start reading at.
+   * @param size the number of bytes to read, fewer are read if the data ends before then.
+   * @return the data read.
+   * @throws IOException if the data could not be read from the cache.
+   */
+  public byte[] read(long position, int size) throws IOException {
+    byte[] data = getBytesInMemory();
+    if (data == null) {
+      byte[] part = cache.read(id, position, size);
+      if (part != null) {
+        return part;
+      }
+      data = readBack();
+    }
+    int from = (int) Math.min(position, data.length);
+    return Arrays.copyOfRange(data, from, (int) Math.min((long) from + size, data.length));
+  }
+
+  /**
+   * Releases the data once it is in the cache, so that it is only kept in memory while there is
+   * memory to spare. The asset is pinned in the cache so that it is not removed while the data may
+   * still need to be read back.
+   *
+   * @param id the id of the asset in the cache.
+   * @param cache the cache.
+   */
+  synchronized void release(MD5Key id, AssetPackCache cache) {
+    if (bytes == null || !cache.pin(id)) {
+      return;
+    }
+    this.id = id;
+    this.cache = cache;
+    softBytes = new SoftReference<>(bytes);
+    bytes = null;
+  }
+
+  /**
+   * Holds the data in memory again, such as before the cache it was released to is cleared. If the
+   * data has been collected and can not be read back it stays released, so that reading it fails.
+   */
+  synchronized void retain() {
+    if (bytes != null) {
+      return;
+    }
+    byte[] data = getBytesInMemory();
+    if (data == null) {
+      try {
+        data = readBack();
+      } catch (IOException e) {
+        log.error("Could not hold asset " + id + " in memory", e);
+        return;
+      }
+    }
+    bytes = data;
+    softBytes = null;
+  }
+
+  /** Drops the data from memory as if it had been collected, once it has been released. */
+  @VisibleForTesting
+  synchronized void collect() {
+    if (softBytes != null) {
+      softBytes.clear();
+    }
+  }
+
+  /**
+   * Returns the data if it is in memory.
+   *
+   * @return the data, or {@code null} if it has been collected.
+   */
+  private byte[] getBytesInMemory() {
+    // Read in the opposite order to release() and retain() so one of them is always seen.
+    SoftReference<byte[]> ref = softBytes;
+    byte[] data = bytes;
+    if (data == null && ref != null) {
+      data = ref.get();
+    }
+    return data;
+  }
+
+  /**
+   * Reads the data back from the cache it was released to, once it has been collected.
+   *
+   * @return the data.
+   * @throws IOException if the data could not be read, or is no longer in the cache.
+   */
+  private byte[] readBack() throws IOException {
+    byte[] data = cache.read(id);
+    if (data == null) {
+      throw new IOException("Asset " + id + " is no longer in the asset cache");
+    }
+    softBytes = new SoftReference<>(data);
+    return data;
+  }
+}
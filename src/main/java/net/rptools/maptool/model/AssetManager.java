@@ -21,11 +21,8 @@
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.URL;
-import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -37,10 +34,13 @@
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import net.rptools.lib.FileUtil;
 import net.rptools.lib.MD5Key;
+import net.rptools.maptool.client.AppPreferences;
 import net.rptools.maptool.client.AppUtil;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.language.I18N;
@@ -59,6 +59,28 @@ public class AssetManager {
   /** {@link MD5Key} to use for assets trying to specify a location outside of asset cache. */
   public static final MD5Key BAD_ASSET_LOCATION_KEY = new MD5Key("bad-location");
 
+  /**
+   * A source of assets that are known to be available but have not been read yet, such as the
+   * assets of a campaign that is still being loaded.
+   */
+  public interface DeferredAssetSource {
+    /**
+     * Returns if the asset is available from this source.
+     *
+     * @param id the id of the asset.
+     * @return {@code true} if the asset can be read from this source.
+     */
+    boolean hasAsset(MD5Key id);
+
+    /**
+     * Reads the asset and adds it to the asset manager with {@link AssetManager#putAsset(Asset)}.
+     *
+     * @param id the id of the asset.
+     * @return the asset, or {@code null} if it is not available from this source.
+     */
+    Asset loadAsset(MD5Key id);
+  }
+
   /** {@link Asset}s that are required and should never be removed. */
   private static final Set<MD5Key> REQUIRED_ASSETS = Set.of(BAD_ASSET_LOCATION_KEY);
 
@@ -68,12 +90,27 @@ public class AssetManager {
   private static final Map<MD5Key, Asset> assetMap =
       Collections.synchronizedMap(new HashMap<MD5Key, Asset>());
 
+  /** The source of the assets that have not been read yet, if any. */
+  private static volatile DeferredAssetSource deferredAssetSource;
+
   /** Location of the cache on the filesystem */
   private static File cacheDir;
 
   /** True if a persistent cache should be used */
   private static boolean usePersistentCache;
 
+  /** The persistent cache the asset data is kept in. */
+  private static AssetPackCache packCache;
+
+  /**
+   * True once the assets that earlier versions kept as a file per asset in the cache directory have
+   * been moved into the {@link #packCache}.
+   */
+  private static volatile boolean looseFilesMigrated;
+
+  /** True once the cache is being cleared, so the loose files should no longer be moved. */
+  private static volatile boolean stopMigration;
+
   /**
    * A list of listeners which should be notified when the asset associated with a given MD5 sum has
    * finished downloading.
@@ -96,6 +133,11 @@ public class AssetManager {
   static {
     cacheDir = AppUtil.getAppHome("assetcache");
     usePersistentCache = true;
+    packCache =
+        new AssetPackCache(
+            new File(cacheDir, "packs"),
+            () -> AppPreferences.getAssetCacheSizeLimit() * 1024L * 1024L);
+    assetWriterThreadPool.execute(AssetManager::migrateLooseFiles);
   }
 
   /**
@@ -106,13 +148,32 @@ public class AssetManager {
    * @since 1.4.0.1
    */
   public static void clearCache() {
+    if (cacheDir == null) {
+      return;
+    }
+    // The cache is cleared on the thread that writes to it, once the loose files are no longer
+    // being moved into it, so that it is not written to while it is being cleared.
+    stopMigration = true;
+    Future<?> cleared =
+        assetWriterThreadPool.submit(
+            () -> {
+              // The data of the assets in memory can no longer be read back from the cache.
+              synchronized (assetMap) {
+                for (Asset asset : assetMap.values()) {
+                  asset.getAssetData().retain();
+                }
+              }
+              packCache.clear();
+              FileUtils.cleanDirectory(cacheDir);
+              looseFilesMigrated = true;
+              return null;
+            });
     try {
-      if (cacheDir != null) {
-        FileUtils.cleanDirectory(cacheDir);
-      }
-    } catch (IOException e) {
-      // TODO Auto-generated catch block
-      e.printStackTrace();
+      cleared.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      log.error("Could not clear the asset cache", e.getCause());
     }
   }
 
@@ -212,11 +273,34 @@ public static boolean hasAsset(Asset asset) {
    * @return true if the asset manager has the key
    */
   public static boolean hasAsset(MD5Key key) {
+    DeferredAssetSource source = deferredAssetSource;
     return assetMap.containsKey(key)
+        || (source != null && source.hasAsset(key))
         || assetIsInPersistentCache(key)
         || assetHasLocalReference(key);
   }
 
+  /**
+   * Sets the source of the assets that are known to be available but have not been read yet. The
+   * assets are read from it the first time they are requested.
+   *
+   * @param source the source, or {@code null} to remove the current one.
+   */
+  public static void setDeferredAssetSource(DeferredAssetSource source) {
+    deferredAssetSource = source;
+  }
+
+  /**
+   * Removes the source of the assets that have not been read yet, if it is the current one.
+   *
+   * @param source the source to remove.
+   */
+  public static void removeDeferredAssetSource(DeferredAssetSource source) {
+    if (deferredAssetSource == source) {
+      deferredAssetSource = null;
+    }
+  }
+
   /**
    * Determines if the asset data is in memory.
    *
@@ -251,14 +335,14 @@ public static void putAsset(Asset asset) {
 
     synchronized (assetMap) {
       var oldAsset = assetMap.get(asset.getMD5Key());
-      if (oldAsset == null || oldAsset.getData() == null || oldAsset.getData().length == 0) {
+      if (oldAsset == null || oldAsset.getAssetData().length() == 0) {
         assetMap.put(asset.getMD5Key(), asset);
       }
     }
 
     // Invalid images are represented by empty assets.
     // Don't persist those
-    if (asset.getData().length > 0) {
+    if (asset.getAssetData().length() > 0) {
       putInPersistentCache(asset);
     }
 
@@ -291,7 +375,7 @@ public static void getAssetAsynchronously(
           Asset asset = getAsset(id);
 
           // Simplest case, we already have it
-          if (asset != null && asset.getData() != null && asset.getData().length > 0) {
+          if (asset != null && asset.getAssetData().length() > 0) {
             for (AssetAvailableListener listener : listeners) {
               listener.assetAvailable(id);
             }
@@ -329,6 +413,11 @@ public static Asset getAsset(MD5Key id) {
 
     Asset asset = assetMap.get(assetId);
 
+    DeferredAssetSource source = deferredAssetSource;
+    if (asset == null && source != null) {
+      asset = source.loadAsset(assetId);
+    }
+
     if (asset == null && usePersistentCache && assetIsInPersistentCache(assetId)) {
       // Guaranteed that asset is in the cache.
       asset = getFromPersistentCache(assetId);
@@ -460,15 +549,19 @@ private static Asset getFromPersistentCache(MD5Key id) {
     File assetFile = getAssetCacheFile(id);
 
     try {
-      byte[] data = FileUtils.readFileToByteArray(assetFile);
       Properties props = getAssetInfo(id);
+      byte[] data = packCache.read(id);
+      boolean inPack = data != null;
+      if (!inPack) {
+        data = FileUtils.readFileToByteArray(assetFile);
+      }
 
       String name = props.getProperty(NAME);
       String type = props.getProperty(TYPE);
 
       Asset asset;
 
-      if (type != null) {
+      if (type != null && !type.isEmpty()) {
         asset = Asset.Type.valueOf(type).getFactory().apply(name, data);
       } else {
         asset = Asset.createAssetDetectType(props.getProperty(NAME), data);
@@ -476,16 +569,23 @@ private static Asset getFromPersistentCache(MD5Key id) {
 
       if (!asset.getMD5Key().equals(id)) {
         log.error("MD5 for asset " + asset.getName() + " corrupted; purging corrupted file");
-        assetFile.delete();
+        if (inPack) {
+          packCache.remove(id);
+        } else {
+          assetFile.delete();
+        }
         return null;
       }
 
       synchronized (assetMap) {
         var oldAsset = assetMap.get(id);
-        if (oldAsset == null || oldAsset.getData() == null || oldAsset.getData().length == 0) {
+        if (oldAsset == null || oldAsset.getAssetData().length() == 0) {
           assetMap.put(id, asset);
         }
       }
+      if (inPack) {
+        releaseData(asset);
+      }
 
       return asset;
     } catch (IOException ioe) {
@@ -545,8 +645,15 @@ public static Asset createAsset(URL url, Asset.Type assetType) throws IOExceptio
    */
   public static Properties getAssetInfo(MD5Key id) {
 
-    File infoFile = getAssetInfoFile(id);
     Properties props = new Properties();
+    AssetPackCache.Entry entry = packCache.getEntry(id);
+    if (entry != null) {
+      props.setProperty(NAME, entry.name());
+      props.setProperty(TYPE, entry.type());
+      return props;
+    }
+
+    File infoFile = getAssetInfoFile(id);
     try (InputStream is = new FileInputStream(infoFile)) {
       props.load(is);
     } catch (IOException ioe) {
@@ -566,40 +673,68 @@ private static void putInPersistentCache(final Asset asset) {
       return;
     }
 
-    if (!assetIsInPersistentCache(asset)) {
-      final File assetFile = getAssetCacheFile(asset);
-
-      assetWriterThreadPool.submit(
-          () -> {
-            assetFile.getParentFile().mkdirs();
-
-            try (var operation = new AssetWriteRenameOperation(assetFile)) {
-              try (var temporaryFileStream = new FileOutputStream(operation.temporaryFile)) {
-                temporaryFileStream.write(asset.getData());
-              }
-
-              // Now that the data is in a file, we move it to its final resting place.
-              operation.commit();
-            } catch (IOException ioe) {
-              log.error("Could not persist asset while writing image data", ioe);
-            } catch (NullPointerException npe) {
-              // Not an issue, will update once th frame is finished loading...
-              log.warn("Could not update statusbar while MapTool frame is loading.", npe);
+    // The data is released on the thread that writes to the cache, so that it is never released
+    // to the cache while the cache is being cleared.
+    assetWriterThreadPool.submit(
+        () -> {
+          try {
+            if (!packCache.contains(asset.getMD5Key())) {
+              packCache.put(
+                  asset.getMD5Key(), asset.getName(), asset.getType().name(), asset.getData());
             }
-          });
+            releaseData(asset);
+          } catch (IOException ioe) {
+            log.error("Could not persist asset while writing image data", ioe);
+          }
+        });
+  }
+
+  /**
+   * Releases the data of an asset that is in the persistent cache, so that it is only kept in
+   * memory while there is memory to spare and is read back from the cache otherwise. Only the data
+   * of the assets in the asset map is released, so that it can be held in memory again before the
+   * cache is cleared.
+   *
+   * @param asset the asset.
+   */
+  private static void releaseData(Asset asset) {
+    if (assetMap.get(asset.getMD5Key()) == asset) {
+      asset.getAssetData().release(asset.getMD5Key(), packCache);
     }
-    if (!assetInfoIsInPersistentCache(asset)) {
+  }
 
-      File infoFile = getAssetInfoFile(asset);
-      Properties props = new Properties();
-      try (OutputStream out = new FileOutputStream(infoFile)) {
-        props.put(NAME, asset.getName() != null ? asset.getName() : "");
-        props.put(TYPE, asset.getType().name());
-        props.store(out, "Asset Info");
-      } catch (IOException ioe) {
-        log.error("Could not persist asset while writing image properties", ioe);
+  /**
+   * Moves the assets that earlier versions kept as a file per asset, with a properties file of its
+   * name and type, in the cache directory into the {@link #packCache}. The files are read as well
+   * as the pack cache until they have all been moved.
+   */
+  private static void migrateLooseFiles() {
+    File[] files = cacheDir.listFiles((dir, name) -> name.matches("[0-9a-f]{32}"));
+    if (files != null && files.length > 0) {
+      log.info("Moving " + files.length + " cached assets into the asset pack cache");
+      for (File file : files) {
+        if (stopMigration) {
+          return;
+        }
+        MD5Key id = new MD5Key(file.getName());
+        try {
+          if (!packCache.contains(id) && file.length() > 0) {
+            Properties props = getAssetInfo(id);
+            packCache.put(
+                id,
+                props.getProperty(NAME),
+                props.getProperty(TYPE),
+                FileUtils.readFileToByteArray(file));
+          }
+          Files.deleteIfExists(file.toPath());
+          Files.deleteIfExists(getAssetInfoFile(id).toPath());
+        } catch (IOException ioe) {
+          log.error("Could not move cached asset " + file + " into the asset pack cache", ioe);
+          return;
+        }
       }
     }
+    looseFilesMigrated = true;
   }
 
   /**
@@ -677,36 +812,18 @@ private static boolean assetHasLocalReference(MD5Key id) {
     return getLocalReference(id) != null;
   }
 
-  /**
-   * Determine if the asset is in the persistent cache.
-   *
-   * @param asset Asset to search for
-   * @return True if asset is in the persistent cache, false otherwise
-   */
-  private static boolean assetIsInPersistentCache(Asset asset) {
-    return assetIsInPersistentCache(asset.getMD5Key());
-  }
-
-  /**
-   * The assets information is in the persistent cache.
-   *
-   * @param asset Asset to search for
-   * @return True if the assets information exists in the persistent cache
-   */
-  private static boolean assetInfoIsInPersistentCache(Asset asset) {
-    return getAssetInfoFile(asset.getMD5Key()).exists();
-  }
-
   /**
    * Determine if the asset is in the persistent cache.
    *
    * @param id MD5 sum of the asset
    * @return True if asset is in the persistent cache, false otherwise
-   * @see this#assetIsInPersistentCache(Asset)
    */
   private static boolean assetIsInPersistentCache(MD5Key id) {
 
-    return getAssetCacheFile(id).exists() && getAssetCacheFile(id).length() > 0;
+    return packCache.contains(id)
+        || (!looseFilesMigrated
+            && getAssetCacheFile(id).exists()
+            && getAssetCacheFile(id).length() > 0);
   }
 
   /**
@@ -755,7 +872,8 @@ public static Asset getAssetAndWait(final MD5Key assetId) {
   }
 
   /**
-   * Return the assets cache file, if any
+   * Return the assets cache file, if any. Assets are only kept in files of their own until they are
+   * moved into the asset pack cache.
    *
    * @param id MD5 sum of the asset
    * @return The assets cache file, or null if it doesn't have one
@@ -765,22 +883,11 @@ public static File getAssetCacheFile(MD5Key id) {
     return new File(cacheDir.getAbsolutePath() + File.separator + id);
   }
 
-  /**
-   * Return the asset info file, if any
-   *
-   * @param asset Asset to search for
-   * @return The assets info file, or null if it doesn't have one
-   */
-  private static File getAssetInfoFile(Asset asset) {
-    return getAssetInfoFile(asset.getMD5Key());
-  }
-
   /**
    * Return the asset info file, if any
    *
    * @param id MD5 sum of the asset
    * @return File - The assets info file, or null if it doesn't have one
-   * @see this@getAssetInfoFile(Asset asset)
    */
   private static File getAssetInfoFile(MD5Key id) {
     return new File(cacheDir.getAbsolutePath() + File.separator + id + ".info");
@@ -897,47 +1004,4 @@ public static Map<MD5Key, Asset> findAllAssetsNotInRepositories(List<String> rep
     }
     return missing;
   }
-
-  /** Helper type to handle creating and moving temporary files. */
-  private static class AssetWriteRenameOperation implements AutoCloseable {
-    private final File assetFile;
-    private final File temporaryFile;
-
-    public AssetWriteRenameOperation(File assetFile) throws IOException {
-      this.assetFile = assetFile;
-      // Placing the temp file in the cache dir means it will be on the same filesystem in typical
-      // cases.
-      this.temporaryFile =
-          Files.createTempFile(assetFile.getParentFile().toPath(), "tmp.", "").toFile();
-    }
-
-    /**
-     * Move the temporary file to its final location.
-     *
-     * <p>The move will be done atomically if possible, but a non-atomic move may be used as a
-     * fallback.
-     *
-     * @throws IOException If the move fails.
-     */
-    public void commit() throws IOException {
-      try {
-        Files.move(temporaryFile.toPath(), assetFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
-      } catch (AtomicMoveNotSupportedException e) {
-        Files.move(temporaryFile.toPath(), assetFile.toPath());
-      }
-    }
-
-    /**
-     * Clean up the temporary file.
-     *
-     * <p>If the operation has been committed, there is no longer a temporary file and this does
-     * nothing.
-     *
-     * @throws IOException
-     */
-    @Override
-    public void close() throws IOException {
-      Files.deleteIfExists(temporaryFile.toPath());
-    }
-  }
 }
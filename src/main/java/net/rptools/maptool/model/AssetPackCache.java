@@ -0,0 +1,801 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import net.rptools.lib.MD5Key;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A persistent cache of asset data that is kept in a few large segment files, instead of in a file
+ * per asset.
+ *
+ * <p>The data of an asset is appended to the current segment, and where it is, along with the name
+ * and type of the asset, is appended to the index file. The index is read into memory when the
+ * cache is opened, so finding out if an asset is in the cache does not touch the file system.
+ *
+ * <p>When the assets in the cache are larger than the size limit, the assets that were used least
+ * recently are removed from the index. The segments that are mostly made up of removed assets are
+ * compacted in the background, by copying the assets that remain in them to the current segment.
+ * Assets that are pinned, as their data is only read back from the cache when needed, are not
+ * removed.
+ */
+public class AssetPackCache {
+  private static final Logger log = LogManager.getLogger(AssetPackCache.class);
+
+  /** The size a segment is kept under by default, unless a single asset is larger. */
+  private static final long SEGMENT_SIZE = 256L * 1024 * 1024;
+
+  /** The fraction of a segment that has to be removed assets before it is compacted. */
+  private static final double COMPACT_THRESHOLD = 0.5;
+
+  private static final int INDEX_MAGIC = 0x4d544143;
+  private static final int INDEX_VERSION = 1;
+
+  /** An index record adding an asset. */
+  private static final byte OP_PUT = 1;
+
+  /** An index record removing an asset. */
+  private static final byte OP_REMOVE = 2;
+
+  /** An index record marking an asset as used. */
+  private static final byte OP_USE = 3;
+
+  /**
+   * Where the data of an asset is in the cache.
+   *
+   * @param segment the number of the segment the data is in.
+   * @param offset the offset of the data in the segment.
+   * @param length the length of the data.
+   * @param name the name of the asset.
+   * @param type the name of the {@link Asset.Type} of the asset, or an empty string if not known.
+   */
+  record Entry(int segment, long offset, int length, String name, String type) {}
+
+  private final File dir;
+  private final File indexFile;
+  private final LongSupplier sizeLimit;
+  private final long segmentSize;
+
+  /** Held while appending to the cache, which is done by one thread at a time. */
+  private final Object appendLock = new Object();
+
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(
+          r -> {
+            Thread thread = new Thread(r, "AssetPackCache");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+          });
+
+  /** The assets in the cache, used least recently first. Guarded by {@code this}. */
+  private final LinkedHashMap<MD5Key, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** The assets that have been used since the cache was opened. Guarded by {@code this}. */
+  private final Set<MD5Key> used = new HashSet<>();
+
+  /** The assets that are kept when the cache is over its size limit. Guarded by {@code this}. */
+  private final Set<MD5Key> pinned = new HashSet<>();
+
+  /** The channels the segments are read through. Guarded by {@code this}. */
+  private final Map<Integer, FileChannel> readers = new HashMap<>();
+
+  /** The length of each segment. Guarded by {@link #appendLock}. */
+  private final Map<Integer, Long> segmentLengths = new HashMap<>();
+
+  /** The number of bytes of removed assets in each segment. Guarded by {@link #appendLock}. */
+  private final Map<Integer, Long> removedBytes = new HashMap<>();
+
+  /** The total length of the assets in the cache. Guarded by {@link #appendLock}. */
+  private long size;
+
+  /** The segment assets are appended to. Guarded by {@link #appendLock}. */
+  private int currentSegment;
+
+  /** The channel to the current segment, if it is open. Guarded by {@link #appendLock}. */
+  private FileChannel writer;
+
+  /** The stream index records are appended to, if it is open. Guarded by {@link #appendLock}. */
+  private DataOutputStream indexOut;
+
+  /** The number of records in the index file. Guarded by {@link #appendLock}. */
+  private int indexRecords;
+
+  /**
+   * Opens the cache in a directory, reading its index.
+   *
+   * @param dir the directory the cache is kept in.
+   * @param sizeLimit supplies the size in bytes the cache is kept under, or 0 for no limit.
+   */
+  public AssetPackCache(File dir, LongSupplier sizeLimit) {
+    this(dir, sizeLimit, SEGMENT_SIZE);
+  }
+
+  /**
+   * Opens the cache in a directory, reading its index.
+   *
+   * @param dir the directory the cache is kept in.
+   * @param sizeLimit supplies the size in bytes the cache is kept under, or 0 for no limit.
+   * @param segmentSize the size a segment is kept under, unless a single asset is larger.
+   */
+  AssetPackCache(File dir, LongSupplier sizeLimit, long segmentSize) {
+    this.dir = dir;
+    this.indexFile = new File(dir, "index");
+    this.sizeLimit = sizeLimit;
+    this.segmentSize = segmentSize;
+    synchronized (appendLock) {
+      load();
+    }
+    executor.execute(this::maintain);
+  }
+
+  /**
+   * Returns if an asset is in the cache.
+   *
+   * @param id the id of the asset.
+   * @return {@code true} if the asset is in the cache.
+   */
+  public synchronized boolean contains(MD5Key id) {
+    return index.containsKey(id);
+  }
+
+  /**
+   * Returns where an asset is in the cache, which also gives its name and type.
+   *
+   * @param id the id of the asset.
+   * @return the entry of the asset, or {@code null} if it is not in the cache.
+   */
+  synchronized Entry getEntry(MD5Key id) {
+    return index.get(id);
+  }
+
+  /**
+   * Reads the data of an asset, and marks it as used.
+   *
+   * @param id the id of the asset.
+   * @return the data, or {@code null} if the asset is not in the cache.
+   * @throws IOException if the data could not be read.
+   */
+  public byte[] read(MD5Key id) throws IOException {
+    return read(id, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reads part of the data of an asset, and marks it as used.
+   *
+   * @param id the id of the asset.
+   * @param position the position in the data to start reading at.
+   * @param length the number of bytes to read, fewer are read if the data ends before then.
+   * @return the data read, or {@code null} if the asset is not in the cache.
+   * @throws IOException if the data could not be read.
+   */
+  public byte[] read(MD5Key id, long position, int length) throws IOException {
+    for (int attempt = 0; ; attempt++) {
+      Entry entry = use(id);
+      if (entry == null) {
+        return null;
+      }
+      try {
+        return readData(entry, position, (int) Math.min(length, entry.length() - position));
+      } catch (ClosedChannelException | NoSuchFileException e) {
+        // The segment was compacted while it was being read, so look for where the data went.
+        if (attempt > 0) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Opens a stream of the data of an asset, and marks it as used. The stream keeps reading from
+   * the segment the data was in when it was opened, even if the segment is compacted.
+   *
+   * @param id the id of the asset.
+   * @return the stream, or {@code null} if the asset is not in the cache.
+   * @throws IOException if the segment could not be opened.
+   */
+  public InputStream openStream(MD5Key id) throws IOException {
+    for (int attempt = 0; ; attempt++) {
+      Entry entry = use(id);
+      if (entry == null) {
+        return null;
+      }
+      try {
+        FileChannel channel =
+            FileChannel.open(getSegmentFile(entry.segment()).toPath(), StandardOpenOption.READ);
+        channel.position(entry.offset());
+        return new BoundedInputStream(Channels.newInputStream(channel), entry.length());
+      } catch (NoSuchFileException e) {
+        // The segment was compacted after the entry was found, so look for where the data went.
+        if (attempt > 0) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Keeps an asset in the cache even when it is over its size limit, until the cache is cleared.
+   *
+   * @param id the id of the asset.
+   * @return {@code true} if the asset is in the cache and was pinned.
+   */
+  public synchronized boolean pin(MD5Key id) {
+    if (!index.containsKey(id)) {
+      return false;
+    }
+    pinned.add(id);
+    return true;
+  }
+
+  /**
+   * Returns where an asset is in the cache, and marks it as used.
+   *
+   * @param id the id of the asset.
+   * @return the entry of the asset, or {@code null} if it is not in the cache.
+   */
+  private synchronized Entry use(MD5Key id) {
+    Entry entry = index.get(id);
+    if (entry != null && used.add(id)) {
+      executor.execute(() -> recordUse(id));
+    }
+    return entry;
+  }
+
+  /**
+   * Adds an asset to the cache, if it is not already in it, removing the assets used least
+   * recently if the cache grows over its size limit.
+   *
+   * @param id the id of the asset.
+   * @param name the name of the asset.
+   * @param type the name of the {@link Asset.Type} of the asset, or {@code null} if not known.
+   * @param data the data of the asset.
+   * @throws IOException if the asset could not be written.
+   */
+  public void put(MD5Key id, String name, String type, byte[] data) throws IOException {
+    synchronized (appendLock) {
+      if (contains(id)) {
+        return;
+      }
+      Entry entry =
+          append(ByteBuffer.wrap(data), name != null ? name : "", type != null ? type : "");
+      // The data must be on disk before the index refers to it, or a crash could leave the index
+      // pointing at data that was never written.
+      writer.force(false);
+      synchronized (this) {
+        index.put(id, entry);
+      }
+      size += entry.length();
+      writeIndexRecord(OP_PUT, id, entry);
+      if (evict()) {
+        executor.execute(this::maintain);
+      }
+    }
+  }
+
+  /**
+   * Removes an asset from the cache, such as when its data is found to be corrupt, even if it is
+   * pinned.
+   *
+   * @param id the id of the asset.
+   */
+  public void remove(MD5Key id) {
+    synchronized (appendLock) {
+      Entry entry;
+      synchronized (this) {
+        entry = index.remove(id);
+        used.remove(id);
+        pinned.remove(id);
+      }
+      if (entry != null) {
+        removed(entry);
+        writeIndexRecordQuietly(OP_REMOVE, id, null);
+      }
+    }
+  }
+
+  /** Removes all the assets from the cache, and deletes its files. */
+  public void clear() {
+    synchronized (appendLock) {
+      synchronized (this) {
+        index.clear();
+        used.clear();
+        pinned.clear();
+        closeReaders();
+      }
+      closeWriters();
+      segmentLengths.clear();
+      removedBytes.clear();
+      size = 0;
+      currentSegment = 0;
+      indexRecords = 0;
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+
+  /**
+   * Waits for the work in the background to finish and closes the files of the cache, which can
+   * not be used after.
+   *
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  void close() throws InterruptedException {
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+    synchronized (appendLock) {
+      closeReaders();
+      closeWriters();
+    }
+  }
+
+  /**
+   * Reads the index, dropping the entries whose data is missing from the segments.
+   *
+   * <p>If the index can not be read the cache is cleared. If it ends with an incomplete record, or
+   * is mostly records of removed assets, it is rewritten.
+   */
+  private void load() {
+    File[] segmentFiles = dir.listFiles((d, name) -> name.matches("\\d{8}\\.pack"));
+    if (segmentFiles != null) {
+      for (File segmentFile : segmentFiles) {
+        int segment = Integer.parseInt(segmentFile.getName().substring(0, 8));
+        segmentLengths.put(segment, segmentFile.length());
+        currentSegment = Math.max(currentSegment, segment);
+      }
+    }
+    if (!indexFile.exists()) {
+      clear();
+      return;
+    }
+
+    boolean complete = true;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+        throw new IOException("Unknown asset cache index format");
+      }
+      while (true) {
+        byte op;
+        try {
+          op = in.readByte();
+        } catch (EOFException e) {
+          break;
+        }
+        MD5Key id = new MD5Key(in.readUTF());
+        switch (op) {
+          case OP_PUT -> index.put(
+              id,
+              new Entry(in.readInt(), in.readLong(), in.readInt(), in.readUTF(), in.readUTF()));
+          case OP_REMOVE -> index.remove(id);
+          case OP_USE -> index.get(id);
+          default -> throw new IOException("Unknown asset cache index record " + op);
+        }
+        indexRecords++;
+      }
+    } catch (EOFException e) {
+      log.warn("Asset cache index ends with an incomplete record");
+      complete = false;
+    } catch (IOException e) {
+      log.error("Could not read the asset cache index, clearing the asset cache", e);
+      clear();
+      return;
+    }
+
+    Map<Integer, Long> liveBytes = new HashMap<>();
+    for (Iterator<Entry> it = index.values().iterator(); it.hasNext(); ) {
+      Entry entry = it.next();
+      Long segmentLength = segmentLengths.get(entry.segment());
+      if (segmentLength == null || entry.offset() + entry.length() > segmentLength) {
+        it.remove();
+        complete = false;
+      } else {
+        liveBytes.merge(entry.segment(), (long) entry.length(), Long::sum);
+        size += entry.length();
+      }
+    }
+    segmentLengths.forEach(
+        (segment, length) ->
+            removedBytes.put(segment, length - liveBytes.getOrDefault(segment, 0L)));
+    log.info("Asset cache has {} assets in {} segments", index.size(), segmentLengths.size());
+
+    if (!complete || indexRecords > 2 * index.size()) {
+      try {
+        rewriteIndex();
+      } catch (IOException e) {
+        log.error("Could not rewrite the asset cache index, clearing the asset cache", e);
+        clear();
+      }
+    }
+  }
+
+  /** Removes assets over the size limit and compacts the segments that need it. */
+  void maintain() {
+    synchronized (appendLock) {
+      evict();
+      try {
+        compact();
+      } catch (IOException e) {
+        log.error("Could not compact the asset cache", e);
+      }
+    }
+  }
+
+  /**
+   * Removes the assets used least recently until the cache is under its size limit.
+   *
+   * @return {@code true} if any assets were removed.
+   */
+  private boolean evict() {
+    long limit = sizeLimit.getAsLong();
+    if (limit <= 0 || size <= limit) {
+      return false;
+    }
+    List<MD5Key> evicted = new ArrayList<>();
+    synchronized (this) {
+      Iterator<Map.Entry<MD5Key, Entry>> it = index.entrySet().iterator();
+      while (size > limit && it.hasNext()) {
+        Map.Entry<MD5Key, Entry> eldest = it.next();
+        if (pinned.contains(eldest.getKey())) {
+          continue;
+        }
+        it.remove();
+        removed(eldest.getValue());
+        evicted.add(eldest.getKey());
+      }
+    }
+    if (evicted.isEmpty()) {
+      return false;
+    }
+    for (MD5Key id : evicted) {
+      writeIndexRecordQuietly(OP_REMOVE, id, null);
+    }
+    log.debug(
+        "Removed {} assets from the asset cache to keep it under {} bytes", evicted.size(), limit);
+    return true;
+  }
+
+  /**
+   * Accounts for an asset that was removed from the index.
+   *
+   * @param entry the entry of the asset.
+   */
+  private void removed(Entry entry) {
+    size -= entry.length();
+    removedBytes.merge(entry.segment(), (long) entry.length(), Long::sum);
+  }
+
+  /**
+   * Copies the assets that remain in the segments that are mostly removed assets to the current
+   * segment, and deletes those segments once the index no longer refers to them.
+   *
+   * @throws IOException if the assets could not be copied, or the index could not be rewritten.
+   */
+  private void compact() throws IOException {
+    List<Integer> compacted = new ArrayList<>();
+    for (var segment : segmentLengths.entrySet()) {
+      int number = segment.getKey();
+      long removed = removedBytes.getOrDefault(number, 0L);
+      if (number != currentSegment && removed >= segment.getValue() * COMPACT_THRESHOLD) {
+        compacted.add(number);
+      }
+    }
+    if (compacted.isEmpty()) {
+      return;
+    }
+
+    Map<MD5Key, Entry> moved = new HashMap<>();
+    for (int segment : compacted) {
+      List<Map.Entry<MD5Key, Entry>> live = new ArrayList<>();
+      synchronized (this) {
+        for (var entry : index.entrySet()) {
+          if (entry.getValue().segment() == segment) {
+            live.add(Map.entry(entry.getKey(), entry.getValue()));
+          }
+        }
+      }
+      for (var entry : live) {
+        Entry from = entry.getValue();
+        byte[] data = readData(from, 0, from.length());
+        moved.put(entry.getKey(), append(ByteBuffer.wrap(data), from.name(), from.type()));
+      }
+    }
+    // Replacing the values does not change the order the assets were used in.
+    synchronized (this) {
+      index.replaceAll((id, entry) -> moved.getOrDefault(id, entry));
+    }
+    // The index is rewritten before the segments are deleted, so it never refers to a missing one,
+    // and after the moved data is on disk, so it never refers to data that was not written.
+    if (writer != null) {
+      writer.force(false);
+    }
+    rewriteIndex();
+
+    for (int segment : compacted) {
+      FileChannel reader;
+      synchronized (this) {
+        reader = readers.remove(segment);
+      }
+      if (reader != null) {
+        reader.close();
+      }
+      Files.deleteIfExists(getSegmentFile(segment).toPath());
+      segmentLengths.remove(segment);
+      removedBytes.remove(segment);
+    }
+    log.info("Compacted {} asset cache segments, moving {} assets", compacted.size(), moved.size());
+  }
+
+  /**
+   * Appends the data of an asset to the current segment, starting a new segment if the current one
+   * is full.
+   *
+   * @param data the data.
+   * @param name the name of the asset.
+   * @param type the name of the type of the asset.
+   * @return where the data was written.
+   * @throws IOException if the data could not be written.
+   */
+  private Entry append(ByteBuffer data, String name, String type) throws IOException {
+    long offset = segmentLengths.getOrDefault(currentSegment, 0L);
+    if (offset > 0 && offset + data.remaining() > segmentSize) {
+      if (writer != null) {
+        writer.force(false);
+        writer.close();
+        writer = null;
+      }
+      currentSegment++;
+      offset = 0;
+    }
+    if (writer == null) {
+      dir.mkdirs();
+      writer =
+          FileChannel.open(
+              getSegmentFile(currentSegment).toPath(),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.WRITE);
+    }
+
+    int length = data.remaining();
+    while (data.hasRemaining()) {
+      writer.write(data, offset + data.position());
+    }
+    segmentLengths.put(currentSegment, offset + length);
+    removedBytes.putIfAbsent(currentSegment, 0L);
+    return new Entry(currentSegment, offset, length, name, type);
+  }
+
+  /**
+   * Reads part of the data of an asset from its segment.
+   *
+   * @param entry the entry of the asset.
+   * @param position the position in the data to start reading at.
+   * @param length the number of bytes to read.
+   * @return the data read.
+   * @throws IOException if the data could not be read.
+   */
+  private byte[] readData(Entry entry, long position, int length) throws IOException {
+    FileChannel reader = getReader(entry.segment());
+    ByteBuffer buffer = ByteBuffer.allocate(Math.max(length, 0));
+    while (buffer.hasRemaining()) {
+      if (reader.read(buffer, entry.offset() + position + buffer.position()) < 0) {
+        throw new EOFException("Asset cache segment " + entry.segment() + " is truncated");
+      }
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Returns the channel a segment is read through, opening it if needed.
+   *
+   * @param segment the number of the segment.
+   * @return the channel.
+   * @throws IOException if the segment could not be opened.
+   */
+  private synchronized FileChannel getReader(int segment) throws IOException {
+    FileChannel reader = readers.get(segment);
+    if (reader == null) {
+      reader = FileChannel.open(getSegmentFile(segment).toPath(), StandardOpenOption.READ);
+      readers.put(segment, reader);
+    }
+    return reader;
+  }
+
+  /**
+   * Returns the file of a segment.
+   *
+   * @param segment the number of the segment.
+   * @return the file.
+   */
+  private File getSegmentFile(int segment) {
+    return new File(dir, String.format("%08d.pack", segment));
+  }
+
+  /**
+   * Records that an asset was used, so that it is kept over the assets that were not when the cache
+   * is next opened.
+   *
+   * @param id the id of the asset.
+   */
+  private void recordUse(MD5Key id) {
+    synchronized (appendLock) {
+      if (contains(id)) {
+        writeIndexRecordQuietly(OP_USE, id, null);
+      }
+    }
+  }
+
+  /**
+   * Appends a record to the index file.
+   *
+   * @param op the type of the record.
+   * @param id the id of the asset.
+   * @param entry the entry of the asset for {@link #OP_PUT} records, otherwise {@code null}.
+   * @throws IOException if the record could not be written.
+   */
+  private void writeIndexRecord(byte op, MD5Key id, Entry entry) throws IOException {
+    if (indexOut == null) {
+      dir.mkdirs();
+      boolean empty = indexFile.length() == 0;
+      indexOut =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+      if (empty) {
+        indexOut.writeInt(INDEX_MAGIC);
+        indexOut.writeInt(INDEX_VERSION);
+      }
+    }
+    writeIndexRecord(indexOut, op, id, entry);
+    indexOut.flush();
+    indexRecords++;
+  }
+
+  /**
+   * Appends a record to the index file, logging rather than throwing if it could not be written.
+   *
+   * @param op the type of the record.
+   * @param id the id of the asset.
+   * @param entry the entry of the asset for {@link #OP_PUT} records, otherwise {@code null}.
+   */
+  private void writeIndexRecordQuietly(byte op, MD5Key id, Entry entry) {
+    try {
+      writeIndexRecord(op, id, entry);
+    } catch (IOException e) {
+      log.error("Could not write to the asset cache index", e);
+    }
+  }
+
+  /**
+   * Writes a record of the index.
+   *
+   * @param out the stream to write to.
+   * @param op the type of the record.
+   * @param id the id of the asset.
+   * @param entry the entry of the asset for {@link #OP_PUT} records, otherwise {@code null}.
+   * @throws IOException if the record could not be written.
+   */
+  private static void writeIndexRecord(DataOutputStream out, byte op, MD5Key id, Entry entry)
+      throws IOException {
+    out.writeByte(op);
+    out.writeUTF(id.toString());
+    if (entry != null) {
+      out.writeInt(entry.segment());
+      out.writeLong(entry.offset());
+      out.writeInt(entry.length());
+      out.writeUTF(entry.name());
+      out.writeUTF(entry.type());
+    }
+  }
+
+  /**
+   * Replaces the index file with one that only has the assets in the cache, used least recently
+   * first.
+   *
+   * @throws IOException if the index could not be written.
+   */
+  private void rewriteIndex() throws IOException {
+    List<Map.Entry<MD5Key, Entry>> entries = new ArrayList<>();
+    synchronized (this) {
+      for (var entry : index.entrySet()) {
+        entries.add(Map.entry(entry.getKey(), entry.getValue()));
+      }
+    }
+    if (indexOut != null) {
+      indexOut.close();
+      indexOut = null;
+    }
+
+    dir.mkdirs();
+    File tmpFile = new File(dir, "index.tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+      for (var entry : entries) {
+        writeIndexRecord(out, OP_PUT, entry.getKey(), entry.getValue());
+      }
+    }
+    try {
+      Files.move(
+          tmpFile.toPath(),
+          indexFile.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmpFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+    indexRecords = entries.size();
+  }
+
+  /** Closes the channels the segments are read through. */
+  private synchronized void closeReaders() {
+    for (FileChannel reader : readers.values()) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        log.warn("Could not close asset cache segment", e);
+      }
+    }
+    readers.clear();
+  }
+
+  /** Closes the current segment and the index file, if they are open. */
+  private void closeWriters() {
+    try {
+      if (writer != null) {
+        writer.close();
+      }
+      if (indexOut != null) {
+        indexOut.close();
+      }
+    } catch (IOException e) {
+      log.warn("Could not close the asset cache", e);
+    }
+    writer = null;
+    indexOut = null;
+  }
+}
@@ -23,6 +23,9 @@ public class BaseModel {
   private transient List<ModelChangeListener> listenerList =
       new CopyOnWriteArrayList<ModelChangeListener>();
 
+  // Transient so that it isn't transfered over the wire
+  private transient volatile long version;
+
   /**
    * Add the listener to the listenerList.
    *
@@ -40,12 +43,28 @@ public void removeModelChangeListener(ModelChangeListener listener) {
     listenerList.remove(listener);
   }
 
+  /**
+   * Returns the version of the model, which changes each time a change event is fired or the model
+   * is marked as changed. Used to tell if the model has changed since it was last copied.
+   *
+   * @return the version.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /** Marks the model as changed, for the changes that don't fire a change event. */
+  protected void markChanged() {
+    version++;
+  }
+
   /**
    * Send the event to each listener in listenerList
    *
    * @param event the event
    */
   protected void fireModelChangeEvent(ModelChangeEvent event) {
+    markChanged();
 
     for (ModelChangeListener listener : listenerList) {
       listener.modelChanged(event);
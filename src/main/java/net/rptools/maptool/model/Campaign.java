@@ -26,6 +26,7 @@
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import net.rptools.lib.MD5Key;
 import net.rptools.lib.net.Location;
@@ -93,6 +94,11 @@ public class Campaign {
   // as of 1.5.6
   private List<MacroButtonProperties> gmMacroButtonProperties;
 
+  /** Indexes of the campaign and GM macro labels, created when first used. */
+  private transient MacroLabelIndex macroLabelIndex;
+
+  private transient MacroLabelIndex gmMacroLabelIndex;
+
   // DEPRECATED: As of 1.3b20 these are now in campaignProperties, but are here for backward
   // compatibility
   private Map<String, List<TokenProperty>> tokenTypeMap;
@@ -167,6 +173,16 @@ public List<String> getRemoteRepositoryList() {
    * @param campaign The campaign to copy from.
    */
   public Campaign(Campaign campaign) {
+    this(campaign, zone -> new Zone(zone, true));
+  }
+
+  /**
+   * Create a new campaign with an old campaign's properties, using a function to copy its zones.
+   *
+   * @param campaign The campaign to copy from.
+   * @param zoneCopier The function that returns the copy of a zone, keeping its ids.
+   */
+  public Campaign(Campaign campaign, UnaryOperator<Zone> zoneCopier) {
     name = campaign.getName();
 
     /*
@@ -180,7 +196,7 @@ public Campaign(Campaign campaign) {
       zonesToCopy = new LinkedHashMap<>(campaign.zones);
     }
     for (Entry<GUID, Zone> entry : zonesToCopy.entrySet()) {
-      Zone copy = new Zone(entry.getValue(), true);
+      Zone copy = zoneCopier.apply(entry.getValue());
       zones.put(copy.getId(), copy);
     }
     campaignProperties = new CampaignProperties(campaign.campaignProperties);
@@ -250,6 +266,18 @@ public List<TokenProperty> getTokenPropertyList(String tokenType) {
         : new ArrayList<TokenProperty>();
   }
 
+  /**
+   * Returns the token property of a token type with the specified name, ignoring case.
+   *
+   * @param tokenType the token type.
+   * @param name the name of the property.
+   * @return the token property, or null if the token type has no property with the name.
+   */
+  public TokenProperty getTokenProperty(String tokenType, String name) {
+    checkCampaignPropertyConversion(); // TODO: Remove, for compatibility 1.3b19-1.3b20
+    return campaignProperties.getTokenProperty(tokenType, name);
+  }
+
   public void putTokenType(String name, List<TokenProperty> propertyList) {
     getTokenTypeMap().put(name, propertyList);
   }
@@ -488,6 +516,7 @@ public List<MacroButtonProperties> getMacroButtonPropertiesArray() {
    */
   public void setMacroButtonPropertiesArray(List<MacroButtonProperties> properties) {
     macroButtonProperties = properties;
+    getMacroLabelIndex(false).invalidate();
   }
 
   /**
@@ -510,6 +539,47 @@ public List<MacroButtonProperties> getGmMacroButtonPropertiesArray() {
    */
   public void setGmMacroButtonPropertiesArray(List<MacroButtonProperties> properties) {
     gmMacroButtonProperties = properties;
+    getMacroLabelIndex(true).invalidate();
+  }
+
+  /**
+   * Returns the first Campaign macro with the label.
+   *
+   * @param label the label of the macro.
+   * @return the macro, or null if there is no Campaign macro with the label.
+   */
+  public MacroButtonProperties getMacroButtonProperties(String label) {
+    return getMacroLabelIndex(false).get(label, getMacroButtonPropertiesArray());
+  }
+
+  /**
+   * Returns the first GM macro with the label.
+   *
+   * @param label the label of the macro.
+   * @return the macro, or null if there is no GM macro with the label.
+   */
+  public MacroButtonProperties getGmMacroButtonProperties(String label) {
+    return getMacroLabelIndex(true).get(label, getGmMacroButtonPropertiesArray());
+  }
+
+  /**
+   * Returns the label index of the GM or Campaign macros, creating it if needed.
+   *
+   * @param gmPanel true for the GM macros, false for the Campaign macros.
+   * @return the macro label index.
+   */
+  private synchronized MacroLabelIndex getMacroLabelIndex(boolean gmPanel) {
+    if (gmPanel) {
+      if (gmMacroLabelIndex == null) {
+        gmMacroLabelIndex = new MacroLabelIndex();
+      }
+      return gmMacroLabelIndex;
+    } else {
+      if (macroLabelIndex == null) {
+        macroLabelIndex = new MacroLabelIndex();
+      }
+      return macroLabelIndex;
+    }
   }
 
   /**
@@ -536,6 +606,7 @@ public void addMacroButtonPropertiesAtNextIndex(
       newProp.setIndex(++lastIndex);
     }
     macroButtonList.addAll(toSave);
+    getMacroLabelIndex(gmPanel).invalidate();
 
     // update the ButtonLastIndex prop as appropriate
     if (gmPanel) {
@@ -586,11 +657,13 @@ public void saveMacroButtonProperty(MacroButtonProperties properties, boolean gm
         prop.setCompareSortPrefix(properties.getCompareSortPrefix());
         prop.setCompareCommand(properties.getCompareCommand());
 
+        getMacroLabelIndex(gmPanel).invalidate();
         macroPanel.reset();
         return;
       }
     }
     macroButtonList.add(properties);
+    getMacroLabelIndex(gmPanel).invalidate();
     macroPanel.reset();
   }
 
@@ -614,11 +687,13 @@ public int getGmMacroButtonNextIndex() {
 
   public void deleteMacroButton(MacroButtonProperties properties) {
     macroButtonProperties.remove(properties);
+    getMacroLabelIndex(false).invalidate();
     MapTool.getFrame().getCampaignPanel().reset();
   }
 
   public void deleteGmMacroButton(MacroButtonProperties properties) {
     gmMacroButtonProperties.remove(properties);
+    getMacroLabelIndex(true).invalidate();
     MapTool.getFrame().getGmPanel().reset();
   }
 
@@ -748,6 +823,17 @@ public static Campaign fromDto(CampaignDto dto) {
   }
 
   public CampaignDto toDto() {
+    return toDto(true);
+  }
+
+  /**
+   * Returns the DTO of the campaign.
+   *
+   * @param withZones if {@code false} the zones are left out, so that they can be written one at a
+   *     time.
+   * @return the DTO.
+   */
+  public CampaignDto toDto(boolean withZones) {
     var dto = CampaignDto.newBuilder();
     dto.setId(id.toString());
     dto.setName(name);
@@ -763,7 +849,9 @@ public CampaignDto toDto() {
     dto.setGmMacroButtonLastIndex(gmMacroButtonLastIndex);
     dto.addAllMacroButtonProperties(
         macroButtonProperties.stream().map(p -> p.toDto()).collect(Collectors.toList()));
-    dto.addAllZones(zones.values().stream().map(z -> z.toDto()).collect(Collectors.toList()));
+    if (withZones) {
+      dto.addAllZones(zones.values().stream().map(z -> z.toDto()).collect(Collectors.toList()));
+    }
     return dto.build();
   }
 }
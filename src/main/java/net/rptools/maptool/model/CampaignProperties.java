@@ -53,6 +53,12 @@ public class CampaignProperties {
   public static final String DEFAULT_TOKEN_PROPERTY_TYPE = "Basic";
 
   private final Map<String, List<TokenProperty>> tokenTypeMap = new HashMap<>();
+
+  /**
+   * Index of the token properties of each token type by their lower case name, created when first
+   * used.
+   */
+  private transient Map<String, TokenPropertyIndex> tokenPropertyIndexMap;
   private final List<String> remoteRepositoryList = new ArrayList<>();
   private final Map<String, Map<GUID, LightSource>> lightSourcesMap = new TreeMap<>();
   private final Map<String, LookupTable> lookupTableMap = new HashMap<>();
@@ -127,6 +133,7 @@ public CampaignProperties(CampaignProperties properties) {
   public void mergeInto(CampaignProperties properties) {
     // This will replace any dups
     properties.tokenTypeMap.putAll(tokenTypeMap);
+    properties.invalidateTokenPropertyIndex();
     // Need to cull out dups
     for (String repo : properties.remoteRepositoryList) {
       if (!remoteRepositoryList.contains(repo)) {
@@ -165,12 +172,84 @@ public void setSightTypeMap(Map<String, SightType> map) {
   public void setTokenTypeMap(Map<String, List<TokenProperty>> map) {
     tokenTypeMap.clear();
     tokenTypeMap.putAll(map);
+    invalidateTokenPropertyIndex();
   }
 
   public List<TokenProperty> getTokenPropertyList(String tokenType) {
     return getTokenTypeMap().get(tokenType);
   }
 
+  /**
+   * The token properties of a token type indexed by their lower case name.
+   *
+   * @param propertyList the property list of the token type the index was built from.
+   * @param size the size of the property list when the index was built.
+   * @param propertiesByName the first property with each name.
+   */
+  private record TokenPropertyIndex(
+      List<TokenProperty> propertyList, int size, Map<String, TokenProperty> propertiesByName) {}
+
+  /**
+   * Returns the token property of a token type with the specified name, ignoring case. The
+   * properties are looked up in an index which is rebuilt when the property list of the token type
+   * is replaced or changes size.
+   *
+   * @param tokenType the token type.
+   * @param name the name of the property.
+   * @return the token property, or null if the token type has no property with the name.
+   */
+  public synchronized TokenProperty getTokenProperty(String tokenType, String name) {
+    List<TokenProperty> propertyList = getTokenPropertyList(tokenType);
+    if (propertyList == null || name == null) {
+      return null;
+    }
+    if (tokenPropertyIndexMap == null) {
+      tokenPropertyIndexMap = new HashMap<>();
+    }
+
+    TokenPropertyIndex index = tokenPropertyIndexMap.get(tokenType);
+    if (index == null
+        || index.propertyList() != propertyList
+        || index.size() != propertyList.size()) {
+      index = indexTokenProperties(tokenType, propertyList);
+    }
+    TokenProperty property = index.propertiesByName().get(name.toLowerCase());
+    if (property != null && !name.equalsIgnoreCase(property.getName())) {
+      // The property has been renamed since the index was built.
+      property =
+          indexTokenProperties(tokenType, propertyList)
+              .propertiesByName()
+              .get(name.toLowerCase());
+    }
+    return property;
+  }
+
+  /**
+   * Builds the index of the token properties of a token type.
+   *
+   * @param tokenType the token type.
+   * @param propertyList the properties of the token type.
+   * @return the index.
+   */
+  private TokenPropertyIndex indexTokenProperties(
+      String tokenType, List<TokenProperty> propertyList) {
+    Map<String, TokenProperty> propertiesByName = new HashMap<>();
+    for (TokenProperty property : propertyList) {
+      if (property.getName() != null) {
+        propertiesByName.putIfAbsent(property.getName().toLowerCase(), property);
+      }
+    }
+    TokenPropertyIndex index =
+        new TokenPropertyIndex(propertyList, propertyList.size(), propertiesByName);
+    tokenPropertyIndexMap.put(tokenType, index);
+    return index;
+  }
+
+  /** Marks the token property indexes as out of date. */
+  private synchronized void invalidateTokenPropertyIndex() {
+    tokenPropertyIndexMap = null;
+  }
+
   public List<String> getRemoteRepositoryList() {
     return remoteRepositoryList;
   }
@@ -174,6 +174,7 @@ public TokenInitiative insertToken(int index, Token token) {
     TokenInitiative ti = new TokenInitiative(token);
     tokens.add(index, ti);
     getPCS().fireIndexedPropertyChange(TOKENS_PROP, index, null, ti);
+    markZoneChanged();
     setCurrent(indexOf(currentInitiative)); // Restore current initiative
     finishUnitOfWork();
     return ti;
@@ -243,6 +244,7 @@ public Token removeToken(int index) {
     TokenInitiative ti = tokens.remove(index);
     Token old = ti.getToken();
     getPCS().fireIndexedPropertyChange(TOKENS_PROP, index, ti, null);
+    markZoneChanged();
     setCurrent(indexOf(currentInitiative)); // Restore current initiative
     finishUnitOfWork();
     return old;
@@ -271,6 +273,7 @@ public void setCurrent(int aCurrent) {
     int old = current;
     current = aCurrent;
     getPCS().firePropertyChange(CURRENT_PROP, old, current);
+    markZoneChanged();
     finishUnitOfWork();
   }
 
@@ -336,6 +339,7 @@ public void setRound(int aRound) {
     int old = round;
     round = aRound;
     getPCS().firePropertyChange(ROUND_PROP, old, aRound);
+    markZoneChanged();
     finishUnitOfWork();
   }
 
@@ -424,6 +428,7 @@ public void clearModel() {
       List<TokenInitiative> old = tokens;
       tokens = new ArrayList<TokenInitiative>();
       getPCS().firePropertyChange(TOKENS_PROP, old, tokens);
+      markZoneChanged();
     } // endif
     finishUnitOfWork();
   }
@@ -449,6 +454,7 @@ public void update() {
         i.remove();
         updateNeeded = true;
         getPCS().fireIndexedPropertyChange(TOKENS_PROP, index, ti, null);
+        markZoneChanged();
       } // endif
     } // endwhile
     // update the server if any actual change was made, otherwise just decrement holdUpdate
@@ -516,6 +522,7 @@ public void sort(boolean ascendingOrder) {
           return 1 * DIRECTION;
         });
     getPCS().firePropertyChange(TOKENS_PROP, null, tokens);
+    markZoneChanged();
     setCurrent(indexOf(currentInitiative)); // Restore current initiative
     finishUnitOfWork();
   }
@@ -526,6 +533,15 @@ public Zone getZone() {
     return zone;
   }
 
+  /**
+   * Marks the zone as changed, so that changes to the list are noticed by everything that only
+   * copies or saves a zone when its version changes, such as the autosave.
+   */
+  private void markZoneChanged() {
+    Zone z = getZone();
+    if (z != null) z.markChanged();
+  }
+
   /** @return Getter for pcs */
   private PropertyChangeSupport getPCS() {
     if (pcs == null) pcs = new PropertyChangeSupport(this);
@@ -565,6 +581,7 @@ public void moveToken(int oldIndex, int index) {
     index -= index > oldIndex ? 1 : 0;
     tokens.add(index, ti);
     getPCS().fireIndexedPropertyChange(TOKENS_PROP, index, null, ti);
+    markZoneChanged();
 
     // Set/restore proper initiative
     if (newInitiative == null) current = indexOf(currentInitiative);
@@ -615,6 +632,7 @@ public void setHideNPC(boolean hide) {
     boolean old = hideNPC;
     hideNPC = hide;
     getPCS().firePropertyChange(HIDE_NPCS_PROP, old, hide);
+    markZoneChanged();
     finishUnitOfWork();
   }
 
@@ -880,6 +898,7 @@ public void setHolding(boolean isHolding) {
       boolean old = holding;
       holding = isHolding;
       getPCS().fireIndexedPropertyChange(TOKENS_PROP, tokens.indexOf(this), old, isHolding);
+      markZoneChanged();
       finishUnitOfWork(this);
     }
 
@@ -899,6 +918,7 @@ public void setState(String aState) {
       String old = state;
       state = aState;
       getPCS().fireIndexedPropertyChange(TOKENS_PROP, tokens.indexOf(this), old, aState);
+      markZoneChanged();
       finishUnitOfWork(this);
     }
 
@@ -950,6 +970,7 @@ public void update(boolean isHolding, String aState) {
       state = aState;
       getPCS().fireIndexedPropertyChange(TOKENS_PROP, tokens.indexOf(this), old, isHolding);
       getPCS().fireIndexedPropertyChange(TOKENS_PROP, tokens.indexOf(this), oldState, aState);
+      markZoneChanged();
     }
 
     public TokenInitiativeDto toDto() {
@@ -16,6 +16,7 @@
 
 import java.awt.Color;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.swing.text.JTextComponent;
@@ -46,6 +47,9 @@ public class MacroButtonProperties implements Comparable<MacroButtonProperties>
 
   private static final Logger log = LogManager.getLogger(MacroButtonProperties.class);
 
+  /** The number of times the label of a macro has changed, see {@link MacroLabelIndex}. */
+  private static final AtomicLong labelChanges = new AtomicLong();
+
   // private transient static final List<String> HTMLColors = Arrays.asList("aqua", "black", "blue",
   // "fuchsia", "gray", "green", "lime", "maroon", "navy", "olive", "purple", "red", "silver",
   // "teal",
@@ -625,9 +629,22 @@ public String getLabel() {
   }
 
   public void setLabel(String label) {
+    if (!Objects.equals(this.label, label)) {
+      labelChanges.incrementAndGet();
+    }
     this.label = label;
   }
 
+  /**
+   * Returns the number of times the label of a macro has changed, so that the macros indexed by
+   * label can tell when they have to be indexed again.
+   *
+   * @return the number of label changes.
+   */
+  static long getLabelChanges() {
+    return labelChanges.get();
+  }
+
   public String getGroup() {
     return (group == null ? "" : group);
   }
@@ -825,7 +842,7 @@ public void reset() {
     colorKey = "default";
     hotKey = MacroButtonHotKeyManager.HOTKEYS[0];
     command = "";
-    label = String.valueOf(index);
+    setLabel(String.valueOf(index));
     group = "";
     sortby = "";
     autoExecute = true;
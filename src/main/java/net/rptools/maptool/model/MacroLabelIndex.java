@@ -0,0 +1,89 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index of macro labels to the first macro with that label in a collection of macros, so that a
+ * macro can be looked up by its label without walking the whole collection.
+ *
+ * <p>The index is built once, and a label no macro has is found missing from it without walking the
+ * collection either. The owner of the collection calls {@link #invalidate()} whenever it adds,
+ * removes or replaces macros. As labels are changed on the {@link MacroButtonProperties} directly,
+ * and the collections are also exposed to callers that modify them, the index is also rebuilt when
+ * the label of any macro has changed, and when it is used with another collection or a collection
+ * of another size.
+ */
+public class MacroLabelIndex {
+
+  /** The index, or null if it has to be rebuilt. */
+  private Map<String, MacroButtonProperties> macrosByLabel;
+
+  /** The collection the index was built from. */
+  private Collection<MacroButtonProperties> indexedMacros;
+
+  /** The size of the collection when the index was built. */
+  private int indexedSize;
+
+  /** The number of label changes when the index was built. */
+  private long indexedLabelChanges;
+
+  /**
+   * Returns the first macro with the label.
+   *
+   * @param label the label of the macro.
+   * @param macros the macros to search, always the same collection for an index.
+   * @return the first macro with the label, or {@code null} if there is none.
+   */
+  public synchronized MacroButtonProperties get(
+      String label, Collection<MacroButtonProperties> macros) {
+    long labelChanges = MacroButtonProperties.getLabelChanges();
+    if (macrosByLabel == null
+        || indexedMacros != macros
+        || indexedSize != macros.size()
+        || indexedLabelChanges != labelChanges) {
+      rebuild(macros, labelChanges);
+    }
+    return macrosByLabel.get(label);
+  }
+
+  /** Marks the index as out of date. */
+  public synchronized void invalidate() {
+    macrosByLabel = null;
+    indexedMacros = null;
+  }
+
+  /**
+   * Rebuilds the index from the macros.
+   *
+   * @param macros the macros to index.
+   * @param labelChanges the number of label changes, read before the labels are.
+   */
+  private void rebuild(Collection<MacroButtonProperties> macros, long labelChanges) {
+    Map<String, MacroButtonProperties> index = new HashMap<>();
+    for (MacroButtonProperties prop : macros) {
+      if (prop.getLabel() != null) {
+        index.putIfAbsent(prop.getLabel(), prop);
+      }
+    }
+    macrosByLabel = index;
+    indexedMacros = macros;
+    indexedSize = macros.size();
+    indexedLabelChanges = labelChanges;
+  }
+}
@@ -50,6 +50,7 @@
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.MapToolVariableResolver;
 import net.rptools.maptool.client.functions.json.JSONMacroFunctions;
+import net.rptools.maptool.client.ui.MapToolFrame;
 import net.rptools.maptool.client.ui.zone.ZoneRenderer;
 import net.rptools.maptool.client.ui.zone.ZoneRenderer.SelectionSet;
 import net.rptools.maptool.language.I18N;
@@ -361,6 +362,9 @@ public String toString() {
   private Map<String, String> macroMap;
   private Map<Integer, MacroButtonProperties> macroPropertiesMap = new HashMap<>();
 
+  /** Index of the macro labels, created when first used. */
+  private transient MacroLabelIndex macroLabelIndex;
+
   private Map<String, String> speechMap = new HashMap<>();
 
   private HeroLabData heroLabData;
@@ -1772,20 +1776,18 @@ public Object getEvaluatedProperty(MapToolVariableResolver resolver, String key)
     Object val = getProperty(key);
     if (val == null) {
       // Global default ?
-      List<TokenProperty> propertyList =
-          MapTool.getCampaign().getCampaignProperties().getTokenPropertyList(propertyType);
-      if (propertyList != null) {
-        for (TokenProperty property : propertyList) {
-          if (key.equalsIgnoreCase(property.getName())) {
-            val = property.getDefaultValue();
-            break;
-          }
-        }
+      TokenProperty property = MapTool.getCampaign().getTokenProperty(propertyType, key);
+      if (property != null) {
+        val = property.getDefaultValue();
       }
     }
     if (val == null) {
       return "";
     }
+    if (val instanceof String str && !containsInlineRollMarkup(str)) {
+      // Without any rolls the parser would only trim the value, so don't invoke it.
+      return str.trim();
+    }
     if (val.toString().trim().startsWith("{")) {
       /*
        * The normal Gson evaluator was too lenient in identifying JSON objects, so we had to move
@@ -1845,6 +1847,16 @@ public Object getEvaluatedProperty(MapToolVariableResolver resolver, String key)
     return val;
   }
 
+  /**
+   * Returns if a property value may contain inline rolls, and so has to be evaluated by the parser.
+   *
+   * @param value the property value.
+   * @return true if the value contains a '[' or '{'.
+   */
+  public static boolean containsInlineRollMarkup(String value) {
+    return value.indexOf('[') >= 0 || value.indexOf('{') >= 0;
+  }
+
   /** @return all property names, all in lowercase. */
   public Set<String> getPropertyNames() {
     return getPropertyMap().keySet();
@@ -1872,6 +1884,7 @@ private void loadOldMacros() {
       macroPropertiesMap.put(prop.getIndex(), prop);
     }
     macroMap = null;
+    invalidateMacroLabelIndex();
     if (log.isDebugEnabled()) {
       log.debug("Token.loadOldMacros() set up " + macroPropertiesMap.size() + " new macros.");
     }
@@ -1912,14 +1925,27 @@ public MacroButtonProperties getMacro(int index, boolean secure) {
   // avoid this; it loads the first macro with this label, but there could be more than one macro
   // with that label
   public MacroButtonProperties getMacro(String label, boolean secure) {
-    Set<Integer> keys = getMacroPropertiesMap(secure).keySet();
-    for (int key : keys) {
-      MacroButtonProperties prop = macroPropertiesMap.get(key);
-      if (prop.getLabel().equals(label)) {
-        return prop;
-      }
+    if (getMacroPropertiesMap(secure) != macroPropertiesMap) {
+      return null; // not permitted
     }
-    return null;
+    return getMacroLabelIndex().get(label, macroPropertiesMap.values());
+  }
+
+  /**
+   * Returns the index of the macro labels of the token, creating it if needed.
+   *
+   * @return the macro label index.
+   */
+  private synchronized MacroLabelIndex getMacroLabelIndex() {
+    if (macroLabelIndex == null) {
+      macroLabelIndex = new MacroLabelIndex();
+    }
+    return macroLabelIndex;
+  }
+
+  /** Marks the macro label index as out of date after the macros have been changed. */
+  private void invalidateMacroLabelIndex() {
+    getMacroLabelIndex().invalidate();
   }
 
   /**
@@ -1955,6 +1981,7 @@ public void saveMacroList(List<MacroButtonProperties> newMacroList, boolean clea
       }
       macroPropertiesMap.put(macro.getIndex(), macro);
     }
+    invalidateMacroLabelIndex();
   }
 
   /**
@@ -1964,6 +1991,7 @@ public void saveMacroList(List<MacroButtonProperties> newMacroList, boolean clea
    */
   public void saveMacro(MacroButtonProperties prop) {
     getMacroPropertiesMap(false).put(prop.getIndex(), prop);
+    invalidateMacroLabelIndex();
   }
 
   /**
@@ -1973,6 +2001,7 @@ public void saveMacro(MacroButtonProperties prop) {
    */
   public void deleteMacro(int index) {
     getMacroPropertiesMap(false).remove(index);
+    invalidateMacroLabelIndex();
   }
 
   public List<String> getMacroNames(boolean secure) {
@@ -2769,7 +2798,13 @@ public void updateProperty(Zone zone, Update update, List<TokenPropertyValueDto>
         break;
     }
     if (lightChanged) {
-      getZoneRenderer().flushLight(); // flush lights if it changed
+      // Flush the lights of the renderer showing this zone, if any. The zone may not be shown,
+      // such as when the server applies the update or the journal is replayed.
+      MapToolFrame frame = MapTool.getFrame();
+      ZoneRenderer renderer = frame != null ? frame.getZoneRenderer(zone) : null;
+      if (renderer != null) {
+        renderer.flushLight();
+      }
     }
     if (macroChanged) {
       zone.tokenMacroChanged(this);
@@ -263,6 +263,15 @@ public String toString() {
   private DrawablePaint fogPaint;
   private transient UndoPerZone undo;
 
+  /** The thread that is batching the token events, or null if they are not batched. */
+  private transient Thread tokenEventBatchThread;
+
+  /** The number of nested token event batches. */
+  private transient int tokenEventBatchDepth;
+
+  /** The tokens of the batched token events, by event and token id. */
+  private transient Map<Event, Map<GUID, Token>> batchedTokenEvents;
+
   /**
    * The Wall VBL topology of the zone. Does not include token Wall VBL. Should really be called
    * wallVbl.
@@ -321,6 +330,7 @@ public Zone() {
 
   public void setBackgroundPaint(DrawablePaint paint) {
     backgroundPaint = paint;
+    markChanged();
   }
 
   public void setBackgroundAsset(MD5Key id) {}
@@ -332,10 +342,12 @@ public MD5Key getBackgroundAsset() {
   public void setMapAsset(MD5Key id) {
     mapAsset = id;
     boardChanged = true;
+    markChanged();
   }
 
   public void setTokenVisionDistance(int units) {
     tokenVisionDistance = units;
+    markChanged();
   }
 
   public int getTokenVisionDistance() {
@@ -348,6 +360,7 @@ public VisionType getVisionType() {
 
   public void setVisionType(VisionType visionType) {
     this.visionType = visionType;
+    markChanged();
   }
 
   public TokenSelection getTokenSelection() {
@@ -356,6 +369,7 @@ public TokenSelection getTokenSelection() {
 
   public void setTokenSelection(TokenSelection tokenSelection) {
     this.tokenSelection = tokenSelection;
+    markChanged();
   }
 
   /** @return the distance in map pixels at a 1:1 zoom */
@@ -369,6 +383,7 @@ public int getTokenVisionInPixels() {
 
   public void setFogPaint(DrawablePaint paint) {
     fogPaint = paint;
+    markChanged();
   }
 
   @Override
@@ -387,6 +402,7 @@ public String getPlayerAlias() {
 
   public void setName(String name) {
     this.name = name;
+    markChanged();
   }
 
   public boolean setPlayerAlias(String playerAlias) {
@@ -398,6 +414,7 @@ public boolean setPlayerAlias(String playerAlias) {
       }
     }
     this.playerAlias = playerAlias.equals("") || playerAlias.equals(name) ? null : playerAlias;
+    markChanged();
     return true;
   }
 
@@ -599,6 +616,7 @@ public int getHeight() {
 
   public void setHeight(int height) {
     this.height = height;
+    markChanged();
   }
 
   public int getWidth() {
@@ -607,6 +625,7 @@ public int getWidth() {
 
   public void setWidth(int width) {
     this.width = width;
+    markChanged();
   }
 
   public boolean isVisible() {
@@ -615,6 +634,7 @@ public boolean isVisible() {
 
   public void setVisible(boolean isVisible) {
     this.isVisible = isVisible;
+    markChanged();
   }
 
   public void setGrid(Grid grid) {
@@ -634,6 +654,7 @@ public int getGridColor() {
 
   public void setGridColor(int color) {
     gridColor = color;
+    markChanged();
   }
 
   /**
@@ -683,6 +704,7 @@ public boolean drawBoard() {
 
   public void setDrawBoard(boolean draw) {
     drawBoard = draw;
+    markChanged();
   }
 
   //
@@ -695,6 +717,7 @@ public float getImageScaleX() {
 
   public void setImageScaleX(float imageScaleX) {
     this.imageScaleX = imageScaleX;
+    markChanged();
   }
 
   public float getImageScaleY() {
@@ -703,6 +726,7 @@ public float getImageScaleY() {
 
   public void setImageScaleY(float imageScaleY) {
     this.imageScaleY = imageScaleY;
+    markChanged();
   }
 
   //
@@ -932,7 +956,7 @@ public void tokenTopologyChanged() {
    * @param token the token that changed
    */
   public void tokenChanged(Token token) {
-    fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_CHANGED, token));
+    fireTokenEvent(Event.TOKEN_CHANGED, token);
   }
 
   /**
@@ -941,7 +965,7 @@ public void tokenChanged(Token token) {
    * @param token the token that had its macro changed
    */
   public void tokenMacroChanged(Token token) {
-    fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_MACRO_CHANGED, token));
+    fireTokenEvent(Event.TOKEN_MACRO_CHANGED, token);
   }
 
   /**
@@ -950,7 +974,77 @@ public void tokenMacroChanged(Token token) {
    * @param token the token that had its panel appearance changed
    */
   public void tokenPanelChanged(Token token) {
-    fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_PANEL_CHANGED, token));
+    fireTokenEvent(Event.TOKEN_PANEL_CHANGED, token);
+  }
+
+  /**
+   * Starts batching the TOKEN_CHANGED, TOKEN_MACRO_CHANGED and TOKEN_PANEL_CHANGED events fired on
+   * the calling thread. Instead of an event per change, a single event of each type is fired for
+   * all the changed tokens when the batch ends, so that the listeners only have to react once.
+   * Batches can be nested, the events are fired when the outermost batch ends. Events fired on
+   * other threads are not batched.
+   *
+   * <p>As the listeners, such as the {@link ZoneView}, are only told about the changes at the end
+   * of the batch, anything they calculate from the tokens can be out of date until then.
+   */
+  public synchronized void beginTokenEventBatch() {
+    if (tokenEventBatchThread == null) {
+      tokenEventBatchThread = Thread.currentThread();
+      batchedTokenEvents = new EnumMap<>(Event.class);
+    } else if (tokenEventBatchThread != Thread.currentThread()) {
+      // Only one thread can batch at a time, the events of the others are fired as normal.
+      return;
+    }
+    tokenEventBatchDepth++;
+  }
+
+  /**
+   * Ends a batch started by {@link #beginTokenEventBatch()}. When the outermost batch ends the
+   * batched events are fired, with the list of changed tokens that are still on the zone as their
+   * argument, or the token itself if only one token changed.
+   */
+  public void endTokenEventBatch() {
+    Map<Event, Map<GUID, Token>> events;
+    synchronized (this) {
+      if (tokenEventBatchThread != Thread.currentThread() || --tokenEventBatchDepth > 0) {
+        return;
+      }
+      events = batchedTokenEvents;
+      tokenEventBatchThread = null;
+      batchedTokenEvents = null;
+    }
+    events.forEach(
+        (event, tokens) -> {
+          List<Token> changed = new ArrayList<>(tokens.size());
+          for (Token token : tokens.values()) {
+            if (tokenMap.containsKey(token.getId())) {
+              changed.add(token);
+            }
+          }
+          if (changed.size() == 1) {
+            fireModelChangeEvent(new ModelChangeEvent(this, event, changed.get(0)));
+          } else if (!changed.isEmpty()) {
+            fireModelChangeEvent(new ModelChangeEvent(this, event, changed));
+          }
+        });
+  }
+
+  /**
+   * Fires a token event, or adds it to the batch if the calling thread is batching token events.
+   *
+   * @param event the event.
+   * @param token the token the event is for.
+   */
+  private void fireTokenEvent(Event event, Token token) {
+    synchronized (this) {
+      if (tokenEventBatchThread == Thread.currentThread()) {
+        batchedTokenEvents
+            .computeIfAbsent(event, e -> new LinkedHashMap<>())
+            .put(token.getId(), token);
+        return;
+      }
+    }
+    fireModelChangeEvent(new ModelChangeEvent(this, event, token));
   }
 
   /**
@@ -1209,6 +1303,7 @@ public double getUnitsPerCell() {
 
   public void setUnitsPerCell(double unitsPerCell) {
     this.unitsPerCell = unitsPerCell;
+    markChanged();
   }
 
   public AStarRoundingOptions getAStarRounding() {
@@ -1221,6 +1316,7 @@ public AStarRoundingOptions getAStarRounding() {
 
   public void setAStarRounding(AStarRoundingOptions aStarRounding) {
     this.aStarRounding = aStarRounding;
+    markChanged();
   }
 
   public TopologyTypeSet getTopologyTypes() {
@@ -1233,6 +1329,7 @@ public TopologyTypeSet getTopologyTypes() {
 
   public void setTopologyTypes(TopologyTypeSet topologyTypes) {
     this.topologyTypes = topologyTypes;
+    markChanged();
   }
 
   public int getLargestZOrder() {
@@ -1427,7 +1524,8 @@ public void redoDrawable() {
   /**
    * Adds the specified Token to this zone, accounting for updating the ordered list of tokens as
    * well as firing the appropriate <code>ModelChangeEvent</code> (either <code>Event.TOKEN_ADDED
-   * </code> or <code>Event.TOKEN_CHANGED</code>).
+   * </code> or <code>Event.TOKEN_CHANGED</code>). The TOKEN_CHANGED event is held back while token
+   * events are batched, see {@link #beginTokenEventBatch()}.
    *
    * @param token the Token to be added to this zone
    */
@@ -1444,7 +1542,7 @@ public void putToken(Token token) {
     if (newToken) {
       fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_ADDED, token));
     } else {
-      fireModelChangeEvent(new ModelChangeEvent(this, Event.TOKEN_CHANGED, token));
+      fireTokenEvent(Event.TOKEN_CHANGED, token);
     }
   }
 
@@ -2167,6 +2265,7 @@ public boolean getWaypointExposureToggle() {
    */
   public void setWaypointExposureToggle(boolean toggle) {
     exposeFogAtWaypoints = toggle;
+    markChanged();
   }
 
   public static Zone fromDto(ZoneDto dto) {
@@ -2243,6 +2342,17 @@ public static Zone fromDto(ZoneDto dto) {
   }
 
   public ZoneDto toDto() {
+    return toDto(true);
+  }
+
+  /**
+   * Returns the DTO of the zone.
+   *
+   * @param withTokensAndDrawables if {@code false} the tokens and drawables are left out, so that
+   *     they can be written one at a time.
+   * @return the DTO.
+   */
+  public ZoneDto toDto(boolean withTokensAndDrawables) {
     var dto = ZoneDto.newBuilder();
     dto.setCreationTime(creationTime);
     dto.setId(id.toString());
@@ -2259,13 +2369,18 @@ public ZoneDto toDto() {
               .map(t -> TopologyTypeDto.valueOf(t.name()))
               .collect(Collectors.toList()));
     }
-    dto.addAllDrawables(drawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
-    dto.addAllDrawables(gmDrawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
-    dto.addAllDrawables(objectDrawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
-    dto.addAllDrawables(
-        backgroundDrawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
+    if (withTokensAndDrawables) {
+      dto.addAllDrawables(drawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
+      dto.addAllGmDrawables(gmDrawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
+      dto.addAllObjectDrawables(
+          objectDrawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
+      dto.addAllBackgroundDrawables(
+          backgroundDrawables.stream().map(d -> d.toDto()).collect(Collectors.toList()));
+    }
     dto.addAllLabels(labels.values().stream().map(l -> l.toDto()).collect(Collectors.toList()));
-    dto.addAllTokens(tokenMap.values().stream().map(t -> t.toDto()).collect(Collectors.toList()));
+    if (withTokensAndDrawables) {
+      dto.addAllTokens(tokenMap.values().stream().map(t -> t.toDto()).collect(Collectors.toList()));
+    }
     exposedAreaMeta.forEach(
         (id, area) -> {
           if (id == null) {
@@ -31,6 +31,7 @@
 import net.rptools.maptool.model.library.addon.AddOnLibraryManager;
 import net.rptools.maptool.model.library.addon.TransferableAddOnLibrary;
 import net.rptools.maptool.model.library.proto.AddOnLibraryListDto;
+import net.rptools.maptool.model.library.token.LibraryTokenIndex;
 import net.rptools.maptool.model.library.token.LibraryTokenManager;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -271,6 +272,15 @@ public Optional<Library> getLibrary(String namespace) {
     return Optional.of(lib);
   }
 
+  /**
+   * Returns the index of the lib:token names to the tokens and the zones they are on.
+   *
+   * @return the lib:token index.
+   */
+  public LibraryTokenIndex getLibraryTokenIndex() {
+    return libraryTokenManager.getLibraryTokenIndex();
+  }
+
   /**
    * Returns the {@link AddOnLibraryListDto} containing all the add-on in libraries.
    *
@@ -0,0 +1,216 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model.library.token;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.rptools.maptool.client.MapTool;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+
+/**
+ * Campaign wide index of the lib:tokens, mapping the lib:token names to the tokens and the zones
+ * they are on, so that a library can be found without scanning the tokens of every zone.
+ *
+ * <p>The index is kept up to date from the token added, changed and removed events, which are
+ * delivered asynchronously. Each lookup therefore checks that the indexed tokens still exist and
+ * still have the name; if they do not, or the name is not in the index, the zones are scanned for
+ * the name and the index is corrected.
+ */
+public class LibraryTokenIndex {
+
+  /**
+   * The location of a lib:token.
+   *
+   * @param zone the zone the token is on.
+   * @param token the lib:token.
+   */
+  public record Location(Zone zone, Token token) {}
+
+  /**
+   * The indexed location of a lib:token.
+   *
+   * @param key the index key of the token name.
+   * @param zoneId the id of the zone the token is on.
+   * @param tokenId the id of the token.
+   */
+  private record Entry(String key, GUID zoneId, GUID tokenId) {}
+
+  /** The entries of the indexed tokens, by the index key of their names. */
+  private final Map<String, List<Entry>> entriesByName = new HashMap<>();
+
+  /** The entries of the indexed tokens, by token id. */
+  private final Map<GUID, Entry> entriesById = new HashMap<>();
+
+  /**
+   * Returns the index key for a token name.
+   *
+   * @param name the name of the token.
+   * @return the index key.
+   */
+  private static String keyFor(String name) {
+    return name.toLowerCase();
+  }
+
+  /**
+   * Returns if a token name is the name of a lib:token.
+   *
+   * @param name the name of the token.
+   * @return {@code true} if the name starts with "lib:".
+   */
+  static boolean isLibTokenName(String name) {
+    return name != null && name.regionMatches(true, 0, "lib:", 0, 4);
+  }
+
+  /**
+   * Returns the locations of all the tokens with the specified lib:token name.
+   *
+   * @param name the name of the lib:token, case-insensitive.
+   * @return the locations of the tokens with the name, empty if there are none.
+   */
+  public synchronized List<Location> getLocations(String name) {
+    String key = keyFor(name);
+    List<Entry> entries = entriesByName.get(key);
+    if (entries != null) {
+      List<Location> locations = resolve(entries, name);
+      if (locations != null) {
+        return locations;
+      }
+    }
+    return rescan(name);
+  }
+
+  /**
+   * Adds the lib:tokens to the index. Tokens that do not have a lib:token name are ignored.
+   *
+   * @param tokens the tokens to add.
+   */
+  synchronized void addTokens(Collection<Token> tokens) {
+    Campaign campaign = MapTool.getCampaign();
+    for (Token token : tokens) {
+      if (!isLibTokenName(token.getName())) {
+        continue;
+      }
+      for (Zone zone : campaign.getZones()) {
+        if (zone.getToken(token.getId()) != null) {
+          add(new Entry(keyFor(token.getName()), zone.getId(), token.getId()));
+          break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes tokens from the index.
+   *
+   * @param tokenIds the ids of the tokens to remove.
+   */
+  synchronized void removeTokens(Collection<GUID> tokenIds) {
+    tokenIds.forEach(this::remove);
+  }
+
+  /**
+   * Updates the index for tokens that have changed, and so may have been renamed.
+   *
+   * @param tokens the tokens that have changed.
+   */
+  synchronized void changeTokens(Collection<Token> tokens) {
+    tokens.forEach(t -> remove(t.getId()));
+    addTokens(tokens);
+  }
+
+  /** Removes all the tokens from the index. */
+  synchronized void clear() {
+    entriesByName.clear();
+    entriesById.clear();
+  }
+
+  /**
+   * Resolves index entries to the zones and tokens.
+   *
+   * @param entries the entries to resolve.
+   * @param name the name the tokens must have.
+   * @return the locations, or {@code null} if any of the entries is out of date.
+   */
+  private List<Location> resolve(List<Entry> entries, String name) {
+    Campaign campaign = MapTool.getCampaign();
+    List<Location> locations = new ArrayList<>(entries.size());
+    for (Entry entry : entries) {
+      Zone zone = campaign.getZone(entry.zoneId());
+      Token token = zone == null ? null : zone.getToken(entry.tokenId());
+      if (token == null || !name.equalsIgnoreCase(token.getName())) {
+        return null;
+      }
+      locations.add(new Location(zone, token));
+    }
+    return locations;
+  }
+
+  /**
+   * Scans all the zones for tokens with the name and replaces the index entries for the name.
+   *
+   * @param name the name of the tokens.
+   * @return the locations of the tokens.
+   */
+  private List<Location> rescan(String name) {
+    List<Entry> old = entriesByName.get(keyFor(name));
+    if (old != null) {
+      new ArrayList<>(old).forEach(e -> remove(e.tokenId()));
+    }
+
+    List<Location> locations = new ArrayList<>();
+    for (Zone zone : MapTool.getCampaign().getZones()) {
+      for (Token token : zone.getTokensFiltered(t -> name.equalsIgnoreCase(t.getName()))) {
+        locations.add(new Location(zone, token));
+        add(new Entry(keyFor(name), zone.getId(), token.getId()));
+      }
+    }
+    return locations;
+  }
+
+  /**
+   * Adds an entry to the index.
+   *
+   * @param entry the entry to add.
+   */
+  private void add(Entry entry) {
+    remove(entry.tokenId());
+    entriesById.put(entry.tokenId(), entry);
+    entriesByName.computeIfAbsent(entry.key(), k -> new ArrayList<>()).add(entry);
+  }
+
+  /**
+   * Removes the entry of a token from the index.
+   *
+   * @param tokenId the id of the token.
+   */
+  private void remove(GUID tokenId) {
+    Entry entry = entriesById.remove(tokenId);
+    if (entry != null) {
+      List<Entry> entries = entriesByName.get(entry.key());
+      if (entries != null) {
+        entries.remove(entry);
+        if (entries.isEmpty()) {
+          entriesByName.remove(entry.key());
+        }
+      }
+    }
+  }
+}
@@ -33,6 +33,7 @@
 import net.rptools.maptool.model.library.LibraryManager;
 import net.rptools.maptool.model.library.LibraryNotValidException;
 import net.rptools.maptool.model.library.LibraryNotValidException.Reason;
+import net.rptools.maptool.model.tokens.TokenInfo;
 import net.rptools.maptool.model.tokens.TokensAddedEvent;
 import net.rptools.maptool.model.tokens.TokensChangedEvent;
 import net.rptools.maptool.model.tokens.TokensRemovedEvent;
@@ -74,12 +75,25 @@ public class LibraryTokenManager {
   /** Map of library token names to library tokens. */
   private final Map<String, LibraryToken> libraryTokens = new ConcurrentHashMap<>();
 
+  /** Index of the lib:token names to the tokens and their zones. */
+  private final LibraryTokenIndex libraryTokenIndex = new LibraryTokenIndex();
+
   /** Class to listen to token changes. */
   private TokenEventListener tokenEventListener = new TokenEventListener();
 
   /** Removes all of the library tokens from the manager. */
   public void clearLibraries() {
     libraryTokens.clear();
+    libraryTokenIndex.clear();
+  }
+
+  /**
+   * Returns the index of the lib:token names to the tokens and the zones they are on.
+   *
+   * @return the lib:token index.
+   */
+  public LibraryTokenIndex getLibraryTokenIndex() {
+    return libraryTokenIndex;
   }
 
   private class TokenEventListener {
@@ -87,6 +101,7 @@ private class TokenEventListener {
     public void tokensAdded(TokensAddedEvent event) {
       SwingUtilities.invokeLater(
           () -> {
+            libraryTokenIndex.addTokens(event.info().stream().map(TokenInfo::token).toList());
             addTokens(
                 event.info().stream()
                     .filter(t -> t.name().toLowerCase().startsWith("lib:"))
@@ -99,6 +114,7 @@ public void tokensAdded(TokensAddedEvent event) {
     public void tokenRemoved(TokensRemovedEvent event) {
       SwingUtilities.invokeLater(
           () -> {
+            libraryTokenIndex.removeTokens(event.info().stream().map(TokenInfo::id).toList());
             removeTokens(
                 event.info().stream()
                     .filter(t -> t.name().toLowerCase().startsWith("lib:"))
@@ -111,6 +127,9 @@ public void tokenRemoved(TokensRemovedEvent event) {
     public void tokenChanged(TokensChangedEvent event) {
       SwingUtilities.invokeLater(
           () -> {
+            // All changed tokens are passed to the index as they may have been renamed from a
+            // lib:token name.
+            libraryTokenIndex.changeTokens(event.info().stream().map(TokenInfo::token).toList());
             changeTokens(
                 event.info().stream()
                     .filter(t -> t.name().toLowerCase().startsWith("lib:"))
@@ -155,6 +174,7 @@ public void init() {
                 zone.getTokensFiltered(f -> f.getName().toLowerCase().startsWith("lib:")));
           }
           addTokens(tokens.stream().map(LibraryToken::new).toList());
+          libraryTokenIndex.addTokens(tokens);
           new MapToolEventBus().getMainEventBus().register(tokenEventListener);
         });
   }
@@ -251,7 +271,7 @@ public CompletableFuture<Optional<Library>> getLibrary(URL path) {
    * @param path the path of the token to find.
    * @return the library token or {@code null} if it can not be found.
    */
-  private static Library findLibrary(URL path) {
+  private Library findLibrary(URL path) {
     String name = "lib:" + path.getHost();
     List<Token> tokenList = getTokensWithName(name);
     if (tokenList.size() > 0) {
@@ -272,13 +292,10 @@ private static Library findLibrary(URL path) {
    * @param name the name to match.
    * @return list of tokens.
    */
-  private static List<Token> getTokensWithName(String name) {
-    List<Token> tokenList = new ArrayList<Token>();
-    for (var zone : MapTool.getCampaign().getZones()) {
-      tokenList.addAll(zone.getTokensFiltered(t -> name.equalsIgnoreCase(t.getName())));
-    }
-
-    return tokenList;
+  private List<Token> getTokensWithName(String name) {
+    return libraryTokenIndex.getLocations(name).stream()
+        .map(LibraryTokenIndex.Location::token)
+        .toList();
   }
 
   /**
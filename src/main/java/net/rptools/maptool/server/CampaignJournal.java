@@ -0,0 +1,225 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.server;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.server.proto.Message;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An append only journal of the messages that changed the campaign of the server, kept next to a
+ * checkpoint of the campaign so that the changes made since the checkpoint can be recovered.
+ *
+ * <p>Nothing is recorded until the first checkpoint is started. When a checkpoint is started the
+ * messages recorded so far are kept aside until the checkpoint is completed, so that they are still
+ * available if it never is.
+ *
+ * <p>A message is recorded and applied to the campaign as one step, and the campaign is copied for
+ * a checkpoint when it is started, under the same lock. So every change is either in the copy, or
+ * recorded after it and replayed onto it, but never both or neither. A personal server shares the
+ * campaign with its client, which applies a change before the server records it, so a checkpoint
+ * is only started once the changes the client has sent have all been recorded.
+ */
+public class CampaignJournal {
+  private static final Logger log = LogManager.getLogger(CampaignJournal.class);
+
+  /** The messages recorded since the last checkpoint was started. */
+  private final File file;
+
+  /** The messages recorded before the last checkpoint was started, until it is completed. */
+  private final File previousFile;
+
+  /** The stream the messages are recorded to, or {@code null} if they are not being recorded. */
+  private OutputStream out;
+
+  /**
+   * Creates a journal for a checkpoint file.
+   *
+   * @param checkpointFile the file the campaign is checkpointed to.
+   */
+  public CampaignJournal(File checkpointFile) {
+    file = new File(checkpointFile.getPath() + ".journal");
+    previousFile = new File(checkpointFile.getPath() + ".journal.prev");
+  }
+
+  /**
+   * Records a message, if a checkpoint has been started, and applies the change it makes to the
+   * campaign. The message is flushed to the file before the change is applied.
+   *
+   * @param msg the message.
+   * @param change applies the message to the campaign.
+   */
+  public synchronized void record(Message msg, Runnable change) {
+    if (out != null) {
+      try {
+        msg.writeDelimitedTo(out);
+        out.flush();
+      } catch (IOException e) {
+        log.error("Could not write to the campaign journal, no longer recording", e);
+        close();
+      }
+    }
+    change.run();
+  }
+
+  /**
+   * Starts a checkpoint, and copies the campaign that is being checkpointed. The messages recorded
+   * from now on are the changes made after the copy.
+   *
+   * @param ready whether the campaign can be copied, checked while no change can be recorded.
+   * @param copier copies the campaign, while no change can be recorded or applied.
+   * @param <T> the type of the copy.
+   * @return the copy, or {@code null} if the campaign could not be copied yet.
+   */
+  public synchronized <T> T startCheckpoint(BooleanSupplier ready, Supplier<T> copier) {
+    if (!ready.getAsBoolean()) {
+      return null;
+    }
+    T copy = copier.get();
+    boolean recording = out != null;
+    close();
+    try {
+      if (!recording) {
+        // Anything in the files is not relative to this campaign.
+        delete();
+      } else if (file.exists()) {
+        if (previousFile.exists()) {
+          // The last checkpoint was never completed, so both sets of messages are needed.
+          Files.write(
+              previousFile.toPath(), Files.readAllBytes(file.toPath()), StandardOpenOption.APPEND);
+          Files.delete(file.toPath());
+        } else {
+          Files.move(file.toPath(), previousFile.toPath());
+        }
+      }
+      file.getParentFile().mkdirs();
+      out = new BufferedOutputStream(new FileOutputStream(file));
+    } catch (IOException e) {
+      log.error("Could not start the campaign journal", e);
+      close();
+    }
+    return copy;
+  }
+
+  /** Completes the last checkpoint, discarding the messages recorded before it was started. */
+  public synchronized void completeCheckpoint() {
+    if (previousFile.exists() && !previousFile.delete()) {
+      log.warn("Could not delete " + previousFile);
+    }
+  }
+
+  /** Stops recording and discards the recorded messages, such as when the campaign is removed. */
+  public synchronized void reset() {
+    close();
+    delete();
+  }
+
+  /**
+   * Stops recording and discards the recorded messages, and replaces the campaign, before a
+   * checkpoint can be started.
+   *
+   * @param change replaces the campaign.
+   */
+  public synchronized void reset(Runnable change) {
+    reset();
+    change.run();
+  }
+
+  /**
+   * Applies the recorded messages to a campaign loaded from the checkpoint.
+   *
+   * @param campaign the campaign.
+   */
+  public void replay(Campaign campaign) {
+    List<Message> messages = read();
+    if (!messages.isEmpty()) {
+      log.info("Replaying " + messages.size() + " changes from the campaign journal");
+      int failed = ServerMessageHandler.replay(campaign, messages);
+      if (failed > 0) {
+        log.warn(failed + " changes from the campaign journal could not be replayed");
+      }
+    }
+  }
+
+  /**
+   * Reads the recorded messages, oldest first.
+   *
+   * @return the messages.
+   */
+  private synchronized List<Message> read() {
+    List<Message> messages = new ArrayList<>();
+    read(previousFile, messages);
+    read(file, messages);
+    return messages;
+  }
+
+  /**
+   * Reads the messages recorded in a file. A message that was only partly written, as the
+   * application ended while writing it, ends the file.
+   *
+   * @param journalFile the file.
+   * @param messages the list to add the messages to.
+   */
+  private static void read(File journalFile, List<Message> messages) {
+    if (!journalFile.exists()) {
+      return;
+    }
+    try (InputStream in = new BufferedInputStream(new FileInputStream(journalFile))) {
+      Message msg;
+      while ((msg = Message.parseDelimitedFrom(in)) != null) {
+        messages.add(msg);
+      }
+    } catch (InvalidProtocolBufferException e) {
+      log.warn("Campaign journal " + journalFile + " ends with an incomplete change", e);
+    } catch (IOException e) {
+      log.error("Could not read campaign journal " + journalFile, e);
+    }
+  }
+
+  /** Closes the file the messages are recorded to, if it is open. */
+  private void close() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      log.warn("Could not close the campaign journal", e);
+    }
+    out = null;
+  }
+
+  /** Deletes the journal files. */
+  private void delete() {
+    file.delete();
+    previousFile.delete();
+  }
+}
@@ -82,6 +82,25 @@ default void removeTopology(GUID zoneGUID, Area area, Zone.TopologyTypeSet topol
 
   void putToken(GUID zoneGUID, Token token);
 
+  /**
+   * Starts batching the token updates made on the calling thread through {@link #putToken} and
+   * {@code updateTokenProperty}. The updates are still applied locally right away, but the token
+   * change events are coalesced and the updates are sent to the server as a single message when
+   * the batch ends. Batches can be nested, the updates are sent when the outermost batch ends.
+   * Sending any other message on the thread sends the updates batched so far first, so the server
+   * still gets the changes in the order they were made.
+   */
+  void beginTokenUpdateBatch();
+
+  /** Ends a batch started by {@link #beginTokenUpdateBatch()}. */
+  void endTokenUpdateBatch();
+
+  /**
+   * Ends all the batches started on the calling thread, for instance when a macro that started a
+   * batch did not end it.
+   */
+  void endAllTokenUpdateBatches();
+
   /**
    * Removes a token from a zone.
    *
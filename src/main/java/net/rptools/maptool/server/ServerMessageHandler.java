@@ -16,14 +16,17 @@
 
 import java.awt.geom.Area;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import net.rptools.clientserver.simple.MessageHandler;
 import net.rptools.lib.MD5Key;
 import net.rptools.maptool.client.ClientMessageHandler;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.ServerCommandClientImpl;
+import net.rptools.maptool.client.functions.ExecFunction;
 import net.rptools.maptool.client.ui.zone.FogUtil;
 import net.rptools.maptool.client.ui.zone.ZoneRenderer;
+import net.rptools.maptool.language.I18N;
 import net.rptools.maptool.model.*;
 import net.rptools.maptool.model.InitiativeList.TokenInitiative;
 import net.rptools.maptool.model.Zone.VisionType;
@@ -49,8 +52,137 @@ public class ServerMessageHandler implements MessageHandler {
   private final Object MUTEX = new Object();
   private static final Logger log = Logger.getLogger(ServerMessageHandler.class);
 
+  /** The id messages replayed from the {@link CampaignJournal} are handled as coming from. */
+  private static final String REPLAY_ID = "journal";
+
+  /** The types of the messages that change the campaign, which are recorded in the journal. */
+  static final Set<Message.MessageTypeCase> JOURNALED_MESSAGES =
+      EnumSet.of(
+          Message.MessageTypeCase.ADD_TOPOLOGY_MSG,
+          Message.MessageTypeCase.BRING_TOKENS_TO_FRONT_MSG,
+          Message.MessageTypeCase.CHANGE_ZONE_DISPLAY_NAME_MSG,
+          Message.MessageTypeCase.CLEAR_ALL_DRAWINGS_MSG,
+          Message.MessageTypeCase.CLEAR_EXPOSED_AREA_MSG,
+          Message.MessageTypeCase.DRAW_MSG,
+          Message.MessageTypeCase.EDIT_TOKEN_MSG,
+          Message.MessageTypeCase.EXPOSE_FOW_MSG,
+          Message.MessageTypeCase.HIDE_FOW_MSG,
+          Message.MessageTypeCase.PUT_LABEL_MSG,
+          Message.MessageTypeCase.PUT_TOKEN_MSG,
+          Message.MessageTypeCase.PUT_ZONE_MSG,
+          Message.MessageTypeCase.REMOVE_LABEL_MSG,
+          Message.MessageTypeCase.REMOVE_TOKEN_MSG,
+          Message.MessageTypeCase.REMOVE_TOKENS_MSG,
+          Message.MessageTypeCase.REMOVE_TOPOLOGY_MSG,
+          Message.MessageTypeCase.REMOVE_ZONE_MSG,
+          Message.MessageTypeCase.RENAME_ZONE_MSG,
+          Message.MessageTypeCase.SEND_TOKENS_TO_BACK_MSG,
+          Message.MessageTypeCase.SET_CAMPAIGN_NAME_MSG,
+          Message.MessageTypeCase.SET_FOW_MSG,
+          Message.MessageTypeCase.SET_VISION_TYPE_MSG,
+          Message.MessageTypeCase.SET_ZONE_GRID_SIZE_MSG,
+          Message.MessageTypeCase.SET_ZONE_HAS_FOW_MSG,
+          Message.MessageTypeCase.SET_ZONE_VISIBILITY_MSG,
+          Message.MessageTypeCase.UNDO_DRAW_MSG,
+          Message.MessageTypeCase.UPDATE_CAMPAIGN_MACROS_MSG,
+          Message.MessageTypeCase.UPDATE_CAMPAIGN_MSG,
+          Message.MessageTypeCase.UPDATE_DRAWING_MSG,
+          Message.MessageTypeCase.UPDATE_EXPOSED_AREA_META_MSG,
+          Message.MessageTypeCase.UPDATE_GM_MACROS_MSG,
+          Message.MessageTypeCase.UPDATE_INITIATIVE_MSG,
+          Message.MessageTypeCase.UPDATE_TOKEN_INITIATIVE_MSG,
+          Message.MessageTypeCase.UPDATE_TOKEN_PROPERTY_MSG,
+          Message.MessageTypeCase.UPDATE_TOKENS_MSG);
+
+  /** The campaign the messages are replayed onto, when there is no server. */
+  private final Campaign replayCampaign;
+
+  /**
+   * The changes the client of a personal server has made to the campaign it shares with the server
+   * and sent, which have not been recorded in the journal yet. Only changed while recording.
+   */
+  private final AtomicInteger unrecordedLocalChanges = new AtomicInteger();
+
+  /**
+   * The messages to send to the clients once the change being recorded in the journal has been
+   * applied, so that they are not sent while the journal is locked.
+   */
+  private final ThreadLocal<List<Runnable>> deferredSends = new ThreadLocal<>();
+
   public ServerMessageHandler(MapToolServer server) {
     this.server = server;
+    this.replayCampaign = null;
+  }
+
+  /**
+   * Creates a handler that applies the messages to a campaign that is not being served, without
+   * sending them on to any client.
+   *
+   * @param campaign the campaign to apply the messages to.
+   */
+  private ServerMessageHandler(Campaign campaign) {
+    this.server = null;
+    this.replayCampaign = campaign;
+  }
+
+  /**
+   * Applies messages recorded in the {@link CampaignJournal} to a campaign, in the same way as they
+   * were applied to the campaign of the server. Only the campaign is changed, a message that can
+   * not be applied is logged and skipped.
+   *
+   * @param campaign the campaign, which is not being served.
+   * @param messages the messages, in the order they were received.
+   * @return the number of messages that could not be applied.
+   */
+  static int replay(Campaign campaign, List<Message> messages) {
+    var handler = new ServerMessageHandler(campaign);
+    int failed = 0;
+    for (Message msg : messages) {
+      try {
+        handler.dispatch(REPLAY_ID, msg);
+      } catch (Exception e) {
+        log.error("Could not replay " + msg.getMessageTypeCase() + " from the journal", e);
+        failed++;
+      }
+    }
+    return failed;
+  }
+
+  /**
+   * Returns the campaign the messages are applied to.
+   *
+   * @return the campaign of the server, or the campaign being replayed onto.
+   */
+  private Campaign getCampaign() {
+    return server != null ? server.getCampaign() : replayCampaign;
+  }
+
+  /**
+   * Returns whether a message changes the campaign, and so is recorded in the journal.
+   *
+   * @param msg the message.
+   * @return {@code true} if the message is recorded.
+   */
+  public static boolean isJournaled(Message msg) {
+    return JOURNALED_MESSAGES.contains(msg.getMessageTypeCase());
+  }
+
+  /**
+   * Notes that the client of a personal server has applied a change to the campaign it shares with
+   * the server, and sent it to be recorded.
+   */
+  public void localChangeSent() {
+    unrecordedLocalChanges.incrementAndGet();
+  }
+
+  /**
+   * Returns whether the client of a personal server has sent changes that have not been recorded
+   * yet. The campaign already has those changes, so it is not checkpointed until they are recorded.
+   *
+   * @return {@code true} if there are changes to record.
+   */
+  public boolean hasUnrecordedLocalChanges() {
+    return unrecordedLocalChanges.get() > 0;
   }
 
   @Override
@@ -60,182 +192,29 @@ public void handleMessage(String id, byte[] message) {
       var msgType = msg.getMessageTypeCase();
       log.info(id + " :got: " + msgType);
 
-      switch (msgType) {
-        case ADD_TOPOLOGY_MSG -> {
-          handle(msg.getAddTopologyMsg());
-          sendToClients(id, msg);
-        }
-        case BRING_TOKENS_TO_FRONT_MSG -> handle(msg.getBringTokensToFrontMsg());
-        case BOOT_PLAYER_MSG -> {
-          handle(msg.getBootPlayerMsg());
-          sendToClients(id, msg);
-        }
-        case CHANGE_ZONE_DISPLAY_NAME_MSG -> handle(msg.getChangeZoneDisplayNameMsg(), msg);
-        case CLEAR_ALL_DRAWINGS_MSG -> {
-          handle(msg.getClearAllDrawingsMsg());
-          sendToAllClients(msg);
-        }
-        case CLEAR_EXPOSED_AREA_MSG -> {
-          handle(msg.getClearExposedAreaMsg());
-          sendToClients(id, msg);
-        }
-        case DRAW_MSG -> {
-          sendToAllClients(msg);
-          handle(msg.getDrawMsg());
-        }
-        case EDIT_TOKEN_MSG -> {
-          handle(id, msg.getEditTokenMsg());
-          sendToClients(id, msg);
-        }
-        case ENFORCE_NOTIFICATION_MSG,
-            ENFORCE_ZONE_MSG,
-            ENFORCE_ZONE_VIEW_MSG,
-            EXEC_LINK_MSG,
-            EXEC_FUNCTION_MSG,
-            MESSAGE_MSG,
-            SET_BOARD_MSG,
-            RESTORE_ZONE_VIEW_MSG,
-            SET_LIVE_TYPING_LABEL_MSG,
-            SET_TOKEN_LOCATION_MSG,
-            START_TOKEN_MOVE_MSG,
-            STOP_TOKEN_MOVE_MSG,
-            TOGGLE_TOKEN_MOVE_WAYPOINT_MSG,
-            UPDATE_TOKEN_MOVE_MSG,
-            ADD_ADD_ON_LIBRARY_MSG,
-            REMOVE_ADD_ON_LIBRARY_MSG,
-            REMOVE_ALL_ADD_ON_LIBRARIES_MSG,
-            UPDATE_DATA_STORE_MSG,
-            UPDATE_DATA_NAMESPACE_MSG,
-            UPDATE_DATA_MSG,
-            REMOVE_DATA_MSG,
-            REMOVE_DATA_NAMESPACE_MSG,
-            REMOVE_DATA_STORE_MSG -> sendToClients(id, msg);
-        case EXPOSE_FOW_MSG -> {
-          handle(msg.getExposeFowMsg());
-          sendToClients(id, msg);
-        }
-        case EXPOSE_PC_AREA_MSG -> {
-          handle(msg.getExposePcAreaMsg());
-          sendToAllClients(msg);
-        }
-        case GET_ASSET_MSG -> handle(id, msg.getGetAssetMsg());
-        case GET_ZONE_MSG -> handle(id, msg.getGetZoneMsg());
-        case HEARTBEAT_MSG -> {
-          /* nothing yet */
-        }
-        case HIDE_FOW_MSG -> {
-          handle(msg.getHideFowMsg());
-          sendToAllClients(msg);
-        }
-        case HIDE_POINTER_MSG, MOVE_POINTER_MSG, SHOW_POINTER_MSG -> sendToAllClients(msg);
-        case PUT_ASSET_MSG -> handle(msg.getPutAssetMsg());
-        case PUT_LABEL_MSG -> {
-          handle(msg.getPutLabelMsg());
-          sendToClients(id, msg);
-        }
-        case PUT_TOKEN_MSG -> {
-          handle(id, msg.getPutTokenMsg());
-          sendToClients(id, msg);
-        }
-        case PUT_ZONE_MSG -> {
-          handle(msg.getPutZoneMsg());
-          sendToClients(id, msg);
-        }
-        case REMOVE_ASSET_MSG -> handle(msg.getRemoveAssetMsg());
-        case REMOVE_LABEL_MSG -> {
-          handle(msg.getRemoveLabelMsg());
-          sendToAllClients(msg);
-        }
-        case REMOVE_TOKEN_MSG -> {
-          handle(msg.getRemoveTokenMsg());
-          sendToClients(id, msg);
-        }
-        case REMOVE_TOKENS_MSG -> {
-          handle(msg.getRemoveTokensMsg());
-          sendToClients(id, msg);
-        }
-        case REMOVE_TOPOLOGY_MSG -> {
-          handle(msg.getRemoveTopologyMsg());
-          sendToClients(id, msg);
-        }
-        case REMOVE_ZONE_MSG -> {
-          handle(msg.getRemoveZoneMsg());
-          sendToClients(id, msg);
-        }
-        case RENAME_ZONE_MSG -> {
-          handle(msg.getRenameZoneMsg());
-          sendToAllClients(msg);
-        }
-        case SEND_TOKENS_TO_BACK_MSG -> handle(msg.getSendTokensToBackMsg());
-        case SET_CAMPAIGN_MSG -> {
-          handle(msg.getSetCampaignMsg());
-          sendToClients(id, msg);
-        }
-        case SET_CAMPAIGN_NAME_MSG -> {
-          handle(msg.getSetCampaignNameMsg());
-          sendToClients(id, msg);
-        }
-        case SET_FOW_MSG -> {
-          handle(msg.getSetFowMsg());
-          sendToAllClients(msg);
-        }
-        case SET_VISION_TYPE_MSG -> {
-          handle(msg.getSetVisionTypeMsg());
-          sendToAllClients(msg);
-        }
-        case SET_ZONE_GRID_SIZE_MSG -> {
-          handle(msg.getSetZoneGridSizeMsg());
-          sendToAllClients(msg);
-        }
-        case SET_ZONE_HAS_FOW_MSG -> {
-          handle(msg.getSetZoneHasFowMsg());
-          sendToAllClients(msg);
-        }
-        case UPDATE_DRAWING_MSG -> {
-          handle(msg.getUpdateDrawingMsg());
-          sendToAllClients(msg);
-        }
-        case UPDATE_TOKEN_PROPERTY_MSG -> {
-          handle(msg.getUpdateTokenPropertyMsg());
-          sendToClients(id, msg);
-        }
-        case SET_ZONE_VISIBILITY_MSG -> {
-          handle(msg.getSetZoneVisibilityMsg());
-          sendToAllClients(msg);
-        }
-        case UNDO_DRAW_MSG -> {
-          sendToAllClients(msg);
-          handle(msg.getUndoDrawMsg());
-        }
-        case SET_SERVER_POLICY_MSG -> {
-          handle(msg.getSetServerPolicyMsg());
-          sendToClients(id, msg);
-        }
-        case UPDATE_CAMPAIGN_MSG -> {
-          handle(msg.getUpdateCampaignMsg());
-          sendToClients(id, msg);
-        }
-        case UPDATE_INITIATIVE_MSG -> {
-          handle(msg.getUpdateInitiativeMsg());
-          sendToAllClients(msg);
-        }
-        case UPDATE_TOKEN_INITIATIVE_MSG -> {
-          handle(msg.getUpdateTokenInitiativeMsg());
-          sendToAllClients(msg);
-        }
-        case UPDATE_CAMPAIGN_MACROS_MSG -> {
-          handle(msg.getUpdateCampaignMacrosMsg());
-          sendToClients(id, msg);
-        }
-        case UPDATE_GM_MACROS_MSG -> {
-          handle(msg.getUpdateGmMacrosMsg());
-          sendToClients(id, msg);
-        }
-        case UPDATE_EXPOSED_AREA_META_MSG -> {
-          handle(msg.getUpdateExposedAreaMetaMsg());
-          sendToClients(id, msg);
-        }
-        default -> log.warn(msgType + "not handled.");
+      // The journal records and applies a change as one step, so that an autosave copies the
+      // campaign either before the change, with the change recorded after, or after both. The
+      // messages for the clients are sent after, so that the journal is not locked meanwhile.
+      if (msgType == Message.MessageTypeCase.SET_CAMPAIGN_MSG) {
+        deferSends(() -> MapTool.getAutoSaveManager().getJournal().reset(() -> dispatch(id, msg)));
+      } else if (JOURNALED_MESSAGES.contains(msgType)) {
+        deferSends(
+            () ->
+                MapTool.getAutoSaveManager()
+                    .getJournal()
+                    .record(
+                        msg,
+                        () -> {
+                          try {
+                            dispatch(id, msg);
+                          } finally {
+                            if (server.getConfig().isPersonalServer()) {
+                              unrecordedLocalChanges.decrementAndGet();
+                            }
+                          }
+                        }));
+      } else {
+        dispatch(id, msg);
       }
     } catch (Exception e) {
       log.error(ExceptionUtils.getStackTrace(e));
@@ -243,8 +222,231 @@ public void handleMessage(String id, byte[] message) {
     }
   }
 
+  /**
+   * Runs an action, and sends the messages for the clients it sends once it is done.
+   *
+   * @param action the action.
+   */
+  private void deferSends(Runnable action) {
+    List<Runnable> sends = new ArrayList<>();
+    deferredSends.set(sends);
+    try {
+      action.run();
+    } finally {
+      deferredSends.remove();
+    }
+    sends.forEach(Runnable::run);
+  }
+
+  /**
+   * Sends a message to the clients, or defers it until the change being recorded is applied.
+   *
+   * @param send sends the message.
+   */
+  private void send(Runnable send) {
+    List<Runnable> sends = deferredSends.get();
+    if (sends != null) {
+      sends.add(send);
+    } else {
+      send.run();
+    }
+  }
+
+  /**
+   * Applies a message to the campaign and sends it on to the clients that need it.
+   *
+   * @param id the id of the client the message came from.
+   * @param msg the message.
+   */
+  private void dispatch(String id, Message msg) {
+    var msgType = msg.getMessageTypeCase();
+    switch (msgType) {
+      case ADD_TOPOLOGY_MSG -> {
+        handle(msg.getAddTopologyMsg());
+        sendToClients(id, msg);
+      }
+      case BRING_TOKENS_TO_FRONT_MSG -> handle(msg.getBringTokensToFrontMsg());
+      case BOOT_PLAYER_MSG -> {
+        handle(msg.getBootPlayerMsg());
+        sendToClients(id, msg);
+      }
+      case CHANGE_ZONE_DISPLAY_NAME_MSG -> handle(msg.getChangeZoneDisplayNameMsg(), msg);
+      case CLEAR_ALL_DRAWINGS_MSG -> {
+        handle(msg.getClearAllDrawingsMsg());
+        sendToAllClients(msg);
+      }
+      case CLEAR_EXPOSED_AREA_MSG -> {
+        handle(msg.getClearExposedAreaMsg());
+        sendToClients(id, msg);
+      }
+      case DRAW_MSG -> {
+        sendToAllClients(msg);
+        handle(msg.getDrawMsg());
+      }
+      case EDIT_TOKEN_MSG -> {
+        handle(id, msg.getEditTokenMsg());
+        sendToClients(id, msg);
+      }
+      case ENFORCE_NOTIFICATION_MSG,
+          ENFORCE_ZONE_MSG,
+          ENFORCE_ZONE_VIEW_MSG,
+          MESSAGE_MSG,
+          SET_BOARD_MSG,
+          RESTORE_ZONE_VIEW_MSG,
+          SET_LIVE_TYPING_LABEL_MSG,
+          SET_TOKEN_LOCATION_MSG,
+          START_TOKEN_MOVE_MSG,
+          STOP_TOKEN_MOVE_MSG,
+          TOGGLE_TOKEN_MOVE_WAYPOINT_MSG,
+          UPDATE_TOKEN_MOVE_MSG,
+          ADD_ADD_ON_LIBRARY_MSG,
+          REMOVE_ADD_ON_LIBRARY_MSG,
+          REMOVE_ALL_ADD_ON_LIBRARIES_MSG,
+          UPDATE_DATA_STORE_MSG,
+          UPDATE_DATA_NAMESPACE_MSG,
+          UPDATE_DATA_MSG,
+          REMOVE_DATA_MSG,
+          REMOVE_DATA_NAMESPACE_MSG,
+          REMOVE_DATA_STORE_MSG -> sendToClients(id, msg);
+      case EXEC_LINK_MSG -> sendExecToClients(
+          id, msg.getExecLinkMsg().getTarget(), msg.getExecLinkMsg().getSource(), msg);
+      case EXEC_FUNCTION_MSG -> sendExecToClients(
+          id, msg.getExecFunctionMsg().getTarget(), msg.getExecFunctionMsg().getSource(), msg);
+      case EXPOSE_FOW_MSG -> {
+        handle(msg.getExposeFowMsg());
+        sendToClients(id, msg);
+      }
+      case EXPOSE_PC_AREA_MSG -> {
+        handle(msg.getExposePcAreaMsg());
+        sendToAllClients(msg);
+      }
+      case GET_ASSET_MSG -> handle(id, msg.getGetAssetMsg());
+      case GET_ZONE_MSG -> handle(id, msg.getGetZoneMsg());
+      case HEARTBEAT_MSG -> {
+        /* nothing yet */
+      }
+      case HIDE_FOW_MSG -> {
+        handle(msg.getHideFowMsg());
+        sendToAllClients(msg);
+      }
+      case HIDE_POINTER_MSG, MOVE_POINTER_MSG, SHOW_POINTER_MSG -> sendToAllClients(msg);
+      case PUT_ASSET_MSG -> handle(msg.getPutAssetMsg());
+      case PUT_LABEL_MSG -> {
+        handle(msg.getPutLabelMsg());
+        sendToClients(id, msg);
+      }
+      case PUT_TOKEN_MSG -> {
+        handle(id, msg.getPutTokenMsg());
+        sendToClients(id, msg);
+      }
+      case PUT_ZONE_MSG -> {
+        handle(msg.getPutZoneMsg());
+        sendToClients(id, msg);
+      }
+      case REMOVE_ASSET_MSG -> handle(msg.getRemoveAssetMsg());
+      case REMOVE_LABEL_MSG -> {
+        handle(msg.getRemoveLabelMsg());
+        sendToAllClients(msg);
+      }
+      case REMOVE_TOKEN_MSG -> {
+        handle(msg.getRemoveTokenMsg());
+        sendToClients(id, msg);
+      }
+      case REMOVE_TOKENS_MSG -> {
+        handle(msg.getRemoveTokensMsg());
+        sendToClients(id, msg);
+      }
+      case REMOVE_TOPOLOGY_MSG -> {
+        handle(msg.getRemoveTopologyMsg());
+        sendToClients(id, msg);
+      }
+      case REMOVE_ZONE_MSG -> {
+        handle(msg.getRemoveZoneMsg());
+        sendToClients(id, msg);
+      }
+      case RENAME_ZONE_MSG -> {
+        handle(msg.getRenameZoneMsg());
+        sendToAllClients(msg);
+      }
+      case SEND_TOKENS_TO_BACK_MSG -> handle(msg.getSendTokensToBackMsg());
+      case SET_CAMPAIGN_MSG -> {
+        handle(msg.getSetCampaignMsg());
+        sendToClients(id, msg);
+      }
+      case SET_CAMPAIGN_NAME_MSG -> {
+        handle(msg.getSetCampaignNameMsg());
+        sendToClients(id, msg);
+      }
+      case SET_FOW_MSG -> {
+        handle(msg.getSetFowMsg());
+        sendToAllClients(msg);
+      }
+      case SET_VISION_TYPE_MSG -> {
+        handle(msg.getSetVisionTypeMsg());
+        sendToAllClients(msg);
+      }
+      case SET_ZONE_GRID_SIZE_MSG -> {
+        handle(msg.getSetZoneGridSizeMsg());
+        sendToAllClients(msg);
+      }
+      case SET_ZONE_HAS_FOW_MSG -> {
+        handle(msg.getSetZoneHasFowMsg());
+        sendToAllClients(msg);
+      }
+      case UPDATE_DRAWING_MSG -> {
+        handle(msg.getUpdateDrawingMsg());
+        sendToAllClients(msg);
+      }
+      case UPDATE_TOKEN_PROPERTY_MSG -> {
+        handle(msg.getUpdateTokenPropertyMsg());
+        sendToClients(id, msg);
+      }
+      case UPDATE_TOKENS_MSG -> {
+        handle(id, msg.getUpdateTokensMsg());
+        sendToClients(id, msg);
+      }
+      case SET_ZONE_VISIBILITY_MSG -> {
+        handle(msg.getSetZoneVisibilityMsg());
+        sendToAllClients(msg);
+      }
+      case UNDO_DRAW_MSG -> {
+        sendToAllClients(msg);
+        handle(msg.getUndoDrawMsg());
+      }
+      case SET_SERVER_POLICY_MSG -> {
+        handle(msg.getSetServerPolicyMsg());
+        sendToClients(id, msg);
+      }
+      case UPDATE_CAMPAIGN_MSG -> {
+        handle(msg.getUpdateCampaignMsg());
+        sendToClients(id, msg);
+      }
+      case UPDATE_INITIATIVE_MSG -> {
+        handle(msg.getUpdateInitiativeMsg());
+        sendToAllClients(msg);
+      }
+      case UPDATE_TOKEN_INITIATIVE_MSG -> {
+        handle(msg.getUpdateTokenInitiativeMsg());
+        sendToAllClients(msg);
+      }
+      case UPDATE_CAMPAIGN_MACROS_MSG -> {
+        handle(msg.getUpdateCampaignMacrosMsg());
+        sendToClients(id, msg);
+      }
+      case UPDATE_GM_MACROS_MSG -> {
+        handle(msg.getUpdateGmMacrosMsg());
+        sendToClients(id, msg);
+      }
+      case UPDATE_EXPOSED_AREA_META_MSG -> {
+        handle(msg.getUpdateExposedAreaMetaMsg());
+        sendToClients(id, msg);
+      }
+      default -> log.warn(msgType + "not handled.");
+    }
+  }
+
   private void handle(UpdateExposedAreaMetaMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     zone.setExposedAreaMetaData(
         msg.hasTokenGuid() ? GUID.valueOf(msg.getTokenGuid().getValue()) : null,
         new ExposedAreaMetaData(Mapper.map(msg.getArea()))); // update the server
@@ -255,8 +457,10 @@ private void handle(UpdateGmMacrosMsg msg) {
         msg.getMacrosList().stream()
             .map(MacroButtonProperties::fromDto)
             .collect(Collectors.toList());
-    MapTool.getCampaign().setGmMacroButtonPropertiesArray(campaignMacros);
-    server.getCampaign().setGmMacroButtonPropertiesArray(campaignMacros);
+    if (server != null) {
+      MapTool.getCampaign().setGmMacroButtonPropertiesArray(campaignMacros);
+    }
+    getCampaign().setGmMacroButtonPropertiesArray(campaignMacros);
   }
 
   private void handle(UpdateCampaignMacrosMsg msg) {
@@ -264,12 +468,14 @@ private void handle(UpdateCampaignMacrosMsg msg) {
         msg.getMacrosList().stream()
             .map(MacroButtonProperties::fromDto)
             .collect(Collectors.toList());
-    MapTool.getCampaign().setMacroButtonPropertiesArray(campaignMacros);
-    server.getCampaign().setMacroButtonPropertiesArray(campaignMacros);
+    if (server != null) {
+      MapTool.getCampaign().setMacroButtonPropertiesArray(campaignMacros);
+    }
+    getCampaign().setMacroButtonPropertiesArray(campaignMacros);
   }
 
   private void handle(UpdateTokenInitiativeMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     var tokenId = GUID.valueOf(msg.getTokenGuid());
     InitiativeList list = zone.getInitiativeList();
     TokenInitiative ti = list.getTokenInitiative(msg.getIndex());
@@ -289,7 +495,7 @@ private void handle(UpdateInitiativeMsg msg) {
     if (msg.hasList()) {
       var list = InitiativeList.fromDto(msg.getList());
       if (list.getZone() == null) return;
-      Zone zone = server.getCampaign().getZone(list.getZone().getId());
+      Zone zone = getCampaign().getZone(list.getZone().getId());
       zone.setInitiativeList(list);
     } else if (msg.hasOwnerPermission()) {
       MapTool.getFrame()
@@ -299,7 +505,7 @@ private void handle(UpdateInitiativeMsg msg) {
   }
 
   private void handle(UpdateCampaignMsg msg) {
-    server.getCampaign().replaceCampaignProperties(CampaignProperties.fromDto(msg.getProperties()));
+    getCampaign().replaceCampaignProperties(CampaignProperties.fromDto(msg.getProperties()));
   }
 
   private void handle(SetServerPolicyMsg msg) {
@@ -322,16 +528,16 @@ private void handle(UndoDrawMsg msg) {
     // or flushing it entirely in the new zone. We'll save all of this for a separate patch against
     // 1.3 or
     // for 1.4.
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     zone.removeDrawable(GUID.valueOf(msg.getDrawableGuid()));
   }
 
   private void handle(SetZoneVisibilityMsg msg) {
-    server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid())).setVisible(msg.getIsVisible());
+    getCampaign().getZone(GUID.valueOf(msg.getZoneGuid())).setVisible(msg.getIsVisible());
   }
 
   private void handle(UpdateTokenPropertyMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     Token token = zone.getToken(GUID.valueOf(msg.getTokenGuid()));
     token.updateProperty(
         zone,
@@ -339,18 +545,28 @@ private void handle(UpdateTokenPropertyMsg msg) {
         msg.getValuesList()); // update server version of token
   }
 
+  private void handle(String clientId, UpdateTokensMsg msg) {
+    for (TokenUpdateMsg update : msg.getUpdatesList()) {
+      if (update.hasPutTokenMsg()) {
+        handle(clientId, update.getPutTokenMsg());
+      } else {
+        handle(update.getUpdateTokenPropertyMsg());
+      }
+    }
+  }
+
   private void handle(UpdateDrawingMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     zone.updateDrawable(DrawnElement.fromDto(msg.getDrawing()), Pen.fromDto(msg.getPen()));
   }
 
   private void handle(SetZoneHasFowMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     zone.setHasFog(msg.getHasFow());
   }
 
   private void handle(SetZoneGridSizeMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     Grid grid = zone.getGrid();
     grid.setSize(msg.getSize());
     grid.setOffset(msg.getXOffset(), msg.getYOffset());
@@ -358,12 +574,12 @@ private void handle(SetZoneGridSizeMsg msg) {
   }
 
   private void handle(SetVisionTypeMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     zone.setVisionType(VisionType.valueOf(msg.getVision().name()));
   }
 
   private void handle(SetFowMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     var area = Mapper.map(msg.getArea());
     var selectedTokens =
         msg.getSelectedTokensList().stream().map(GUID::valueOf).collect(Collectors.toSet());
@@ -371,7 +587,7 @@ private void handle(SetFowMsg msg) {
   }
 
   private void handle(SetCampaignNameMsg msg) {
-    server.getCampaign().setName(msg.getName());
+    getCampaign().setName(msg.getName());
   }
 
   private void handle(SetCampaignMsg msg) {
@@ -387,7 +603,7 @@ private void handle(SendTokensToBackMsg msg) {
   private void handle(RenameZoneMsg msg) {
     var zoneGUID = GUID.valueOf(msg.getZoneGuid());
     var name = msg.getName();
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     if (zone != null) {
       zone.setName(name);
     }
@@ -395,14 +611,14 @@ private void handle(RenameZoneMsg msg) {
 
   private void handle(RemoveZoneMsg msg) {
     var zoneGUID = GUID.valueOf(msg.getZoneGuid());
-    server.getCampaign().removeZone(zoneGUID);
+    getCampaign().removeZone(zoneGUID);
   }
 
   private void handle(RemoveTopologyMsg msg) {
     var zoneGUID = GUID.valueOf(msg.getZoneGuid());
     var area = Mapper.map(msg.getArea());
     var topologyType = Zone.TopologyType.valueOf(msg.getType().name());
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     zone.removeTopology(area, topologyType);
   }
 
@@ -410,21 +626,21 @@ private void handle(RemoveTokensMsg msg) {
     var zoneGUID = GUID.valueOf(msg.getZoneGuid());
     var tokenGUIDs =
         msg.getTokenGuidList().stream().map(GUID::valueOf).collect(Collectors.toList());
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     zone.removeTokens(tokenGUIDs); // remove server tokens
   }
 
   private void handle(RemoveTokenMsg msg) {
     var zoneGUID = GUID.valueOf(msg.getZoneGuid());
     var tokenGUID = GUID.valueOf(msg.getTokenGuid());
-    var zone = server.getCampaign().getZone(zoneGUID);
+    var zone = getCampaign().getZone(zoneGUID);
     zone.removeToken(tokenGUID); // remove server tokens
   }
 
   private void handle(RemoveLabelMsg msg) {
     var zoneGUID = GUID.valueOf(msg.getZoneGuid());
     var labelGUID = GUID.valueOf(msg.getLabelGuid());
-    var zone = server.getCampaign().getZone(zoneGUID);
+    var zone = getCampaign().getZone(zoneGUID);
     zone.removeLabel(labelGUID);
   }
 
@@ -433,11 +649,11 @@ private void handle(RemoveAssetMsg msg) {
   }
 
   private void handle(PutZoneMsg msg) {
-    server.getCampaign().putZone(Zone.fromDto(msg.getZone()));
+    getCampaign().putZone(Zone.fromDto(msg.getZone()));
   }
 
   private void handle(PutLabelMsg msg) {
-    Zone zone = server.getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
+    Zone zone = getCampaign().getZone(GUID.valueOf(msg.getZoneGuid()));
     zone.putLabel(Label.fromDto(msg.getLabel()));
   }
 
@@ -451,7 +667,7 @@ private void handle(HideFowMsg msg) {
     var selectedTokens =
         msg.getTokenGuidList().stream().map(GUID::valueOf).collect(Collectors.toSet());
 
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     zone.hideArea(area, selectedTokens);
   }
 
@@ -471,7 +687,7 @@ private void handle(ExposePcAreaMsg msg) {
 
   private void handle(ExposeFowMsg msg) {
     var zoneGUID = GUID.valueOf(msg.getZoneGuid());
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     Area area = Mapper.map(msg.getArea());
     var selectedTokens =
         msg.getTokenGuidList().stream().map(GUID::valueOf).collect(Collectors.toSet());
@@ -494,21 +710,21 @@ private void handle(DrawMsg drawMsg) {
     var zoneGuid = GUID.valueOf(drawMsg.getZoneGuid());
     var pen = Pen.fromDto(drawMsg.getPen());
     var drawable = Drawable.fromDto(drawMsg.getDrawable());
-    Zone zone = server.getCampaign().getZone(zoneGuid);
+    Zone zone = getCampaign().getZone(zoneGuid);
     zone.addDrawable(new DrawnElement(drawable, pen));
   }
 
   private void handle(ClearExposedAreaMsg clearExposedAreaMsg) {
     var zoneGUID = GUID.valueOf(clearExposedAreaMsg.getZoneGuid());
     var globalOnly = clearExposedAreaMsg.getGlobalOnly();
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     zone.clearExposedArea(globalOnly);
   }
 
   private void handle(ClearAllDrawingsMsg clearAllDrawingsMsg) {
     var zoneGUID = GUID.valueOf(clearAllDrawingsMsg.getZoneGuid());
     var layer = Zone.Layer.valueOf(clearAllDrawingsMsg.getLayer());
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     List<DrawnElement> list = zone.getDrawnElements(layer);
     zone.clearDrawables(list); // FJE Empties the DrawableUndoManager and empties the list
   }
@@ -517,7 +733,7 @@ private void handle(ChangeZoneDisplayNameMsg changeZoneDisplayNameMsg, Message m
     var zoneGUID = GUID.valueOf(changeZoneDisplayNameMsg.getZoneGuid());
     var name = changeZoneDisplayNameMsg.getName();
 
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     if (zone != null) {
       zone.setPlayerAlias(name);
       sendToAllClients(msg);
@@ -537,7 +753,7 @@ private void handle(AddTopologyMsg addTopologyMsg) {
     var zoneGUID = GUID.valueOf(addTopologyMsg.getZoneGuid());
     var area = Mapper.map(addTopologyMsg.getArea());
     var topologyType = Zone.TopologyType.valueOf(addTopologyMsg.getType().name());
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
     zone.addTopology(area, topologyType);
   }
 
@@ -547,16 +763,55 @@ private void handle(BootPlayerMsg bootPlayerMsg) {
   }
 
   private void sendToClients(String excludedId, Message message) {
-    server.getConnection().broadcastMessage(new String[] {excludedId}, message.toByteArray());
+    if (server == null) {
+      return;
+    }
+    send(
+        () ->
+            server
+                .getConnection()
+                .broadcastMessage(new String[] {excludedId}, message.toByteArray()));
   }
 
   private void sendToAllClients(Message message) {
-    server.getConnection().broadcastMessage(message.toByteArray());
+    if (server == null) {
+      return;
+    }
+    send(() -> server.getConnection().broadcastMessage(message.toByteArray()));
+  }
+
+  /**
+   * Sends an execLink or execFunction message on to the clients. Messages for the server are only
+   * sent to the client hosting the server, as no other client will run them. If that client is not
+   * connected, the sender is told that the message was not run.
+   *
+   * @param excludedId the id of the client that sent the message.
+   * @param target the target of the message.
+   * @param source the name of the player who sent the message.
+   * @param message the message.
+   */
+  private void sendExecToClients(
+      String excludedId, String target, String source, Message message) {
+    if (!ExecFunction.SERVER_TARGET.equals(target)) {
+      sendToClients(excludedId, message);
+      return;
+    }
+    String hostId = server.getConnectionId(server.getConfig().getHostPlayerId());
+    if (hostId == null) {
+      String text = I18N.getText("macro.function.execFunction.hostNotConnected", source);
+      var error =
+          MessageMsg.newBuilder()
+              .setMessage(new TextMessage(TextMessage.Channel.ME, null, "", text, null).toDto());
+      var errorMessage = Message.newBuilder().setMessageMsg(error).build();
+      send(() -> server.getConnection().sendMessage(excludedId, errorMessage));
+    } else if (!hostId.equals(excludedId)) {
+      send(() -> server.getConnection().sendMessage(hostId, message));
+    }
   }
 
   private void bringTokensToFront(GUID zoneGUID, Set<GUID> tokenSet) {
     synchronized (MUTEX) {
-      Zone zone = server.getCampaign().getZone(zoneGUID);
+      Zone zone = getCampaign().getZone(zoneGUID);
 
       // Get the tokens to update
       List<Token> tokenList = new ArrayList<>();
@@ -588,36 +843,33 @@ private void getAsset(String id, MD5Key assetID) {
     if (assetID == null) {
       return;
     }
-    try {
-      AssetProducer producer =
-          new AssetProducer(
-              assetID,
-              AssetManager.getAssetInfo(assetID).getProperty(AssetManager.NAME),
-              AssetManager.getAssetCacheFile(assetID));
+    Asset asset = AssetManager.getAsset(assetID);
+    if (asset != null && asset.getAssetData().length() > 0) {
+      AssetProducer producer = new AssetProducer(assetID, asset.getName(), asset.getAssetData());
       var msg = StartAssetTransferMsg.newBuilder().setHeader(producer.getHeader().toDto());
       server
           .getConnection()
           .sendMessage(id, Message.newBuilder().setStartAssetTransferMsg(msg).build());
       server.addAssetProducer(id, producer);
 
-    } catch (IllegalArgumentException iae) {
+    } else {
       // Sending an empty asset will cause a failure of the image to load on the client side,
       // showing a broken
       // image instead of blowing up
-      Asset asset = Asset.createBrokenImageAsset(assetID);
-      var msg = PutAssetMsg.newBuilder().setAsset(asset.toDto());
+      Asset brokenAsset = Asset.createBrokenImageAsset(assetID);
+      var msg = PutAssetMsg.newBuilder().setAsset(brokenAsset.toDto());
       server.getConnection().sendMessage(id, Message.newBuilder().setPutAssetMsg(msg).build());
     }
   }
 
   private void getZone(String id, GUID zoneGUID) {
-    var zone = server.getCampaign().getZone(zoneGUID);
+    var zone = getCampaign().getZone(zoneGUID);
     var msg = PutZoneMsg.newBuilder().setZone(zone.toDto());
     server.getConnection().sendMessage(id, Message.newBuilder().setPutZoneMsg(msg).build());
   }
 
   private void putToken(String clientId, GUID zoneGUID, Token token) {
-    Zone zone = server.getCampaign().getZone(zoneGUID);
+    Zone zone = getCampaign().getZone(zoneGUID);
 
     int zOrder = 0;
     boolean newToken = zone.getToken(token.getId()) == null;
@@ -629,7 +881,7 @@ private void putToken(String clientId, GUID zoneGUID, Token token) {
       }
       zone.putToken(token);
     }
-    if (newToken) {
+    if (newToken && server != null) {
       // don't send whole token back to sender, instead just send new ZOrder
       var msg =
           UpdateTokenPropertyMsg.newBuilder()
@@ -637,15 +889,18 @@ private void putToken(String clientId, GUID zoneGUID, Token token) {
               .setTokenGuid(token.getId().toString())
               .setProperty(TokenUpdateDto.valueOf(Token.Update.setZOrder.name()))
               .addValues(0, TokenPropertyValueDto.newBuilder().setIntValue(zOrder));
-      server
-          .getConnection()
-          .sendMessage(clientId, Message.newBuilder().setUpdateTokenPropertyMsg(msg).build());
+      send(
+          () ->
+              server
+                  .getConnection()
+                  .sendMessage(
+                      clientId, Message.newBuilder().setUpdateTokenPropertyMsg(msg).build()));
     }
   }
 
   private void sendTokensToBack(GUID zoneGUID, Set<GUID> tokenSet) {
     synchronized (MUTEX) {
-      Zone zone = server.getCampaign().getZone(zoneGUID);
+      Zone zone = getCampaign().getZone(zoneGUID);
 
       // Get the tokens to update
       List<Token> tokenList = new ArrayList<>();
@@ -19,6 +19,7 @@
 import java.io.FileInputStream;
 import java.io.IOException;
 import net.rptools.lib.MD5Key;
+import net.rptools.maptool.model.AssetData;
 import net.rptools.maptool.server.proto.AssetChunkDto;
 
 /**
@@ -31,6 +32,7 @@ public class AssetProducer {
   private MD5Key id;
   private String name;
   private File assetFile;
+  private AssetData data;
   private long length;
   private long currentPosition = 0;
 
@@ -44,9 +46,23 @@ public AssetProducer(MD5Key id, String name, File assetFile) {
     length = assetFile.length();
   }
 
+  /**
+   * Creates a producer for the data of an asset, which is read a chunk at a time.
+   *
+   * @param id the id of the asset.
+   * @param name the name of the asset.
+   * @param data the data of the asset.
+   */
+  public AssetProducer(MD5Key id, String name, AssetData data) {
+    this.id = id;
+    this.name = name;
+    this.data = data;
+    length = data.length();
+  }
+
   /** @return the header needed to create the corresponding AssetConsumer */
   public AssetHeader getHeader() {
-    return new AssetHeader(id, name, assetFile.length());
+    return new AssetHeader(id, name, length);
   }
 
   /**
@@ -60,16 +76,19 @@ public AssetChunkDto nextChunk(int size) throws IOException {
     if (currentPosition + size > length) {
       size = (int) (length - currentPosition);
     }
-    byte[] data = new byte[size];
-    try (FileInputStream in = new FileInputStream(assetFile)) {
-      in.skip(currentPosition);
-      in.read(data, 0, size);
+    ByteString chunk;
+    if (data != null) {
+      chunk = ByteString.copyFrom(data.read(currentPosition, size));
+    } else {
+      byte[] fileData = new byte[size];
+      try (FileInputStream in = new FileInputStream(assetFile)) {
+        in.skip(currentPosition);
+        in.read(fileData, 0, size);
+      }
+      chunk = ByteString.copyFrom(fileData);
     }
     currentPosition += size;
-    return AssetChunkDto.newBuilder()
-        .setId(id.toString())
-        .setData(ByteString.copyFrom(data))
-        .build();
+    return AssetChunkDto.newBuilder().setId(id.toString()).setData(chunk).build();
   }
 
   /**
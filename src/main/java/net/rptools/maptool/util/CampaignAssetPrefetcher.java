@@ -0,0 +1,191 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import net.rptools.lib.MD5Key;
+import net.rptools.lib.io.PackedFile;
+import net.rptools.maptool.model.Asset;
+import net.rptools.maptool.model.AssetManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads the assets of a campaign that were not read when the campaign was loaded.
+ *
+ * <p>The assets are read in the order they were given, in a background thread, and any asset that
+ * is requested from the {@link AssetManager} before the background thread gets to it is read
+ * straight away. The campaign file is kept open until all the assets have been read.
+ */
+class CampaignAssetPrefetcher implements AssetManager.DeferredAssetSource {
+  private static final Logger log = LogManager.getLogger(CampaignAssetPrefetcher.class);
+
+  /** The prefetcher of the campaign that was loaded last, if it has not finished. */
+  private static CampaignAssetPrefetcher current;
+
+  private final PackedFile pakFile;
+  private final String campaignVersion;
+  private final boolean fixRequired;
+
+  /** The assets that have not been read yet, in the order to read them. */
+  private final Set<MD5Key> pending;
+
+  /** The number of assets that have been read and are being put in the {@link AssetManager}. */
+  private int putting;
+
+  private boolean closed;
+
+  private CampaignAssetPrefetcher(File campaignFile, Collection<MD5Key> assetIds)
+      throws IOException {
+    pakFile = new PackedFile(campaignFile);
+    pakFile.getXStream().processAnnotations(Asset.class);
+    campaignVersion = (String) pakFile.getProperty(PersistenceUtil.PROP_CAMPAIGN_VERSION);
+    // FJE: Ugly fix for a bug I introduced in b64. :(
+    fixRequired = "1.3.b64".equals(pakFile.getProperty(PersistenceUtil.PROP_VERSION));
+    pending = new LinkedHashSet<>(assetIds);
+  }
+
+  /**
+   * Starts reading the assets of a campaign in the background, replacing the prefetcher of the
+   * campaign that was loaded before.
+   *
+   * @param campaignFile the campaign file.
+   * @param assetIds the ids of the assets to read, in the order to read them.
+   * @throws IOException if the campaign file could not be opened.
+   */
+  static synchronized void start(File campaignFile, Collection<MD5Key> assetIds)
+      throws IOException {
+    cancel();
+    if (assetIds.isEmpty()) {
+      return;
+    }
+    CampaignAssetPrefetcher prefetcher = new CampaignAssetPrefetcher(campaignFile, assetIds);
+    current = prefetcher;
+    AssetManager.setDeferredAssetSource(prefetcher);
+
+    Thread thread = new Thread(prefetcher::readAll, "CampaignAssetPrefetcher");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * Reads the assets that have not been read yet on the calling thread, and closes the campaign
+   * file. Returns once all the assets are in the {@link AssetManager}, including the ones being
+   * read by other threads. Used before the campaign file is written.
+   */
+  static void finish() {
+    CampaignAssetPrefetcher prefetcher;
+    synchronized (CampaignAssetPrefetcher.class) {
+      prefetcher = current;
+    }
+    if (prefetcher != null) {
+      prefetcher.readAll();
+      prefetcher.awaitPuts();
+    }
+  }
+
+  /**
+   * Stops reading the assets of the campaign that was loaded before and closes its file. The
+   * assets that have not been read yet are no longer available.
+   */
+  static synchronized void cancel() {
+    if (current != null) {
+      current.close();
+      current = null;
+    }
+  }
+
+  /** Reads the assets that have not been read yet. */
+  private void readAll() {
+    MD5Key id;
+    while ((id = nextPending()) != null) {
+      loadAsset(id);
+    }
+  }
+
+  /**
+   * Returns the next asset to read, closing the campaign file once all of them have been read.
+   *
+   * @return the id of the asset, or {@code null} if there are none left.
+   */
+  private synchronized MD5Key nextPending() {
+    Iterator<MD5Key> it = pending.iterator();
+    if (closed || !it.hasNext()) {
+      close();
+      return null;
+    }
+    return it.next();
+  }
+
+  /** Waits for the assets that have been read to be put in the {@link AssetManager}. */
+  private synchronized void awaitPuts() {
+    try {
+      while (putting > 0) {
+        wait();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Closes the campaign file and stops providing the assets that have not been read. */
+  private synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (!pending.isEmpty()) {
+      log.debug("Campaign closed with {} assets not read", pending.size());
+    }
+    pending.clear();
+    pakFile.close();
+    AssetManager.removeDeferredAssetSource(this);
+  }
+
+  @Override
+  public synchronized boolean hasAsset(MD5Key id) {
+    return pending.contains(id);
+  }
+
+  @Override
+  public Asset loadAsset(MD5Key id) {
+    Asset asset;
+    synchronized (this) {
+      if (!pending.remove(id)) {
+        return null;
+      }
+      asset = PersistenceUtil.readAsset(pakFile, id, campaignVersion, fixRequired);
+      putting++;
+    }
+    // Outside of the lock, as the listeners of the asset are notified.
+    try {
+      if (asset != null) {
+        AssetManager.putAsset(asset);
+      }
+    } finally {
+      synchronized (this) {
+        putting--;
+        notifyAll();
+      }
+    }
+    return asset;
+  }
+}
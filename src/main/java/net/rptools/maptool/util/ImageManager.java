@@ -17,6 +17,7 @@
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
@@ -417,11 +418,13 @@ public void run() {
         image = BROKEN_IMAGE; // we should never see this
       } else {
         try {
-          assert asset.getData() != null
+          assert asset.getAssetData() != null
               : "asset.getImage() for " + asset.toString() + "returns null?!";
-          image =
-              ImageUtil.createCompatibleImage(
-                  ImageUtil.bytesToImage(asset.getData(), asset.getName()), hints);
+          try (InputStream in = asset.getAssetData().openStream()) {
+            image =
+                ImageUtil.createCompatibleImage(
+                    ImageUtil.streamToImage(in, asset.getName()), hints);
+          }
         } catch (Throwable t) {
           if (!AssetManager.BAD_ASSET_LOCATION_KEY.toString().equals(asset.getMD5Key())) {
             // Don't bother logging cache miss of internal bad location asset
@@ -474,7 +477,7 @@ private static void notifyObservers(Asset asset, BufferedImage image) {
    */
   private static void backgroundLoadImage(Asset asset, Map<String, Object> hints) {
     // Use large image loader if the image is larger than 128kb.
-    if (asset.getData().length > 128 * 1024) {
+    if (asset.getAssetData().length() > 128 * 1024) {
       largeImageLoader.execute(new BackgroundImageLoader(asset, hints));
     } else {
       smallImageLoader.execute(new BackgroundImageLoader(asset, hints));
@@ -20,22 +20,31 @@
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.imageio.ImageIO;
 import net.rptools.lib.CodeTimer;
 import net.rptools.lib.FileUtil;
@@ -45,6 +54,7 @@
 import net.rptools.lib.io.PackedFile;
 import net.rptools.lib.swing.SwingUtil;
 import net.rptools.maptool.client.AppConstants;
+import net.rptools.maptool.client.AppPreferences;
 import net.rptools.maptool.client.AppUtil;
 import net.rptools.maptool.client.MapTool;
 import net.rptools.maptool.client.ui.Scale;
@@ -276,6 +286,32 @@ public static void saveCampaign(Campaign campaign, File campaignFile, String cam
     saveTimer.setEnabled(
         log.isDebugEnabled()); // Don't bother keeping track if it won't be displayed...
 
+    // All the assets are needed, and the campaign file can't be replaced while it is being read.
+    CampaignAssetPrefetcher.finish();
+
+    // When saving over the campaign file, only rewrite the parts of it that changed.
+    if (campaignVersion == null
+        && campaignFile.exists()
+        && AppPreferences.getIncrementalCampaignSave()) {
+      try {
+        updateCampaign(campaign, campaignFile, saveTimer);
+
+        saveTimer.start("Thumbnail");
+        saveCampaignThumbnail(campaignFile.getName());
+        saveTimer.stop("Thumbnail");
+        if (log.isDebugEnabled()) {
+          log.debug(saveTimer);
+        }
+        return;
+      } catch (IOException ioe) {
+        log.warn("Unable to update " + campaignFile + ", saving the whole campaign", ioe);
+      } catch (OutOfMemoryError oom) {
+        // See below for why this is usually the case.
+        MapTool.showError("msg.error.failedSaveCampaignOOM");
+        return;
+      }
+    }
+
     // Strategy: save the file to a tmp location so that if there's a failure the original file
     // won't be touched. Then once we're finished, replace the old with the new.
     File tmpDir = AppUtil.getTmpDir();
@@ -285,24 +321,9 @@ public static void saveCampaign(Campaign campaign, File campaignFile, String cam
     PackedFile pakFile = null;
     try {
       pakFile = new PackedFile(tmpFile);
-      // Configure the meta file (this is for legacy support)
-      PersistedCampaign persistedCampaign = new PersistedCampaign();
-
-      persistedCampaign.campaign = campaign;
-
-      // Keep track of the current view
-      ZoneRenderer currentZoneRenderer = MapTool.getFrame().getCurrentZoneRenderer();
-      if (currentZoneRenderer != null) {
-        persistedCampaign.currentZoneId = currentZoneRenderer.getZone().getId();
-        persistedCampaign.currentView = currentZoneRenderer.getZoneScale();
-      }
-      // Save all assets in active use (consolidate duplicates between maps)
       saveTimer.start("Collect all assets");
-      Set<MD5Key> allAssetIds = campaign.getAllAssetIds();
-      for (MD5Key key : allAssetIds) {
-        // Put in a placeholder; all we really care about is the MD5Key for now...
-        persistedCampaign.assetMap.put(key, null);
-      }
+      PersistedCampaign persistedCampaign = createPersistedCampaign(campaign);
+      Set<MD5Key> allAssetIds = persistedCampaign.assetMap.keySet();
       saveTimer.stop("Collect all assets");
 
       // And store the asset elsewhere
@@ -328,7 +349,7 @@ public static void saveCampaign(Campaign campaign, File campaignFile, String cam
         if (campaignVersion != null) {
           pakFile = CampaignExport.stripContent(pakFile, persistedCampaign, campaignVersion);
         } else {
-          pakFile.setContent(persistedCampaign);
+          setCampaignContent(persistedCampaign, pakFile);
           pakFile.setProperty(PROP_CAMPAIGN_VERSION, CAMPAIGN_VERSION);
           pakFile.setProperty(PROP_VERSION, MapTool.getVersion());
         }
@@ -398,6 +419,116 @@ public static void saveCampaign(Campaign campaign, File campaignFile, String cam
     }
   }
 
+  /**
+   * Creates the object that is written as the content of a campaign file.
+   *
+   * @param campaign the campaign.
+   * @return the persisted campaign, with the current view and all the assets in use.
+   */
+  private static PersistedCampaign createPersistedCampaign(Campaign campaign) {
+    // Configure the meta file (this is for legacy support)
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+
+    persistedCampaign.campaign = campaign;
+
+    // Keep track of the current view
+    ZoneRenderer currentZoneRenderer = MapTool.getFrame().getCurrentZoneRenderer();
+    if (currentZoneRenderer != null) {
+      persistedCampaign.currentZoneId = currentZoneRenderer.getZone().getId();
+      persistedCampaign.currentView = currentZoneRenderer.getZoneScale();
+    }
+    // Save all assets in active use (consolidate duplicates between maps)
+    for (MD5Key key : campaign.getAllAssetIds()) {
+      // Put in a placeholder; all we really care about is the MD5Key for now...
+      persistedCampaign.assetMap.put(key, null);
+    }
+    return persistedCampaign;
+  }
+
+  /**
+   * Sets the content of a campaign file, as XML or as streamed protobuf records depending on the
+   * preferences. The content in the other format is removed from the file.
+   *
+   * @param persistedCampaign the campaign.
+   * @param pakFile the campaign file.
+   * @throws IOException if the content could not be written.
+   */
+  private static void setCampaignContent(PersistedCampaign persistedCampaign, PackedFile pakFile)
+      throws IOException {
+    if (AppPreferences.getStreamedCampaignContent()) {
+      try (OutputStream os =
+          new BufferedOutputStream(pakFile.getOutputStream(StreamedCampaignContent.CONTENT_FILE))) {
+        StreamedCampaignContent.write(persistedCampaign, os);
+      }
+      pakFile.removeContent();
+    } else {
+      pakFile.setContent(persistedCampaign);
+      pakFile.removeFile(StreamedCampaignContent.CONTENT_FILE);
+    }
+  }
+
+  /**
+   * Saves a campaign into its existing file, rewriting only what changed. Assets are named by the
+   * MD5 hash of their data, so the assets already in the file are kept as they are and only the new
+   * ones are added. The entries that did not change are copied over without being recompressed and
+   * the new file is renamed over the old one. A backup of the old file is kept until the update
+   * succeeds, and is copied back if it fails.
+   *
+   * @param campaign the campaign to save.
+   * @param campaignFile the existing campaign file.
+   * @param saveTimer the timer of the save.
+   * @throws IOException if the campaign file could not be updated.
+   */
+  private static void updateCampaign(Campaign campaign, File campaignFile, CodeTimer saveTimer)
+      throws IOException {
+    saveTimer.start("Backup");
+    File bakFile = new File(AppUtil.getTmpDir().getAbsolutePath(), campaignFile.getName() + ".bak");
+    bakFile.delete(); // Delete the last backup file...
+    FileUtil.copyFile(campaignFile, bakFile);
+    saveTimer.stop("Backup");
+
+    try (PackedFile pakFile = new PackedFile(campaignFile)) {
+      saveTimer.start("Collect all assets");
+      PersistedCampaign persistedCampaign = createPersistedCampaign(campaign);
+      Set<MD5Key> usedAssetIds = new HashSet<>(persistedCampaign.assetMap.keySet());
+      saveTimer.stop("Collect all assets");
+
+      saveTimer.start("Save assets");
+      saveAssets(persistedCampaign.assetMap.keySet(), pakFile);
+      saveTimer.stop("Save assets");
+
+      saveTimer.start("Save Drop In Libraries");
+      saveAddOnLibraries(pakFile);
+      saveTimer.stop("Save Drop In Libraries");
+
+      saveTimer.start("Save Game Data");
+      usedAssetIds.addAll(saveGameData(pakFile));
+      saveTimer.stop("Save Game Data");
+
+      saveTimer.start("Remove unused assets");
+      removeUnusedAssets(usedAssetIds, pakFile);
+      saveTimer.stop("Remove unused assets");
+
+      saveTimer.start("Set content");
+      setCampaignContent(persistedCampaign, pakFile);
+      pakFile.setProperty(PROP_CAMPAIGN_VERSION, CAMPAIGN_VERSION);
+      pakFile.setProperty(PROP_VERSION, MapTool.getVersion());
+      saveTimer.stop("Set content");
+
+      saveTimer.start("Update");
+      pakFile.update();
+      saveTimer.stop("Update");
+    } catch (IOException | RuntimeException | Error e) {
+      try {
+        FileUtil.copyFile(bakFile, campaignFile);
+      } catch (IOException restoreFailed) {
+        e.addSuppressed(restoreFailed);
+      }
+      throw e;
+    }
+    bakFile.delete();
+  }
+
   /*
    * A public function because I think it should be called when a campaign is opened as well so if it is opened then closed without saving, there is still a preview created; however, the rendering
    * of the campaign appears to complete after AppActions.loadCampaign returns, causing the preview to always appear as black if this method is called from within loadCampaign. Either need to find
@@ -453,7 +584,15 @@ public static PersistedCampaign loadCampaign(File campaignFile) throws IOExcepti
       campaignVersion = campaignVersion == null ? "1.3.50" : campaignVersion;
 
       try {
-        persistedCampaign = (PersistedCampaign) pakFile.getContent(campaignVersion);
+        if (pakFile.hasFile(StreamedCampaignContent.CONTENT_FILE)) {
+          try (InputStream is =
+              new BufferedInputStream(
+                  pakFile.getFileAsInputStream(StreamedCampaignContent.CONTENT_FILE))) {
+            persistedCampaign = StreamedCampaignContent.read(is);
+          }
+        } else {
+          persistedCampaign = (PersistedCampaign) pakFile.getContent(campaignVersion);
+        }
       } catch (ConversionException ce) {
         // Ignore the exception and check for "campaign == null" below...
         MapTool.showError("PersistenceUtil.error.campaignVersion", ce);
@@ -462,7 +601,18 @@ public static PersistedCampaign loadCampaign(File campaignFile) throws IOExcepti
         // Now load up any images that we need
         // Note that the values are all placeholders
         Set<MD5Key> allAssetIds = persistedCampaign.assetMap.keySet();
-        loadAssets(allAssetIds, pakFile);
+        CampaignAssetPrefetcher.cancel();
+        if (AppPreferences.getDeferredCampaignAssetLoading()) {
+          // Only read the assets of the current map now, the rest are read in the background.
+          Set<MD5Key> deferredAssetIds = getDeferredAssetIds(persistedCampaign);
+          Set<MD5Key> assetIds = new HashSet<>(allAssetIds);
+          assetIds.removeAll(deferredAssetIds);
+          loadAssets(assetIds, pakFile);
+          deferredAssetIds.removeIf(AssetManager::hasAsset);
+          CampaignAssetPrefetcher.start(campaignFile, deferredAssetIds);
+        } else {
+          loadAssets(allAssetIds, pakFile);
+        }
         for (Zone zone : persistedCampaign.campaign.getZones()) {
           zone.optimize();
         }
@@ -507,6 +657,36 @@ public static PersistedCampaign loadCampaign(File campaignFile) throws IOExcepti
     return persistedCampaign;
   }
 
+  /**
+   * Returns the assets of a campaign that are only used by the maps other than the current one, in
+   * the order of the maps.
+   *
+   * @param persistedCampaign the campaign.
+   * @return the ids of the assets.
+   */
+  private static Set<MD5Key> getDeferredAssetIds(PersistedCampaign persistedCampaign) {
+    List<Zone> zones = persistedCampaign.campaign.getZones();
+    Zone currentZone = null;
+    if (persistedCampaign.currentZoneId != null) {
+      currentZone = persistedCampaign.campaign.getZone(persistedCampaign.currentZoneId);
+    }
+    if (currentZone == null && !zones.isEmpty()) {
+      currentZone = zones.get(0);
+    }
+
+    Set<MD5Key> assetIds = new LinkedHashSet<>();
+    for (Zone zone : zones) {
+      if (zone != currentZone) {
+        assetIds.addAll(zone.getAllAssetIds());
+      }
+    }
+    if (currentZone != null) {
+      assetIds.removeAll(currentZone.getAllAssetIds());
+    }
+    assetIds.retainAll(persistedCampaign.assetMap.keySet());
+    return assetIds;
+  }
+
   private static String getThumbFilename(PackedFile pakFile) throws IOException {
     if ((MapTool.getThumbnailSize().width > 50 || MapTool.getThumbnailSize().height > 50)
         && pakFile.hasFile(Token.FILE_THUMBNAIL_LARGE)) return Token.FILE_THUMBNAIL_LARGE;
@@ -616,60 +796,41 @@ private static void loadAssets(Collection<MD5Key> assetIds, PackedFile pakFile)
     // FJE: Ugly fix for a bug I introduced in b64. :(
     boolean fixRequired = "1.3.b64".equals(progVersion);
 
+    List<MD5Key> missingAssetIds = new ArrayList<>(assetIds.size());
     for (MD5Key key : assetIds) {
       if (key == null) continue;
 
       if (!AssetManager.hasAsset(key)) {
-        String pathname = ASSET_DIR + key;
-        Asset asset = null;
-        if (fixRequired) {
-          try (InputStream is = pakFile.getFileAsInputStream(pathname)) {
-            asset =
-                Asset.createAssetDetectType(
-                    key.toString(), IOUtils.toByteArray(is)); // Ugly bug fix :(
-          } catch (FileNotFoundException fnf) {
-            // Doesn't need to be reported, since that's handled below.
-          } catch (Exception e) {
-            log.error("Could not load asset from 1.3.b64 file in compatibility mode", e);
-          }
-        } else {
-          try {
-            asset = pakFile.getAsset(pathname);
-          } catch (Exception e) {
-            // Do nothing. The asset will be 'null' and it'll be handled below.
-            log.info("Exception while handling asset '" + pathname + "'", e);
-          }
-        }
-        if (asset == null) { // Referenced asset not included in PackedFile??
-          log.error("Referenced asset '" + pathname + "' not found while loading?!");
-          continue;
-        }
-        // If the asset was marked as "broken" then ignore it completely. The end
-        // result is that MT will attempt to load it from a repository again, as normal.
-        if ("broken".equals(asset.getName())) {
-          log.warn("Reference to 'broken' asset '" + pathname + "' not restored.");
-          ImageManager.flushImage(asset);
-          continue;
-        }
-        // pre 1.3b52 campaign files stored the image data directly in the asset serialization.
-        // New XStreamConverter creates empty byte[] for image.
-        if (asset.getData() == null || asset.getData().length < 4) {
-          String ext = asset.getExtension();
-          pathname = pathname + "." + (StringUtil.isEmpty(ext) ? "dat" : ext);
-          pathname = assetnameVersionManager.transform(pathname, campaignVersion);
-          try (InputStream is = pakFile.getFileAsInputStream(pathname)) {
-            asset = asset.setData(IOUtils.toByteArray(is), false);
-          } catch (FileNotFoundException fnf) {
-            log.error("Image data for '" + pathname + "' not found?!", fnf);
-            continue;
-          } catch (Exception e) {
-            log.error("While reading image data for '" + pathname + "'", e);
-            continue;
-          }
+        missingAssetIds.add(key);
+      }
+    }
+
+    // Reading, inflating and hashing the assets is spread over several threads, ZipFile supports
+    // reading its entries concurrently.
+    int threads = Math.min(Runtime.getRuntime().availableProcessors(), missingAssetIds.size());
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try {
+      List<CompletableFuture<Asset>> futures = new ArrayList<>(missingAssetIds.size());
+      for (MD5Key key : missingAssetIds) {
+        futures.add(
+            CompletableFuture.supplyAsync(
+                () -> {
+                  Asset asset = readAsset(pakFile, key, campaignVersion, fixRequired);
+                  if (asset != null) {
+                    AssetManager.putAsset(asset);
+                  }
+                  return asset;
+                },
+                executor));
+      }
+      for (CompletableFuture<Asset> future : futures) {
+        Asset asset = joinAssetRead(future);
+        if (asset != null) {
+          addToServer.add(asset);
         }
-        AssetManager.putAsset(asset);
-        addToServer.add(asset);
       }
+    } finally {
+      executor.shutdownNow();
     }
     if (!addToServer.isEmpty()) {
       // Isn't this the same as (MapTool.getServer() == null) ? And won't there always
@@ -691,6 +852,87 @@ private static void loadAssets(Collection<MD5Key> assetIds, PackedFile pakFile)
     }
   }
 
+  /**
+   * Waits for an asset to be read by {@link #loadAssets(Collection, PackedFile)}, rethrowing what
+   * the read threw so that it is handled as if the asset was read on the calling thread.
+   *
+   * @param future the read of the asset.
+   * @return the asset, or {@code null} if it could not be read.
+   */
+  private static Asset joinAssetRead(CompletableFuture<Asset> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      } else if (e.getCause() instanceof RuntimeException rte) {
+        throw rte;
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Reads an asset from a packed file.
+   *
+   * @param pakFile the packed file.
+   * @param key the id of the asset.
+   * @param campaignVersion the campaign version of the packed file.
+   * @param fixRequired if the file was saved by 1.3.b64, which wrote the assets differently.
+   * @return the asset, or {@code null} if it could not be read.
+   */
+  static Asset readAsset(
+      PackedFile pakFile, MD5Key key, String campaignVersion, boolean fixRequired) {
+    String pathname = ASSET_DIR + key;
+    Asset asset = null;
+    if (fixRequired) {
+      try (InputStream is = pakFile.getFileAsInputStream(pathname)) {
+        asset =
+            Asset.createAssetDetectType(
+                key.toString(), IOUtils.toByteArray(is)); // Ugly bug fix :(
+      } catch (FileNotFoundException fnf) {
+        // Doesn't need to be reported, since that's handled below.
+      } catch (Exception e) {
+        log.error("Could not load asset from 1.3.b64 file in compatibility mode", e);
+      }
+    } else {
+      try {
+        asset = pakFile.getAsset(pathname);
+      } catch (Exception e) {
+        // Do nothing. The asset will be 'null' and it'll be handled below.
+        log.info("Exception while handling asset '" + pathname + "'", e);
+      }
+    }
+    if (asset == null) { // Referenced asset not included in PackedFile??
+      log.error("Referenced asset '" + pathname + "' not found while loading?!");
+      return null;
+    }
+    // If the asset was marked as "broken" then ignore it completely. The end
+    // result is that MT will attempt to load it from a repository again, as normal.
+    if ("broken".equals(asset.getName())) {
+      log.warn("Reference to 'broken' asset '" + pathname + "' not restored.");
+      ImageManager.flushImage(asset);
+      return null;
+    }
+    // pre 1.3b52 campaign files stored the image data directly in the asset serialization.
+    // New XStreamConverter creates empty byte[] for image.
+    if (asset.getData() == null || asset.getData().length < 4) {
+      String ext = asset.getExtension();
+      pathname = pathname + "." + (StringUtil.isEmpty(ext) ? "dat" : ext);
+      pathname = assetnameVersionManager.transform(pathname, campaignVersion);
+      try (InputStream is = pakFile.getFileAsInputStream(pathname)) {
+        asset = asset.setData(IOUtils.toByteArray(is), false);
+      } catch (FileNotFoundException fnf) {
+        log.error("Image data for '" + pathname + "' not found?!", fnf);
+        return null;
+      } catch (Exception e) {
+        log.error("While reading image data for '" + pathname + "'", e);
+        return null;
+      }
+    }
+    return asset;
+  }
+
   /**
    * Loads the add-on libraries from the campaign file.
    *
@@ -765,7 +1007,14 @@ private static void loadGameData(PackedFile packedFile) throws IOException {
     }
   }
 
-  private static void saveGameData(PackedFile packedFile) throws IOException {
+  /**
+   * Saves the game data into a packed file.
+   *
+   * @param packedFile the packed file.
+   * @return the ids of the assets used by the game data.
+   * @throws IOException if the game data could not be saved.
+   */
+  private static Set<MD5Key> saveGameData(PackedFile packedFile) throws IOException {
     // Remove all the game data from the packed file first.
     for (String path : packedFile.getPaths()) {
       if (path.startsWith(GAME_DATA_DIR) && !path.equals(GAME_DATA_DIR)) {
@@ -780,7 +1029,8 @@ private static void saveGameData(PackedFile packedFile) throws IOException {
           GAME_DATA_FILE, JsonFormat.printer().print(dto).getBytes(StandardCharsets.UTF_8));
 
       Set<MD5Key> assets = dataStoreManager.getAssets().get();
-      saveAssets(dataStoreManager.getAssets().get(), packedFile);
+      saveAssets(assets, packedFile);
+      return assets;
     } catch (ExecutionException | InterruptedException e) {
       throw new IOException(e);
     }
@@ -805,12 +1055,40 @@ private static void saveAssets(Collection<MD5Key> assetIds, PackedFile pakFile)
       }
 
       String extension = asset.getExtension();
-      byte[] assetData = asset.getData();
+      String dataPath = ASSET_DIR + assetId + "." + extension;
+      String assetPath = ASSET_DIR + assetId;
+      // The id is the hash of the data, so an asset that is already in the file is unchanged.
+      if (pakFile.hasFile(dataPath) && pakFile.hasFile(assetPath)) {
+        continue;
+      }
       // System.out.println("Saving AssetId " + assetId + "." + extension + " with size of " +
-      // assetData.length);
+      // asset.getAssetData().length());
 
-      pakFile.putFile(ASSET_DIR + assetId + "." + extension, assetData);
-      pakFile.putFile(ASSET_DIR + assetId + "", asset); // Does not write the image
+      try (InputStream assetData = asset.getAssetData().openStream()) {
+        pakFile.putFile(dataPath, assetData);
+      }
+      pakFile.putFile(assetPath, asset); // Does not write the image
+    }
+  }
+
+  /**
+   * Removes the assets that are no longer used from a packed file.
+   *
+   * @param usedAssetIds the ids of the assets in use.
+   * @param pakFile the packed file.
+   * @throws IOException if the packed file could not be read.
+   */
+  private static void removeUnusedAssets(Set<MD5Key> usedAssetIds, PackedFile pakFile)
+      throws IOException {
+    for (String path : pakFile.getPaths()) {
+      if (path.startsWith(ASSET_DIR) && !path.equals(ASSET_DIR)) {
+        String name = path.substring(ASSET_DIR.length());
+        int dot = name.indexOf('.');
+        MD5Key assetId = new MD5Key(dot < 0 ? name : name.substring(0, dot));
+        if (!usedAssetIds.contains(assetId)) {
+          pakFile.removeFile(path);
+        }
+      }
     }
   }
 
@@ -1134,9 +1412,12 @@ public static void saveTokenImage(MD5Key assetID, File tokenSaveFile) {
 
     try {
       tokenSaveFile = new File(tokenSaveFile.getAbsolutePath() + ".png");
-      BufferedImage image =
-          ImageUtil.createCompatibleImage(
-              ImageUtil.bytesToImage(asset.getData(), tokenSaveFile.getCanonicalPath()));
+      BufferedImage image;
+      try (InputStream in = asset.getAssetData().openStream()) {
+        image =
+            ImageUtil.createCompatibleImage(
+                ImageUtil.streamToImage(in, tokenSaveFile.getCanonicalPath()));
+      }
       ImageIO.write(image, "png", tokenSaveFile);
       image.flush();
     } catch (IOException e) {
@@ -0,0 +1,222 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import com.google.protobuf.StringValue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.lib.MD5Key;
+import net.rptools.maptool.client.ui.Scale;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.MacroButtonProperties;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.drawing.DrawnElement;
+import net.rptools.maptool.server.proto.CampaignContentHeaderDto;
+import net.rptools.maptool.server.proto.CampaignContentRecordDto;
+import net.rptools.maptool.server.proto.ZoneDrawableDto;
+import net.rptools.maptool.server.proto.ZoneDrawableDto.DrawableListDto;
+import net.rptools.maptool.server.proto.ZoneDto;
+import net.rptools.maptool.server.proto.ZoneViewDto;
+import net.rptools.maptool.util.PersistenceUtil.PersistedCampaign;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Reads and writes the content of a campaign file as a stream of length delimited protobuf
+ * records, see {@code CampaignContentRecordDto}, instead of as one XStream XML document.
+ *
+ * <p>The campaign is written and read a zone at a time, and each token and drawable is a record of
+ * its own, so only one zone is ever held as DTOs in memory.
+ */
+public class StreamedCampaignContent {
+  private static final Logger log = LogManager.getLogger(StreamedCampaignContent.class);
+
+  /** The path of the streamed content in a campaign file. */
+  public static final String CONTENT_FILE = "content.pb";
+
+  private StreamedCampaignContent() {}
+
+  /**
+   * Writes a campaign.
+   *
+   * @param persistedCampaign the campaign to write.
+   * @param out the stream to write to, which is not closed.
+   * @throws IOException if the campaign could not be written.
+   */
+  public static void write(PersistedCampaign persistedCampaign, OutputStream out)
+      throws IOException {
+    Campaign campaign = persistedCampaign.campaign;
+
+    var header = CampaignContentHeaderDto.newBuilder();
+    if (persistedCampaign.currentZoneId != null) {
+      header.setCurrentZoneId(StringValue.of(persistedCampaign.currentZoneId.toString()));
+    }
+    Scale view = persistedCampaign.currentView;
+    if (view != null) {
+      header.setCurrentView(
+          ZoneViewDto.newBuilder()
+              .setScale(view.getScale())
+              .setOffsetX(view.getOffsetX())
+              .setOffsetY(view.getOffsetY()));
+    }
+    for (MD5Key assetId : persistedCampaign.assetMap.keySet()) {
+      header.addAssetIds(assetId.toString());
+    }
+    for (MacroButtonProperties macro : campaign.getGmMacroButtonPropertiesArray()) {
+      header.addGmMacroButtonProperties(macro.toDto());
+    }
+    writeRecord(CampaignContentRecordDto.newBuilder().setHeader(header), out);
+    writeRecord(CampaignContentRecordDto.newBuilder().setCampaign(campaign.toDto(false)), out);
+
+    for (Zone zone : campaign.getZones()) {
+      writeRecord(CampaignContentRecordDto.newBuilder().setZone(zone.toDto(false)), out);
+      for (Token token : zone.getAllTokens()) {
+        writeRecord(CampaignContentRecordDto.newBuilder().setToken(token.toDto()), out);
+      }
+      writeDrawables(DrawableListDto.DRAWABLES, zone.getDrawnElements(), out);
+      writeDrawables(DrawableListDto.GM_DRAWABLES, zone.getGMDrawnElements(), out);
+      writeDrawables(DrawableListDto.OBJECT_DRAWABLES, zone.getObjectDrawnElements(), out);
+      writeDrawables(DrawableListDto.BACKGROUND_DRAWABLES, zone.getBackgroundDrawnElements(), out);
+    }
+  }
+
+  /**
+   * Writes the drawables of a zone.
+   *
+   * @param list the list of the zone the drawables are in.
+   * @param drawables the drawables.
+   * @param out the stream to write to.
+   * @throws IOException if the drawables could not be written.
+   */
+  private static void writeDrawables(
+      DrawableListDto list, List<DrawnElement> drawables, OutputStream out) throws IOException {
+    for (DrawnElement drawable : drawables) {
+      var dto = ZoneDrawableDto.newBuilder().setList(list).setDrawable(drawable.toDto());
+      writeRecord(CampaignContentRecordDto.newBuilder().setDrawable(dto), out);
+    }
+  }
+
+  /**
+   * Writes a record, length delimited.
+   *
+   * @param record the record.
+   * @param out the stream to write to.
+   * @throws IOException if the record could not be written.
+   */
+  private static void writeRecord(CampaignContentRecordDto.Builder record, OutputStream out)
+      throws IOException {
+    record.build().writeDelimitedTo(out);
+  }
+
+  /**
+   * Reads a campaign.
+   *
+   * @param in the stream to read from, which is not closed.
+   * @return the campaign read.
+   * @throws IOException if the campaign could not be read.
+   */
+  public static PersistedCampaign read(InputStream in) throws IOException {
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+    List<MacroButtonProperties> gmMacros = new ArrayList<>();
+    ZoneDto.Builder zone = null;
+
+    CampaignContentRecordDto record;
+    while ((record = CampaignContentRecordDto.parseDelimitedFrom(in)) != null) {
+      switch (record.getRecordTypeCase()) {
+        case HEADER -> {
+          CampaignContentHeaderDto header = record.getHeader();
+          if (header.hasCurrentZoneId()) {
+            persistedCampaign.currentZoneId = GUID.valueOf(header.getCurrentZoneId().getValue());
+          }
+          if (header.hasCurrentView()) {
+            ZoneViewDto viewDto = header.getCurrentView();
+            Scale view = new Scale();
+            view.setScale(viewDto.getScale());
+            view.setOffset(viewDto.getOffsetX(), viewDto.getOffsetY());
+            persistedCampaign.currentView = view;
+          }
+          for (String assetId : header.getAssetIdsList()) {
+            // Put in a placeholder; all we really care about is the MD5Key for now...
+            persistedCampaign.assetMap.put(new MD5Key(assetId), null);
+          }
+          header.getGmMacroButtonPropertiesList().stream()
+              .map(MacroButtonProperties::fromDto)
+              .forEach(gmMacros::add);
+        }
+        case CAMPAIGN -> persistedCampaign.campaign = Campaign.fromDto(record.getCampaign());
+        case ZONE -> {
+          putZone(persistedCampaign, zone);
+          zone = record.getZone().toBuilder();
+        }
+        case TOKEN -> getZone(zone).addTokens(record.getToken());
+        case DRAWABLE -> {
+          ZoneDrawableDto drawable = record.getDrawable();
+          switch (drawable.getList()) {
+            case GM_DRAWABLES -> getZone(zone).addGmDrawables(drawable.getDrawable());
+            case OBJECT_DRAWABLES -> getZone(zone).addObjectDrawables(drawable.getDrawable());
+            case BACKGROUND_DRAWABLES -> getZone(zone)
+                .addBackgroundDrawables(drawable.getDrawable());
+            default -> getZone(zone).addDrawables(drawable.getDrawable());
+          }
+        }
+        default -> log.warn("Skipping unknown campaign content record");
+      }
+    }
+    putZone(persistedCampaign, zone);
+
+    if (persistedCampaign.campaign == null) {
+      throw new IOException("Campaign content has no campaign");
+    }
+    persistedCampaign.campaign.setGmMacroButtonPropertiesArray(gmMacros);
+    return persistedCampaign;
+  }
+
+  /**
+   * Returns the zone being read, for the records that belong to it.
+   *
+   * @param zone the zone being read, or {@code null} if no zone has been read yet.
+   * @return the zone.
+   * @throws IOException if no zone has been read yet.
+   */
+  private static ZoneDto.Builder getZone(ZoneDto.Builder zone) throws IOException {
+    if (zone == null) {
+      throw new IOException("Campaign content has zone records before the first zone");
+    }
+    return zone;
+  }
+
+  /**
+   * Adds a zone that has been read to the campaign.
+   *
+   * @param persistedCampaign the campaign being read.
+   * @param zone the zone, may be {@code null}.
+   * @throws IOException if the campaign has not been read yet.
+   */
+  private static void putZone(PersistedCampaign persistedCampaign, ZoneDto.Builder zone)
+      throws IOException {
+    if (zone == null) {
+      return;
+    }
+    if (persistedCampaign.campaign == null) {
+      throw new IOException("Campaign content has zones before the campaign");
+    }
+    persistedCampaign.campaign.putZone(Zone.fromDto(zone.build()));
+  }
+}
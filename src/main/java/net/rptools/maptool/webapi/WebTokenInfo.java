@@ -53,9 +53,13 @@ private void addTokenChangeListeners() {
             event -> {
               System.out.println("DEBUG: Event " + event.eventType);
               if (event.eventType == Zone.Event.TOKEN_CHANGED) {
-                tokenChanged((Token) event.getArg());
+                for (Token token : event.getTokensAsList()) {
+                  tokenChanged(token);
+                }
               } else if (event.eventType == Zone.Event.TOKEN_ADDED) {
-                tokenAdded((Token) event.getArg());
+                for (Token token : event.getTokensAsList()) {
+                  tokenAdded(token);
+                }
               } else if (event.eventType == Zone.Event.TOKEN_REMOVED) {
                 for (Token token : event.getTokensAsList()) {
                   tokenRemoved(token);
@@ -14,12 +14,17 @@
  */
 package net.rptools.lib.swing.preference.net.rptools.lib.io;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import net.rptools.lib.io.PackedFile;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
@@ -53,4 +58,114 @@ public void saveWithOneResource(@TempDir File tempDir) throws IOException {
       assertEquals(test_content, s);
     }
   }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static byte[] read(PackedFile pakFile, String path) throws IOException {
+    try (InputStream is = pakFile.getFileAsInputStream(path)) {
+      return is.readAllBytes();
+    }
+  }
+
+  @Test
+  public void updateRewritesOnlyChangedEntries(@TempDir File dir) throws IOException {
+    File file = new File(dir, "test.zip");
+    try (PackedFile pakFile = new PackedFile(file)) {
+      pakFile.putFile("assets/a", bytes("unchanged"));
+      pakFile.putFile("assets/b", bytes("removed"));
+      pakFile.putFile("content", bytes("old"));
+      pakFile.setProperty("version", "1");
+      pakFile.save();
+    }
+
+    try (PackedFile pakFile = new PackedFile(file)) {
+      pakFile.putFile("assets/a", bytes("unchanged"));
+      pakFile.removeFile("assets/b");
+      pakFile.putFile("assets/c", bytes("added"));
+      pakFile.putFile("content", bytes("new"));
+      pakFile.setProperty("version", "2");
+      pakFile.update();
+      assertFalse(pakFile.isDirty());
+    }
+
+    try (PackedFile pakFile = new PackedFile(file)) {
+      assertArrayEquals(bytes("unchanged"), read(pakFile, "assets/a"));
+      assertFalse(pakFile.hasFile("assets/b"));
+      assertArrayEquals(bytes("added"), read(pakFile, "assets/c"));
+      assertArrayEquals(bytes("new"), read(pakFile, "content"));
+      assertEquals("2", pakFile.getProperty("version"));
+    }
+  }
+
+  @Test
+  public void updateNewFileIsSaved(@TempDir File dir) throws IOException {
+    File file = new File(dir, "test.zip");
+    try (PackedFile pakFile = new PackedFile(file)) {
+      pakFile.putFile("content", bytes("data"));
+      pakFile.update();
+    }
+
+    assertTrue(file.exists());
+    try (PackedFile pakFile = new PackedFile(file)) {
+      assertArrayEquals(bytes("data"), read(pakFile, "content"));
+    }
+  }
+
+  @Test
+  public void saveStoresCompressedFormats(@TempDir File dir) throws IOException {
+    File file = new File(dir, "test.zip");
+    try (PackedFile pakFile = new PackedFile(file)) {
+      pakFile.putFile("assets/image.png", bytes("not really a png"));
+      pakFile.putFile("content.xml", bytes("<content/>"));
+      pakFile.save();
+    }
+
+    try (ZipFile zipFile = new ZipFile(file)) {
+      assertEquals(ZipEntry.STORED, zipFile.getEntry("assets/image.png").getMethod());
+      assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("content.xml").getMethod());
+    }
+    try (PackedFile pakFile = new PackedFile(file)) {
+      assertArrayEquals(bytes("not really a png"), read(pakFile, "assets/image.png"));
+    }
+  }
+
+  @Test
+  public void updateStoresOnlyIfAllChangesAreStored(@TempDir File dir) throws IOException {
+    File file = new File(dir, "test.zip");
+    try (PackedFile pakFile = new PackedFile(file)) {
+      pakFile.putFile("content.xml", bytes("<content/>"));
+      pakFile.save();
+    }
+
+    try (PackedFile pakFile = new PackedFile(file)) {
+      pakFile.putFile("assets/stored.png", bytes("not really a png"));
+      pakFile.update();
+    }
+    try (PackedFile pakFile = new PackedFile(file)) {
+      pakFile.putFile("assets/deflated.png", bytes("not really a png either"));
+      pakFile.putFile("content.xml", bytes("<content>changed</content>"));
+      pakFile.update();
+    }
+
+    try (ZipFile zipFile = new ZipFile(file)) {
+      assertEquals(ZipEntry.STORED, zipFile.getEntry("assets/stored.png").getMethod());
+      assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("assets/deflated.png").getMethod());
+      assertEquals(ZipEntry.DEFLATED, zipFile.getEntry("content.xml").getMethod());
+    }
+    try (PackedFile pakFile = new PackedFile(file)) {
+      assertArrayEquals(bytes("not really a png"), read(pakFile, "assets/stored.png"));
+      assertArrayEquals(bytes("not really a png either"), read(pakFile, "assets/deflated.png"));
+      assertArrayEquals(bytes("<content>changed</content>"), read(pakFile, "content.xml"));
+    }
+  }
+
+  @Test
+  public void isCompressedFormat() {
+    assertTrue(PackedFile.isCompressedFormat("assets/abc.PNG"));
+    assertTrue(PackedFile.isCompressedFormat("assets/abc.webm"));
+    assertFalse(PackedFile.isCompressedFormat("content.xml"));
+    assertFalse(PackedFile.isCompressedFormat("assets.png/abc"));
+  }
 }
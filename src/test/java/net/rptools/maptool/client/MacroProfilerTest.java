@@ -0,0 +1,99 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import net.rptools.maptool.client.MacroProfiler.Category;
+import net.rptools.maptool.client.MacroProfiler.Timing;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MacroProfilerTest {
+  private final MacroProfiler profiler = MacroProfiler.getInstance();
+
+  @BeforeEach
+  void setUp() {
+    profiler.start(true);
+  }
+
+  @AfterEach
+  void tearDown() {
+    profiler.stop();
+    profiler.reset();
+  }
+
+  private Timing timing(Category category, String name) {
+    return profiler.getTimings(category).stream()
+        .filter(t -> t.name().equals(name))
+        .findFirst()
+        .orElseThrow();
+  }
+
+  @Test
+  void testNestedCallsExclusiveExcludesChildren() throws InterruptedException {
+    MacroProfiler.Frame macro = profiler.enter(Category.MACRO, "outer@lib:test");
+    MacroProfiler.Frame function = profiler.enter(Category.FUNCTION, "inner");
+    Thread.sleep(5);
+    profiler.exit(function);
+    profiler.exit(macro);
+
+    Timing outer = timing(Category.MACRO, "outer@lib:test");
+    Timing inner = timing(Category.FUNCTION, "inner");
+    assertEquals(1, outer.calls());
+    assertEquals(1, inner.calls());
+    assertTrue(outer.inclusiveNanos() >= inner.inclusiveNanos());
+    assertTrue(outer.exclusiveNanos() < outer.inclusiveNanos());
+    assertEquals(inner.inclusiveNanos(), inner.exclusiveNanos());
+  }
+
+  @Test
+  void testRecursiveCallsInclusiveCountedOnce() {
+    MacroProfiler.Frame first = profiler.enter(Category.FUNCTION, "recurse");
+    MacroProfiler.Frame second = profiler.enter(Category.FUNCTION, "recurse");
+    profiler.exit(second);
+    profiler.exit(first);
+
+    Timing timing = timing(Category.FUNCTION, "recurse");
+    assertEquals(2, timing.calls());
+    assertTrue(timing.exclusiveNanos() <= timing.inclusiveNanos());
+  }
+
+  @Test
+  void testStartKeepsOrDiscardsTimings() {
+    profiler.exit(profiler.enter(Category.FUNCTION, "kept"));
+    profiler.stop();
+
+    profiler.start(false);
+    profiler.exit(profiler.enter(Category.FUNCTION, "kept"));
+    assertEquals(2, timing(Category.FUNCTION, "kept").calls());
+
+    profiler.start(true);
+    assertEquals(List.of(), profiler.getTimings(Category.FUNCTION));
+  }
+
+  @Test
+  void testDisabledRecordsNothing() {
+    profiler.stop();
+
+    assertNull(profiler.enter(Category.FUNCTION, "ignored"));
+    profiler.exit(null);
+    assertEquals(List.of(), profiler.getTimings(Category.FUNCTION));
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.server.proto.Message;
+import net.rptools.maptool.server.proto.Message.MessageTypeCase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ServerCommandClientImplTest {
+  private final List<Message> sent = new ArrayList<>();
+  private final ServerCommandClientImpl client = new ServerCommandClientImpl(sent::add);
+  private Zone zone;
+
+  @BeforeEach
+  void setUp() {
+    zone = new Zone();
+    MapTool.getCampaign().putZone(zone);
+  }
+
+  @AfterEach
+  void tearDown() {
+    client.endAllTokenUpdateBatches();
+    MapTool.getCampaign().removeZone(zone.getId());
+  }
+
+  private Token newToken(String name) {
+    Token token = new Token();
+    token.setName(name);
+    zone.putToken(token);
+    return token;
+  }
+
+  @Test
+  void testPutThenRemovePutIsSentBeforeRemove() {
+    Token token = newToken("Goblin");
+
+    client.beginTokenUpdateBatch();
+    client.putToken(zone.getId(), token);
+    client.removeToken(zone.getId(), token.getId());
+    client.endTokenUpdateBatch();
+
+    assertEquals(2, sent.size());
+    assertEquals(MessageTypeCase.PUT_TOKEN_MSG, sent.get(0).getMessageTypeCase());
+    assertEquals(token.getId().toString(), sent.get(0).getPutTokenMsg().getToken().getId());
+    assertEquals(MessageTypeCase.REMOVE_TOKEN_MSG, sent.get(1).getMessageTypeCase());
+    assertEquals(token.getId().toString(), sent.get(1).getRemoveTokenMsg().getTokenGuid());
+    assertFalse(zone.getTokens().contains(token));
+  }
+
+  @Test
+  void testUpdatesAfterUnbatchedMessageAreStillBatched() {
+    Token goblin = newToken("Goblin");
+    Token orc = newToken("Orc");
+    Token troll = newToken("Troll");
+
+    client.beginTokenUpdateBatch();
+    client.putToken(zone.getId(), goblin);
+    client.putToken(zone.getId(), orc);
+    client.removeToken(zone.getId(), goblin.getId());
+    assertEquals(2, sent.size(), "The batched updates should be sent before the remove");
+    assertEquals(MessageTypeCase.UPDATE_TOKENS_MSG, sent.get(0).getMessageTypeCase());
+    assertEquals(2, sent.get(0).getUpdateTokensMsg().getUpdatesCount());
+    assertEquals(MessageTypeCase.REMOVE_TOKEN_MSG, sent.get(1).getMessageTypeCase());
+
+    client.putToken(zone.getId(), troll);
+    assertEquals(2, sent.size(), "Updates after the remove should still be batched");
+    client.endTokenUpdateBatch();
+
+    assertEquals(3, sent.size());
+    assertEquals(MessageTypeCase.PUT_TOKEN_MSG, sent.get(2).getMessageTypeCase());
+    assertEquals(troll.getId().toString(), sent.get(2).getPutTokenMsg().getToken().getId());
+  }
+
+  @Test
+  void testNoBatchMessagesAreSentAsMade() {
+    Token token = newToken("Goblin");
+
+    client.putToken(zone.getId(), token);
+    assertEquals(1, sent.size());
+    client.removeToken(zone.getId(), token.getId());
+
+    assertEquals(2, sent.size());
+    assertEquals(MessageTypeCase.PUT_TOKEN_MSG, sent.get(0).getMessageTypeCase());
+    assertEquals(MessageTypeCase.REMOVE_TOKEN_MSG, sent.get(1).getMessageTypeCase());
+    assertTrue(zone.getTokens().isEmpty());
+  }
+}
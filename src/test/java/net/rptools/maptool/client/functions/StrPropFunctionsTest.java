@@ -89,4 +89,24 @@ void parse_onePropWithTwoSpaces() {
 
     inMap(map).key("A B 1").hasValue("1");
   }
+
+  @Test
+  void parse_sameStringTwice() {
+    String testProps = "a=1 ; b=2";
+
+    StrPropFunctions.parse(testProps, map, oldKeys, oldKeysNormalized, DEFAULT_DELIMITER);
+    map.put("A", "changed");
+    oldKeys.clear();
+
+    Map<String, String> secondMap = new HashMap<>();
+    List<String> secondKeys = new ArrayList<>();
+    List<String> secondKeysNormalized = new ArrayList<>();
+    StrPropFunctions.parse(
+        testProps, secondMap, secondKeys, secondKeysNormalized, DEFAULT_DELIMITER);
+
+    inMap(secondMap).key("A").hasValue("1");
+    inMap(secondMap).key("B").hasValue("2");
+    assertEquals(List.of("a", "b"), secondKeys);
+    assertEquals(List.of("A", "B"), secondKeysNormalized);
+  }
 }
@@ -197,4 +197,49 @@ void convertPrimitiveFromString() {
     assertTrue(jsonPrimitive.isString());
     assertFalse(jsonPrimitive.isNumber());
   }
+
+  @Test
+  void asJsonElementDoesNotShareParsedStrings() {
+    String json = "{\"name\": \"Goblin\", \"hp\": [7, 10]}";
+
+    JsonElement first = typeConversion.asJsonElement(json);
+    assertTrue(first.isJsonObject());
+    first.getAsJsonObject().getAsJsonArray("hp").add(12);
+    first.getAsJsonObject().addProperty("name", "Orc");
+
+    JsonElement second = typeConversion.asJsonElement(new String(json));
+    assertNotSame(first, second, "Parsed json should not be shared for equal strings");
+    assertEquals(JsonParser.parseString(json), second, "Changes should not reach the cache");
+
+    JsonElement cloned = typeConversion.asClonedJsonElement(json);
+    assertEquals(second, cloned);
+    assertNotSame(second, cloned);
+  }
+
+  @Test
+  void asReadOnlyJsonElementSharesParsedStrings() {
+    String json = "{\"name\": \"Goblin\", \"hp\": [7, 10]}";
+
+    JsonElement first = typeConversion.asReadOnlyJsonElement(json);
+    JsonElement second = typeConversion.asReadOnlyJsonElement(new String(json));
+    assertSame(first, second, "Parsed json should be shared for equal strings");
+    assertEquals(JsonParser.parseString(json), first);
+    assertNotSame(first, typeConversion.asJsonElement(json), "Only read only json is shared");
+
+    JsonElement element = new JsonArray();
+    assertSame(element, typeConversion.asReadOnlyJsonElement(element));
+    assertEquals(new JsonPrimitive("[not json"), typeConversion.asReadOnlyJsonElement("[not json"));
+  }
+
+  @Test
+  void estimateSizeCountsElementsAndText() {
+    long empty = JsonMTSTypeConversion.estimateSize(new JsonObject());
+    long small = JsonMTSTypeConversion.estimateSize(JsonParser.parseString("{\"a\": \"b\"}"));
+    long large =
+        JsonMTSTypeConversion.estimateSize(
+            JsonParser.parseString("{\"a\": \"" + "b".repeat(1000) + "\"}"));
+
+    assertTrue(empty < small);
+    assertTrue(small + 1998 <= large);
+  }
 }
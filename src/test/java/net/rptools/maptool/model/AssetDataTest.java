@@ -0,0 +1,169 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import net.rptools.lib.MD5Key;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AssetDataTest {
+  @TempDir File dir;
+
+  private AssetPackCache cache;
+  private byte[] bytes;
+  private MD5Key id;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    cache = new AssetPackCache(dir, () -> 0);
+    bytes = new byte[1000];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    id = new MD5Key(bytes);
+    cache.put(id, "Goblin", null, bytes);
+  }
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    cache.close();
+  }
+
+  /** Returns data that has been released to the cache and collected. */
+  private AssetData collected() {
+    AssetData data = new AssetData(bytes.clone());
+    data.release(id, cache);
+    data.collect();
+    return data;
+  }
+
+  @Test
+  void testInMemoryReturnsTheData() throws IOException {
+    AssetData data = new AssetData(bytes);
+
+    assertEquals(bytes.length, data.length());
+    assertSame(bytes, data.getBytes());
+    assertArrayEquals(Arrays.copyOfRange(bytes, 10, 20), data.read(10, 10));
+    try (InputStream in = data.openStream()) {
+      assertArrayEquals(bytes, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void testReleaseKeepsTheDataUntilCollected() {
+    AssetData data = new AssetData(bytes);
+
+    data.release(id, cache);
+
+    assertSame(bytes, data.getBytes());
+  }
+
+  @Test
+  void testReleaseNotInCacheKeepsTheData() {
+    byte[] other = {1, 2, 3};
+    AssetData data = new AssetData(other);
+
+    data.release(new MD5Key(other), cache);
+    data.collect();
+
+    assertSame(other, data.getBytes());
+  }
+
+  @Test
+  void testCollectedReadsTheDataBack() {
+    AssetData data = collected();
+
+    assertEquals(bytes.length, data.length());
+    assertArrayEquals(bytes, data.getBytes());
+  }
+
+  @Test
+  void testCollectedReadsPartsFromTheCache() throws IOException {
+    AssetData data = collected();
+
+    assertArrayEquals(Arrays.copyOfRange(bytes, 0, 10), data.read(0, 10));
+    assertArrayEquals(Arrays.copyOfRange(bytes, 990, 1000), data.read(990, 100));
+  }
+
+  @Test
+  void testCollectedStreamsTheDataFromTheCache() throws IOException {
+    AssetData data = collected();
+
+    try (InputStream in = data.openStream()) {
+      assertArrayEquals(bytes, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void testRetainHoldsTheDataAfterTheCacheIsCleared() throws IOException {
+    AssetData data = collected();
+
+    data.retain();
+    cache.clear();
+    data.collect();
+
+    assertArrayEquals(bytes, data.getBytes());
+    assertArrayEquals(Arrays.copyOfRange(bytes, 0, 10), data.read(0, 10));
+    try (InputStream in = data.openStream()) {
+      assertArrayEquals(bytes, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void testRemovedFromCacheFailsInsteadOfReturningNoData() {
+    AssetData data = collected();
+
+    cache.remove(id);
+
+    assertFalse(cache.pin(id));
+    assertThrows(UncheckedIOException.class, data::getBytes);
+    assertThrows(IOException.class, () -> data.read(0, 10));
+    assertThrows(IOException.class, data::openStream);
+  }
+
+  @Test
+  void testRemoveUnpinsTheAsset() throws Exception {
+    AssetPackCache limited = new AssetPackCache(new File(dir, "limited"), () -> 1500);
+    try {
+      byte[] other = Arrays.copyOf(bytes, 800);
+      MD5Key otherId = new MD5Key(other);
+      limited.put(id, "Goblin", null, bytes);
+      new AssetData(bytes.clone()).release(id, limited);
+
+      limited.remove(id);
+      limited.put(id, "Goblin", null, bytes);
+      limited.put(otherId, "Orc", null, other);
+
+      // The asset is no longer pinned once it is put back, so it is removed for the newer asset.
+      assertFalse(limited.contains(id));
+      assertArrayEquals(other, limited.read(otherId));
+    } finally {
+      limited.close();
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.rptools.lib.MD5Key;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AssetPackCacheTest {
+  @TempDir File dir;
+
+  private final List<AssetPackCache> opened = new ArrayList<>();
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    for (AssetPackCache cache : opened) {
+      cache.close();
+    }
+  }
+
+  private AssetPackCache open(long sizeLimit) {
+    return open(sizeLimit, 1024 * 1024);
+  }
+
+  private AssetPackCache open(long sizeLimit, long segmentSize) {
+    AssetPackCache cache = new AssetPackCache(dir, () -> sizeLimit, segmentSize);
+    opened.add(cache);
+    return cache;
+  }
+
+  private static byte[] data(int length, int seed) {
+    byte[] data = new byte[length];
+    Arrays.fill(data, (byte) seed);
+    data[0] = (byte) (seed + 1);
+    return data;
+  }
+
+  @Test
+  void testPutThenReadReturnsTheData() throws IOException {
+    AssetPackCache cache = open(0);
+    byte[] data = data(100, 1);
+    MD5Key id = new MD5Key(data);
+
+    cache.put(id, "Goblin", Asset.Type.IMAGE.name(), data);
+
+    assertTrue(cache.contains(id));
+    assertArrayEquals(data, cache.read(id));
+    assertArrayEquals(Arrays.copyOfRange(data, 0, 10), cache.read(id, 0, 10));
+    assertArrayEquals(Arrays.copyOfRange(data, 95, 100), cache.read(id, 95, 10));
+    try (InputStream in = cache.openStream(id)) {
+      assertArrayEquals(data, in.readAllBytes());
+    }
+    assertEquals("Goblin", cache.getEntry(id).name());
+    assertEquals(Asset.Type.IMAGE.name(), cache.getEntry(id).type());
+  }
+
+  @Test
+  void testReadNotInCacheReturnsNull() throws IOException {
+    AssetPackCache cache = open(0);
+    MD5Key id = new MD5Key(data(10, 1));
+
+    assertFalse(cache.contains(id));
+    assertNull(cache.read(id));
+    assertNull(cache.openStream(id));
+  }
+
+  @Test
+  void testReopenKeepsTheAssets() throws Exception {
+    byte[] data = data(100, 1);
+    MD5Key id = new MD5Key(data);
+    AssetPackCache cache = open(0);
+    cache.put(id, "Goblin", null, data);
+
+    cache.close();
+    cache = open(0);
+
+    assertTrue(cache.contains(id));
+    assertArrayEquals(data, cache.read(id));
+    assertEquals("", cache.getEntry(id).type());
+  }
+
+  @Test
+  void testReopenAfterTruncatedIndexDropsOnlyTheIncompleteRecord() throws Exception {
+    byte[] first = data(100, 1);
+    byte[] second = data(100, 2);
+    MD5Key firstId = new MD5Key(first);
+    MD5Key secondId = new MD5Key(second);
+    AssetPackCache cache = open(0);
+    cache.put(firstId, "First", null, first);
+    cache.put(secondId, "Second", null, second);
+
+    cache.close();
+    try (RandomAccessFile index = new RandomAccessFile(new File(dir, "index"), "rw")) {
+      index.setLength(index.length() - 3);
+    }
+    cache = open(0);
+
+    assertTrue(cache.contains(firstId));
+    assertFalse(cache.contains(secondId));
+    assertArrayEquals(first, cache.read(firstId));
+
+    // The index was rewritten, so it is read without dropping anything more.
+    cache.close();
+    cache = open(0);
+    assertTrue(cache.contains(firstId));
+    assertArrayEquals(first, cache.read(firstId));
+  }
+
+  @Test
+  void testReopenAfterTruncatedSegmentDropsTheMissingAssets() throws Exception {
+    byte[] first = data(100, 1);
+    byte[] second = data(100, 2);
+    MD5Key firstId = new MD5Key(first);
+    MD5Key secondId = new MD5Key(second);
+    AssetPackCache cache = open(0);
+    cache.put(firstId, "First", null, first);
+    cache.put(secondId, "Second", null, second);
+
+    cache.close();
+    try (RandomAccessFile segment = new RandomAccessFile(new File(dir, "00000000.pack"), "rw")) {
+      segment.setLength(150);
+    }
+    cache = open(0);
+
+    assertTrue(cache.contains(firstId));
+    assertFalse(cache.contains(secondId));
+    assertArrayEquals(first, cache.read(firstId));
+  }
+
+  @Test
+  void testOverSizeLimitEvictsTheAssetsUsedLeastRecently() throws IOException {
+    AssetPackCache cache = open(350);
+    MD5Key[] ids = new MD5Key[4];
+    for (int i = 0; i < 3; i++) {
+      byte[] data = data(100, i);
+      ids[i] = new MD5Key(data);
+      cache.put(ids[i], "Asset " + i, null, data);
+    }
+    cache.read(ids[0]);
+
+    byte[] data = data(100, 3);
+    ids[3] = new MD5Key(data);
+    cache.put(ids[3], "Asset 3", null, data);
+
+    assertTrue(cache.contains(ids[0]));
+    assertFalse(cache.contains(ids[1]));
+    assertTrue(cache.contains(ids[2]));
+    assertTrue(cache.contains(ids[3]));
+  }
+
+  @Test
+  void testOverSizeLimitKeepsPinnedAssets() throws IOException {
+    AssetPackCache cache = open(250);
+    MD5Key[] ids = new MD5Key[3];
+    for (int i = 0; i < 3; i++) {
+      byte[] data = data(100, i);
+      ids[i] = new MD5Key(data);
+      cache.put(ids[i], "Asset " + i, null, data);
+      if (i == 0) {
+        assertTrue(cache.pin(ids[0]));
+      }
+    }
+
+    assertTrue(cache.contains(ids[0]));
+    assertArrayEquals(data(100, 0), cache.read(ids[0]));
+    assertFalse(cache.contains(ids[1]));
+    assertTrue(cache.contains(ids[2]));
+    assertFalse(cache.pin(ids[1]));
+  }
+
+  @Test
+  void testCompactMovesTheRemainingAssets() throws Exception {
+    AssetPackCache cache = open(0, 100);
+    byte[] removed = data(40, 1);
+    byte[] kept = data(40, 2);
+    byte[] current = data(40, 3);
+    MD5Key removedId = new MD5Key(removed);
+    MD5Key keptId = new MD5Key(kept);
+    MD5Key currentId = new MD5Key(current);
+    cache.put(removedId, "Removed", null, removed);
+    cache.put(keptId, "Kept", null, kept);
+    cache.put(currentId, "Current", null, current);
+    assertEquals(0, cache.getEntry(keptId).segment());
+    assertEquals(1, cache.getEntry(currentId).segment());
+
+    InputStream openBefore = cache.openStream(keptId);
+    cache.remove(removedId);
+    cache.maintain();
+
+    assertFalse(new File(dir, "00000000.pack").exists());
+    assertEquals(1, cache.getEntry(keptId).segment());
+    assertArrayEquals(kept, cache.read(keptId));
+    assertArrayEquals(current, cache.read(currentId));
+    assertFalse(cache.contains(removedId));
+    try (openBefore) {
+      assertArrayEquals(kept, openBefore.readAllBytes());
+    }
+
+    cache.close();
+    AssetPackCache reopened = open(0, 100);
+    assertEquals(1, reopened.getEntry(keptId).segment());
+    assertArrayEquals(kept, reopened.read(keptId));
+    assertArrayEquals(current, reopened.read(currentId));
+    assertFalse(reopened.contains(removedId));
+  }
+
+  @Test
+  void testReadDuringCompactionFindsTheMovedAsset() throws Exception {
+    AssetPackCache cache = open(0, 100);
+    byte[] kept = data(40, 1);
+    byte[] removed = data(40, 2);
+    byte[] filler = data(70, 3);
+    MD5Key keptId = new MD5Key(kept);
+    MD5Key removedId = new MD5Key(removed);
+    MD5Key fillerId = new MD5Key(filler);
+    cache.put(keptId, "Kept", null, kept);
+
+    // Keep reading the asset while the segment it is in is compacted, so that reads find the
+    // segment closed or deleted and have to look for where the asset was moved to.
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicInteger reads = new AtomicInteger();
+    ExecutorService reader = Executors.newSingleThreadExecutor();
+    Future<?> reading =
+        reader.submit(
+            () -> {
+              while (!done.get()) {
+                assertArrayEquals(Arrays.copyOfRange(kept, 0, 1), cache.read(keptId, 0, 1));
+                reads.incrementAndGet();
+              }
+              return null;
+            });
+    try {
+      for (int i = 0; i < 200; i++) {
+        // The removed asset joins the kept one, and the filler starts a new segment, so that
+        // removing them leaves the segment of the kept asset to be compacted.
+        cache.put(removedId, "Removed", null, removed);
+        cache.put(fillerId, "Filler", null, filler);
+        int segment = cache.getEntry(keptId).segment();
+        cache.remove(removedId);
+        cache.remove(fillerId);
+        cache.maintain();
+        assertTrue(cache.getEntry(keptId).segment() > segment);
+
+        // Let the reads that overlapped this compaction finish before the next one.
+        int readsBefore = reads.get();
+        while (reads.get() < readsBefore + 2 && !reading.isDone()) {
+          Thread.onSpinWait();
+        }
+      }
+    } finally {
+      done.set(true);
+      reader.shutdown();
+    }
+    reading.get(10, TimeUnit.SECONDS);
+    assertArrayEquals(kept, cache.read(keptId));
+  }
+
+  @Test
+  void testClearRemovesTheAssetsAndFiles() throws Exception {
+    AssetPackCache cache = open(0);
+    byte[] data = data(100, 1);
+    MD5Key id = new MD5Key(data);
+    cache.put(id, "Goblin", null, data);
+    assertTrue(cache.pin(id));
+
+    cache.clear();
+
+    assertFalse(cache.contains(id));
+    assertNull(cache.read(id));
+    assertFalse(dir.exists());
+
+    cache.put(id, "Goblin", null, data);
+    assertArrayEquals(data, cache.read(id));
+    cache.close();
+    assertNotNull(open(0).read(id));
+  }
+}
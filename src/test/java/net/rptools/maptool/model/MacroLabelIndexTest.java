@@ -0,0 +1,82 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.model;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MacroLabelIndexTest {
+
+  private static MacroButtonProperties macro(int index, String label) {
+    MacroButtonProperties prop = new MacroButtonProperties(index);
+    prop.setLabel(label);
+    return prop;
+  }
+
+  @Test
+  public void testGetReturnsFirstMacroWithLabel() {
+    MacroButtonProperties first = macro(1, "attack");
+    List<MacroButtonProperties> macros = new ArrayList<>(List.of(first, macro(2, "attack")));
+    MacroLabelIndex index = new MacroLabelIndex();
+
+    assertSame(first, index.get("attack", macros));
+    assertNull(index.get("defend", macros));
+  }
+
+  @Test
+  public void testGetFollowsRenamedMacro() {
+    MacroButtonProperties prop = macro(1, "attack");
+    List<MacroButtonProperties> macros = new ArrayList<>(List.of(prop));
+    MacroLabelIndex index = new MacroLabelIndex();
+    index.get("attack", macros);
+
+    prop.setLabel("defend");
+
+    assertNull(index.get("attack", macros));
+    assertSame(prop, index.get("defend", macros));
+  }
+
+  @Test
+  public void testGetAfterRenameToExistingLabel() {
+    MacroButtonProperties first = macro(1, "defend");
+    MacroButtonProperties second = macro(2, "attack");
+    List<MacroButtonProperties> macros = new ArrayList<>(List.of(first, second));
+    MacroLabelIndex index = new MacroLabelIndex();
+    assertSame(second, index.get("attack", macros));
+
+    first.setLabel("attack");
+
+    assertSame(first, index.get("attack", macros));
+    assertNull(index.get("defend", macros));
+  }
+
+  @Test
+  public void testGetFollowsAddedAndRemovedMacros() {
+    List<MacroButtonProperties> macros = new ArrayList<>(List.of(macro(1, "attack")));
+    MacroLabelIndex index = new MacroLabelIndex();
+    index.get("attack", macros);
+
+    MacroButtonProperties added = macro(2, "defend");
+    macros.add(added);
+    assertSame(added, index.get("defend", macros));
+
+    macros.remove(0);
+    assertNull(index.get("attack", macros));
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.Direction;
+import net.rptools.maptool.model.LightSource;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.server.proto.Message;
+import net.rptools.maptool.server.proto.TokenPropertyValueDto;
+import net.rptools.maptool.server.proto.TokenUpdateDto;
+import net.rptools.maptool.server.proto.UpdateTokenPropertyMsg;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ServerMessageHandlerTest {
+  private Campaign campaign;
+  private Zone zone;
+  private Token token;
+
+  @BeforeEach
+  void setUp() {
+    campaign = new Campaign();
+    zone = new Zone();
+    campaign.putZone(zone);
+    token = new Token();
+    zone.putToken(token);
+  }
+
+  private Message updateTokenProperty(Token.Update update, TokenPropertyValueDto... values) {
+    return Message.newBuilder()
+        .setUpdateTokenPropertyMsg(
+            UpdateTokenPropertyMsg.newBuilder()
+                .setZoneGuid(zone.getId().toString())
+                .setTokenGuid(token.getId().toString())
+                .setProperty(TokenUpdateDto.valueOf(update.name()))
+                .addAllValues(List.of(values)))
+        .build();
+  }
+
+  @Test
+  void testReplayLightUpdatesChangeOnlyTheCampaign() {
+    LightSource torch = new LightSource("Torch");
+
+    int failed =
+        ServerMessageHandler.replay(
+            campaign,
+            List.of(
+                updateTokenProperty(
+                    Token.Update.addLightSource,
+                    TokenPropertyValueDto.newBuilder().setLightSource(torch.toDto()).build(),
+                    TokenPropertyValueDto.newBuilder()
+                        .setStringValue(Direction.CENTER.name())
+                        .build()),
+                updateTokenProperty(
+                    Token.Update.setXY,
+                    TokenPropertyValueDto.newBuilder().setIntValue(100).build(),
+                    TokenPropertyValueDto.newBuilder().setIntValue(200).build())));
+
+    assertEquals(0, failed);
+    assertTrue(token.hasLightSource(torch));
+    assertEquals(100, token.getX());
+    assertEquals(200, token.getY());
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * This software Copyright by the RPTools.net development team, and
+ * licensed under the Affero GPL Version 3 or, at your option, any later
+ * version.
+ *
+ * MapTool Source Code is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ *
+ * You should have received a copy of the GNU Affero General Public
+ * License * along with this source Code.  If not, please visit
+ * <http://www.gnu.org/licenses/> and specifically the Affero license
+ * text at <http://www.gnu.org/licenses/agpl.html>.
+ */
+package net.rptools.maptool.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import net.rptools.maptool.client.ui.Scale;
+import net.rptools.maptool.model.Campaign;
+import net.rptools.maptool.model.GUID;
+import net.rptools.maptool.model.Token;
+import net.rptools.maptool.model.Zone;
+import net.rptools.maptool.model.drawing.DrawnElement;
+import net.rptools.maptool.model.drawing.Pen;
+import net.rptools.maptool.model.drawing.ShapeDrawable;
+import net.rptools.maptool.server.proto.CampaignContentRecordDto;
+import net.rptools.maptool.util.PersistenceUtil.PersistedCampaign;
+import org.junit.jupiter.api.Test;
+
+public class StreamedCampaignContentTest {
+
+  private static Zone newZone(String name, int tokens) {
+    Zone zone = new Zone();
+    zone.setName(name);
+    for (int i = 0; i < tokens; i++) {
+      Token token = new Token();
+      token.setName(name + " token " + i);
+      zone.putToken(token);
+    }
+    for (Zone.Layer layer : Zone.Layer.values()) {
+      ShapeDrawable drawable = new ShapeDrawable(new Rectangle(0, 0, 10, 10));
+      drawable.setLayer(layer);
+      zone.addDrawable(new DrawnElement(drawable, new Pen()));
+    }
+    return zone;
+  }
+
+  private static List<GUID> tokenIds(Zone zone) {
+    return zone.getAllTokens().stream().map(Token::getId).sorted().collect(Collectors.toList());
+  }
+
+  private static List<GUID> drawableIds(Zone zone, Zone.Layer layer) {
+    return zone.getDrawnElements(layer).stream()
+        .map(d -> d.getDrawable().getId())
+        .collect(Collectors.toList());
+  }
+
+  private static PersistedCampaign roundTrip(PersistedCampaign persistedCampaign)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamedCampaignContent.write(persistedCampaign, out);
+    return StreamedCampaignContent.read(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  @Test
+  void testWriteThenReadKeepsZonesTokensAndDrawables() throws IOException {
+    Campaign campaign = new Campaign();
+    Zone first = newZone("First", 3);
+    Zone second = newZone("Second", 0);
+    campaign.putZone(first);
+    campaign.putZone(second);
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+    persistedCampaign.campaign = campaign;
+    persistedCampaign.currentZoneId = second.getId();
+    Scale view = new Scale();
+    view.setScale(2.0);
+    view.setOffset(10, 20);
+    persistedCampaign.currentView = view;
+
+    PersistedCampaign read = roundTrip(persistedCampaign);
+
+    assertEquals(second.getId(), read.currentZoneId);
+    assertEquals(2.0, read.currentView.getScale());
+    assertEquals(10, read.currentView.getOffsetX());
+    assertEquals(20, read.currentView.getOffsetY());
+    assertEquals(2, read.campaign.getZones().size());
+    for (Zone zone : List.of(first, second)) {
+      Zone readZone = read.campaign.getZone(zone.getId());
+      assertNotNull(readZone, zone.getName());
+      assertEquals(zone.getName(), readZone.getName());
+      assertEquals(tokenIds(zone), tokenIds(readZone));
+      for (Token token : zone.getAllTokens()) {
+        assertEquals(token.getName(), readZone.getToken(token.getId()).getName());
+      }
+      for (Zone.Layer layer : Zone.Layer.values()) {
+        assertEquals(1, drawableIds(readZone, layer).size(), layer.name());
+        assertEquals(drawableIds(zone, layer), drawableIds(readZone, layer), layer.name());
+        assertEquals(layer, readZone.getDrawnElements(layer).get(0).getDrawable().getLayer());
+      }
+    }
+  }
+
+  @Test
+  void testReadTokenBeforeZoneFails() throws IOException {
+    Campaign campaign = new Campaign();
+    PersistedCampaign persistedCampaign = new PersistedCampaign();
+    persistedCampaign.campaign = campaign;
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamedCampaignContent.write(persistedCampaign, out);
+    CampaignContentRecordDto.newBuilder()
+        .setToken(new Token().toDto())
+        .build()
+        .writeDelimitedTo(out);
+
+    assertThrows(
+        IOException.class,
+        () -> StreamedCampaignContent.read(new ByteArrayInputStream(out.toByteArray())));
+  }
+}